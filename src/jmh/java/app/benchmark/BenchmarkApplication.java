@@ -0,0 +1,46 @@
+package app.benchmark;
+
+import app.ActivitySvcApplication;
+import jakarta.mail.internet.MimeMessage;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+/**
+ * Boots the service on the in-memory H2 database of the test profile, with a {@link JavaMailSender} that accepts
+ * every message without any network I/O, so benchmarks measure our code and not an SMTP server.
+ */
+final class BenchmarkApplication {
+
+    private BenchmarkApplication() {
+    }
+
+    //properties are given as key=value and override the test profile
+    static ConfigurableApplicationContext start(String... properties) {
+        return new SpringApplicationBuilder(ActivitySvcApplication.class, StubMailConfiguration.class)
+                .profiles("test")
+                .properties(properties)
+                .web(WebApplicationType.NONE)
+                .run();
+    }
+
+    @Configuration
+    static class StubMailConfiguration {
+
+        @Bean
+        @Primary
+        public JavaMailSender stubMailSender() {
+            //messages are still created and filled in, only the SMTP transport is skipped
+            return new JavaMailSenderImpl() {
+                @Override
+                protected void doSend(MimeMessage[] mimeMessages, Object[] originalMessages) {
+                }
+            };
+        }
+    }
+}
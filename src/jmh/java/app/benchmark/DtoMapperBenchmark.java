@@ -0,0 +1,58 @@
+package app.benchmark;
+
+import app.model.ActivitiesNotification;
+import app.model.ActivityType;
+import app.model.NotificationPreference;
+import app.model.NotificationStatus;
+import app.web.dto.ActivitiesNotificationResponse;
+import app.web.dto.NotificationPreferenceResponse;
+import app.web.mapper.DtoMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DtoMapperBenchmark {
+
+    private ActivitiesNotification notification;
+    private NotificationPreference preference;
+
+    @Setup
+    public void setUp() {
+        notification = ActivitiesNotification.builder()
+                .id(UUID.randomUUID())
+                .userId(UUID.randomUUID())
+                .type(ActivityType.RESERVATION)
+                .subject("Creating reservation")
+                .message("Table for two at 19:30")
+                .status(NotificationStatus.SUCCEEDED)
+                .createdOn(LocalDateTime.now())
+                .build();
+        preference = NotificationPreference.builder()
+                .id(UUID.randomUUID())
+                .userId(UUID.randomUUID())
+                .reservationEnabled(true)
+                .productEnabled(true)
+                .contactInfo("viktor@gmail.com")
+                .createdOn(LocalDateTime.now())
+                .updatedOn(LocalDateTime.now())
+                .build();
+    }
+
+    @Benchmark
+    public ActivitiesNotificationResponse fromActivitiesNotification() {
+        return DtoMapper.fromActivitiesNotification(notification);
+    }
+
+    @Benchmark
+    public NotificationPreferenceResponse fromNotificationPreference() {
+        return DtoMapper.fromNotificationPreference(preference);
+    }
+}
@@ -0,0 +1,48 @@
+package app.benchmark;
+
+import app.model.ActivityType;
+import app.model.NotificationStatus;
+import app.web.dto.ActivitiesNotificationResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+//serialization of a history page, the ObjectMapper is built the way Spring MVC builds its own
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HistoryJsonBenchmark {
+
+    @Param({"10", "50", "500"})
+    private int size;
+
+    private ObjectMapper objectMapper;
+    private List<ActivitiesNotificationResponse> history;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        LocalDateTime now = LocalDateTime.now();
+        history = IntStream.range(0, size)
+                .mapToObj(i -> ActivitiesNotificationResponse.builder()
+                        .subject("Creating reservation " + i)
+                        .type(i % 2 == 0 ? ActivityType.RESERVATION : ActivityType.BUYING_PRODUCT)
+                        .status(NotificationStatus.SUCCEEDED)
+                        .createdOn(now.minusMinutes(i))
+                        .build())
+                .toList();
+    }
+
+    @Benchmark
+    public byte[] serializeHistory() throws Exception {
+        return objectMapper.writeValueAsBytes(history);
+    }
+}
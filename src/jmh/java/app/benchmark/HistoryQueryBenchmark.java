@@ -0,0 +1,84 @@
+package app.benchmark;
+
+import app.model.ActivitiesNotification;
+import app.model.ActivityType;
+import app.model.NotificationStatus;
+import app.repository.ActivitiesNotificationRepository;
+import app.service.NotificationService;
+import app.web.dto.ActivitiesNotificationResponse;
+import app.web.mapper.DtoMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * One history request of {@code rows} rows, managed entities mapped to responses against the column projection.
+ * Run with {@code -prof gc} and compare {@code gc.alloc.rate.norm}, the bytes allocated per request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HistoryQueryBenchmark {
+
+    @Param({"1000"})
+    private int rows;
+
+    private ConfigurableApplicationContext context;
+    private NotificationService notificationService;
+    private ActivitiesNotificationRepository activitiesNotificationRepository;
+    private TransactionTemplate transactionTemplate;
+    private UUID userId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start();
+        notificationService = context.getBean(NotificationService.class);
+        activitiesNotificationRepository = context.getBean(ActivitiesNotificationRepository.class);
+        transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+
+        userId = UUID.randomUUID();
+        LocalDateTime now = LocalDateTime.now();
+        activitiesNotificationRepository.saveAll(IntStream.range(0, rows)
+                .mapToObj(i -> ActivitiesNotification.builder()
+                        .userId(userId)
+                        .type(ActivityType.RESERVATION)
+                        .subject("Creating reservation " + i)
+                        //a realistic body, it is what the entity path loads and the projection skips
+                        .message("Table for two at 19:00, reservation number " + i + ". ".repeat(50))
+                        .status(NotificationStatus.SUCCEEDED)
+                        .createdOn(now.minusMinutes(i))
+                        .isHidden(false)
+                        .build())
+                .toList());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<ActivitiesNotificationResponse> entityHistory() {
+        //the request used to run in a read-write transaction with the entities managed until it ended
+        return transactionTemplate.execute(status -> activitiesNotificationRepository.findAllByUserIdAndIsHiddenOrderByCreatedOnDesc(userId, false).stream()
+                .map(DtoMapper::fromActivitiesNotification)
+                .toList());
+    }
+
+    @Benchmark
+    public List<ActivitiesNotificationResponse> projectionHistory() {
+        return notificationService.getHistory(userId, null, rows).stream()
+                .map(DtoMapper::fromHistoryEntry)
+                .toList();
+    }
+}
@@ -0,0 +1,91 @@
+package app.benchmark;
+
+import app.model.TimeOrderedUuidGenerator;
+import org.flywaydb.core.Flyway;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Insert throughput into activities_notification, with all of its secondary indexes, once it already holds
+ * {@code preloadRows} rows, random ids against time-ordered ones. The score is rows per second.
+ * By default it runs on a file based H2 database in a temp directory. The effect that matters shows up on InnoDB
+ * once the table outgrows the buffer pool, run it against a scratch MySQL schema, its tables are dropped first:
+ * {@code -Djmh.args="IdOrderInsertBenchmark -p preloadRows=20000000 -jvmArgs -Dbenchmark.jdbc.url=jdbc:mysql://localhost:3306/ids_benchmark"}
+ * with {@code -Dbenchmark.jdbc.username} and {@code -Dbenchmark.jdbc.password} as needed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class IdOrderInsertBenchmark {
+    private static final String INSERT = "INSERT INTO activities_notification (id, user_id, type, subject, message, status, created_on, is_hidden) " +
+            "VALUES (?, ?, 'RESERVATION', 'Creating reservation', 'Table for two at 19:00', 'SUCCEEDED', ?, FALSE)";
+    private static final int BATCH_SIZE = 1000;
+
+    @Param({"random", "time-ordered"})
+    private String keys;
+
+    @Param({"1000000"})
+    private int preloadRows;
+
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+    private Supplier<UUID> ids;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        String url = System.getProperty("benchmark.jdbc.url",
+                "jdbc:h2:file:" + Files.createTempDirectory("ids-benchmark").resolve("ids") + ";MODE=MYSQL");
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(url,
+                System.getProperty("benchmark.jdbc.username", "sa"), System.getProperty("benchmark.jdbc.password", "password"));
+        Flyway flyway = Flyway.configure().dataSource(dataSource).cleanDisabled(false).load();
+        flyway.clean();
+        flyway.migrate();
+
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        ids = keys.equals("random") ? UUID::randomUUID : TimeOrderedUuidGenerator::next;
+        for(int inserted = 0; inserted < preloadRows; inserted += BATCH_SIZE){
+            insertBatch();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void insertBatch() {
+        LocalDateTime now = LocalDateTime.now();
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(INSERT, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement statement, int i) throws SQLException {
+                statement.setBytes(1, bytes(ids.get()));
+                statement.setBytes(2, bytes(UUID.randomUUID()));
+                statement.setObject(3, now);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return BATCH_SIZE;
+            }
+        }));
+    }
+
+    private static byte[] bytes(UUID uuid) {
+        return ByteBuffer.allocate(16).putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits()).array();
+    }
+}
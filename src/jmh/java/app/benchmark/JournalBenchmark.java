@@ -0,0 +1,55 @@
+package app.benchmark;
+
+import app.service.NotificationJournal;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Durable appends to the write-behind journal from concurrent senders. {@code fsync-each} forces the file inside the
+ * append lock, one fsync per send, {@code group-commit} syncs outside it so one fsync covers every append made meanwhile.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class JournalBenchmark {
+    private static final byte[] ENTRY = ("{\"notification\":{\"userId\":\"0192f1a4-7c3e-7b21-9d4e-5f6a7b8c9d0e\",\"type\":\"RESERVATION\"," +
+            "\"subject\":\"Creating reservation\",\"message\":\"Table for two\",\"status\":\"PENDING\"},\"contactInfo\":\"viktor@gmail.com\"}")
+            .getBytes(StandardCharsets.UTF_8);
+
+    @Param({"fsync-each", "group-commit"})
+    private String mode;
+
+    private NotificationJournal journal;
+    private final Object appendLock = new Object();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        journal = new NotificationJournal(Files.createTempDirectory("notification-journal"), true);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        journal.close();
+    }
+
+    @Benchmark
+    public long append() throws IOException {
+        long position;
+        synchronized (appendLock) {
+            position = journal.append(ENTRY);
+            if(mode.equals("fsync-each")){
+                journal.sync(position);
+            }
+        }
+        journal.sync(position);
+        return position;
+    }
+}
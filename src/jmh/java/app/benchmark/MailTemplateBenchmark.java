@@ -0,0 +1,62 @@
+package app.benchmark;
+
+import app.mail.NotificationMailRenderer;
+import app.mail.RenderedMail;
+import app.model.ActivitiesNotification;
+import app.model.ActivityType;
+import app.model.NotificationStatus;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+//rendering of the bundled templates, message sizes from a one-liner to a long receipt, and a 20 item digest
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MailTemplateBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    private int messageLength;
+
+    private NotificationMailRenderer renderer;
+    private ActivitiesNotification notification;
+    private List<ActivitiesNotification> digest;
+
+    @Setup
+    public void setUp() {
+        renderer = new NotificationMailRenderer("mail-templates");
+        //a few characters that need escaping in the HTML part, as real messages have
+        String message = "Table for two & a view <window> ".repeat(messageLength / 32 + 1).substring(0, messageLength);
+        notification = notification(message);
+        digest = IntStream.range(0, 20).mapToObj(i -> notification(message)).toList();
+    }
+
+    @Benchmark
+    public RenderedMail renderNotification() {
+        return renderer.render(notification);
+    }
+
+    @Benchmark
+    public RenderedMail renderDigest() {
+        return renderer.renderDigest(digest);
+    }
+
+    private static ActivitiesNotification notification(String message) {
+        return ActivitiesNotification.builder()
+                .id(UUID.randomUUID())
+                .userId(UUID.randomUUID())
+                .type(ActivityType.RESERVATION)
+                .subject("Creating reservation")
+                .message(message)
+                .status(NotificationStatus.PENDING)
+                .createdOn(LocalDateTime.now())
+                .build();
+    }
+}
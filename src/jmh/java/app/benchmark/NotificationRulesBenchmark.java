@@ -0,0 +1,65 @@
+package app.benchmark;
+
+import app.model.ActivityType;
+import app.model.NotificationPreference;
+import app.service.NotificationRules;
+import app.web.dto.ActivitiesNotificationRequest;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The preference checks every send goes through. A rejected request pays for building the exception message
+ * and the stack trace, which is measured separately.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NotificationRulesBenchmark {
+
+    private NotificationPreference preference;
+    private ActivitiesNotificationRequest allowedRequest;
+    private ActivitiesNotificationRequest rejectedRequest;
+
+    @Setup
+    public void setUp() {
+        UUID userId = UUID.randomUUID();
+        preference = NotificationPreference.builder()
+                .userId(userId)
+                .reservationEnabled(true)
+                .productEnabled(false)
+                .contactInfo("viktor@gmail.com")
+                .build();
+        allowedRequest = ActivitiesNotificationRequest.builder()
+                .userId(userId)
+                .subject("Creating reservation")
+                .message("Table for two")
+                .type(ActivityType.RESERVATION)
+                .build();
+        rejectedRequest = ActivitiesNotificationRequest.builder()
+                .userId(userId)
+                .subject("Buying product")
+                .message("Water for 1 lv.")
+                .type(ActivityType.BUYING_PRODUCT)
+                .build();
+    }
+
+    @Benchmark
+    public void allowed() {
+        NotificationRules.checkAllowed(preference, allowedRequest);
+    }
+
+    @Benchmark
+    public Object rejected() {
+        try {
+            NotificationRules.checkAllowed(preference, rejectedRequest);
+            return null;
+        } catch (IllegalArgumentException e) {
+            return e;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package app.benchmark;
+
+import app.model.ActivitiesNotification;
+import app.model.ActivityType;
+import app.model.NotificationStatus;
+import app.repository.ActivitiesNotificationRepository;
+import app.service.NotificationService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Hiding and showing the whole history of one user, per-row load-and-save against the chunked bulk UPDATE.
+ * Every invocation hides and then shows all rows, so both directions really touch {@code rows} rows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class NotificationVisibilityBenchmark {
+
+    @Param({"10000", "100000"})
+    private int rows;
+
+    private ConfigurableApplicationContext context;
+    private NotificationService notificationService;
+    private ActivitiesNotificationRepository activitiesNotificationRepository;
+    private UUID userId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start();
+        notificationService = context.getBean(NotificationService.class);
+        activitiesNotificationRepository = context.getBean(ActivitiesNotificationRepository.class);
+
+        userId = UUID.randomUUID();
+        for(int from = 0; from < rows; from += 1000){
+            List<ActivitiesNotification> chunk = IntStream.range(from, Math.min(from + 1000, rows))
+                    .mapToObj(i -> ActivitiesNotification.builder()
+                            .userId(userId)
+                            .type(ActivityType.RESERVATION)
+                            .subject("Creating reservation " + i)
+                            .message("Table for two")
+                            .status(NotificationStatus.SUCCEEDED)
+                            .createdOn(LocalDateTime.now())
+                            .isHidden(false)
+                            .build())
+                    .toList();
+            activitiesNotificationRepository.saveAll(chunk);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int loadAndSavePerRow() {
+        int updated = 0;
+        for(boolean isHidden : new boolean[]{true, false}){
+            for(ActivitiesNotification notification : activitiesNotificationRepository.findAllByUserId(userId)){
+                notification.setHidden(isHidden);
+                activitiesNotificationRepository.save(notification);
+                updated++;
+            }
+        }
+        return updated;
+    }
+
+    @Benchmark
+    public int bulkUpdate() {
+        return notificationService.setAllNotificationsIsHiddenToTrue(userId) + notificationService.setAllNotificationsIsHiddenToFalse(userId);
+    }
+}
@@ -0,0 +1,59 @@
+package app.benchmark;
+
+import app.model.ActivitiesNotification;
+import app.model.ActivityType;
+import app.service.NotificationService;
+import app.web.dto.ActivitiesNotificationRequest;
+import app.web.dto.UpsertNotificationPreference;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The request path of POST /api/v1/notifications against H2: preference lookup, rule checks and the
+ * notification plus outbox insert. Delivery keeps running in the background on the stubbed mail sender.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SendNotificationBenchmark {
+
+    private ConfigurableApplicationContext context;
+    private NotificationService notificationService;
+    private ActivitiesNotificationRequest request;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start();
+        notificationService = context.getBean(NotificationService.class);
+
+        UUID userId = UUID.randomUUID();
+        notificationService.upsertPreference(UpsertNotificationPreference.builder()
+                .userId(userId)
+                .reservationEnabled(true)
+                .productEnabled(true)
+                .contactInfo("viktor@gmail.com")
+                .build());
+        request = ActivitiesNotificationRequest.builder()
+                .userId(userId)
+                .subject("Creating reservation")
+                .message("Table for two")
+                .type(ActivityType.RESERVATION)
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public ActivitiesNotification sendNotification() {
+        return notificationService.sendNotification(request);
+    }
+}
@@ -0,0 +1,73 @@
+package app.benchmark;
+
+import app.service.HierarchicalTimerWheel;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one 100 ms tick of the scheduled notification timer with {@code pending} timers, spread so that about ten
+ * come due per tick whatever the total. A wheel tick only touches the timers it fires or moves down a level, what it
+ * still gains with pending comes from cache misses on the bigger heap. {@code scan} is the same tick done by checking
+ * every pending due time, as polling the table without the window would, and grows linearly.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TimerWheelBenchmark {
+    private static final long TICK_MILLIS = 100;
+    private static final int FIRED_PER_TICK = 10;
+
+    @Param({"1000", "100000", "1000000"})
+    private int pending;
+
+    private HierarchicalTimerWheel<Long, Long> wheel;
+    private long spreadMillis;
+    private long now;
+    private long nextKey;
+    private long[] dueTimes;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        spreadMillis = pending / FIRED_PER_TICK * TICK_MILLIS;
+        wheel = new HierarchicalTimerWheel<>(TICK_MILLIS, 64, 0);
+        for(nextKey = 0; nextKey < pending; nextKey++){
+            wheel.schedule(nextKey, 1 + ThreadLocalRandom.current().nextLong(spreadMillis), nextKey);
+        }
+        dueTimes = new long[pending];
+        for(int i = 0; i < pending; i++){
+            dueTimes[i] = 1 + ThreadLocalRandom.current().nextLong(spreadMillis);
+        }
+        now = 0;
+    }
+
+    //every fired timer is replaced by one a full spread out, so the number pending stays the same
+    @Benchmark
+    public int tick() {
+        now += TICK_MILLIS;
+        List<Long> fired = wheel.advance(now);
+        for(int i = 0; i < fired.size(); i++){
+            wheel.schedule(nextKey, now + spreadMillis, nextKey);
+            nextKey++;
+        }
+        return fired.size();
+    }
+
+    @Benchmark
+    public int scan() {
+        now += TICK_MILLIS;
+        int fired = 0;
+        for(int i = 0; i < dueTimes.length; i++){
+            if(dueTimes[i] <= now){
+                dueTimes[i] = now + spreadMillis;
+                fired++;
+            }
+        }
+        return fired;
+    }
+}
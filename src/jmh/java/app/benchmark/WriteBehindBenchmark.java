@@ -0,0 +1,72 @@
+package app.benchmark;
+
+import app.model.ActivitiesNotification;
+import app.model.ActivityType;
+import app.service.NotificationService;
+import app.web.dto.ActivitiesNotificationRequest;
+import app.web.dto.UpsertNotificationPreference;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sustained throughput of single sends from concurrent callers, each row inserted in its own transaction
+ * against the write-behind path that acknowledges from the journal and inserts in batches.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class WriteBehindBenchmark {
+
+    @Param({"per-row", "write-behind", "write-behind-no-fsync"})
+    private String mode;
+
+    private ConfigurableApplicationContext context;
+    private NotificationService notificationService;
+    private ActivitiesNotificationRequest request;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Path journalDirectory = Files.createTempDirectory("notification-journal");
+        context = BenchmarkApplication.start(
+                "notifications.write-behind.enabled=" + !mode.equals("per-row"),
+                "notifications.write-behind.journal-fsync=" + mode.equals("write-behind"),
+                "notifications.write-behind.journal-dir=" + journalDirectory,
+                //the benchmark measures accepting sends, not delivery keeping up with them
+                "notifications.dispatch.queue-capacity=1000000");
+        notificationService = context.getBean(NotificationService.class);
+
+        UUID userId = UUID.randomUUID();
+        notificationService.upsertPreference(UpsertNotificationPreference.builder()
+                .userId(userId)
+                .reservationEnabled(true)
+                .productEnabled(true)
+                .contactInfo("viktor@gmail.com")
+                .build());
+        request = ActivitiesNotificationRequest.builder()
+                .userId(userId)
+                .subject("Creating reservation")
+                .message("Table for two")
+                .type(ActivityType.RESERVATION)
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public ActivitiesNotification sendNotification() {
+        return notificationService.sendNotification(request);
+    }
+}
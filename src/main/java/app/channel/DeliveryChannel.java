@@ -0,0 +1,16 @@
+package app.channel;
+
+import app.model.ActivitiesNotification;
+import app.model.ChannelType;
+
+/**
+ * A way of reaching a user besides email. Every implementation gets its own bounded executor in
+ * {@link app.config.ChannelConfiguration}, so a slow provider only ever backs up its own queue.
+ * Any exception counts as a failed attempt and is retried with the same backoff as emails.
+ */
+public interface DeliveryChannel {
+
+    ChannelType getType();
+
+    void deliver(ActivitiesNotification notification, String address) throws Exception;
+}
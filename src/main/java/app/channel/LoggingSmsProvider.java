@@ -0,0 +1,15 @@
+package app.channel;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+//stands in until a gateway is integrated, messages only show up in the log
+@Slf4j
+@Component
+public class LoggingSmsProvider implements SmsProvider {
+
+    @Override
+    public void send(String phoneNumber, String text) {
+        log.info("SMS to "+phoneNumber+": "+text);
+    }
+}
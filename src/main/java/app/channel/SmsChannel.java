@@ -0,0 +1,36 @@
+package app.channel;
+
+import app.model.ActivitiesNotification;
+import app.model.ChannelType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+@Component
+public class SmsChannel implements DeliveryChannel {
+    private final SmsProvider smsProvider;
+    private final int maxLength;
+
+    @Autowired
+    public SmsChannel(SmsProvider smsProvider,
+                      @Value("${notifications.channels.sms.max-length:160}") int maxLength) {
+        this.smsProvider = smsProvider;
+        this.maxLength = maxLength;
+    }
+
+    @Override
+    public ChannelType getType() {
+        return ChannelType.SMS;
+    }
+
+    @Override
+    public void deliver(ActivitiesNotification notification, String address) throws Exception {
+        smsProvider.send(address, text(notification));
+    }
+
+    //one message, anything longer would be split and billed as several
+    private String text(ActivitiesNotification notification) {
+        String text = notification.getSubject() + ": " + notification.getMessage();
+        return text.length() <= maxLength ? text : text.substring(0, maxLength - 3) + "...";
+    }
+}
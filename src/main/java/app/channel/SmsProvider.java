@@ -0,0 +1,7 @@
+package app.channel;
+
+//the SMS gateway, replaced by a real provider's client where one is configured
+public interface SmsProvider {
+
+    void send(String phoneNumber, String text) throws Exception;
+}
@@ -0,0 +1,89 @@
+package app.channel;
+
+import app.model.ActivitiesNotification;
+import app.model.ChannelType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClient;
+
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+
+@Component
+public class WebhookChannel implements DeliveryChannel {
+    private final RestClient restClient;
+    private final boolean allowPrivateAddresses;
+
+    @Autowired
+    public WebhookChannel(RestClient.Builder restClientBuilder,
+                          @Value("${notifications.channels.webhook.connect-timeout-ms:2000}") int connectTimeoutMillis,
+                          @Value("${notifications.channels.webhook.read-timeout-ms:5000}") int readTimeoutMillis,
+                          @Value("${notifications.channels.webhook.allow-private-addresses:false}") boolean allowPrivateAddresses) {
+        this.allowPrivateAddresses = allowPrivateAddresses;
+        //a hanging endpoint holds one webhook worker for at most the read timeout
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(connectTimeoutMillis);
+        requestFactory.setReadTimeout(readTimeoutMillis);
+        this.restClient = restClientBuilder.requestFactory(requestFactory).build();
+    }
+
+    @Override
+    public ChannelType getType() {
+        return ChannelType.WEBHOOK;
+    }
+
+    //any status other than 2xx is thrown as a failed attempt, redirects of a POST are not followed
+    @Override
+    public void deliver(ActivitiesNotification notification, String address) throws UnknownHostException {
+        URI uri = URI.create(address);
+        checkPublic(uri);
+        restClient.post()
+                .uri(uri)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(WebhookPayload.builder()
+                        .id(notification.getId())
+                        .userId(notification.getUserId())
+                        .type(notification.getType())
+                        .subject(notification.getSubject())
+                        .message(notification.getMessage())
+                        .createdOn(notification.getCreatedOn())
+                        .build())
+                .retrieve()
+                .toBodilessEntity();
+    }
+
+    //the url is chosen by the user, without this the service would post notifications to its own network on their behalf
+    //checked before every attempt, a name can point somewhere else by the time a retry goes out
+    private void checkPublic(URI uri) throws UnknownHostException {
+        if(!"http".equalsIgnoreCase(uri.getScheme()) && !"https".equalsIgnoreCase(uri.getScheme()) || uri.getHost() == null){
+            throw new IllegalArgumentException("Webhook url "+uri+" is not an http(s) url!");
+        }
+        if(allowPrivateAddresses){
+            return;
+        }
+        for(InetAddress address : InetAddress.getAllByName(uri.getHost())){
+            if(!isPublic(address)){
+                throw new IllegalArgumentException("Webhook host "+uri.getHost()+" resolves to "+address.getHostAddress()+", which is not a public address!");
+            }
+        }
+    }
+
+    //loopback, link-local (169.254.169.254 among them), private and carrier-grade NAT ranges, IPv6 unique local
+    private static boolean isPublic(InetAddress address) {
+        byte[] bytes = address.getAddress();
+        if(address.isAnyLocalAddress() || address.isLoopbackAddress() || address.isLinkLocalAddress() || address.isSiteLocalAddress() || address.isMulticastAddress()){
+            return false;
+        }
+        if(address instanceof Inet6Address){
+            //fc00::/7
+            return (bytes[0] & 0xfe) != 0xfc;
+        }
+        //0.0.0.0/8 and 100.64.0.0/10
+        return (bytes[0] & 0xff) != 0 && !((bytes[0] & 0xff) == 100 && (bytes[1] & 0xc0) == 64);
+    }
+}
@@ -0,0 +1,24 @@
+package app.channel;
+
+import app.model.ActivityType;
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Data
+@Builder
+public class WebhookPayload {
+    private UUID id;
+
+    private UUID userId;
+
+    private ActivityType type;
+
+    private String subject;
+
+    private String message;
+
+    private LocalDateTime createdOn;
+}
@@ -0,0 +1,44 @@
+package app.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * One bounded pool per delivery channel, named after the channel. The pool size is how many deliveries of that channel
+ * run at once and the queue how many this instance claims ahead, so a slow channel fills only its own queue while
+ * email and the other channels keep being relayed.
+ */
+@Configuration
+public class ChannelConfiguration {
+
+    @Bean
+    public ThreadPoolTaskExecutor webhookDispatchExecutor(@Value("${notifications.channels.webhook.pool-size:4}") int poolSize,
+                                                          @Value("${notifications.channels.webhook.queue-capacity:500}") int queueCapacity,
+                                                          @Value("${notifications.dispatch.drain-timeout-seconds:30}") int drainTimeoutSeconds) {
+        return channelExecutor("webhook", poolSize, queueCapacity, drainTimeoutSeconds);
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor smsDispatchExecutor(@Value("${notifications.channels.sms.pool-size:2}") int poolSize,
+                                                      @Value("${notifications.channels.sms.queue-capacity:500}") int queueCapacity,
+                                                      @Value("${notifications.dispatch.drain-timeout-seconds:30}") int drainTimeoutSeconds) {
+        return channelExecutor("sms", poolSize, queueCapacity, drainTimeoutSeconds);
+    }
+
+    private static ThreadPoolTaskExecutor channelExecutor(String channel, int poolSize, int queueCapacity, int drainTimeoutSeconds) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix(channel + "-dispatch-");
+        //the relay never claims more than fits, a rejection leaves the entry in the outbox until its lease expires
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(drainTimeoutSeconds);
+        return executor;
+    }
+}
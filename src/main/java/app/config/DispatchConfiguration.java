@@ -0,0 +1,29 @@
+package app.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+@Configuration
+public class DispatchConfiguration {
+
+    @Bean
+    public ThreadPoolTaskExecutor notificationDispatchExecutor(@Value("${notifications.dispatch.pool-size:8}") int poolSize,
+                                                               @Value("${notifications.dispatch.queue-capacity:1000}") int queueCapacity,
+                                                               @Value("${notifications.dispatch.drain-timeout-seconds:30}") int drainTimeoutSeconds) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("notification-dispatch-");
+        //a full queue must surface to the caller as backpressure, never run the send on the request thread
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        //on shutdown finish what is already queued instead of dropping accepted notifications
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(drainTimeoutSeconds);
+        return executor;
+    }
+}
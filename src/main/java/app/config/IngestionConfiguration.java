@@ -0,0 +1,66 @@
+package app.config;
+
+import app.web.dto.ActivitiesNotificationRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.kafka.ConcurrentKafkaListenerContainerFactoryConfigurer;
+import org.springframework.boot.autoconfigure.kafka.DefaultKafkaConsumerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.util.backoff.ExponentialBackOff;
+
+import java.util.Map;
+
+@Configuration
+@ConditionalOnProperty(name = "notifications.ingestion.enabled", havingValue = "true")
+public class IngestionConfiguration {
+
+    @Bean
+    public DefaultKafkaConsumerFactoryCustomizer notificationCommandConsumerFactoryCustomizer(ObjectMapper objectMapper,
+                                                                                            @Value("${notifications.ingestion.max-batch-size:500}") int maxBatchSize) {
+        return consumerFactory -> {
+            //a poll is handed over as one batch, so it must stay within the batch limit of the service
+            consumerFactory.updateConfigs(Map.of(
+                    ConsumerConfig.MAX_POLL_RECORDS_CONFIG, maxBatchSize,
+                    ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false));
+            //the same mapper as the REST API, and a malformed record arrives as a null value instead of failing the poll
+            withRequestValues(consumerFactory).setValueDeserializerSupplier(() -> new ErrorHandlingDeserializer<>(
+                    new JsonDeserializer<>(ActivitiesNotificationRequest.class, objectMapper, false)));
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private static DefaultKafkaConsumerFactory<Object, ActivitiesNotificationRequest> withRequestValues(DefaultKafkaConsumerFactory<?, ?> consumerFactory) {
+        return (DefaultKafkaConsumerFactory<Object, ActivitiesNotificationRequest>) consumerFactory;
+    }
+
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<Object, Object> kafkaListenerContainerFactory(ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
+                                                                                                 ConsumerFactory<Object, Object> consumerFactory,
+                                                                                                 @Value("${notifications.ingestion.concurrency:3}") int concurrency,
+                                                                                                 @Value("${notifications.ingestion.retry.initial-delay-ms:1000}") long initialDelayMillis,
+                                                                                                 @Value("${notifications.ingestion.retry.max-delay-ms:30000}") long maxDelayMillis) {
+        ConcurrentKafkaListenerContainerFactory<Object, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        configurer.configure(factory, consumerFactory);
+        factory.setBatchListener(true);
+        //one consumer per thread, partitions are spread over them, so it is only useful up to the partition count
+        factory.setConcurrency(concurrency);
+        //offsets are committed once the listener returns, which is after the transaction holding the rows has committed
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.BATCH);
+
+        //a failed batch, a full dispatch queue or an unreachable database, is retried from the same offsets and never skipped
+        ExponentialBackOff backOff = new ExponentialBackOff(initialDelayMillis, 2);
+        backOff.setMaxInterval(maxDelayMillis);
+        factory.setCommonErrorHandler(new DefaultErrorHandler(backOff));
+        return factory;
+    }
+}
@@ -0,0 +1,60 @@
+package app.config;
+
+import app.mail.PooledJavaMailSender;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.mail.MailProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+@Configuration
+@EnableConfigurationProperties(MailProperties.class)
+public class MailConfiguration {
+    private static final List<String> SMTP_TIMEOUTS = List.of("mail.smtp.connectiontimeout", "mail.smtp.timeout", "mail.smtp.writetimeout");
+
+    //replaces the auto-configured JavaMailSenderImpl, configured from the same spring.mail.* properties
+    @Bean
+    public PooledJavaMailSender mailSender(MailProperties mailProperties,
+                                           @Value("${notifications.mail.pool.max-connections:4}") int maxConnections,
+                                           @Value("${notifications.mail.pool.max-messages-per-connection:100}") int maxMessagesPerConnection,
+                                           @Value("${notifications.mail.pool.idle-validation-seconds:30}") int idleValidationSeconds,
+                                           @Value("${notifications.mail.pool.borrow-timeout-seconds:30}") int borrowTimeoutSeconds,
+                                           @Value("${notifications.outbox.lease-seconds:60}") long leaseSeconds) {
+        checkSendFitsLease(mailProperties.getProperties(), Duration.ofSeconds(borrowTimeoutSeconds), Duration.ofSeconds(leaseSeconds));
+        PooledJavaMailSender mailSender = new PooledJavaMailSender(maxConnections, maxMessagesPerConnection, Duration.ofSeconds(idleValidationSeconds), Duration.ofSeconds(borrowTimeoutSeconds));
+        mailSender.setHost(mailProperties.getHost());
+        if(mailProperties.getPort() != null){
+            mailSender.setPort(mailProperties.getPort());
+        }
+        mailSender.setUsername(mailProperties.getUsername());
+        mailSender.setPassword(mailProperties.getPassword());
+        mailSender.setProtocol(mailProperties.getProtocol());
+        if(mailProperties.getDefaultEncoding() != null){
+            mailSender.setDefaultEncoding(mailProperties.getDefaultEncoding().name());
+        }
+        Properties javaMailProperties = new Properties();
+        javaMailProperties.putAll(mailProperties.getProperties());
+        mailSender.setJavaMailProperties(javaMailProperties);
+        return mailSender;
+    }
+
+    //a send still running when the outbox lease runs out is claimed again and the email goes out twice, JavaMail waits forever by default
+    public static void checkSendFitsLease(Map<String, String> mailProperties, Duration borrowTimeout, Duration lease) {
+        Duration longestSend = borrowTimeout;
+        for(String timeout : SMTP_TIMEOUTS){
+            String millis = mailProperties.get(timeout);
+            if(millis == null || Long.parseLong(millis) <= 0){
+                throw new IllegalStateException("spring.mail.properties."+timeout+" must be set to a positive number of milliseconds!");
+            }
+            longestSend = longestSend.plusMillis(Long.parseLong(millis));
+        }
+        if(longestSend.compareTo(lease) >= 0){
+            throw new IllegalStateException("Mail timeouts add up to "+longestSend.toMillis()+" ms, which is not below the outbox lease of "+lease.toMillis()+" ms!");
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package app.config;
+
+import app.model.ChannelType;
+import app.repository.NotificationOutboxRepository;
+import app.service.ChannelDispatcher;
+import app.service.ScheduledNotificationTimer;
+import app.web.NotificationStreamRegistry;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class MetricsConfiguration {
+
+    @Bean
+    public MeterBinder notificationQueueMetrics(@Qualifier("notificationDispatchExecutor") ThreadPoolTaskExecutor notificationDispatchExecutor,
+                                                NotificationOutboxRepository notificationOutboxRepository,
+                                                NotificationStreamRegistry notificationStreamRegistry,
+                                                ChannelDispatcher channelDispatcher,
+                                                ScheduledNotificationTimer scheduledNotificationTimer) {
+        return meterRegistry -> {
+            Gauge.builder("notifications.dispatch.queue.size", notificationDispatchExecutor, executor -> executor.getThreadPoolExecutor().getQueue().size())
+                    .description("Emails waiting for a dispatch worker")
+                    .register(meterRegistry);
+            Gauge.builder("notifications.dispatch.active", notificationDispatchExecutor, ThreadPoolTaskExecutor::getActiveCount)
+                    .description("Dispatch workers currently sending")
+                    .register(meterRegistry);
+            //counted on every scrape, the outbox only holds undelivered entries so it stays small
+            Gauge.builder("notifications.outbox.size", notificationOutboxRepository, NotificationOutboxRepository::count)
+                    .description("Outbox entries not yet delivered, across all instances")
+                    .register(meterRegistry);
+            for(ChannelType channel : channelDispatcher.channels()){
+                Gauge.builder("notifications.channel.queue.remaining", channelDispatcher, dispatcher -> dispatcher.remainingCapacity(channel))
+                        .description("Room left in the dispatch queue of a channel, zero means the relay stops claiming for it")
+                        .tag("channel", channel.name())
+                        .register(meterRegistry);
+            }
+            Gauge.builder("notifications.scheduled.loaded", scheduledNotificationTimer, ScheduledNotificationTimer::loadedCount)
+                    .description("Scheduled notifications due within the loaded window, held in the timer wheel")
+                    .register(meterRegistry);
+            Gauge.builder("notifications.stream.connections", notificationStreamRegistry, NotificationStreamRegistry::connectionCount)
+                    .description("Open server-sent event streams on this instance")
+                    .register(meterRegistry);
+        };
+    }
+}
@@ -0,0 +1,111 @@
+package app.config;
+
+import app.datasource.ReplicaRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replaces the auto-configured data source when replicas are configured. Writes and read-write transactions use the primary,
+ * read-only transactions a replica. The connection is only taken on the first statement, by then the transaction has
+ * marked it read-only, which is what picks the replica side.
+ */
+@Configuration
+@ConditionalOnProperty(name = "notifications.replicas.enabled", havingValue = "true")
+public class ReplicaConfiguration {
+
+    //configured from the same spring.datasource.* properties the auto-configured pool used
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties dataSourceProperties) {
+        return dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    public ReplicaRoutingDataSource replicaRoutingDataSource(@Qualifier("primaryDataSource") DataSource primaryDataSource,
+                                                             ReplicaPools replicaPools,
+                                                             @Qualifier("replicaHeartbeatExecutor") ThreadPoolTaskExecutor replicaHeartbeatExecutor,
+                                                             @Value("${notifications.replicas.max-lag-ms:5000}") long maxLagMillis,
+                                                             @Value("${notifications.replicas.query-timeout-seconds:1}") int queryTimeoutSeconds) {
+        return new ReplicaRoutingDataSource(primaryDataSource, replicaPools.getPools(), maxLagMillis, queryTimeoutSeconds, replicaHeartbeatExecutor, System::currentTimeMillis);
+    }
+
+    //one thread for the heartbeat write and one per replica, each of them has at most one task running at a time
+    @Bean
+    public ThreadPoolTaskExecutor replicaHeartbeatExecutor(@Value("${notifications.replicas.urls}") List<String> urls) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(urls.size() + 1);
+        executor.setMaxPoolSize(urls.size() + 1);
+        executor.setThreadNamePrefix("replica-heartbeat-");
+        return executor;
+    }
+
+    @Bean
+    public ReplicaPools replicaPools(DataSourceProperties dataSourceProperties,
+                                     @Value("${notifications.replicas.urls}") List<String> urls,
+                                     @Value("${notifications.replicas.username:${spring.datasource.username:}}") String username,
+                                     @Value("${notifications.replicas.password:${spring.datasource.password:}}") String password,
+                                     @Value("${notifications.replicas.pool-size:10}") int poolSize,
+                                     @Value("${notifications.replicas.connection-timeout-ms:1000}") long connectionTimeoutMillis,
+                                     @Value("${notifications.replicas.validation-timeout-ms:500}") long validationTimeoutMillis) {
+        List<DataSource> pools = new ArrayList<>();
+        for(int index = 0; index < urls.size(); index++){
+            HikariDataSource pool = new HikariDataSource();
+            pool.setPoolName("replica-" + index);
+            pool.setJdbcUrl(urls.get(index));
+            pool.setUsername(username);
+            pool.setPassword(password);
+            pool.setDriverClassName(dataSourceProperties.determineDriverClassName());
+            pool.setMaximumPoolSize(poolSize);
+            //a replica that is down fails fast and reads go to the others, rather than waiting out the 30s default
+            pool.setConnectionTimeout(connectionTimeoutMillis);
+            pool.setValidationTimeout(validationTimeoutMillis);
+            pool.setReadOnly(true);
+            pools.add(pool);
+        }
+        return new ReplicaPools(pools);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primaryDataSource, ReplicaRoutingDataSource replicaRoutingDataSource) {
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(primaryDataSource);
+        dataSource.setReadOnlyDataSource(replicaRoutingDataSource);
+        return dataSource;
+    }
+
+    @Bean
+    public MeterBinder replicaMetrics(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        return meterRegistry -> Gauge.builder("notifications.replicas.healthy", replicaRoutingDataSource, ReplicaRoutingDataSource::healthyReplicaCount)
+                .description("Replicas read-only transactions are currently routed to, zero means every read goes to the primary")
+                .register(meterRegistry);
+    }
+
+    //holds the replica pools outside the DataSource type, so they are closed on shutdown without competing for injection
+    @Getter
+    @AllArgsConstructor
+    public static class ReplicaPools implements AutoCloseable {
+        private final List<DataSource> pools;
+
+        @Override
+        public void close() {
+            pools.forEach(pool -> ((HikariDataSource) pool).close());
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package app.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class ScheduledNotificationConfiguration {
+
+    //sends due notifications off the shared scheduling thread, a burst of reminders at the same minute never delays the relay
+    @Bean
+    public ThreadPoolTaskExecutor scheduledNotificationExecutor(@Value("${notifications.scheduled.pool-size:2}") int poolSize) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setThreadNamePrefix("scheduled-notification-");
+        //what is still queued at shutdown is in the table and loaded again at the next start
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        return executor;
+    }
+}
@@ -0,0 +1,146 @@
+package app.datasource;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+import java.util.stream.IntStream;
+
+/**
+ * Read-only connections from a set of replicas, round robin over the ones that are reachable and no further behind
+ * than the allowed lag, from the primary when none is. Lag is measured with a heartbeat row the primary rewrites every
+ * interval, its age on a replica is how far that replica is behind. A replica starts out unhealthy until its first check.
+ * The write and every replica check run as their own task on the heartbeat executor, so a replica that hangs only holds
+ * up its own checks, never the scheduler thread or the other replicas. A check still running skips the next round.
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractDataSource {
+    private static final String WRITE_HEARTBEAT = "UPDATE replica_heartbeat SET beat_at_millis = ? WHERE id = 1";
+    private static final String READ_HEARTBEAT = "SELECT beat_at_millis FROM replica_heartbeat WHERE id = 1";
+
+    private final DataSource primary;
+    private final List<Replica> replicas;
+    private final long maxLagMillis;
+    private final int queryTimeoutSeconds;
+    private final Executor heartbeatExecutor;
+    private final LongSupplier clock;
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicBoolean writing = new AtomicBoolean();
+
+    public ReplicaRoutingDataSource(DataSource primary, List<DataSource> replicas, long maxLagMillis, int queryTimeoutSeconds, Executor heartbeatExecutor, LongSupplier clock) {
+        this.primary = primary;
+        this.replicas = IntStream.range(0, replicas.size()).mapToObj(index -> new Replica(replicas.get(index), index)).toList();
+        this.maxLagMillis = maxLagMillis;
+        this.queryTimeoutSeconds = queryTimeoutSeconds;
+        this.heartbeatExecutor = heartbeatExecutor;
+        this.clock = clock;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        for(int attempt = 0; attempt < replicas.size(); attempt++){
+            Replica replica = replicas.get(Math.floorMod(next.getAndIncrement(), replicas.size()));
+            if(!replica.healthy){
+                continue;
+            }
+            try {
+                return replica.dataSource.getConnection();
+            } catch (SQLException e) {
+                //taken out until the next heartbeat finds it again
+                replica.healthy = false;
+                log.warn("Replica "+replica.index+" is unreachable, reading from the others: "+e.getMessage());
+            }
+        }
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new UnsupportedOperationException("Replica connections always use the configured credentials!");
+    }
+
+    public int healthyReplicaCount() {
+        return (int) replicas.stream().filter(replica -> replica.healthy).count();
+    }
+
+    @Scheduled(fixedRateString = "${notifications.replicas.heartbeat-interval-ms:1000}")
+    public void heartbeat() {
+        submit(writing, this::writeHeartbeat);
+        replicas.forEach(replica -> submit(replica.checking, () -> check(replica)));
+    }
+
+    private void submit(AtomicBoolean running, Runnable task) {
+        if(!running.compareAndSet(false, true)){
+            return;
+        }
+        try {
+            heartbeatExecutor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    running.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            running.set(false);
+            log.warn("Could not run a replica heartbeat task: "+e.getMessage());
+        }
+    }
+
+    private void writeHeartbeat() {
+        try {
+            jdbcTemplate(primary).update(WRITE_HEARTBEAT, clock.getAsLong());
+        } catch (RuntimeException e) {
+            log.warn("Could not write the replica heartbeat: "+e.getMessage());
+        }
+    }
+
+    private void check(Replica replica) {
+        boolean healthy;
+        try {
+            Long beatAt = jdbcTemplate(replica.dataSource).queryForObject(READ_HEARTBEAT, Long.class);
+            long lagMillis = beatAt == null ? Long.MAX_VALUE : clock.getAsLong() - beatAt;
+            healthy = lagMillis <= maxLagMillis;
+            if(!healthy && replica.healthy){
+                log.warn("Replica "+replica.index+" is "+lagMillis+" ms behind, reading from the others until it catches up.");
+            }
+        } catch (RuntimeException e) {
+            healthy = false;
+            if(replica.healthy){
+                log.warn("Could not check replica "+replica.index+": "+e.getMessage());
+            }
+        }
+        replica.healthy = healthy;
+    }
+
+    private JdbcTemplate jdbcTemplate(DataSource dataSource) {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.setQueryTimeout(queryTimeoutSeconds);
+        return jdbcTemplate;
+    }
+
+    private static class Replica {
+        private final DataSource dataSource;
+
+        private final int index;
+
+        private volatile boolean healthy;
+
+        private final AtomicBoolean checking = new AtomicBoolean();
+
+        private Replica(DataSource dataSource, int index) {
+            this.dataSource = dataSource;
+            this.index = index;
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package app.exception;
+
+public class IdempotencyKeyTargetGoneException extends RuntimeException {
+
+    public IdempotencyKeyTargetGoneException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,8 @@
+package app.exception;
+
+public class NotificationQueueFullException extends RuntimeException {
+
+    public NotificationQueueFullException(String message) {
+        super(message);
+    }
+}
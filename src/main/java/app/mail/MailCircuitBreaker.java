@@ -0,0 +1,79 @@
+package app.mail;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Stops sending to the SMTP server after {@code failureThreshold} consecutive failures. After {@code openDuration}
+ * a single trial send is let through, its outcome decides whether the breaker closes again or stays open. The breaker
+ * counts as open while that trial is running, a trial that never reports back is replaced after another {@code openDuration}.
+ */
+@Component
+public class MailCircuitBreaker {
+    private enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+    private final Duration openDuration;
+    private final Clock clock;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private Instant openedAt;
+    private Instant probeStartedAt;
+
+    @Autowired
+    public MailCircuitBreaker(@Value("${notifications.mail.circuit-breaker.failure-threshold:5}") int failureThreshold,
+                              @Value("${notifications.mail.circuit-breaker.open-seconds:60}") int openSeconds) {
+        this(failureThreshold, Duration.ofSeconds(openSeconds), Clock.systemUTC());
+    }
+
+    MailCircuitBreaker(int failureThreshold, Duration openDuration, Clock clock) {
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+        this.clock = clock;
+    }
+
+    public synchronized boolean tryAcquire() {
+        if(state == State.CLOSED){
+            return true;
+        }
+        Instant now = clock.instant();
+        if(now.isBefore(retryAt())){
+            return false;
+        }
+        state = State.HALF_OPEN;
+        probeStartedAt = now;
+        return true;
+    }
+
+    public synchronized boolean isOpen() {
+        return state != State.CLOSED && clock.instant().isBefore(retryAt());
+    }
+
+    //earliest moment a send could be let through again, while half open that is when the running trial is given up on
+    public synchronized Instant retryAt() {
+        return switch (state) {
+            case CLOSED -> clock.instant();
+            case OPEN -> openedAt.plus(openDuration);
+            case HALF_OPEN -> probeStartedAt.plus(openDuration);
+        };
+    }
+
+    public synchronized void onSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+    }
+
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        if(state == State.HALF_OPEN || consecutiveFailures >= failureThreshold){
+            state = State.OPEN;
+            openedAt = clock.instant();
+        }
+    }
+}
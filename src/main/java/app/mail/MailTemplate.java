@@ -0,0 +1,93 @@
+package app.mail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A template compiled once into alternating literal and variable segments, so rendering is a single pass of appends.
+ * {@code {{name}}} inserts a variable, HTML escaped when the template is an HTML one, {@code {{{name}}}} inserts it as is.
+ * Unknown variables render as empty text.
+ */
+public final class MailTemplate {
+    private final String[] literals;
+    private final String[] variables;
+    private final boolean[] raw;
+    private final boolean html;
+    private final int literalLength;
+
+    private MailTemplate(String[] literals, String[] variables, boolean[] raw, boolean html) {
+        this.literals = literals;
+        this.variables = variables;
+        this.raw = raw;
+        this.html = html;
+        int length = 0;
+        for(String literal : literals){
+            length += literal.length();
+        }
+        this.literalLength = length;
+    }
+
+    public static MailTemplate compile(String source, boolean html) {
+        List<String> literals = new ArrayList<>();
+        List<String> variables = new ArrayList<>();
+        List<Boolean> raw = new ArrayList<>();
+
+        int position = 0;
+        while(true){
+            int open = source.indexOf("{{", position);
+            if(open < 0){
+                break;
+            }
+            boolean tripleBraces = source.startsWith("{{{", open);
+            String closing = tripleBraces ? "}}}" : "}}";
+            int nameStart = open + (tripleBraces ? 3 : 2);
+            int close = source.indexOf(closing, nameStart);
+            if(close < 0){
+                throw new IllegalArgumentException("Unclosed variable at position "+open+" of mail template!");
+            }
+            literals.add(source.substring(position, open));
+            variables.add(source.substring(nameStart, close).trim());
+            raw.add(tripleBraces);
+            position = close + closing.length();
+        }
+        literals.add(source.substring(position));
+
+        boolean[] rawFlags = new boolean[raw.size()];
+        for(int i = 0; i < rawFlags.length; i++){
+            rawFlags[i] = raw.get(i);
+        }
+        return new MailTemplate(literals.toArray(String[]::new), variables.toArray(String[]::new), rawFlags, html);
+    }
+
+    public String render(Map<String, String> values) {
+        StringBuilder out = new StringBuilder(literalLength + 64 * variables.length);
+        for(int i = 0; i < variables.length; i++){
+            out.append(literals[i]);
+            String value = values.get(variables[i]);
+            if(value == null){
+                continue;
+            }
+            if(html && !raw[i]){
+                appendEscaped(out, value);
+            } else {
+                out.append(value);
+            }
+        }
+        return out.append(literals[variables.length]).toString();
+    }
+
+    static void appendEscaped(StringBuilder out, String value) {
+        for(int i = 0; i < value.length(); i++){
+            char c = value.charAt(i);
+            switch(c){
+                case '<' -> out.append("&lt;");
+                case '>' -> out.append("&gt;");
+                case '&' -> out.append("&amp;");
+                case '"' -> out.append("&quot;");
+                case '\'' -> out.append("&#39;");
+                default -> out.append(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package app.mail;
+
+import app.model.ActivitiesNotification;
+import app.model.ActivityType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.format.DateTimeFormatter;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//every template is compiled when the application starts, a missing or broken template fails the startup instead of a send
+@Component
+public class NotificationMailRenderer {
+    private static final DateTimeFormatter CREATED_ON_FORMAT = DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm");
+
+    private final Map<ActivityType, MailTemplate> subjectTemplates = new EnumMap<>(ActivityType.class);
+    private final Map<ActivityType, MailTemplate> textTemplates = new EnumMap<>(ActivityType.class);
+    private final Map<ActivityType, MailTemplate> htmlTemplates = new EnumMap<>(ActivityType.class);
+    private final MailTemplate digestSubjectTemplate;
+    private final MailTemplate digestTextTemplate;
+    private final MailTemplate digestHtmlTemplate;
+    private final MailTemplate digestItemTextTemplate;
+    private final MailTemplate digestItemHtmlTemplate;
+
+    @Autowired
+    public NotificationMailRenderer(@Value("${notifications.mail.templates-location:mail-templates}") String location) {
+        for(ActivityType type : ActivityType.values()){
+            String name = type.name().toLowerCase();
+            subjectTemplates.put(type, load(location, name + ".subject.txt", false));
+            textTemplates.put(type, load(location, name + ".txt", false));
+            htmlTemplates.put(type, load(location, name + ".html", true));
+        }
+        this.digestSubjectTemplate = load(location, "digest.subject.txt", false);
+        this.digestTextTemplate = load(location, "digest.txt", false);
+        this.digestHtmlTemplate = load(location, "digest.html", true);
+        this.digestItemTextTemplate = load(location, "digest-item.txt", false);
+        this.digestItemHtmlTemplate = load(location, "digest-item.html", true);
+    }
+
+    public RenderedMail render(ActivitiesNotification notification) {
+        Map<String, String> values = values(notification);
+        return RenderedMail.builder()
+                .subject(subjectTemplates.get(notification.getType()).render(values).strip())
+                .text(textTemplates.get(notification.getType()).render(values))
+                .html(htmlTemplates.get(notification.getType()).render(values))
+                .build();
+    }
+
+    public RenderedMail renderDigest(List<ActivitiesNotification> notifications) {
+        StringBuilder textItems = new StringBuilder();
+        StringBuilder htmlItems = new StringBuilder();
+        for(ActivitiesNotification notification : notifications){
+            Map<String, String> values = values(notification);
+            textItems.append(digestItemTextTemplate.render(values));
+            htmlItems.append(digestItemHtmlTemplate.render(values));
+        }
+
+        Map<String, String> textValues = Map.of("count", String.valueOf(notifications.size()), "items", textItems.toString());
+        Map<String, String> htmlValues = Map.of("count", String.valueOf(notifications.size()), "items", htmlItems.toString());
+        return RenderedMail.builder()
+                .subject(digestSubjectTemplate.render(textValues).strip())
+                .text(digestTextTemplate.render(textValues))
+                .html(digestHtmlTemplate.render(htmlValues))
+                .build();
+    }
+
+    private Map<String, String> values(ActivitiesNotification notification) {
+        Map<String, String> values = new HashMap<>(8);
+        values.put("subject", notification.getSubject());
+        values.put("message", notification.getMessage());
+        values.put("type", String.valueOf(notification.getType()));
+        if(notification.getCreatedOn() != null){
+            values.put("createdOn", CREATED_ON_FORMAT.format(notification.getCreatedOn()));
+        }
+        return values;
+    }
+
+    private static MailTemplate load(String location, String name, boolean html) {
+        ClassPathResource resource = new ClassPathResource(location + "/" + name);
+        try (InputStream inputStream = resource.getInputStream()) {
+            return MailTemplate.compile(new String(inputStream.readAllBytes(), StandardCharsets.UTF_8), html);
+        } catch (IOException e) {
+            throw new IllegalStateException("Mail template "+resource.getPath()+" could not be loaded!", e);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package app.mail;
+
+import jakarta.mail.Address;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.MimeMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.lang.Nullable;
+import org.springframework.mail.MailAuthenticationException;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link JavaMailSenderImpl} that keeps authenticated SMTP connections open between sends instead of doing
+ * connect, STARTTLS and AUTH for every message. At most {@code maxConnections} transports exist at a time,
+ * each one is replaced after {@code maxMessagesPerConnection} messages and checked with a NOOP before reuse
+ * once it has been idle for longer than {@code idleValidationTimeout}.
+ */
+@Slf4j
+public class PooledJavaMailSender extends JavaMailSenderImpl implements DisposableBean {
+    private final int maxMessagesPerConnection;
+    private final Duration idleValidationTimeout;
+    private final Duration borrowTimeout;
+    private final Semaphore permits;
+    private final ConcurrentLinkedDeque<PooledTransport> idleTransports = new ConcurrentLinkedDeque<>();
+
+    public PooledJavaMailSender(int maxConnections, int maxMessagesPerConnection, Duration idleValidationTimeout, Duration borrowTimeout) {
+        this.maxMessagesPerConnection = maxMessagesPerConnection;
+        this.idleValidationTimeout = idleValidationTimeout;
+        this.borrowTimeout = borrowTimeout;
+        this.permits = new Semaphore(maxConnections, true);
+    }
+
+    @Override
+    protected void doSend(MimeMessage[] mimeMessages, @Nullable Object[] originalMessages) throws MailException {
+        Map<Object, Exception> failedMessages = new LinkedHashMap<>();
+        acquirePermit();
+
+        PooledTransport pooledTransport = null;
+        try {
+            for(int i = 0; i < mimeMessages.length; i++){
+                Object original = originalMessages != null ? originalMessages[i] : mimeMessages[i];
+                try {
+                    if(pooledTransport == null){
+                        pooledTransport = borrow();
+                    } else if(pooledTransport.sent >= maxMessagesPerConnection){
+                        close(pooledTransport);
+                        pooledTransport = open();
+                    }
+                    send(pooledTransport, mimeMessages[i]);
+                } catch (MailAuthenticationException e) {
+                    throw e;
+                } catch (Exception e) {
+                    failedMessages.put(original, e);
+                    //the connection may be half broken after a failed send, never hand it out again
+                    if(pooledTransport != null){
+                        close(pooledTransport);
+                        pooledTransport = null;
+                    }
+                }
+            }
+        } finally {
+            //most calls send a single message, so the cap is mostly reached here rather than inside the loop
+            if(pooledTransport != null && pooledTransport.sent >= maxMessagesPerConnection){
+                close(pooledTransport);
+            } else if(pooledTransport != null){
+                pooledTransport.lastUsed = System.nanoTime();
+                idleTransports.offerFirst(pooledTransport);
+            }
+            permits.release();
+        }
+
+        if(!failedMessages.isEmpty()){
+            throw new MailSendException(failedMessages);
+        }
+    }
+
+    private void send(PooledTransport pooledTransport, MimeMessage mimeMessage) throws MessagingException {
+        if(mimeMessage.getSentDate() == null){
+            mimeMessage.setSentDate(new Date());
+        }
+        String messageId = mimeMessage.getMessageID();
+        mimeMessage.saveChanges();
+        if(messageId != null){
+            mimeMessage.setHeader("Message-ID", messageId);
+        }
+        Address[] addresses = mimeMessage.getAllRecipients();
+        pooledTransport.transport.sendMessage(mimeMessage, addresses != null ? addresses : new Address[0]);
+        pooledTransport.sent++;
+    }
+
+    private void acquirePermit() {
+        try {
+            if(!permits.tryAcquire(borrowTimeout.toMillis(), TimeUnit.MILLISECONDS)){
+                throw new MailSendException("No SMTP connection became available within "+borrowTimeout.toSeconds()+" seconds!");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MailSendException("Interrupted while waiting for an SMTP connection!", e);
+        }
+    }
+
+    private PooledTransport borrow() throws MessagingException {
+        PooledTransport pooledTransport;
+        while((pooledTransport = idleTransports.pollFirst()) != null){
+            if(pooledTransport.sent < maxMessagesPerConnection && isUsable(pooledTransport)){
+                return pooledTransport;
+            }
+            close(pooledTransport);
+        }
+        return open();
+    }
+
+    private boolean isUsable(PooledTransport pooledTransport) {
+        if(System.nanoTime() - pooledTransport.lastUsed < idleValidationTimeout.toNanos()){
+            return true;
+        }
+        //isConnected() sends a NOOP, servers drop idle sessions on their own schedule
+        return pooledTransport.transport.isConnected();
+    }
+
+    private PooledTransport open() throws MessagingException {
+        try {
+            return new PooledTransport(connectTransport());
+        } catch (jakarta.mail.AuthenticationFailedException e) {
+            throw new MailAuthenticationException(e);
+        }
+    }
+
+    private void close(PooledTransport pooledTransport) {
+        try {
+            pooledTransport.transport.close();
+        } catch (MessagingException e) {
+            log.debug("Failed to close SMTP connection due to "+e.getMessage());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        PooledTransport pooledTransport;
+        while((pooledTransport = idleTransports.pollFirst()) != null){
+            close(pooledTransport);
+        }
+    }
+
+    private static class PooledTransport {
+        private final Transport transport;
+        private int sent;
+        private long lastUsed = System.nanoTime();
+
+        private PooledTransport(Transport transport) {
+            this.transport = transport;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package app.mail;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class RenderedMail {
+    private String subject;
+
+    private String text;
+
+    private String html;
+}
@@ -0,0 +1,66 @@
+package app.messaging;
+
+import app.service.BatchSendResult;
+import app.service.NotificationService;
+import app.web.dto.ActivitiesNotificationRequest;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+//at least once, a crash between the database commit and the offset commit redelivers the batch
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "notifications.ingestion.enabled", havingValue = "true")
+public class NotificationCommandConsumer {
+    private final NotificationService notificationService;
+    private final Validator validator;
+
+    @Autowired
+    public NotificationCommandConsumer(NotificationService notificationService, Validator validator) {
+        this.notificationService = notificationService;
+        this.validator = validator;
+    }
+
+    @KafkaListener(id = "notificationCommands", idIsGroup = false, topics = "${notifications.ingestion.topic:notification-commands}")
+    public void consume(List<ConsumerRecord<String, ActivitiesNotificationRequest>> records) {
+        List<ConsumerRecord<String, ActivitiesNotificationRequest>> accepted = new ArrayList<>(records.size());
+        for(ConsumerRecord<String, ActivitiesNotificationRequest> record : records){
+            //redelivering a command that can never be read or is invalid would only block its partition, so it is dropped
+            if(record.value() == null){
+                log.warn("Dropped unreadable notification command at "+position(record)+"!");
+                continue;
+            }
+            Set<ConstraintViolation<ActivitiesNotificationRequest>> violations = validator.validate(record.value());
+            if(!violations.isEmpty()){
+                log.warn("Dropped invalid notification command at "+position(record)+": "+violations.iterator().next().getPropertyPath()+" "+violations.iterator().next().getMessage()+"!");
+                continue;
+            }
+            accepted.add(record);
+        }
+        if(accepted.isEmpty()){
+            return;
+        }
+
+        //one transaction for the whole poll, any exception leaves the offsets uncommitted and the batch is retried
+        List<BatchSendResult> results = notificationService.sendNotifications(accepted.stream().map(ConsumerRecord::value).toList());
+        for(BatchSendResult result : results){
+            if(!result.isAccepted()){
+                log.warn("Rejected notification command at "+position(accepted.get(result.getIndex()))+": "+result.getError());
+            }
+        }
+        log.debug("Ingested "+results.stream().filter(BatchSendResult::isAccepted).count()+" of "+records.size()+" notification commands.");
+    }
+
+    private String position(ConsumerRecord<?, ?> record) {
+        return record.topic()+"-"+record.partition()+"@"+record.offset();
+    }
+}
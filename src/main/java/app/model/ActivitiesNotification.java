@@ -5,6 +5,7 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.UuidGenerator;
 
 import java.time.LocalDateTime;
 import java.util.UUID;
@@ -17,13 +18,14 @@ import java.util.UUID;
 public class ActivitiesNotification {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.UUID)
+    @UuidGenerator(algorithm = TimeOrderedUuidGenerator.class)
     private UUID id;
 
-    @Column(unique = true, nullable = false)
+    @Column(nullable = false)
     private UUID userId;
 
-    @Column(nullable = false)
+    //narrow so the covering history index fits the InnoDB key length, see V2
+    @Column(nullable = false, length = 32)
     @Enumerated(EnumType.STRING)
     private ActivityType type;
 
@@ -33,7 +35,7 @@ public class ActivitiesNotification {
     @Column(nullable = false)
     private String message;
 
-    @Column(nullable = false)
+    @Column(nullable = false, length = 32)
     @Enumerated(EnumType.STRING)
     private NotificationStatus status;
 
@@ -41,4 +43,17 @@ public class ActivitiesNotification {
     private LocalDateTime createdOn;
 
     private boolean isHidden;
+
+    private boolean isRead;
+
+    private int attemptCount;
+
+    //only set while the notification is FAILED and waiting for the retry scheduler, or SENDING, then it is when the claim runs out
+    private LocalDateTime nextAttemptAt;
+
+    //set when the notification is held for a digest, the digest is flushed once its earliest due time passes
+    private LocalDateTime digestDueAt;
+
+    //the digest the notification was merged into, null while it is still held
+    private UUID digestId;
 }
@@ -0,0 +1,6 @@
+package app.model;
+
+//IN_APP is the notification feed and its event stream, every notification lands there when it is accepted
+public enum ChannelType {
+    EMAIL, WEBHOOK, SMS, IN_APP
+}
@@ -0,0 +1,12 @@
+package app.model;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+//all the timer keeps in memory of a scheduled notification, the rest is read when it is sent
+public interface DueScheduledNotification {
+
+    UUID getId();
+
+    LocalDateTime getSendAt();
+}
@@ -0,0 +1,11 @@
+package app.model;
+
+import java.util.UUID;
+
+//one user's held notifications of one type, flushed together as a single email
+public interface HeldDigest {
+
+    UUID getUserId();
+
+    ActivityType getType();
+}
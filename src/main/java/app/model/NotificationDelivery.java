@@ -0,0 +1,39 @@
+package app.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.UuidGenerator;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+public class NotificationDelivery {
+
+    @Id
+    @UuidGenerator(algorithm = TimeOrderedUuidGenerator.class)
+    private UUID id;
+
+    @Column(nullable = false)
+    private UUID notificationId;
+
+    @Column(nullable = false)
+    @Enumerated(EnumType.STRING)
+    private ChannelType channel;
+
+    @Column(nullable = false)
+    @Enumerated(EnumType.STRING)
+    private NotificationStatus status;
+
+    private int attemptCount;
+
+    @Column(nullable = false)
+    private LocalDateTime updatedOn;
+}
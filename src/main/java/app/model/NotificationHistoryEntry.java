@@ -0,0 +1,26 @@
+package app.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+//read-only history row, selected straight from the covering index instead of loading the entity with its message
+@Data
+@Builder
+@AllArgsConstructor
+public class NotificationHistoryEntry {
+    private UUID id;
+
+    private String subject;
+
+    private ActivityType type;
+
+    private NotificationStatus status;
+
+    private LocalDateTime createdOn;
+
+    private boolean isRead;
+}
@@ -0,0 +1,67 @@
+package app.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.domain.Persistable;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@IdClass(NotificationIdempotencyKey.Key.class)
+public class NotificationIdempotencyKey implements Persistable<NotificationIdempotencyKey.Key> {
+
+    //the primary key is what makes concurrent duplicates on different instances collide, keys of different users never do
+    @Id
+    private UUID userId;
+
+    @Id
+    private String idempotencyKey;
+
+    @Column(nullable = false)
+    private UUID notificationId;
+
+    //SHA-256 of the request, null for keys stored before requests were compared
+    @Column(length = 64)
+    private String requestHash;
+
+    @Column(nullable = false)
+    private LocalDateTime createdOn;
+
+    //always inserted, a merge would silently overwrite a key another request already owns
+    @Transient
+    @Builder.Default
+    private boolean isNew = true;
+
+    @Override
+    public Key getId() {
+        return new Key(userId, idempotencyKey);
+    }
+
+    @Override
+    public boolean isNew() {
+        return isNew;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        this.isNew = false;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private UUID userId;
+        private String idempotencyKey;
+    }
+}
@@ -0,0 +1,44 @@
+package app.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.UuidGenerator;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+public class NotificationOutbox {
+
+    @Id
+    @UuidGenerator(algorithm = TimeOrderedUuidGenerator.class)
+    private UUID id;
+
+    @Column(nullable = false)
+    private UUID notificationId;
+
+    @Column(nullable = false)
+    private String contactInfo;
+
+    @Column(nullable = false)
+    private LocalDateTime createdOn;
+
+    //set while a relay instance owns the entry, an expired lease makes it claimable again
+    private LocalDateTime lockedUntil;
+
+    //a digest entry points at all notifications with notificationId as their digestId
+    private boolean digest;
+
+    //contactInfo is the address on this channel, digests are always emails
+    @Column(nullable = false)
+    @Enumerated(EnumType.STRING)
+    @Builder.Default
+    private ChannelType channel = ChannelType.EMAIL;
+}
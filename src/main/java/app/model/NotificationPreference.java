@@ -5,6 +5,7 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.UuidGenerator;
 
 import java.time.LocalDateTime;
 import java.util.UUID;
@@ -17,7 +18,7 @@ import java.util.UUID;
 public class NotificationPreference {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.UUID)
+    @UuidGenerator(algorithm = TimeOrderedUuidGenerator.class)
     private UUID id;
 
     @Column(unique = true, nullable = false)
@@ -27,9 +28,19 @@ public class NotificationPreference {
 
     private boolean productEnabled;
 
+    //0 sends every notification of the type right away, otherwise they are merged into one email per window
+    private int reservationDigestSeconds;
+
+    private int productDigestSeconds;
+
     @Column(nullable = false)
     private String contactInfo;
 
+    //channels besides email, each one is off while its address is null
+    private String webhookUrl;
+
+    private String phoneNumber;
+
     @Column(nullable = false)
     private LocalDateTime createdOn;
 
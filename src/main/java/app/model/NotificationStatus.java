@@ -1,5 +1,7 @@
 package app.model;
 
+//SCHEDULED is only ever reported for a request with a future sendAt, the notification row starts out PENDING when it is sent
+//SENDING marks a delivery a worker has claimed and is sending right now
 public enum NotificationStatus {
-    SUCCEEDED, FAILED
+    PENDING, SUCCEEDED, FAILED, DEAD, SCHEDULED, SENDING
 }
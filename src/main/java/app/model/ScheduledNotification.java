@@ -0,0 +1,46 @@
+package app.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.UuidGenerator;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+//a notification waiting for its sendAt, it becomes an ActivitiesNotification with its own id once it is sent
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+public class ScheduledNotification {
+
+    @Id
+    @UuidGenerator(algorithm = TimeOrderedUuidGenerator.class)
+    private UUID id;
+
+    @Column(nullable = false)
+    private UUID userId;
+
+    @Column(nullable = false)
+    @Enumerated(EnumType.STRING)
+    private ActivityType type;
+
+    @Column(nullable = false)
+    private String subject;
+
+    @Column(nullable = false)
+    private String message;
+
+    @Column(nullable = false)
+    private LocalDateTime sendAt;
+
+    @Column(nullable = false)
+    private LocalDateTime createdOn;
+
+    //null when the client sent no Idempotency-Key
+    private String idempotencyKey;
+}
@@ -1,15 +1,131 @@
 package app.repository;
 
 import app.model.ActivitiesNotification;
+import app.model.ActivityType;
+import app.model.HeldDigest;
+import app.model.NotificationHistoryEntry;
+import app.model.NotificationStatus;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 @Repository
 public interface ActivitiesNotificationRepository extends JpaRepository<ActivitiesNotification, UUID> {
     List<ActivitiesNotification> findAllByUserIdAndIsHiddenOrderByCreatedOnDesc(UUID userId, boolean isHidden);
 
     List<ActivitiesNotification> findAllByUserId(UUID userId);
+
+    @Query("SELECT new app.model.NotificationHistoryEntry(n.id, n.subject, n.type, n.status, n.createdOn, n.isRead) FROM ActivitiesNotification n " +
+            "WHERE n.userId = :userId AND n.isHidden = false ORDER BY n.createdOn DESC, n.id DESC")
+    List<NotificationHistoryEntry> findHistoryFirstPage(@Param("userId") UUID userId, Limit limit);
+
+    @Query("SELECT new app.model.NotificationHistoryEntry(n.id, n.subject, n.type, n.status, n.createdOn, n.isRead) FROM ActivitiesNotification n " +
+            "WHERE n.userId = :userId AND n.isHidden = false " +
+            "AND (n.createdOn < :createdOn OR (n.createdOn = :createdOn AND n.id < :id)) ORDER BY n.createdOn DESC, n.id DESC")
+    List<NotificationHistoryEntry> findHistoryPageAfter(@Param("userId") UUID userId, @Param("createdOn") LocalDateTime createdOn, @Param("id") UUID id, Limit limit);
+
+    @Query("SELECT new app.model.NotificationHistoryEntry(n.id, n.subject, n.type, n.status, n.createdOn, n.isRead) FROM ActivitiesNotification n " +
+            "WHERE n.userId = :userId AND n.isHidden = false " +
+            "AND (n.createdOn > :createdOn OR (n.createdOn = :createdOn AND n.id > :id)) ORDER BY n.createdOn, n.id")
+    List<NotificationHistoryEntry> findHistorySince(@Param("userId") UUID userId, @Param("createdOn") LocalDateTime createdOn, @Param("id") UUID id, Limit limit);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("SELECT new app.model.NotificationHistoryEntry(n.id, n.subject, n.type, n.status, n.createdOn, n.isRead) FROM ActivitiesNotification n " +
+            "WHERE n.userId = :userId AND n.isHidden = false ORDER BY n.createdOn DESC, n.id DESC")
+    Stream<NotificationHistoryEntry> streamHistory(@Param("userId") UUID userId);
+
+    @Query("SELECT n.id FROM ActivitiesNotification n WHERE n.id IN :ids")
+    List<UUID> findExistingIds(@Param("ids") Collection<UUID> ids);
+
+    @Query("SELECT COUNT(n) FROM ActivitiesNotification n WHERE n.userId = :userId AND n.isHidden = false AND n.isRead = false")
+    long countUnread(@Param("userId") UUID userId);
+
+    @Modifying
+    @Query("UPDATE ActivitiesNotification n SET n.isRead = true WHERE n.userId = :userId AND n.isHidden = false AND n.isRead = false")
+    int markAllRead(@Param("userId") UUID userId);
+
+    @Modifying
+    @Query("UPDATE ActivitiesNotification n SET n.isRead = true WHERE n.userId = :userId AND n.id IN :ids AND n.isHidden = false AND n.isRead = false")
+    int markRead(@Param("userId") UUID userId, @Param("ids") Collection<UUID> ids);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE ActivitiesNotification n SET n.status = :status, n.attemptCount = :attemptCount, n.nextAttemptAt = :nextAttemptAt WHERE n.id = :id")
+    int updateDeliveryState(@Param("id") UUID id, @Param("status") NotificationStatus status, @Param("attemptCount") int attemptCount, @Param("nextAttemptAt") LocalDateTime nextAttemptAt);
+
+    //a lease can run out while its entry is still queued, of two workers holding a copy only one gets the notification
+    //while SENDING next_attempt_at is when the claim is given up, a worker that died mid-send leaves it behind
+    @Transactional
+    @Modifying
+    @Query("UPDATE ActivitiesNotification n SET n.status = app.model.NotificationStatus.SENDING, n.nextAttemptAt = :claimedUntil WHERE n.id = :id " +
+            "AND (n.status = app.model.NotificationStatus.PENDING OR (n.status = app.model.NotificationStatus.SENDING AND n.nextAttemptAt < :now))")
+    int claimForSending(@Param("id") UUID id, @Param("now") LocalDateTime now, @Param("claimedUntil") LocalDateTime claimedUntil);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE ActivitiesNotification n SET n.status = app.model.NotificationStatus.SENDING, n.nextAttemptAt = :claimedUntil WHERE n.digestId = :digestId " +
+            "AND (n.status = app.model.NotificationStatus.PENDING OR (n.status = app.model.NotificationStatus.SENDING AND n.nextAttemptAt < :now))")
+    int claimDigestForSending(@Param("digestId") UUID digestId, @Param("now") LocalDateTime now, @Param("claimedUntil") LocalDateTime claimedUntil);
+
+    @Query(value = "SELECT * FROM activities_notification WHERE status = 'FAILED' AND next_attempt_at <= :now ORDER BY next_attempt_at LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<ActivitiesNotification> findDueForRetry(@Param("now") LocalDateTime now, @Param("limit") int limit);
+
+    //requeues every failed row of the digest at once, rows past the retry page must not come back as a second digest
+    @Modifying
+    @Query("UPDATE ActivitiesNotification n SET n.status = app.model.NotificationStatus.PENDING, n.nextAttemptAt = null " +
+            "WHERE n.digestId = :digestId AND n.status = app.model.NotificationStatus.FAILED")
+    int requeueDigest(@Param("digestId") UUID digestId);
+
+    @Query("SELECT n.userId AS userId, n.type AS type FROM ActivitiesNotification n WHERE n.digestId IS NULL AND n.digestDueAt IS NOT NULL " +
+            "GROUP BY n.userId, n.type HAVING MIN(n.digestDueAt) <= :now OR COUNT(n) >= :maxSize")
+    List<HeldDigest> findDigestsToFlush(@Param("now") LocalDateTime now, @Param("maxSize") long maxSize, Limit limit);
+
+    //claims every held notification of the group, a concurrent flush of the same group updates nothing
+    @Modifying
+    @Query("UPDATE ActivitiesNotification n SET n.digestId = :digestId WHERE n.userId = :userId AND n.type = :type AND n.digestId IS NULL AND n.digestDueAt IS NOT NULL")
+    int claimDigest(@Param("digestId") UUID digestId, @Param("userId") UUID userId, @Param("type") ActivityType type);
+
+    List<ActivitiesNotification> findAllByDigestIdAndStatusOrderByCreatedOn(UUID digestId, NotificationStatus status);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE ActivitiesNotification n SET n.status = :status, n.attemptCount = :attemptCount, n.nextAttemptAt = :nextAttemptAt " +
+            "WHERE n.digestId = :digestId AND n.status IN (app.model.NotificationStatus.PENDING, app.model.NotificationStatus.SENDING)")
+    int updateDigestDeliveryState(@Param("digestId") UUID digestId, @Param("status") NotificationStatus status, @Param("attemptCount") int attemptCount, @Param("nextAttemptAt") LocalDateTime nextAttemptAt);
+
+    //one chunk of hiding or showing everything, the equality on is_hidden lets the (user_id, is_hidden, created_on) index find the rows
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE activities_notification SET is_hidden = :isHidden WHERE user_id = :userId AND is_hidden = :currentlyHidden " +
+            "ORDER BY created_on, id LIMIT :chunkSize", nativeQuery = true)
+    int updateIsHiddenChunk(@Param("userId") UUID userId, @Param("currentlyHidden") boolean currentlyHidden, @Param("isHidden") boolean isHidden, @Param("chunkSize") int chunkSize);
+
+    @Query("SELECT n.id FROM ActivitiesNotification n WHERE n.type = :type AND n.status = :status AND n.createdOn < :expiredBefore ORDER BY n.createdOn, n.id")
+    List<UUID> findExpiredIds(@Param("type") ActivityType type, @Param("status") NotificationStatus status, @Param("expiredBefore") LocalDateTime expiredBefore, Limit limit);
+
+    @Query("SELECT n.id FROM ActivitiesNotification n WHERE n.isHidden = true AND n.status IN :statuses AND n.createdOn < :expiredBefore ORDER BY n.createdOn, n.id")
+    List<UUID> findExpiredHiddenIds(@Param("statuses") Collection<NotificationStatus> statuses, @Param("expiredBefore") LocalDateTime expiredBefore, Limit limit);
+
+    @Modifying
+    @Query(value = "INSERT INTO activities_notification_archive (id, user_id, type, subject, message, status, created_on, is_hidden, is_read, attempt_count, archived_on) " +
+            "SELECT id, user_id, type, subject, message, status, created_on, is_hidden, is_read, attempt_count, CURRENT_TIMESTAMP(6) FROM activities_notification WHERE id IN (:ids)", nativeQuery = true)
+    int copyToArchive(@Param("ids") List<UUID> ids);
+
+    @Modifying
+    @Query("DELETE FROM ActivitiesNotification n WHERE n.id IN :ids")
+    int deleteAllByIdIn(@Param("ids") List<UUID> ids);
 }
@@ -0,0 +1,40 @@
+package app.repository;
+
+import app.model.ChannelType;
+import app.model.NotificationDelivery;
+import app.model.NotificationStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface NotificationDeliveryRepository extends JpaRepository<NotificationDelivery, UUID> {
+
+    List<NotificationDelivery> findAllByNotificationIdOrderByChannel(UUID notificationId);
+
+    Optional<NotificationDelivery> findByNotificationIdAndChannel(UUID notificationId, ChannelType channel);
+
+    //the attempt count doubles as a version, of two workers holding the same outbox entry only one gets the row
+    //a delivery left SENDING since before staleBefore belongs to a worker that died mid-send
+    @Modifying
+    @Query("UPDATE NotificationDelivery d SET d.status = app.model.NotificationStatus.SENDING, d.updatedOn = :now " +
+            "WHERE d.notificationId = :notificationId AND d.channel = :channel AND d.attemptCount = :attemptCount " +
+            "AND (d.status IN (app.model.NotificationStatus.PENDING, app.model.NotificationStatus.FAILED) " +
+            "OR (d.status = app.model.NotificationStatus.SENDING AND d.updatedOn < :staleBefore))")
+    int claim(@Param("notificationId") UUID notificationId, @Param("channel") ChannelType channel, @Param("attemptCount") int attemptCount, @Param("now") LocalDateTime now, @Param("staleBefore") LocalDateTime staleBefore);
+
+    @Modifying
+    @Query("UPDATE NotificationDelivery d SET d.status = :status, d.attemptCount = :attemptCount, d.updatedOn = :updatedOn WHERE d.notificationId = :notificationId AND d.channel = :channel")
+    int updateState(@Param("notificationId") UUID notificationId, @Param("channel") ChannelType channel, @Param("status") NotificationStatus status, @Param("attemptCount") int attemptCount, @Param("updatedOn") LocalDateTime updatedOn);
+
+    @Modifying
+    @Query("DELETE FROM NotificationDelivery d WHERE d.notificationId IN :notificationIds")
+    int deleteAllByNotificationIdIn(@Param("notificationIds") List<UUID> notificationIds);
+}
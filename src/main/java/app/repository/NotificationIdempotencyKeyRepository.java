@@ -0,0 +1,25 @@
+package app.repository;
+
+import app.model.NotificationIdempotencyKey;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Repository
+public interface NotificationIdempotencyKeyRepository extends JpaRepository<NotificationIdempotencyKey, NotificationIdempotencyKey.Key> {
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM NotificationIdempotencyKey k WHERE k.createdOn < :expiredBefore")
+    int deleteExpired(@Param("expiredBefore") LocalDateTime expiredBefore);
+
+    @Modifying
+    @Query("UPDATE NotificationIdempotencyKey k SET k.notificationId = :notificationId WHERE k.userId = :userId AND k.idempotencyKey = :idempotencyKey")
+    int updateNotificationId(@Param("userId") UUID userId, @Param("idempotencyKey") String idempotencyKey, @Param("notificationId") UUID notificationId);
+}
@@ -0,0 +1,24 @@
+package app.repository;
+
+import app.model.NotificationOutbox;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface NotificationOutboxRepository extends JpaRepository<NotificationOutbox, UUID> {
+
+    //each channel is claimed on its own, a backed up channel never holds back the entries of another
+    @Query(value = "SELECT * FROM notification_outbox WHERE channel = :channel AND (locked_until IS NULL OR locked_until < :now) ORDER BY created_on LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<NotificationOutbox> findClaimable(@Param("channel") String channel, @Param("now") LocalDateTime now, @Param("limit") int limit);
+
+    @Modifying
+    @Query("UPDATE NotificationOutbox o SET o.lockedUntil = :lockedUntil WHERE o.id IN :ids")
+    int lock(@Param("ids") List<UUID> ids, @Param("lockedUntil") LocalDateTime lockedUntil);
+}
@@ -1,14 +1,26 @@
 package app.repository;
 
 import app.model.NotificationPreference;
+import org.springframework.cache.annotation.CachePut;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
 @Repository
 public interface NotificationPreferenceRepository extends JpaRepository<NotificationPreference, UUID> {
+    String CACHE_NAME = "notificationPreferences";
 
+    //an empty result is cached as well, users without preferences don't hit the database on every send
+    @Cacheable(cacheNames = CACHE_NAME, key = "#p0")
     Optional<NotificationPreference> findByUserId(UUID userId);
+
+    List<NotificationPreference> findAllByUserIdIn(Collection<UUID> userIds);
+
+    @CachePut(cacheNames = CACHE_NAME, key = "#result.userId")
+    <S extends NotificationPreference> S save(S notificationPreference);
 }
@@ -0,0 +1,31 @@
+package app.repository;
+
+import app.model.DueScheduledNotification;
+import app.model.ScheduledNotification;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface ScheduledNotificationRepository extends JpaRepository<ScheduledNotification, UUID> {
+
+    //overdue rows included, what was not sent before a restart is picked up by the first load after it
+    @Query("SELECT s.id AS id, s.sendAt AS sendAt FROM ScheduledNotification s WHERE s.sendAt < :horizon ORDER BY s.sendAt, s.id")
+    List<DueScheduledNotification> findDueBefore(@Param("horizon") LocalDateTime horizon, Limit limit);
+
+    //the sending transaction claims the row by deleting it, an instance that finds it gone does not send it again
+    @Modifying
+    @Query("DELETE FROM ScheduledNotification s WHERE s.id = :id")
+    int claim(@Param("id") UUID id);
+
+    @Modifying
+    @Query("DELETE FROM ScheduledNotification s WHERE s.id = :id AND s.userId = :userId")
+    int deleteByIdAndUserId(@Param("id") UUID id, @Param("userId") UUID userId);
+}
@@ -0,0 +1,20 @@
+package app.service;
+
+import app.model.ActivitiesNotification;
+import lombok.Builder;
+import lombok.Data;
+
+//outcome of one request of a batch, either the accepted notification or the reason it was rejected
+@Data
+@Builder
+public class BatchSendResult {
+    private int index;
+
+    private ActivitiesNotification notification;
+
+    private String error;
+
+    public boolean isAccepted() {
+        return notification != null;
+    }
+}
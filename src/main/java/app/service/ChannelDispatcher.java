@@ -0,0 +1,151 @@
+package app.service;
+
+import app.channel.DeliveryChannel;
+import app.model.ActivitiesNotification;
+import app.model.ChannelType;
+import app.model.NotificationDelivery;
+import app.model.NotificationOutbox;
+import app.model.NotificationStatus;
+import app.repository.ActivitiesNotificationRepository;
+import app.repository.NotificationDeliveryRepository;
+import app.repository.NotificationOutboxRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Delivers outbox entries of every channel besides email, each on the executor of its channel. The state of a delivery
+ * lives in notification_delivery, a failed attempt keeps its outbox entry leased until the backoff has passed, so the
+ * relay picks it up again without a separate retry scan. An entry can be handed out again while it is still queued, when
+ * the queue wait outlasts its lease, so a worker claims the delivery before sending and drops a copy it did not get.
+ */
+@Slf4j
+@Component
+public class ChannelDispatcher {
+    private final Map<ChannelType, DeliveryChannel> channels = new EnumMap<>(ChannelType.class);
+    private final Map<ChannelType, ThreadPoolTaskExecutor> executors = new EnumMap<>(ChannelType.class);
+    private final ActivitiesNotificationRepository activitiesNotificationRepository;
+    private final NotificationOutboxRepository notificationOutboxRepository;
+    private final NotificationDeliveryRepository notificationDeliveryRepository;
+    private final RetryPolicy retryPolicy;
+    private final NotificationMetrics notificationMetrics;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration sendingTimeout;
+
+    //executors are found by name, a WEBHOOK channel runs on webhookDispatchExecutor
+    @Autowired
+    public ChannelDispatcher(List<DeliveryChannel> deliveryChannels,
+                             Map<String, ThreadPoolTaskExecutor> executorsByName,
+                             ActivitiesNotificationRepository activitiesNotificationRepository,
+                             NotificationOutboxRepository notificationOutboxRepository,
+                             NotificationDeliveryRepository notificationDeliveryRepository,
+                             RetryPolicy retryPolicy,
+                             NotificationMetrics notificationMetrics,
+                             PlatformTransactionManager transactionManager,
+                             @Value("${notifications.outbox.lease-seconds:60}") long leaseSeconds) {
+        for(DeliveryChannel deliveryChannel : deliveryChannels){
+            String executorName = deliveryChannel.getType().name().toLowerCase() + "DispatchExecutor";
+            ThreadPoolTaskExecutor executor = executorsByName.get(executorName);
+            if(executor == null){
+                throw new IllegalStateException("Delivery channel "+deliveryChannel.getType()+" has no executor named "+executorName+"!");
+            }
+            channels.put(deliveryChannel.getType(), deliveryChannel);
+            executors.put(deliveryChannel.getType(), executor);
+        }
+        this.activitiesNotificationRepository = activitiesNotificationRepository;
+        this.notificationOutboxRepository = notificationOutboxRepository;
+        this.notificationDeliveryRepository = notificationDeliveryRepository;
+        this.retryPolicy = retryPolicy;
+        this.notificationMetrics = notificationMetrics;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        //a send is bounded by the channel's timeouts, one still SENDING after a whole lease died with its worker
+        this.sendingTimeout = Duration.ofSeconds(leaseSeconds);
+    }
+
+    public Set<ChannelType> channels() {
+        return channels.keySet();
+    }
+
+    public int remainingCapacity(ChannelType channel) {
+        return executors.get(channel).getThreadPoolExecutor().getQueue().remainingCapacity();
+    }
+
+    public boolean dispatch(NotificationOutbox entry) {
+        try {
+            executors.get(entry.getChannel()).execute(() -> deliver(entry));
+            return true;
+        } catch (TaskRejectedException e) {
+            return false;
+        }
+    }
+
+    private void deliver(NotificationOutbox entry) {
+        Optional<NotificationDelivery> delivery = notificationDeliveryRepository.findByNotificationIdAndChannel(entry.getNotificationId(), entry.getChannel());
+        Optional<ActivitiesNotification> notification = activitiesNotificationRepository.findById(entry.getNotificationId());
+
+        //already finished by the owner of an expired lease, or archived in the meantime
+        if(delivery.isEmpty() || notification.isEmpty() || isFinished(delivery.get().getStatus())){
+            notificationOutboxRepository.deleteById(entry.getId());
+            return;
+        }
+
+        //another copy of the entry is being sent or got there first, its worker completes the outbox entry
+        int attemptCount = delivery.get().getAttemptCount() + 1;
+        if(!claim(entry, delivery.get().getAttemptCount())){
+            return;
+        }
+
+        long sendStart = System.nanoTime();
+        try {
+            channels.get(entry.getChannel()).deliver(notification.get(), entry.getContactInfo());
+            notificationMetrics.recordChannelSend(entry.getChannel(), System.nanoTime() - sendStart, true);
+            complete(entry, notification.get(), NotificationStatus.SUCCEEDED, attemptCount, null);
+        } catch (Exception e) {
+            notificationMetrics.recordChannelSend(entry.getChannel(), System.nanoTime() - sendStart, false);
+            if(retryPolicy.isExhausted(attemptCount)){
+                log.warn("Giving up on "+entry.getChannel()+" delivery to "+entry.getContactInfo()+" after "+attemptCount+" attempts due to "+e.getMessage()+"!");
+                complete(entry, notification.get(), NotificationStatus.DEAD, attemptCount, null);
+            } else {
+                log.warn("There was an issue with "+entry.getChannel()+" delivery to "+entry.getContactInfo()+" due to "+e.getMessage()+"!");
+                complete(entry, notification.get(), NotificationStatus.FAILED, attemptCount, LocalDateTime.now().plus(retryPolicy.backoff(attemptCount)));
+            }
+        }
+    }
+
+    private boolean claim(NotificationOutbox entry, int attemptCount) {
+        LocalDateTime now = LocalDateTime.now();
+        Integer claimed = transactionTemplate.execute(transaction ->
+                notificationDeliveryRepository.claim(entry.getNotificationId(), entry.getChannel(), attemptCount, now, now.minus(sendingTimeout)));
+        return claimed != null && claimed == 1;
+    }
+
+    //a retry keeps its outbox entry, leased until it is due again
+    private void complete(NotificationOutbox entry, ActivitiesNotification notification, NotificationStatus status, int attemptCount, LocalDateTime retryAt) {
+        transactionTemplate.executeWithoutResult(transaction -> {
+            notificationDeliveryRepository.updateState(entry.getNotificationId(), entry.getChannel(), status, attemptCount, LocalDateTime.now());
+            if(retryAt == null){
+                notificationOutboxRepository.deleteById(entry.getId());
+            } else {
+                notificationOutboxRepository.lock(List.of(entry.getId()), retryAt);
+            }
+        });
+        notificationMetrics.incrementChannelCompleted(entry.getChannel(), notification.getType(), status);
+    }
+
+    private static boolean isFinished(NotificationStatus status) {
+        return status == NotificationStatus.SUCCEEDED || status == NotificationStatus.DEAD;
+    }
+}
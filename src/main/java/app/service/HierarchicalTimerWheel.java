@@ -0,0 +1,145 @@
+package app.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Hierarchical timing wheel, adding, cancelling and advancing one tick are O(1) however many timers are pending.
+ * Level 0 has one slot per tick, every level above one slot per full turn of the level below. Timers go into the lowest
+ * level whose span reaches them and move one level down each time the wheel below has turned up to their slot.
+ * Timers fire on the first tick boundary at or after their due time, never early and at most one tick late.
+ * Not thread safe, callers guard it with their own lock.
+ */
+public class HierarchicalTimerWheel<K, V> {
+    private final long tickMillis;
+    private final int wheelSize;
+    private final List<Level> levels = new ArrayList<>();
+    private final Map<K, Timer> timers = new HashMap<>();
+
+    //start of the next tick to fire, everything due before it has fired already
+    private long currentMillis;
+
+    public HierarchicalTimerWheel(long tickMillis, int wheelSize, long startMillis) {
+        if(tickMillis <= 0 || wheelSize < 2){
+            throw new IllegalArgumentException("Timer wheel needs a positive tick and at least two slots!");
+        }
+        this.tickMillis = tickMillis;
+        this.wheelSize = wheelSize;
+        this.currentMillis = startMillis - Math.floorMod(startMillis, tickMillis);
+        levels.add(new Level(tickMillis));
+    }
+
+    /**
+     * Returns false without adding anything when the key is already pending or the due time has passed, the caller
+     * fires an overdue timer itself.
+     */
+    public boolean schedule(K key, long dueMillis, V value) {
+        if(timers.containsKey(key) || dueMillis < currentMillis){
+            return false;
+        }
+        Timer timer = new Timer(key, dueMillis, value);
+        place(timer);
+        timers.put(key, timer);
+        return true;
+    }
+
+    public boolean cancel(K key) {
+        Timer timer = timers.remove(key);
+        if(timer == null){
+            return false;
+        }
+        timer.slot.remove(timer);
+        return true;
+    }
+
+    public boolean contains(K key) {
+        return timers.containsKey(key);
+    }
+
+    public int size() {
+        return timers.size();
+    }
+
+    //fires tick by tick up to nowMillis, a long pause costs one step per missed tick
+    public List<V> advance(long nowMillis) {
+        List<V> expired = new ArrayList<>();
+        while(currentMillis + tickMillis <= nowMillis){
+            Set<Timer> slot = levels.get(0).slotFor(currentMillis);
+            for(Timer timer : slot){
+                timers.remove(timer.key);
+                expired.add(timer.value);
+            }
+            slot.clear();
+            currentMillis += tickMillis;
+            cascade();
+        }
+        return expired;
+    }
+
+    //once a level has turned a full round, the next slot of the level above holds exactly its next round
+    private void cascade() {
+        for(int index = 1; index < levels.size(); index++){
+            Level level = levels.get(index);
+            if(currentMillis % level.tickMillis != 0){
+                return;
+            }
+            Set<Timer> slot = level.slotFor(currentMillis);
+            List<Timer> moving = new ArrayList<>(slot);
+            slot.clear();
+            moving.forEach(this::place);
+        }
+    }
+
+    private void place(Timer timer) {
+        for(int index = 0; ; index++){
+            if(index == levels.size()){
+                levels.add(new Level(levels.get(index - 1).tickMillis * wheelSize));
+            }
+            Level level = levels.get(index);
+            if(Math.floorDiv(timer.dueMillis, level.tickMillis) - Math.floorDiv(currentMillis, level.tickMillis) < wheelSize){
+                Set<Timer> slot = level.slotFor(timer.dueMillis);
+                slot.add(timer);
+                timer.slot = slot;
+                return;
+            }
+        }
+    }
+
+    private class Level {
+        private final long tickMillis;
+
+        private final List<Set<Timer>> slots;
+
+        private Level(long tickMillis) {
+            this.tickMillis = tickMillis;
+            this.slots = new ArrayList<>(wheelSize);
+            for(int index = 0; index < wheelSize; index++){
+                slots.add(new LinkedHashSet<>());
+            }
+        }
+
+        private Set<Timer> slotFor(long millis) {
+            return slots.get((int) Math.floorMod(Math.floorDiv(millis, tickMillis), (long) wheelSize));
+        }
+    }
+
+    private class Timer {
+        private final K key;
+
+        private final long dueMillis;
+
+        private final V value;
+
+        private Set<Timer> slot;
+
+        private Timer(K key, long dueMillis, V value) {
+            this.key = key;
+            this.dueMillis = dueMillis;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package app.service;
+
+import app.exception.IdempotencyKeyReusedException;
+import app.exception.IdempotencyKeyTargetGoneException;
+import app.exception.InvalidIdempotencyKeyException;
+import app.model.ActivitiesNotification;
+import app.model.NotificationIdempotencyKey;
+import app.model.ScheduledNotification;
+import app.repository.ActivitiesNotificationRepository;
+import app.repository.NotificationIdempotencyKeyRepository;
+import app.repository.ScheduledNotificationRepository;
+import app.web.dto.ActivitiesNotificationRequest;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+@Slf4j
+@Component
+public class IdempotencyKeyStore {
+    static final int MAX_KEY_LENGTH = 255;
+
+    private final NotificationIdempotencyKeyRepository notificationIdempotencyKeyRepository;
+    private final ActivitiesNotificationRepository activitiesNotificationRepository;
+    private final ScheduledNotificationRepository scheduledNotificationRepository;
+    private final Duration ttl;
+    //hot keys are answered from memory, the table is the source of truth across instances, both keyed by user and key
+    private final Cache<String, KeyedCall> recentKeys;
+    private final ConcurrentMap<String, KeyedCall> inFlight = new ConcurrentHashMap<>();
+
+    @Autowired
+    public IdempotencyKeyStore(NotificationIdempotencyKeyRepository notificationIdempotencyKeyRepository,
+                               ActivitiesNotificationRepository activitiesNotificationRepository,
+                               ScheduledNotificationRepository scheduledNotificationRepository,
+                               @Value("${notifications.idempotency.ttl-seconds:86400}") long ttlSeconds,
+                               @Value("${notifications.idempotency.cache-size:10000}") long cacheSize) {
+        this.notificationIdempotencyKeyRepository = notificationIdempotencyKeyRepository;
+        this.activitiesNotificationRepository = activitiesNotificationRepository;
+        this.scheduledNotificationRepository = scheduledNotificationRepository;
+        this.ttl = Duration.ofSeconds(ttlSeconds);
+        this.recentKeys = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    public ActivitiesNotification resolve(ActivitiesNotificationRequest request, String idempotencyKey, Supplier<ActivitiesNotification> firstCall) {
+        return resolve(request, idempotencyKey, ActivitiesNotification.class, activitiesNotificationRepository::findById, firstCall);
+    }
+
+    //once the timer has sent it the key points at the sent notification instead, a later retry is answered by resolve
+    public ScheduledNotification resolveScheduled(ActivitiesNotificationRequest request, String idempotencyKey, Supplier<ScheduledNotification> firstCall) {
+        return resolve(request, idempotencyKey, ScheduledNotification.class, scheduledNotificationRepository::findById, firstCall);
+    }
+
+    private <T> T resolve(ActivitiesNotificationRequest request, String idempotencyKey, Class<T> type, Function<UUID, Optional<T>> findById, Supplier<T> firstCall) {
+        if(idempotencyKey.isBlank() || idempotencyKey.length() > MAX_KEY_LENGTH){
+            throw new InvalidIdempotencyKeyException("Idempotency key must be between 1 and "+MAX_KEY_LENGTH+" characters!");
+        }
+        UUID userId = request.getUserId();
+        String requestHash = NotificationRules.requestHash(request);
+        //the user id has a fixed length, so no two user and key pairs make the same string
+        String scopedKey = userId + idempotencyKey;
+
+        //only sent notifications are remembered, a scheduled one can be cancelled or sent at any time and is looked up in the table
+        KeyedCall cached = recentKeys.getIfPresent(scopedKey);
+        if(cached != null){
+            checkSameRequest(cached.requestHash, requestHash, idempotencyKey);
+            Object result = cached.result.join();
+            if(type.isInstance(result)){
+                return type.cast(result);
+            }
+        }
+
+        //a duplicate arriving while the first request is still running waits for its result instead of sending again
+        KeyedCall call = new KeyedCall(requestHash);
+        KeyedCall running = inFlight.putIfAbsent(scopedKey, call);
+        if(running != null){
+            checkSameRequest(running.requestHash, requestHash, idempotencyKey);
+            return type.cast(await(running.result));
+        }
+
+        try {
+            T result = findStored(userId, idempotencyKey, requestHash, findById).orElseGet(() -> callOnce(userId, idempotencyKey, requestHash, findById, firstCall));
+            call.result.complete(result);
+            if(result instanceof ActivitiesNotification){
+                recentKeys.put(scopedKey, call);
+            }
+            return result;
+        } catch (RuntimeException e) {
+            call.result.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(scopedKey, call);
+        }
+    }
+
+    //expired rows no longer answer a repeat anyway, the in-memory keys age out on their own
+    @Scheduled(fixedDelayString = "${notifications.idempotency.purge-interval-ms:600000}")
+    public void purgeExpiredKeys() {
+        int purged = notificationIdempotencyKeyRepository.deleteExpired(LocalDateTime.now().minus(ttl));
+        if(purged > 0){
+            log.info("Purged "+purged+" expired idempotency keys.");
+        }
+    }
+
+    private <T> T callOnce(UUID userId, String idempotencyKey, String requestHash, Function<UUID, Optional<T>> findById, Supplier<T> firstCall) {
+        try {
+            return firstCall.get();
+        } catch (DataIntegrityViolationException e) {
+            //another instance committed the same key first, its notification is the answer
+            return findStored(userId, idempotencyKey, requestHash, findById).orElseThrow(() -> e);
+        }
+    }
+
+    private <T> Optional<T> findStored(UUID userId, String idempotencyKey, String requestHash, Function<UUID, Optional<T>> findById) {
+        Optional<NotificationIdempotencyKey> stored = notificationIdempotencyKeyRepository.findById(new NotificationIdempotencyKey.Key(userId, idempotencyKey));
+        if(stored.isPresent() && stored.get().getCreatedOn().isBefore(LocalDateTime.now().minus(ttl))){
+            //an expired key may be reused, the old row would otherwise reject the new insert
+            notificationIdempotencyKeyRepository.delete(stored.get());
+            return Optional.empty();
+        }
+        //keys stored before requests were compared have no hash and answer any repeat
+        if(stored.isPresent() && stored.get().getRequestHash() != null){
+            checkSameRequest(stored.get().getRequestHash(), requestHash, idempotencyKey);
+        }
+        if(stored.isEmpty()){
+            return Optional.empty();
+        }
+        //cancelled or archived since, the key stays used until it expires
+        return Optional.of(findById.apply(stored.get().getNotificationId())
+                .orElseThrow(() -> new IdempotencyKeyTargetGoneException("Idempotency key "+idempotencyKey+" belongs to a notification that no longer exists!")));
+    }
+
+    //a different request under a used key is a client bug, answering with the first notification would hide it
+    private static void checkSameRequest(String storedHash, String requestHash, String idempotencyKey) {
+        if(!Objects.equals(storedHash, requestHash)){
+            throw new IdempotencyKeyReusedException("Idempotency key "+idempotencyKey+" was already used for a different request!");
+        }
+    }
+
+    private Object await(CompletableFuture<Object> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            if(e.getCause() instanceof RuntimeException cause){
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private static class KeyedCall {
+        private final String requestHash;
+        private final CompletableFuture<Object> result = new CompletableFuture<>();
+
+        private KeyedCall(String requestHash) {
+            this.requestHash = requestHash;
+        }
+    }
+}
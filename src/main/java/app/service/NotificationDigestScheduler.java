@@ -0,0 +1,88 @@
+package app.service;
+
+import app.model.HeldDigest;
+import app.model.NotificationOutbox;
+import app.model.NotificationPreference;
+import app.model.NotificationStatus;
+import app.repository.ActivitiesNotificationRepository;
+import app.repository.NotificationOutboxRepository;
+import app.repository.NotificationPreferenceRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+@Slf4j
+@Component
+public class NotificationDigestScheduler {
+    private final ActivitiesNotificationRepository activitiesNotificationRepository;
+    private final NotificationPreferenceRepository notificationPreferenceRepository;
+    private final NotificationOutboxRepository notificationOutboxRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int maxSize;
+    private final int batchSize;
+
+    @Autowired
+    public NotificationDigestScheduler(ActivitiesNotificationRepository activitiesNotificationRepository,
+                                       NotificationPreferenceRepository notificationPreferenceRepository,
+                                       NotificationOutboxRepository notificationOutboxRepository,
+                                       PlatformTransactionManager transactionManager,
+                                       @Value("${notifications.digest.max-size:20}") int maxSize,
+                                       @Value("${notifications.digest.batch-size:100}") int batchSize) {
+        this.activitiesNotificationRepository = activitiesNotificationRepository;
+        this.notificationPreferenceRepository = notificationPreferenceRepository;
+        this.notificationOutboxRepository = notificationOutboxRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.maxSize = maxSize;
+        this.batchSize = batchSize;
+    }
+
+    //held notifications are ordinary unsent rows, so nothing is lost across restarts and any instance can flush them
+    @Scheduled(fixedDelayString = "${notifications.digest.poll-interval-ms:1000}")
+    public void flushDueDigests() {
+        List<HeldDigest> due = activitiesNotificationRepository.findDigestsToFlush(LocalDateTime.now(), maxSize, Limit.of(batchSize));
+
+        int flushed = 0;
+        for(HeldDigest heldDigest : due){
+            Integer merged = transactionTemplate.execute(status -> flush(heldDigest));
+            if(merged != null && merged > 0){
+                flushed++;
+            }
+        }
+
+        if(flushed > 0){
+            log.info("Flushed "+flushed+" notification digests.");
+        }
+    }
+
+    private int flush(HeldDigest heldDigest) {
+        UUID digestId = UUID.randomUUID();
+        int merged = activitiesNotificationRepository.claimDigest(digestId, heldDigest.getUserId(), heldDigest.getType());
+        if(merged == 0){
+            return 0;
+        }
+
+        Optional<NotificationPreference> notificationPreference = notificationPreferenceRepository.findByUserId(heldDigest.getUserId());
+        if(notificationPreference.isEmpty()){
+            activitiesNotificationRepository.updateDigestDeliveryState(digestId, NotificationStatus.DEAD, 0, null);
+            return merged;
+        }
+
+        notificationOutboxRepository.save(NotificationOutbox.builder()
+                .notificationId(digestId)
+                .contactInfo(notificationPreference.get().getContactInfo())
+                .createdOn(LocalDateTime.now())
+                .digest(true)
+                .build());
+        return merged;
+    }
+}
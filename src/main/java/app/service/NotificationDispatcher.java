@@ -0,0 +1,202 @@
+package app.service;
+
+import app.exception.RateLimitExceededException;
+import app.mail.MailCircuitBreaker;
+import app.mail.NotificationMailRenderer;
+import app.mail.RenderedMail;
+import app.model.ActivitiesNotification;
+import app.model.NotificationOutbox;
+import app.model.NotificationStatus;
+import app.repository.ActivitiesNotificationRepository;
+import app.repository.NotificationOutboxRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Optional;
+
+@Slf4j
+@Component
+public class NotificationDispatcher {
+    private final ThreadPoolTaskExecutor notificationDispatchExecutor;
+    private final JavaMailSender mailSender;
+    private final NotificationMailRenderer notificationMailRenderer;
+    private final ActivitiesNotificationRepository activitiesNotificationRepository;
+    private final NotificationOutboxRepository notificationOutboxRepository;
+    private final MailCircuitBreaker mailCircuitBreaker;
+    private final RetryPolicy retryPolicy;
+    private final NotificationMetrics notificationMetrics;
+    private final NotificationRateLimiter notificationRateLimiter;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration sendingTimeout;
+
+    @Autowired
+    public NotificationDispatcher(@Qualifier("notificationDispatchExecutor") ThreadPoolTaskExecutor notificationDispatchExecutor,
+                                  JavaMailSender mailSender,
+                                  NotificationMailRenderer notificationMailRenderer,
+                                  ActivitiesNotificationRepository activitiesNotificationRepository,
+                                  NotificationOutboxRepository notificationOutboxRepository,
+                                  MailCircuitBreaker mailCircuitBreaker,
+                                  RetryPolicy retryPolicy,
+                                  NotificationMetrics notificationMetrics,
+                                  NotificationRateLimiter notificationRateLimiter,
+                                  PlatformTransactionManager transactionManager,
+                                  @Value("${notifications.outbox.lease-seconds:60}") long leaseSeconds) {
+        this.notificationDispatchExecutor = notificationDispatchExecutor;
+        this.mailSender = mailSender;
+        this.notificationMailRenderer = notificationMailRenderer;
+        this.activitiesNotificationRepository = activitiesNotificationRepository;
+        this.notificationOutboxRepository = notificationOutboxRepository;
+        this.mailCircuitBreaker = mailCircuitBreaker;
+        this.retryPolicy = retryPolicy;
+        this.notificationMetrics = notificationMetrics;
+        this.notificationRateLimiter = notificationRateLimiter;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        //the SMTP timeouts keep a send well inside the lease, MailConfiguration checks it, so a claim still held after a whole lease died with its worker
+        this.sendingTimeout = Duration.ofSeconds(leaseSeconds);
+    }
+
+    public int remainingCapacity() {
+        return notificationDispatchExecutor.getThreadPoolExecutor().getQueue().remainingCapacity();
+    }
+
+    public boolean isSaturated() {
+        return remainingCapacity() == 0;
+    }
+
+    public boolean dispatch(NotificationOutbox entry) {
+        try {
+            notificationDispatchExecutor.execute(() -> deliver(entry));
+            return true;
+        } catch (TaskRejectedException e) {
+            return false;
+        }
+    }
+
+    private void deliver(NotificationOutbox entry) {
+        if(entry.isDigest()){
+            deliverDigest(entry);
+            return;
+        }
+
+        //the queue wait can outlast the lease, then the relay hands out the entry again while this copy is still queued
+        LocalDateTime now = LocalDateTime.now();
+        if(activitiesNotificationRepository.claimForSending(entry.getNotificationId(), now, now.plus(sendingTimeout)) == 0){
+            Optional<ActivitiesNotification> current = activitiesNotificationRepository.findById(entry.getNotificationId());
+            //finished, waiting for a retry or archived, otherwise another copy is being sent and its worker removes the entry
+            if(current.isEmpty() || current.get().getStatus() != NotificationStatus.SENDING){
+                notificationOutboxRepository.deleteById(entry.getId());
+            }
+            return;
+        }
+
+        Optional<ActivitiesNotification> optional = activitiesNotificationRepository.findById(entry.getNotificationId());
+        if(optional.isEmpty()){
+            notificationOutboxRepository.deleteById(entry.getId());
+            return;
+        }
+
+        ActivitiesNotification notification = optional.get();
+        send(entry, List.of(notification), notificationMailRenderer.render(notification), notification.getAttemptCount());
+    }
+
+    private void deliverDigest(NotificationOutbox entry) {
+        LocalDateTime now = LocalDateTime.now();
+        if(activitiesNotificationRepository.claimDigestForSending(entry.getNotificationId(), now, now.plus(sendingTimeout)) == 0){
+            if(activitiesNotificationRepository.findAllByDigestIdAndStatusOrderByCreatedOn(entry.getNotificationId(), NotificationStatus.SENDING).isEmpty()){
+                notificationOutboxRepository.deleteById(entry.getId());
+            }
+            return;
+        }
+
+        List<ActivitiesNotification> notifications = activitiesNotificationRepository.findAllByDigestIdAndStatusOrderByCreatedOn(entry.getNotificationId(), NotificationStatus.SENDING);
+        if(notifications.isEmpty()){
+            notificationOutboxRepository.deleteById(entry.getId());
+            return;
+        }
+
+        RenderedMail mail = notifications.size() == 1 ? notificationMailRenderer.render(notifications.get(0)) : notificationMailRenderer.renderDigest(notifications);
+        int attemptCount = notifications.stream().mapToInt(ActivitiesNotification::getAttemptCount).max().orElse(0);
+        send(entry, notifications, mail, attemptCount);
+    }
+
+    private void send(NotificationOutbox entry, List<ActivitiesNotification> notifications, RenderedMail mail, int previousAttempts) {
+        //over the provider's send rate, park the notification until a token is free
+        try {
+            notificationRateLimiter.acquireGlobal();
+        } catch (RateLimitExceededException e) {
+            park(entry, previousAttempts, LocalDateTime.now().plus(e.getRetryAfter()));
+            notifications.forEach(notification -> notificationMetrics.incrementThrottled(notification.getType()));
+            return;
+        }
+
+        //the SMTP server is considered down, park the notification until the breaker lets a trial send through
+        if(!mailCircuitBreaker.tryAcquire()){
+            park(entry, previousAttempts, LocalDateTime.ofInstant(mailCircuitBreaker.retryAt(), ZoneId.systemDefault()).plus(retryPolicy.jitter()));
+            return;
+        }
+
+        long sendStart = System.nanoTime();
+        try {
+            //text and HTML as alternative parts, clients without HTML support show the text one
+            mailSender.send(mimeMessage -> {
+                MimeMessageHelper helper = new MimeMessageHelper(mimeMessage, true, StandardCharsets.UTF_8.name());
+                helper.setTo(entry.getContactInfo());
+                helper.setSubject(mail.getSubject());
+                helper.setText(mail.getText(), mail.getHtml());
+            });
+            notificationMetrics.recordSmtpSend(System.nanoTime() - sendStart, true);
+            mailCircuitBreaker.onSuccess();
+            complete(entry, notifications, NotificationStatus.SUCCEEDED, previousAttempts + 1, null);
+        } catch (Exception e) {
+            notificationMetrics.recordSmtpSend(System.nanoTime() - sendStart, false);
+            mailCircuitBreaker.onFailure();
+            int attemptCount = previousAttempts + 1;
+            if(retryPolicy.isExhausted(attemptCount)){
+                log.warn("Giving up on email to "+entry.getContactInfo()+" after "+attemptCount+" attempts due to "+e.getMessage()+"!");
+                complete(entry, notifications, NotificationStatus.DEAD, attemptCount, null);
+            } else {
+                log.warn("There was an issue sending email to "+entry.getContactInfo()+" due to "+e.getMessage()+"!");
+                complete(entry, notifications, NotificationStatus.FAILED, attemptCount, LocalDateTime.now().plus(retryPolicy.backoff(attemptCount)));
+            }
+        }
+    }
+
+    //never attempted, so it stays PENDING with the same attempt count and is not counted as completed
+    //the outbox entry is kept and locked until the retry time, then the relay hands it out again
+    private void park(NotificationOutbox entry, int attemptCount, LocalDateTime retryAt) {
+        transactionTemplate.executeWithoutResult(transaction -> {
+            if(entry.isDigest()){
+                activitiesNotificationRepository.updateDigestDeliveryState(entry.getNotificationId(), NotificationStatus.PENDING, attemptCount, retryAt);
+            } else {
+                activitiesNotificationRepository.updateDeliveryState(entry.getNotificationId(), NotificationStatus.PENDING, attemptCount, retryAt);
+            }
+            notificationOutboxRepository.lock(List.of(entry.getId()), retryAt);
+        });
+    }
+
+    private void complete(NotificationOutbox entry, List<ActivitiesNotification> notifications, NotificationStatus status, int attemptCount, LocalDateTime nextAttemptAt) {
+        transactionTemplate.executeWithoutResult(transaction -> {
+            if(entry.isDigest()){
+                activitiesNotificationRepository.updateDigestDeliveryState(entry.getNotificationId(), status, attemptCount, nextAttemptAt);
+            } else {
+                activitiesNotificationRepository.updateDeliveryState(entry.getNotificationId(), status, attemptCount, nextAttemptAt);
+            }
+            notificationOutboxRepository.deleteById(entry.getId());
+        });
+        notifications.forEach(notification -> notificationMetrics.incrementCompleted(notification.getType(), status));
+    }
+}
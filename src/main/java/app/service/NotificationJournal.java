@@ -0,0 +1,157 @@
+package app.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Append-only journal of accepted but not yet written notifications, one line per entry, split into numbered segments.
+ * The active segment is rotated out when its entries are handed to the writer, and deleted once they are in the database,
+ * so every segment still on disk at startup holds entries that may never have been written. Appending only writes,
+ * {@link #sync} is the group commit, one fsync covers every entry appended while the previous one was running.
+ */
+public class NotificationJournal implements Closeable {
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String DEAD_LETTER_FILE = "dead-letter.log";
+    private static final byte[] NEW_LINE = {'\n'};
+
+    private final Path directory;
+    private final boolean fsync;
+    private long sequence;
+    private Path segment;
+    private FileChannel channel;
+
+    //entries appended so far and how many of them are known to be on disk, both count across segments
+    private long appended;
+    private final AtomicLong synced = new AtomicLong();
+    private final ReentrantLock syncLock = new ReentrantLock();
+
+    public NotificationJournal(Path directory, boolean fsync) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.fsync = fsync;
+        this.sequence = segments().stream().mapToLong(NotificationJournal::sequenceOf).max().orElse(0);
+        open();
+    }
+
+    //oldest first, left over from earlier runs
+    public List<Path> closedSegments() throws IOException {
+        return segments().stream().filter(path -> !path.equals(segment)).toList();
+    }
+
+    //returns the entry's position, which is on disk once sync has been called with it
+    public synchronized long append(byte[] entry) throws IOException {
+        write(ByteBuffer.wrap(entry));
+        write(ByteBuffer.wrap(NEW_LINE));
+        return ++appended;
+    }
+
+    //without fsync an entry survives the process dying, but not the machine
+    public void sync(long position) throws IOException {
+        if(!fsync || synced.get() >= position){
+            return;
+        }
+        //whoever waits here while another caller forces the file is usually covered by that force already
+        syncLock.lock();
+        try {
+            if(synced.get() >= position){
+                return;
+            }
+            FileChannel active;
+            long upTo;
+            synchronized (this) {
+                active = channel;
+                upTo = appended;
+            }
+            try {
+                active.force(false);
+            } catch (ClosedChannelException e) {
+                //rotated in the meantime, rotating forces the segment before closing it
+            }
+            synced.accumulateAndGet(upTo, Math::max);
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    //closes the active segment and starts a new one, returns the closed segment
+    public synchronized Path rotate() throws IOException {
+        Path closed = segment;
+        if(fsync){
+            channel.force(false);
+            synced.accumulateAndGet(appended, Math::max);
+        }
+        channel.close();
+        open();
+        return closed;
+    }
+
+    //entries the database rejected for good, kept for someone to look at instead of being retried at every start
+    public synchronized void deadLetter(byte[] entry) throws IOException {
+        try (FileChannel deadLetters = FileChannel.open(directory.resolve(DEAD_LETTER_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            deadLetters.write(ByteBuffer.wrap(entry));
+            deadLetters.write(ByteBuffer.wrap(NEW_LINE));
+            deadLetters.force(false);
+        }
+    }
+
+    public Path deadLetterFile() {
+        return directory.resolve(DEAD_LETTER_FILE);
+    }
+
+    //a line cut short by a crash is returned as it is, the caller has to tolerate it
+    public static List<String> readEntries(Path segment) throws IOException {
+        String content = new String(Files.readAllBytes(segment), StandardCharsets.UTF_8);
+        return Arrays.stream(content.split("\n")).filter(line -> !line.isBlank()).toList();
+    }
+
+    public static void delete(Path segment) throws IOException {
+        Files.deleteIfExists(segment);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+        //a clean shutdown writes everything first, the empty segment left behind is not needed
+        if(Files.size(segment) == 0){
+            Files.delete(segment);
+        }
+    }
+
+    private void open() throws IOException {
+        sequence++;
+        segment = directory.resolve(SEGMENT_PREFIX + String.format("%020d", sequence) + SEGMENT_SUFFIX);
+        channel = FileChannel.open(segment, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        while(buffer.hasRemaining()){
+            channel.write(buffer);
+        }
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                    .filter(path -> path.getFileName().toString().startsWith(SEGMENT_PREFIX) && path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static long sequenceOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
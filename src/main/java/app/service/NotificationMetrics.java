@@ -0,0 +1,98 @@
+package app.service;
+
+import app.model.ActivityType;
+import app.model.ChannelType;
+import app.model.NotificationStatus;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+//percentile histograms for every notifications.* timer are switched on in application.properties
+@Component
+public class NotificationMetrics {
+    private final MeterRegistry meterRegistry;
+    private final Timer preferenceLookupTimer;
+    private final Timer databaseSaveTimer;
+
+    @Autowired
+    public NotificationMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.preferenceLookupTimer = Timer.builder("notifications.preference.lookup")
+                .description("Notification preference lookup, cache hits included")
+                .register(meterRegistry);
+        this.databaseSaveTimer = Timer.builder("notifications.db.save")
+                .description("Insert of accepted notifications and their outbox entries")
+                .register(meterRegistry);
+    }
+
+    public <T> T timeSend(ActivityType type, Supplier<T> send) {
+        return Timer.builder("notifications.send")
+                .description("Whole request path of sending a notification")
+                .tag("type", String.valueOf(type))
+                .register(meterRegistry)
+                .record(send);
+    }
+
+    public <T> T timePreferenceLookup(Supplier<T> lookup) {
+        return preferenceLookupTimer.record(lookup);
+    }
+
+    public <T> T timeDatabaseSave(Supplier<T> save) {
+        return databaseSaveTimer.record(save);
+    }
+
+    public void recordSmtpSend(long durationNanos, boolean succeeded) {
+        Timer.builder("notifications.smtp.send")
+                .description("SMTP send of one notification email")
+                .tag("outcome", succeeded ? "success" : "failure")
+                .register(meterRegistry)
+                .record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordChannelSend(ChannelType channel, long durationNanos, boolean succeeded) {
+        Timer.builder("notifications.channel.send")
+                .description("Delivery of one notification on a channel besides email")
+                .tag("channel", channel.name())
+                .tag("outcome", succeeded ? "success" : "failure")
+                .register(meterRegistry)
+                .record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void incrementAccepted(ActivityType type) {
+        Counter.builder("notifications.accepted")
+                .tag("type", String.valueOf(type))
+                .register(meterRegistry)
+                .increment();
+    }
+
+    //expected back-pressure from the global send rate, the notification is sent later and is not a failure
+    public void incrementThrottled(ActivityType type) {
+        Counter.builder("notifications.throttled")
+                .description("Emails held back by the global send rate, sent once a token is free")
+                .tag("type", String.valueOf(type))
+                .register(meterRegistry)
+                .increment();
+    }
+
+    public void incrementCompleted(ActivityType type, NotificationStatus status) {
+        Counter.builder("notifications.completed")
+                .tag("type", String.valueOf(type))
+                .tag("status", status.name())
+                .register(meterRegistry)
+                .increment();
+    }
+
+    public void incrementChannelCompleted(ChannelType channel, ActivityType type, NotificationStatus status) {
+        Counter.builder("notifications.channel.completed")
+                .tag("channel", channel.name())
+                .tag("type", String.valueOf(type))
+                .tag("status", status.name())
+                .register(meterRegistry)
+                .increment();
+    }
+}
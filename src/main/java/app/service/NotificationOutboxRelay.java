@@ -0,0 +1,85 @@
+package app.service;
+
+import app.mail.MailCircuitBreaker;
+import app.model.ChannelType;
+import app.model.NotificationOutbox;
+import app.repository.NotificationOutboxRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Predicate;
+
+@Slf4j
+@Component
+public class NotificationOutboxRelay {
+    private final NotificationOutboxRepository notificationOutboxRepository;
+    private final NotificationDispatcher notificationDispatcher;
+    private final ChannelDispatcher channelDispatcher;
+    private final MailCircuitBreaker mailCircuitBreaker;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final int leaseSeconds;
+
+    @Autowired
+    public NotificationOutboxRelay(NotificationOutboxRepository notificationOutboxRepository,
+                                   NotificationDispatcher notificationDispatcher,
+                                   ChannelDispatcher channelDispatcher,
+                                   MailCircuitBreaker mailCircuitBreaker,
+                                   PlatformTransactionManager transactionManager,
+                                   @Value("${notifications.outbox.batch-size:100}") int batchSize,
+                                   @Value("${notifications.outbox.lease-seconds:60}") int leaseSeconds) {
+        this.notificationOutboxRepository = notificationOutboxRepository;
+        this.notificationDispatcher = notificationDispatcher;
+        this.channelDispatcher = channelDispatcher;
+        this.mailCircuitBreaker = mailCircuitBreaker;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.leaseSeconds = leaseSeconds;
+    }
+
+    //every channel is claimed up to the room in its own queue, so a backed up channel never holds back the others
+    @Scheduled(fixedDelayString = "${notifications.outbox.poll-interval-ms:500}")
+    public void relay() {
+        //while SMTP is down emails stay in the outbox instead of cycling through FAILED
+        if(!mailCircuitBreaker.isOpen()){
+            relay(ChannelType.EMAIL, notificationDispatcher.remainingCapacity(), notificationDispatcher::dispatch);
+        }
+        for(ChannelType channel : channelDispatcher.channels()){
+            relay(channel, channelDispatcher.remainingCapacity(channel), channelDispatcher::dispatch);
+        }
+    }
+
+    private void relay(ChannelType channel, int remainingCapacity, Predicate<NotificationOutbox> dispatch) {
+        //never claim more than the local pool can take, the rest stays available for other instances
+        int limit = Math.min(batchSize, remainingCapacity);
+        if(limit == 0){
+            return;
+        }
+
+        List<NotificationOutbox> claimed = claim(channel, limit);
+        for(NotificationOutbox entry : claimed){
+            if(!dispatch.test(entry)){
+                log.warn("Dispatch queue of "+channel+" filled up while relaying, "+entry.getId()+" will be retried after its lease expires!");
+                break;
+            }
+        }
+    }
+
+    private List<NotificationOutbox> claim(ChannelType channel, int limit) {
+        return transactionTemplate.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            List<NotificationOutbox> entries = notificationOutboxRepository.findClaimable(channel.name(), now, limit);
+            if(!entries.isEmpty()){
+                notificationOutboxRepository.lock(entries.stream().map(NotificationOutbox::getId).toList(), now.plusSeconds(leaseSeconds));
+            }
+            return entries;
+        });
+    }
+}
@@ -0,0 +1,100 @@
+package app.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+//expects the table to be converted once with db/partitioning/partition_activities_notification.sql, MySQL only
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "notifications.retention.partitioning.enabled", havingValue = "true")
+public class NotificationPartitionManager {
+    private static final String TABLE = "activities_notification";
+    private static final int MONTHS_AHEAD = 3;
+    private static final DateTimeFormatter PARTITION_NAME = DateTimeFormatter.ofPattern("'p'yyyyMM");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int dropAfterMonths;
+    private final Clock clock;
+
+    @Autowired
+    public NotificationPartitionManager(JdbcTemplate jdbcTemplate,
+                                        @Value("${notifications.retention.partitioning.drop-after-months:24}") int dropAfterMonths) {
+        this(jdbcTemplate, dropAfterMonths, Clock.systemDefaultZone());
+    }
+
+    public NotificationPartitionManager(JdbcTemplate jdbcTemplate, int dropAfterMonths, Clock clock) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dropAfterMonths = dropAfterMonths;
+        this.clock = clock;
+    }
+
+    //also right at startup, so the months ahead exist as soon as partitioning is turned on and not only at the next cron run
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "${notifications.retention.partitioning.cron:0 0 3 * * *}")
+    public void maintainPartitions() {
+        List<Map<String, Object>> partitions = jdbcTemplate.queryForList(
+                "SELECT PARTITION_NAME, PARTITION_DESCRIPTION FROM information_schema.PARTITIONS " +
+                "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND PARTITION_METHOD = 'RANGE COLUMNS' ORDER BY PARTITION_ORDINAL_POSITION", TABLE);
+        if(partitions.isEmpty()){
+            log.warn("Table "+TABLE+" is not range partitioned, skipping partition maintenance!");
+            return;
+        }
+
+        LocalDate today = LocalDate.now(clock);
+        LocalDate thisMonth = today.withDayOfMonth(1);
+        LocalDate lastBound = partitions.stream()
+                .map(this::upperBound)
+                .filter(bound -> bound != null)
+                .max(LocalDate::compareTo)
+                .orElse(thisMonth);
+
+        //new months are split off pmax ahead of time, while pmax is still empty and the split is instant
+        List<String> added = new ArrayList<>();
+        for(LocalDate bound = lastBound.plusMonths(1); !bound.isAfter(thisMonth.plusMonths(MONTHS_AHEAD)); bound = bound.plusMonths(1)){
+            added.add("PARTITION " + bound.minusMonths(1).format(PARTITION_NAME) + " VALUES LESS THAN ('" + bound + "')");
+        }
+        if(!added.isEmpty()){
+            //only when no maintenance ran for months, all missing months go in one statement so those rows are copied once
+            if(!today.isBefore(lastBound)){
+                log.warn("Partition pmax of "+TABLE+" holds rows from "+lastBound+" on, splitting it copies them under a metadata lock!");
+            }
+            jdbcTemplate.execute("ALTER TABLE " + TABLE + " REORGANIZE PARTITION pmax INTO (" +
+                    String.join(", ", added) + ", PARTITION pmax VALUES LESS THAN (MAXVALUE))");
+            log.info("Added "+added.size()+" partitions to "+TABLE+" up to "+thisMonth.plusMonths(MONTHS_AHEAD)+".");
+        }
+
+        //dropping a partition discards its rows without archiving them, in one metadata operation instead of row deletes
+        LocalDate dropBefore = thisMonth.minusMonths(dropAfterMonths);
+        for(Map<String, Object> partition : partitions){
+            LocalDate bound = upperBound(partition);
+            if(bound != null && !bound.isAfter(dropBefore)){
+                String name = (String) partition.get("PARTITION_NAME");
+                jdbcTemplate.execute("ALTER TABLE " + TABLE + " DROP PARTITION " + name);
+                log.info("Dropped partition "+name+" of "+TABLE+".");
+            }
+        }
+    }
+
+    //PARTITION_DESCRIPTION looks like '2026-11-01' or '2026-11-01 00:00:00', and MAXVALUE for pmax
+    private LocalDate upperBound(Map<String, Object> partition) {
+        String description = String.valueOf(partition.get("PARTITION_DESCRIPTION")).replace("'", "");
+        if(description.equals("MAXVALUE")){
+            return null;
+        }
+        return LocalDate.parse(description.substring(0, 10));
+    }
+}
@@ -0,0 +1,122 @@
+package app.service;
+
+import app.exception.BatchTooLargeException;
+import app.exception.RateLimitExceededException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+//a rate of 0 or less turns the bucket off, the per-user buckets guard ingress and the global one every email handed to SMTP
+@Component
+public class NotificationRateLimiter {
+    private final long userNanosPerToken;
+    private final int userBurst;
+    private final TokenBucket globalBucket;
+    private final LongSupplier clock;
+    //a bucket expires only once it would be full anyway, so dropping it changes nothing
+    private final Cache<UUID, TokenBucket> userBuckets;
+
+    @Autowired
+    public NotificationRateLimiter(@Value("${notifications.rate-limit.user.per-minute:60}") int userPerMinute,
+                                   @Value("${notifications.rate-limit.user.burst:20}") int userBurst,
+                                   @Value("${notifications.rate-limit.user.max-users:100000}") long maxUsers,
+                                   @Value("${notifications.rate-limit.global.per-second:14}") int globalPerSecond,
+                                   @Value("${notifications.rate-limit.global.burst:50}") int globalBurst) {
+        this(userPerMinute, userBurst, maxUsers, globalPerSecond, globalBurst, System::nanoTime);
+    }
+
+    public NotificationRateLimiter(int userPerMinute, int userBurst, long maxUsers, int globalPerSecond, int globalBurst, LongSupplier clock) {
+        this.clock = clock;
+        this.userNanosPerToken = userPerMinute > 0 ? TimeUnit.MINUTES.toNanos(1) / userPerMinute : 0;
+        this.userBurst = Math.max(1, userBurst);
+        this.globalBucket = globalPerSecond > 0 ? new TokenBucket(TimeUnit.SECONDS.toNanos(1) / globalPerSecond, Math.max(1, globalBurst), clock.getAsLong()) : null;
+        this.userBuckets = Caffeine.newBuilder()
+                .maximumSize(maxUsers)
+                .ticker(clock::getAsLong)
+                .expireAfter(new Expiry<UUID, TokenBucket>() {
+                    @Override
+                    public long expireAfterCreate(UUID userId, TokenBucket bucket, long currentTime) {
+                        return untilFull(bucket, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(UUID userId, TokenBucket bucket, long currentTime, long currentDuration) {
+                        return untilFull(bucket, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(UUID userId, TokenBucket bucket, long currentTime, long currentDuration) {
+                        return untilFull(bucket, currentTime);
+                    }
+                })
+                .build();
+    }
+
+    //a read is followed by taking at most a full burst, so the bucket is full again no later than this
+    private static long untilFull(TokenBucket bucket, long now) {
+        return Math.max(bucket.fullAt() - now, 0) + Math.max(bucket.capacityNanos(), TimeUnit.SECONDS.toNanos(1));
+    }
+
+    public void acquire(UUID userId) {
+        acquire(Collections.singletonList(userId));
+    }
+
+    //all or nothing, a request over any limit takes no tokens at all
+    public void acquire(Collection<UUID> userIds) {
+        if(userNanosPerToken <= 0){
+            return;
+        }
+        long now = clock.getAsLong();
+        Map<UUID, Integer> perUser = new LinkedHashMap<>();
+        userIds.stream().filter(Objects::nonNull).forEach(userId -> perUser.merge(userId, 1, Integer::sum));
+
+        //more than a burst could never be let through, waiting would not help
+        perUser.forEach((userId, count) -> {
+            if(count > userBurst){
+                throw new BatchTooLargeException("Batch has "+count+" notifications for user with id "+userId+", more than the limit of "+userBurst+"!");
+            }
+        });
+
+        List<Map.Entry<TokenBucket, Integer>> taken = new ArrayList<>(perUser.size());
+        for(Map.Entry<UUID, Integer> entry : perUser.entrySet()){
+            TokenBucket bucket = userBuckets.get(entry.getKey(), userId -> new TokenBucket(userNanosPerToken, userBurst, now));
+            long wait = bucket.tryAcquire(entry.getValue(), now);
+            if(wait > 0){
+                //the users before this one did nothing wrong, their tokens go back
+                release(taken, now);
+                throw new RateLimitExceededException("Rate limit for user with id "+entry.getKey()+" exceeded!", Duration.ofNanos(wait));
+            }
+            taken.add(Map.entry(bucket, entry.getValue()));
+        }
+    }
+
+    //one token per email, taken where it is sent so retries, digests, broker and scheduled sends are all counted
+    public void acquireGlobal() {
+        if(globalBucket == null){
+            return;
+        }
+        long wait = globalBucket.tryAcquire(1, clock.getAsLong());
+        if(wait > 0){
+            throw new RateLimitExceededException("Global notification rate limit exceeded!", Duration.ofNanos(wait));
+        }
+    }
+
+    private void release(List<Map.Entry<TokenBucket, Integer>> taken, long now) {
+        taken.forEach(entry -> entry.getKey().release(entry.getValue(), now));
+    }
+}
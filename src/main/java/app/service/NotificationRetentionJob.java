@@ -0,0 +1,105 @@
+package app.service;
+
+import app.repository.ActivitiesNotificationRepository;
+import app.repository.NotificationDeliveryRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+@Slf4j
+@Component
+public class NotificationRetentionJob {
+    private final ActivitiesNotificationRepository activitiesNotificationRepository;
+    private final NotificationDeliveryRepository notificationDeliveryRepository;
+    private final RetentionPolicy retentionPolicy;
+    private final UnreadNotificationCounter unreadNotificationCounter;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final long pauseMillis;
+
+    @Autowired
+    public NotificationRetentionJob(ActivitiesNotificationRepository activitiesNotificationRepository,
+                                    NotificationDeliveryRepository notificationDeliveryRepository,
+                                    RetentionPolicy retentionPolicy,
+                                    UnreadNotificationCounter unreadNotificationCounter,
+                                    PlatformTransactionManager transactionManager,
+                                    @Value("${notifications.retention.batch-size:500}") int batchSize,
+                                    @Value("${notifications.retention.pause-ms:200}") long pauseMillis) {
+        this.activitiesNotificationRepository = activitiesNotificationRepository;
+        this.notificationDeliveryRepository = notificationDeliveryRepository;
+        this.retentionPolicy = retentionPolicy;
+        this.unreadNotificationCounter = unreadNotificationCounter;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.pauseMillis = pauseMillis;
+    }
+
+    @Scheduled(cron = "${notifications.retention.cron:0 30 3 * * *}")
+    public int archiveExpiredNotifications() {
+        LocalDateTime now = LocalDateTime.now();
+        int archived = 0;
+
+        for(RetentionRule rule : retentionPolicy.rules()){
+            LocalDateTime expiredBefore = now.minus(rule.getWindow());
+            archived += archiveInBatches(() -> activitiesNotificationRepository.findExpiredIds(rule.getType(), rule.getStatus(), expiredBefore, Limit.of(batchSize)));
+        }
+
+        if(!retentionPolicy.hiddenWindow().isZero()){
+            LocalDateTime expiredBefore = now.minus(retentionPolicy.hiddenWindow());
+            archived += archiveInBatches(() -> activitiesNotificationRepository.findExpiredHiddenIds(RetentionPolicy.TERMINAL_STATUSES, expiredBefore, Limit.of(batchSize)));
+        }
+
+        if(archived > 0){
+            //archived rows may have been unread, counts are rebuilt from what is left
+            unreadNotificationCounter.invalidateAll();
+            log.info("Archived "+archived+" expired notifications.");
+        }
+        return archived;
+    }
+
+    //archived rows leave the live table, so every batch simply takes the oldest remaining ones off the index
+    private int archiveInBatches(Supplier<List<UUID>> nextBatch) {
+        int archived = 0;
+        while(true){
+            Integer moved = transactionTemplate.execute(status -> {
+                List<UUID> ids = nextBatch.get();
+                if(ids.isEmpty()){
+                    return 0;
+                }
+                activitiesNotificationRepository.copyToArchive(ids);
+                //per channel state is only kept while the notification is live
+                notificationDeliveryRepository.deleteAllByNotificationIdIn(ids);
+                return activitiesNotificationRepository.deleteAllByIdIn(ids);
+            });
+            archived += moved == null ? 0 : moved;
+
+            if(moved == null || moved < batchSize){
+                return archived;
+            }
+            //short transactions with a pause in between, so the live table is never locked for long
+            if(!pause()){
+                return archived;
+            }
+        }
+    }
+
+    private boolean pause() {
+        try {
+            Thread.sleep(pauseMillis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
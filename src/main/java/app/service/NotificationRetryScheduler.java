@@ -0,0 +1,109 @@
+package app.service;
+
+import app.mail.MailCircuitBreaker;
+import app.model.ActivitiesNotification;
+import app.model.NotificationOutbox;
+import app.model.NotificationPreference;
+import app.model.NotificationStatus;
+import app.repository.ActivitiesNotificationRepository;
+import app.repository.NotificationOutboxRepository;
+import app.repository.NotificationPreferenceRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Component
+public class NotificationRetryScheduler {
+    private final ActivitiesNotificationRepository activitiesNotificationRepository;
+    private final NotificationPreferenceRepository notificationPreferenceRepository;
+    private final NotificationOutboxRepository notificationOutboxRepository;
+    private final MailCircuitBreaker mailCircuitBreaker;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+
+    @Autowired
+    public NotificationRetryScheduler(ActivitiesNotificationRepository activitiesNotificationRepository,
+                                      NotificationPreferenceRepository notificationPreferenceRepository,
+                                      NotificationOutboxRepository notificationOutboxRepository,
+                                      MailCircuitBreaker mailCircuitBreaker,
+                                      PlatformTransactionManager transactionManager,
+                                      @Value("${notifications.retry.batch-size:100}") int batchSize) {
+        this.activitiesNotificationRepository = activitiesNotificationRepository;
+        this.notificationPreferenceRepository = notificationPreferenceRepository;
+        this.notificationOutboxRepository = notificationOutboxRepository;
+        this.mailCircuitBreaker = mailCircuitBreaker;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+    }
+
+    //due failures go back through the outbox, so retries share the relay's capacity limits instead of bypassing them
+    @Scheduled(fixedDelayString = "${notifications.retry.poll-interval-ms:5000}")
+    public void retryDueNotifications() {
+        if(mailCircuitBreaker.isOpen()){
+            return;
+        }
+
+        Integer requeued = transactionTemplate.execute(status -> {
+            List<ActivitiesNotification> due = activitiesNotificationRepository.findDueForRetry(LocalDateTime.now(), batchSize);
+            if(due.isEmpty()){
+                return 0;
+            }
+
+            Map<UUID, NotificationPreference> preferences = notificationPreferenceRepository
+                    .findAllByUserIdIn(due.stream().map(ActivitiesNotification::getUserId).collect(Collectors.toSet())).stream()
+                    .collect(Collectors.toMap(NotificationPreference::getUserId, Function.identity()));
+
+            List<NotificationOutbox> outboxEntries = new ArrayList<>();
+            Set<UUID> requeuedDigests = new HashSet<>();
+            for(ActivitiesNotification notification : due){
+                NotificationPreference notificationPreference = preferences.get(notification.getUserId());
+                notification.setNextAttemptAt(null);
+                if(notificationPreference == null){
+                    notification.setStatus(NotificationStatus.DEAD);
+                    continue;
+                }
+                //a failed digest is retried as one email again, not as one per notification
+                if(notification.getDigestId() != null){
+                    if(requeuedDigests.add(notification.getDigestId())){
+                        activitiesNotificationRepository.requeueDigest(notification.getDigestId());
+                        outboxEntries.add(NotificationOutbox.builder()
+                                .notificationId(notification.getDigestId())
+                                .contactInfo(notificationPreference.getContactInfo())
+                                .createdOn(LocalDateTime.now())
+                                .digest(true)
+                                .build());
+                    }
+                    notification.setStatus(NotificationStatus.PENDING);
+                    continue;
+                }
+                notification.setStatus(NotificationStatus.PENDING);
+                outboxEntries.add(NotificationOutbox.builder()
+                        .notificationId(notification.getId())
+                        .contactInfo(notificationPreference.getContactInfo())
+                        .createdOn(LocalDateTime.now())
+                        .build());
+            }
+            notificationOutboxRepository.saveAll(outboxEntries);
+            return outboxEntries.size();
+        });
+
+        if(requeued != null && requeued > 0){
+            log.info("Requeued "+requeued+" failed notifications for another attempt.");
+        }
+    }
+}
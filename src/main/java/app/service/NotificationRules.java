@@ -0,0 +1,92 @@
+package app.service;
+
+import app.model.ActivityType;
+import app.model.ChannelType;
+import app.model.NotificationPreference;
+import app.web.dto.ActivitiesNotificationRequest;
+import lombok.experimental.UtilityClass;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.UUID;
+
+@UtilityClass
+public class NotificationRules {
+    private static final int MAX_TEXT_LENGTH = 255;
+
+    //what the request DTO declares, for the batch, the broker and the write-behind path that bean validation does not cover
+    public static void checkValid(ActivitiesNotificationRequest request){
+        if(request.getUserId() == null || request.getType() == null){
+            throw new IllegalArgumentException("Notification needs a user id and a type!");
+        }
+        checkText("subject", request.getSubject());
+        checkText("message", request.getMessage());
+    }
+
+    public static void checkAllowed(NotificationPreference notificationPreference, ActivitiesNotificationRequest request){
+        UUID userId = request.getUserId();
+
+        if(!notificationPreference.isProductEnabled() && !notificationPreference.isReservationEnabled()){
+            throw new IllegalArgumentException("User with id "+userId+" does not allow notifications!");
+        }
+
+        if(request.getType() == ActivityType.RESERVATION && !notificationPreference.isReservationEnabled()){
+            throw new IllegalArgumentException("User with id "+userId+" does not allow notifications for reservations!");
+        }
+
+        if(request.getType() == ActivityType.BUYING_PRODUCT && !notificationPreference.isProductEnabled()){
+            throw new IllegalArgumentException("User with id "+userId+" does not allow notifications for buying products!");
+        }
+    }
+
+    private static void checkText(String field, String value){
+        if(value == null || value.isBlank()){
+            throw new IllegalArgumentException("Notification "+field+" must not be blank!");
+        }
+        if(value.length() > MAX_TEXT_LENGTH){
+            throw new IllegalArgumentException("Notification "+field+" is longer than "+MAX_TEXT_LENGTH+" characters!");
+        }
+    }
+
+    //what an idempotency key is bound to, every field is length prefixed so no two different requests read the same
+    public static String requestHash(ActivitiesNotificationRequest request){
+        StringBuilder canonical = new StringBuilder();
+        for(Object field : new Object[]{request.getUserId(), request.getType(), request.getSubject(), request.getMessage(), request.getSendAt()}){
+            String value = String.valueOf(field);
+            canonical.append(value.length()).append(':').append(value);
+        }
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(canonical.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available!", e);
+        }
+    }
+
+    //a sendAt that has already passed is sent right away
+    public static boolean isScheduled(ActivitiesNotificationRequest request){
+        return request.getSendAt() != null && request.getSendAt().isAfter(LocalDateTime.now());
+    }
+
+    public static Duration digestWindow(NotificationPreference notificationPreference, ActivityType type){
+        int seconds = type == ActivityType.RESERVATION ? notificationPreference.getReservationDigestSeconds() : notificationPreference.getProductDigestSeconds();
+        return Duration.ofSeconds(Math.max(0, seconds));
+    }
+
+    //the channels a notification goes out on besides email and the in-app feed, which every notification gets
+    public static Map<ChannelType, String> channelAddresses(NotificationPreference notificationPreference){
+        Map<ChannelType, String> addresses = new EnumMap<>(ChannelType.class);
+        if(notificationPreference.getWebhookUrl() != null && !notificationPreference.getWebhookUrl().isBlank()){
+            addresses.put(ChannelType.WEBHOOK, notificationPreference.getWebhookUrl());
+        }
+        if(notificationPreference.getPhoneNumber() != null && !notificationPreference.getPhoneNumber().isBlank()){
+            addresses.put(ChannelType.SMS, notificationPreference.getPhoneNumber());
+        }
+        return addresses;
+    }
+}
@@ -0,0 +1,12 @@
+package app.service;
+
+import app.model.ScheduledNotification;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+//published inside the scheduling transaction, the timer only takes the notification on once it is committed
+@Data
+@AllArgsConstructor
+public class NotificationScheduledEvent {
+    private ScheduledNotification scheduledNotification;
+}
@@ -1,124 +1,382 @@
 package app.service;
 
+import app.exception.BatchTooLargeException;
+import app.exception.NotificationQueueFullException;
 import app.model.ActivitiesNotification;
-import app.model.ActivityType;
+import app.model.ChannelType;
+import app.model.NotificationDelivery;
+import app.model.NotificationHistoryEntry;
+import app.model.NotificationIdempotencyKey;
+import app.model.NotificationOutbox;
 import app.model.NotificationPreference;
 import app.model.NotificationStatus;
+import app.model.ScheduledNotification;
 import app.repository.ActivitiesNotificationRepository;
+import app.repository.NotificationDeliveryRepository;
+import app.repository.NotificationIdempotencyKeyRepository;
+import app.repository.NotificationOutboxRepository;
 import app.repository.NotificationPreferenceRepository;
+import app.repository.ScheduledNotificationRepository;
 import app.web.dto.ActivitiesNotificationRequest;
+import app.web.dto.HistoryCursor;
 import app.web.dto.UpsertNotificationPreference;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.mail.MailSender;
-import org.springframework.mail.SimpleMailMessage;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.List;
-import java.util.Optional;
-import java.util.UUID;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Slf4j
 @Service
 public class NotificationService {
+    private static final int VISIBILITY_UPDATE_CHUNK_SIZE = 5000;
+    private static final int MAX_BATCH_SIZE = 1000;
+
     private final NotificationPreferenceRepository notificationPreferenceRepository;
     private final ActivitiesNotificationRepository activitiesNotificationRepository;
-    private final MailSender mailSender;
+    private final NotificationOutboxRepository notificationOutboxRepository;
+    private final NotificationDeliveryRepository notificationDeliveryRepository;
+    private final NotificationIdempotencyKeyRepository notificationIdempotencyKeyRepository;
+    private final ScheduledNotificationRepository scheduledNotificationRepository;
+    private final NotificationDispatcher notificationDispatcher;
+    private final NotificationMetrics notificationMetrics;
+    private final UnreadNotificationCounter unreadNotificationCounter;
+    private final ApplicationEventPublisher applicationEventPublisher;
+    private final NotificationWriteBehindBuffer notificationWriteBehindBuffer;
 
     @Autowired
-    public NotificationService(NotificationPreferenceRepository notificationPreferenceRepository, ActivitiesNotificationRepository activitiesNotificationRepository, MailSender mailSender) {
+    public NotificationService(NotificationPreferenceRepository notificationPreferenceRepository, ActivitiesNotificationRepository activitiesNotificationRepository, NotificationOutboxRepository notificationOutboxRepository, NotificationDeliveryRepository notificationDeliveryRepository, NotificationIdempotencyKeyRepository notificationIdempotencyKeyRepository, ScheduledNotificationRepository scheduledNotificationRepository, NotificationDispatcher notificationDispatcher, NotificationMetrics notificationMetrics, UnreadNotificationCounter unreadNotificationCounter, ApplicationEventPublisher applicationEventPublisher, NotificationWriteBehindBuffer notificationWriteBehindBuffer) {
         this.notificationPreferenceRepository = notificationPreferenceRepository;
         this.activitiesNotificationRepository = activitiesNotificationRepository;
-        this.mailSender = mailSender;
+        this.notificationOutboxRepository = notificationOutboxRepository;
+        this.notificationDeliveryRepository = notificationDeliveryRepository;
+        this.notificationIdempotencyKeyRepository = notificationIdempotencyKeyRepository;
+        this.scheduledNotificationRepository = scheduledNotificationRepository;
+        this.notificationDispatcher = notificationDispatcher;
+        this.notificationMetrics = notificationMetrics;
+        this.unreadNotificationCounter = unreadNotificationCounter;
+        this.applicationEventPublisher = applicationEventPublisher;
+        this.notificationWriteBehindBuffer = notificationWriteBehindBuffer;
     }
 
     public NotificationPreference upsertPreference(UpsertNotificationPreference upsertNotificationPreference) {
-        Optional<NotificationPreference> optional = notificationPreferenceRepository.findByUserId(upsertNotificationPreference.getUserId());
-
-        if(optional.isPresent()){
-            NotificationPreference notificationPreference = optional.get();
-            notificationPreference.setUserId(upsertNotificationPreference.getUserId());
-            notificationPreference.setReservationEnabled(upsertNotificationPreference.isReservationEnabled());
-            notificationPreference.setProductEnabled(upsertNotificationPreference.isProductEnabled());
-            notificationPreference.setContactInfo(upsertNotificationPreference.getContactInfo());
-            notificationPreference.setUpdatedOn(LocalDateTime.now());
-            return notificationPreferenceRepository.save(notificationPreference);
-        }
+        //the lookup may return the cached instance that sends read concurrently, it is never changed in place,
+        //the saved copy replaces it in the cache and a failed save leaves the cache as it was
+        Optional<NotificationPreference> existing = notificationPreferenceRepository.findByUserId(upsertNotificationPreference.getUserId());
+        LocalDateTime now = LocalDateTime.now();
 
         NotificationPreference notificationPreference = NotificationPreference.builder()
+                .id(existing.map(NotificationPreference::getId).orElse(null))
                 .userId(upsertNotificationPreference.getUserId())
                 .reservationEnabled(upsertNotificationPreference.isReservationEnabled())
                 .productEnabled(upsertNotificationPreference.isProductEnabled())
+                .reservationDigestSeconds(upsertNotificationPreference.getReservationDigestSeconds())
+                .productDigestSeconds(upsertNotificationPreference.getProductDigestSeconds())
                 .contactInfo(upsertNotificationPreference.getContactInfo())
-                .createdOn(LocalDateTime.now())
-                .updatedOn(LocalDateTime.now())
+                .webhookUrl(upsertNotificationPreference.getWebhookUrl())
+                .phoneNumber(upsertNotificationPreference.getPhoneNumber())
+                .createdOn(existing.map(NotificationPreference::getCreatedOn).orElse(now))
+                .updatedOn(now)
                 .build();
         return notificationPreferenceRepository.save(notificationPreference);
     }
 
+    //read-only transactions are served by a replica when replicas are configured, sends call this inside their own transaction
+    @Transactional(readOnly = true)
     public NotificationPreference getNotificationPreference(UUID userId) {
         return notificationPreferenceRepository.findByUserId(userId).orElseThrow(() -> new NullPointerException("Notification preference for user with id "+userId+" does not exist!"));
     }
 
+    @Transactional
     public ActivitiesNotification sendNotification(ActivitiesNotificationRequest request){
-        UUID userId = request.getUserId();
-        NotificationPreference notificationPreference = getNotificationPreference(userId);
+        return sendNotification(request, null);
+    }
+
+    @Transactional
+    public ActivitiesNotification sendNotification(ActivitiesNotificationRequest request, String idempotencyKey){
+        NotificationRules.checkValid(request);
+        return notificationMetrics.timeSend(request.getType(), () -> {
+            NotificationPreference notificationPreference = notificationMetrics.timePreferenceLookup(() -> getNotificationPreference(request.getUserId()));
+            NotificationRules.checkAllowed(notificationPreference, request);
+
+            if(notificationDispatcher.isSaturated()){
+                throw new NotificationQueueFullException("Notification queue is full, try again later!");
+            }
+
+            //a duplicate idempotency key has to fail in the insert, so keyed sends always write right away
+            if(idempotencyKey == null && notificationWriteBehindBuffer.isEnabled()){
+                ActivitiesNotification queuedNotification = notificationMetrics.timeDatabaseSave(() ->
+                        notificationWriteBehindBuffer.accept(buildPendingNotification(request, notificationPreference), notificationPreference.getContactInfo(), NotificationRules.channelAddresses(notificationPreference)));
+                notificationMetrics.incrementAccepted(request.getType());
+                return queuedNotification;
+            }
+
+            ActivitiesNotification savedNotification = notificationMetrics.timeDatabaseSave(() -> {
+                ActivitiesNotification notification = activitiesNotificationRepository.save(buildPendingNotification(request, notificationPreference));
+                //written in the same transaction as the notification, the outbox relay delivers it after commit
+                if(notification.getDigestDueAt() == null){
+                    notificationOutboxRepository.save(buildOutboxEntry(notification, notificationPreference));
+                }
+                List<NotificationOutbox> channelEntries = new ArrayList<>();
+                List<NotificationDelivery> deliveries = new ArrayList<>();
+                addChannelDeliveries(notification, notificationPreference, channelEntries, deliveries);
+                if(!deliveries.isEmpty()){
+                    notificationOutboxRepository.saveAll(channelEntries);
+                    notificationDeliveryRepository.saveAll(deliveries);
+                }
+                if(idempotencyKey != null){
+                    saveIdempotencyKey(request, idempotencyKey, notification.getId());
+                }
+                return notification;
+            });
+
+            notificationMetrics.incrementAccepted(request.getType());
+            unreadNotificationCounter.add(request.getUserId(), 1);
+            applicationEventPublisher.publishEvent(new NotificationsAcceptedEvent(List.of(savedNotification)));
+            return savedNotification;
+        });
+    }
+
+    //checked against the preference now as well, so a request that could never be sent is rejected right away
+    @Transactional
+    public ScheduledNotification scheduleNotification(ActivitiesNotificationRequest request){
+        return scheduleNotification(request, null);
+    }
+
+    @Transactional
+    public ScheduledNotification scheduleNotification(ActivitiesNotificationRequest request, String idempotencyKey){
+        NotificationRules.checkValid(request);
+        NotificationPreference notificationPreference = getNotificationPreference(request.getUserId());
+        NotificationRules.checkAllowed(notificationPreference, request);
 
-        if(!notificationPreference.isProductEnabled() && !notificationPreference.isReservationEnabled()){
-            throw new IllegalArgumentException("User with id "+userId+" does not allow notifications!");
-            //return null;
+        ScheduledNotification scheduledNotification = scheduledNotificationRepository.save(ScheduledNotification.builder()
+                .userId(request.getUserId())
+                .type(request.getType())
+                .subject(request.getSubject())
+                .message(request.getMessage())
+                .sendAt(request.getSendAt())
+                .createdOn(LocalDateTime.now())
+                .idempotencyKey(idempotencyKey)
+                .build());
+        if(idempotencyKey != null){
+            saveIdempotencyKey(request, idempotencyKey, scheduledNotification.getId());
         }
+        applicationEventPublisher.publishEvent(new NotificationScheduledEvent(scheduledNotification));
+        return scheduledNotification;
+    }
+
+    //zero once it has been sent, the timer skips a row that is gone
+    @Transactional
+    public int cancelScheduledNotification(UUID userId, UUID id) {
+        return scheduledNotificationRepository.deleteByIdAndUserId(id, userId);
+    }
 
-        if(request.getType() == ActivityType.RESERVATION && !notificationPreference.isReservationEnabled()){
-            //return null;
-            throw new IllegalArgumentException("User with id "+userId+" does not allow notifications for reservations!");
+    @Transactional
+    public List<BatchSendResult> sendNotifications(List<ActivitiesNotificationRequest> requests){
+        if(requests.size() > MAX_BATCH_SIZE){
+            throw new BatchTooLargeException("Batch of "+requests.size()+" notifications exceeds the limit of "+MAX_BATCH_SIZE+"!");
         }
 
-        if(request.getType() == ActivityType.BUYING_PRODUCT && !notificationPreference.isProductEnabled()){
-            throw new IllegalArgumentException("User with id "+userId+" does not allow notifications for buying products!");
-            //return null;
+        if(notificationDispatcher.isSaturated()){
+            throw new NotificationQueueFullException("Notification queue is full, try again later!");
         }
 
-        SimpleMailMessage message = new SimpleMailMessage();
-        message.setTo(notificationPreference.getContactInfo());
-        message.setSubject(request.getSubject());
-        message.setText(request.getMessage());
+        Set<UUID> userIds = requests.stream().map(ActivitiesNotificationRequest::getUserId).filter(Objects::nonNull).collect(Collectors.toSet());
+        Map<UUID, NotificationPreference> preferences = notificationMetrics.timePreferenceLookup(() -> notificationPreferenceRepository.findAllByUserIdIn(userIds)).stream()
+                .collect(Collectors.toMap(NotificationPreference::getUserId, Function.identity()));
 
-        ActivitiesNotification notification = ActivitiesNotification.builder()
-                .userId(userId)
+        List<BatchSendResult> results = new ArrayList<>(requests.size());
+        List<ActivitiesNotification> notifications = new ArrayList<>();
+        List<NotificationPreference> notificationPreferences = new ArrayList<>();
+        for(int index = 0; index < requests.size(); index++){
+            ActivitiesNotificationRequest request = requests.get(index);
+            try {
+                NotificationRules.checkValid(request);
+                NotificationPreference notificationPreference = preferences.get(request.getUserId());
+                if(notificationPreference == null){
+                    throw new NullPointerException("Notification preference for user with id "+request.getUserId()+" does not exist!");
+                }
+                NotificationRules.checkAllowed(notificationPreference, request);
+                if(NotificationRules.isScheduled(request)){
+                    throw new IllegalArgumentException("Notifications with a sendAt have to be sent one at a time!");
+                }
+
+                ActivitiesNotification notification = buildPendingNotification(request, notificationPreference);
+                notifications.add(notification);
+                notificationPreferences.add(notificationPreference);
+                results.add(BatchSendResult.builder().index(index).notification(notification).build());
+            } catch (RuntimeException e) {
+                results.add(BatchSendResult.builder().index(index).error(e.getMessage()).build());
+            }
+        }
+
+        //ids are generated client side, so hibernate groups these into JDBC batches
+        notificationMetrics.timeDatabaseSave(() -> {
+            activitiesNotificationRepository.saveAll(notifications);
+            List<NotificationOutbox> outboxEntries = new ArrayList<>(notifications.size());
+            List<NotificationDelivery> deliveries = new ArrayList<>();
+            for(int i = 0; i < notifications.size(); i++){
+                addChannelDeliveries(notifications.get(i), notificationPreferences.get(i), outboxEntries, deliveries);
+                //held notifications get their email outbox entry when the digest is flushed
+                if(notifications.get(i).getDigestDueAt() != null){
+                    continue;
+                }
+                outboxEntries.add(buildOutboxEntry(notifications.get(i), notificationPreferences.get(i)));
+            }
+            if(!deliveries.isEmpty()){
+                notificationDeliveryRepository.saveAll(deliveries);
+            }
+            return notificationOutboxRepository.saveAll(outboxEntries);
+        });
+        notifications.forEach(notification -> notificationMetrics.incrementAccepted(notification.getType()));
+        notifications.stream()
+                .collect(Collectors.groupingBy(ActivitiesNotification::getUserId, Collectors.counting()))
+                .forEach(unreadNotificationCounter::add);
+        if(!notifications.isEmpty()){
+            applicationEventPublisher.publishEvent(new NotificationsAcceptedEvent(notifications));
+        }
+
+        return results;
+    }
+
+    //flushed right away so a duplicate key fails here and rolls back what was saved with it
+    private void saveIdempotencyKey(ActivitiesNotificationRequest request, String idempotencyKey, UUID notificationId) {
+        notificationIdempotencyKeyRepository.saveAndFlush(NotificationIdempotencyKey.builder()
+                .userId(request.getUserId())
+                .idempotencyKey(idempotencyKey)
+                .notificationId(notificationId)
+                .requestHash(NotificationRules.requestHash(request))
+                .createdOn(LocalDateTime.now())
+                .build());
+    }
+
+    private ActivitiesNotification buildPendingNotification(ActivitiesNotificationRequest request, NotificationPreference notificationPreference){
+        Duration digestWindow = NotificationRules.digestWindow(notificationPreference, request.getType());
+        return ActivitiesNotification.builder()
+                .userId(request.getUserId())
                 .type(request.getType())
                 .subject(request.getSubject())
                 .message(request.getMessage())
-                .status(NotificationStatus.SUCCEEDED)
+                .status(NotificationStatus.PENDING)
                 .createdOn(LocalDateTime.now())
                 .isHidden(false)
+                .digestDueAt(digestWindow.isZero() ? null : LocalDateTime.now().plus(digestWindow))
                 .build();
+    }
 
-        try {
-            mailSender.send(message);
-        } catch (Exception e) {
-            notification.setStatus(NotificationStatus.FAILED);
-            log.warn("There was an issue sending email to "+notificationPreference.getContactInfo()+" due to "+e.getMessage()+"!");
-        }
-        return activitiesNotificationRepository.save(notification);
+    private NotificationOutbox buildOutboxEntry(ActivitiesNotification notification, NotificationPreference notificationPreference){
+        return NotificationOutbox.builder()
+                .notificationId(notification.getId())
+                .contactInfo(notificationPreference.getContactInfo())
+                .createdOn(LocalDateTime.now())
+                .build();
+    }
+
+    //a digest only holds back the email, every other channel is delivered right away and in parallel with it
+    private void addChannelDeliveries(ActivitiesNotification notification, NotificationPreference notificationPreference, List<NotificationOutbox> outboxEntries, List<NotificationDelivery> deliveries){
+        LocalDateTime now = LocalDateTime.now();
+        NotificationRules.channelAddresses(notificationPreference).forEach((channel, address) -> {
+            outboxEntries.add(NotificationOutbox.builder()
+                    .notificationId(notification.getId())
+                    .contactInfo(address)
+                    .channel(channel)
+                    .createdOn(now)
+                    .build());
+            deliveries.add(NotificationDelivery.builder()
+                    .notificationId(notification.getId())
+                    .channel(channel)
+                    .status(NotificationStatus.PENDING)
+                    .updatedOn(now)
+                    .build());
+        });
     }
 
-    public List<ActivitiesNotification> getHistory(UUID userId) {
-        return this.activitiesNotificationRepository.findAllByUserIdAndIsHiddenOrderByCreatedOnDesc(userId, false);
+    //email state is kept on the notification and the in-app feed has it from the moment it was accepted
+    @Transactional(readOnly = true)
+    public List<NotificationDelivery> getDeliveries(UUID userId, UUID notificationId) {
+        ActivitiesNotification notification = activitiesNotificationRepository.findById(notificationId)
+                .filter(found -> found.getUserId().equals(userId))
+                .orElseThrow(() -> new NullPointerException("Notification with id "+notificationId+" does not exist for user with id "+userId+"!"));
+
+        List<NotificationDelivery> deliveries = new ArrayList<>();
+        deliveries.add(NotificationDelivery.builder()
+                .notificationId(notificationId)
+                .channel(ChannelType.IN_APP)
+                .status(NotificationStatus.SUCCEEDED)
+                .build());
+        deliveries.add(NotificationDelivery.builder()
+                .notificationId(notificationId)
+                .channel(ChannelType.EMAIL)
+                .status(notification.getStatus())
+                .attemptCount(notification.getAttemptCount())
+                .build());
+        deliveries.addAll(notificationDeliveryRepository.findAllByNotificationIdOrderByChannel(notificationId));
+        return deliveries;
     }
 
-    public void setAllNotificationsIsHiddenToTrue(UUID userId) {
-        for(ActivitiesNotification notification : activitiesNotificationRepository.findAllByUserId(userId)){
-            notification.setHidden(true);
-            activitiesNotificationRepository.save(notification);
+    //projections are never managed, so there is nothing to dirty check or flush
+    @Transactional(readOnly = true)
+    public List<NotificationHistoryEntry> getHistory(UUID userId, HistoryCursor cursor, int limit) {
+        if(cursor == null){
+            return this.activitiesNotificationRepository.findHistoryFirstPage(userId, Limit.of(limit));
         }
+        return this.activitiesNotificationRepository.findHistoryPageAfter(userId, cursor.getCreatedOn(), cursor.getId(), Limit.of(limit));
     }
 
-    public void setAllNotificationsIsHiddenToFalse(UUID userId) {
-        for(ActivitiesNotification notification : activitiesNotificationRepository.findAllByUserId(userId)){
-            notification.setHidden(false);
-            activitiesNotificationRepository.save(notification);
+    //oldest first, what a client reconnecting with its last seen position has missed
+    //read on the primary, a lagging replica would drop what was pushed while the client was away for good
+    @Transactional
+    public List<NotificationHistoryEntry> getHistorySince(UUID userId, HistoryCursor cursor, int limit) {
+        return this.activitiesNotificationRepository.findHistorySince(userId, cursor.getCreatedOn(), cursor.getId(), Limit.of(limit));
+    }
+
+    @Transactional(readOnly = true)
+    public void streamHistory(UUID userId, Consumer<NotificationHistoryEntry> consumer) {
+        //rows are plain projections, the persistence context stays empty however long the history is
+        try (Stream<NotificationHistoryEntry> history = activitiesNotificationRepository.streamHistory(userId)) {
+            history.forEach(consumer);
         }
     }
+
+    public long getUnreadCount(UUID userId) {
+        return unreadNotificationCounter.get(userId);
+    }
+
+    //only visible notifications are marked, hidden ones keep their state until they are shown again
+    @Transactional
+    public int markAsRead(UUID userId, Collection<UUID> ids) {
+        int updated = ids == null ? activitiesNotificationRepository.markAllRead(userId) : ids.isEmpty() ? 0 : activitiesNotificationRepository.markRead(userId, ids);
+        unreadNotificationCounter.add(userId, -updated);
+        return updated;
+    }
+
+    public int setAllNotificationsIsHiddenToTrue(UUID userId) {
+        return updateIsHidden(userId, true);
+    }
+
+    public int setAllNotificationsIsHiddenToFalse(UUID userId) {
+        return updateIsHidden(userId, false);
+    }
+
+    private int updateIsHidden(UUID userId, boolean isHidden) {
+        int updated = 0;
+        //every chunk is its own short UPDATE, changed rows drop out of the next one, a short chunk was the last
+        int chunk;
+        do {
+            chunk = activitiesNotificationRepository.updateIsHiddenChunk(userId, !isHidden, isHidden, VISIBILITY_UPDATE_CHUNK_SIZE);
+            updated += chunk;
+        } while(chunk == VISIBILITY_UPDATE_CHUNK_SIZE);
+        //which of the changed rows were unread is not known here, the next count reads it from the table
+        unreadNotificationCounter.invalidate(userId);
+        return updated;
+    }
 }
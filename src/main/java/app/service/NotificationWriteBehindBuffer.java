@@ -0,0 +1,410 @@
+package app.service;
+
+import app.exception.NotificationQueueFullException;
+import app.model.ActivitiesNotification;
+import app.model.ChannelType;
+import app.model.NotificationStatus;
+import app.model.TimeOrderedUuidGenerator;
+import app.repository.ActivitiesNotificationRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * Write-behind path for single sends. A notification is acknowledged once it is in the journal, and a dedicated writer
+ * inserts the queued rows with their outbox entries as one JDBC batch every flush interval or max batch size rows.
+ * A journal segment is deleted only after its rows are committed, what is left at startup is written before anything else.
+ * Rows the database rejects for their content are moved to the journal's dead-letter file, so they never hold up the rest.
+ */
+@Slf4j
+@Component
+public class NotificationWriteBehindBuffer {
+    private static final String INSERT_NOTIFICATION = "INSERT INTO activities_notification " +
+            "(id, user_id, type, subject, message, status, created_on, is_hidden, is_read, attempt_count, next_attempt_at, digest_due_at, digest_id) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_OUTBOX = "INSERT INTO notification_outbox (id, notification_id, contact_info, created_on, locked_until, digest, channel) " +
+            "VALUES (?, ?, ?, ?, NULL, FALSE, ?)";
+    private static final String INSERT_DELIVERY = "INSERT INTO notification_delivery (id, notification_id, channel, status, attempt_count, updated_on) " +
+            "VALUES (?, ?, ?, ?, 0, ?)";
+    private static final int RECOVERY_CHUNK_SIZE = 1000;
+
+    private final boolean enabled;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ActivitiesNotificationRepository activitiesNotificationRepository;
+    private final UnreadNotificationCounter unreadNotificationCounter;
+    private final ApplicationEventPublisher applicationEventPublisher;
+    private final ObjectMapper objectMapper;
+    private final Path journalDirectory;
+    private final boolean fsync;
+    private final int maxBatchSize;
+    private final long flushIntervalMillis;
+    private final int capacity;
+
+    //the journal and the queue always change together under this lock, so a rotated segment holds exactly the drained rows
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition batchReady = lock.newCondition();
+    private List<WriteBehindEntry> queue = new ArrayList<>();
+    private NotificationJournal journal;
+    private Thread writer;
+    private volatile boolean running;
+
+    @Autowired
+    public NotificationWriteBehindBuffer(@Value("${notifications.write-behind.enabled:false}") boolean enabled,
+                                         JdbcTemplate jdbcTemplate,
+                                         PlatformTransactionManager transactionManager,
+                                         ActivitiesNotificationRepository activitiesNotificationRepository,
+                                         UnreadNotificationCounter unreadNotificationCounter,
+                                         ApplicationEventPublisher applicationEventPublisher,
+                                         ObjectMapper objectMapper,
+                                         @Value("${notifications.write-behind.journal-dir:journal}") Path journalDirectory,
+                                         @Value("${notifications.write-behind.journal-fsync:true}") boolean fsync,
+                                         @Value("${notifications.write-behind.max-batch-size:500}") int maxBatchSize,
+                                         @Value("${notifications.write-behind.flush-interval-ms:50}") long flushIntervalMillis,
+                                         @Value("${notifications.write-behind.capacity:10000}") int capacity) {
+        this.enabled = enabled;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.activitiesNotificationRepository = activitiesNotificationRepository;
+        this.unreadNotificationCounter = unreadNotificationCounter;
+        this.applicationEventPublisher = applicationEventPublisher;
+        this.objectMapper = objectMapper;
+        this.journalDirectory = journalDirectory;
+        this.fsync = fsync;
+        this.maxBatchSize = maxBatchSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.capacity = capacity;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if(!enabled){
+            return;
+        }
+        journal = new NotificationJournal(journalDirectory, fsync);
+        recover();
+
+        running = true;
+        writer = new Thread(this::runWriter, "notification-writer");
+        writer.start();
+        log.info("Write-behind of notifications started, journal in "+journalDirectory.toAbsolutePath()+".");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public ActivitiesNotification accept(ActivitiesNotification notification, String contactInfo, Map<ChannelType, String> channelAddresses) {
+        notification.setId(TimeOrderedUuidGenerator.next());
+        //held digest notifications get their email outbox entry when the digest is flushed
+        WriteBehindEntry entry = new WriteBehindEntry(notification, notification.getDigestDueAt() == null ? contactInfo : null, channelAddresses);
+        byte[] line = serialize(entry);
+
+        long position;
+        lock.lock();
+        try {
+            if(!running){
+                throw new IllegalStateException("Write-behind of notifications is not running!");
+            }
+            if(queue.size() >= capacity){
+                throw new NotificationQueueFullException("Notification write-behind buffer is full, try again later!");
+            }
+            position = journal.append(line);
+            queue.add(entry);
+            if(queue.size() >= maxBatchSize){
+                batchReady.signal();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not append notification to the journal!", e);
+        } finally {
+            lock.unlock();
+        }
+
+        //outside the lock, so concurrent sends share one fsync instead of taking turns on it
+        //a failed sync still leaves the entry queued, the caller only learns it was not acknowledged
+        try {
+            journal.sync(position);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not sync the notification journal!", e);
+        }
+        return notification;
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException, IOException {
+        if(!enabled || writer == null){
+            return;
+        }
+        lock.lock();
+        try {
+            running = false;
+            batchReady.signal();
+        } finally {
+            lock.unlock();
+        }
+        //the writer drains what is queued before it exits
+        writer.join();
+        journal.close();
+    }
+
+    private void runWriter() {
+        while(true){
+            Batch batch;
+            try {
+                batch = nextBatch();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException e) {
+                log.error("Could not rotate the notification journal: "+e.getMessage()+"!");
+                if(!pause(flushIntervalMillis)){
+                    return;
+                }
+                continue;
+            }
+            if(batch == null){
+                if(!running){
+                    return;
+                }
+                continue;
+            }
+            writeUntilCommitted(batch);
+        }
+    }
+
+    private Batch nextBatch() throws InterruptedException, IOException {
+        lock.lock();
+        try {
+            if(running && queue.size() < maxBatchSize){
+                batchReady.await(flushIntervalMillis, TimeUnit.MILLISECONDS);
+            }
+            if(queue.isEmpty()){
+                return null;
+            }
+            Path segment = journal.rotate();
+            List<WriteBehindEntry> entries = queue;
+            queue = new ArrayList<>();
+            return new Batch(entries, segment);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void writeUntilCommitted(Batch batch) {
+        long backoffMillis = flushIntervalMillis;
+        boolean retrying = false;
+        while(true){
+            try {
+                //part of the batch may have been committed before a failure, those rows are skipped by id
+                writeIsolatingRejected(retrying ? unwritten(batch.getEntries()) : batch.getEntries());
+                NotificationJournal.delete(batch.getSegment());
+                return;
+            } catch (IOException e) {
+                //the rows are committed, a segment left behind is skipped by id at the next start
+                log.warn("Could not delete journal segment "+batch.getSegment()+": "+e.getMessage());
+                return;
+            } catch (RuntimeException e) {
+                log.error("Could not write "+batch.getEntries().size()+" notifications, retrying: "+e.getMessage()+"!");
+            }
+            retrying = true;
+            if(!running){
+                log.warn("Left "+batch.getEntries().size()+" notifications in journal segment "+batch.getSegment()+" for the next start.");
+                return;
+            }
+            if(!pause(backoffMillis)){
+                return;
+            }
+            backoffMillis = Math.min(backoffMillis * 2, 30_000);
+        }
+    }
+
+    //a row rejected for its content fails every retry, halving the batch narrows it down without giving up the others
+    //anything else, like the database being unreachable, is thrown and the whole batch retried
+    private void writeIsolatingRejected(List<WriteBehindEntry> entries) {
+        if(entries.isEmpty()){
+            return;
+        }
+        try {
+            write(entries);
+        } catch (DataIntegrityViolationException e) {
+            if(entries.size() == 1){
+                deadLetter(entries.get(0), e);
+                return;
+            }
+            int half = entries.size() / 2;
+            writeIsolatingRejected(entries.subList(0, half));
+            writeIsolatingRejected(entries.subList(half, entries.size()));
+        }
+    }
+
+    private void deadLetter(WriteBehindEntry entry, DataIntegrityViolationException cause) {
+        UUID id = entry.getNotification().getId();
+        try {
+            journal.deadLetter(serialize(entry));
+            log.error("Moved notification "+id+" to "+journal.deadLetterFile()+", the database rejected it: "+cause.getMessage()+"!");
+        } catch (IOException e) {
+            log.error("Dropped notification "+id+" the database rejected, it could not be written to the dead-letter file either: "+e.getMessage()+"!");
+        }
+    }
+
+    //one transaction for the whole batch, rewriteBatchedStatements turns each batch into multi-row INSERTs on MySQL
+    private void write(List<WriteBehindEntry> entries) {
+        List<ActivitiesNotification> notifications = entries.stream().map(WriteBehindEntry::getNotification).toList();
+        List<OutboxRow> outboxRows = new ArrayList<>();
+        for(WriteBehindEntry entry : entries){
+            if(entry.getContactInfo() != null){
+                outboxRows.add(new OutboxRow(entry.getNotification().getId(), ChannelType.EMAIL, entry.getContactInfo()));
+            }
+            if(entry.getChannelAddresses() != null){
+                entry.getChannelAddresses().forEach((channel, address) -> outboxRows.add(new OutboxRow(entry.getNotification().getId(), channel, address)));
+            }
+        }
+        List<OutboxRow> deliveryRows = outboxRows.stream().filter(row -> row.getChannel() != ChannelType.EMAIL).toList();
+        LocalDateTime now = LocalDateTime.now();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate(INSERT_NOTIFICATION, notifications, notifications.size(), (statement, notification) -> {
+                statement.setBytes(1, bytes(notification.getId()));
+                statement.setBytes(2, bytes(notification.getUserId()));
+                statement.setString(3, notification.getType().name());
+                statement.setString(4, notification.getSubject());
+                statement.setString(5, notification.getMessage());
+                statement.setString(6, notification.getStatus().name());
+                statement.setObject(7, notification.getCreatedOn());
+                statement.setBoolean(8, notification.isHidden());
+                statement.setBoolean(9, notification.isRead());
+                statement.setInt(10, notification.getAttemptCount());
+                statement.setObject(11, notification.getNextAttemptAt());
+                statement.setObject(12, notification.getDigestDueAt());
+                statement.setBytes(13, bytes(notification.getDigestId()));
+            });
+            if(!outboxRows.isEmpty()){
+                jdbcTemplate.batchUpdate(INSERT_OUTBOX, outboxRows, outboxRows.size(), (statement, row) -> {
+                    statement.setBytes(1, bytes(TimeOrderedUuidGenerator.next()));
+                    statement.setBytes(2, bytes(row.getNotificationId()));
+                    statement.setString(3, row.getAddress());
+                    statement.setObject(4, now);
+                    statement.setString(5, row.getChannel().name());
+                });
+            }
+            if(!deliveryRows.isEmpty()){
+                jdbcTemplate.batchUpdate(INSERT_DELIVERY, deliveryRows, deliveryRows.size(), (statement, row) -> {
+                    statement.setBytes(1, bytes(TimeOrderedUuidGenerator.next()));
+                    statement.setBytes(2, bytes(row.getNotificationId()));
+                    statement.setString(3, row.getChannel().name());
+                    statement.setString(4, NotificationStatus.PENDING.name());
+                    statement.setObject(5, now);
+                });
+            }
+
+            //both only take effect once this transaction commits
+            notifications.stream()
+                    .collect(Collectors.groupingBy(ActivitiesNotification::getUserId, Collectors.counting()))
+                    .forEach(unreadNotificationCounter::add);
+            applicationEventPublisher.publishEvent(new NotificationsAcceptedEvent(notifications));
+        });
+    }
+
+    //segments left by a crash, rows already written before it are recognised by id and skipped
+    private void recover() throws IOException {
+        for(Path segment : journal.closedSegments()){
+            List<WriteBehindEntry> entries = new ArrayList<>();
+            for(String line : NotificationJournal.readEntries(segment)){
+                try {
+                    entries.add(objectMapper.readValue(line, WriteBehindEntry.class));
+                } catch (JsonProcessingException e) {
+                    log.warn("Skipped unreadable entry in journal segment "+segment+", most likely cut short by a crash!");
+                }
+            }
+
+            List<WriteBehindEntry> missing = unwritten(entries);
+            for(int from = 0; from < missing.size(); from += RECOVERY_CHUNK_SIZE){
+                writeIsolatingRejected(missing.subList(from, Math.min(from + RECOVERY_CHUNK_SIZE, missing.size())));
+            }
+            NotificationJournal.delete(segment);
+            log.info("Recovered "+missing.size()+" notifications from journal segment "+segment+".");
+        }
+    }
+
+    private List<WriteBehindEntry> unwritten(List<WriteBehindEntry> entries) {
+        List<WriteBehindEntry> missing = new ArrayList<>();
+        for(int from = 0; from < entries.size(); from += RECOVERY_CHUNK_SIZE){
+            List<WriteBehindEntry> chunk = entries.subList(from, Math.min(from + RECOVERY_CHUNK_SIZE, entries.size()));
+            Set<UUID> written = new HashSet<>(activitiesNotificationRepository.findExistingIds(chunk.stream().map(entry -> entry.getNotification().getId()).toList()));
+            chunk.stream().filter(entry -> !written.contains(entry.getNotification().getId())).forEach(missing::add);
+        }
+        return missing;
+    }
+
+    private boolean pause(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private byte[] serialize(WriteBehindEntry entry) {
+        try {
+            return objectMapper.writeValueAsBytes(entry);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize notification for the journal!", e);
+        }
+    }
+
+    //the same 16 bytes hibernate stores for a UUID in a BINARY(16) column
+    private static byte[] bytes(UUID uuid) {
+        if(uuid == null){
+            return null;
+        }
+        return ByteBuffer.allocate(16).putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits()).array();
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class Batch {
+        private final List<WriteBehindEntry> entries;
+
+        private final Path segment;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class OutboxRow {
+        private final UUID notificationId;
+
+        private final ChannelType channel;
+
+        private final String address;
+    }
+}
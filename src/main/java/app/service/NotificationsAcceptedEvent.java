@@ -0,0 +1,14 @@
+package app.service;
+
+import app.model.ActivitiesNotification;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+//published inside the sending transaction, listeners that push to clients run after it commits
+@Data
+@AllArgsConstructor
+public class NotificationsAcceptedEvent {
+    private List<ActivitiesNotification> notifications;
+}
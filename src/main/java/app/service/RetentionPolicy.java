@@ -0,0 +1,45 @@
+package app.service;
+
+import app.model.ActivityType;
+import app.model.NotificationStatus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+@Component
+public class RetentionPolicy {
+    //PENDING and FAILED rows are still being worked on, only finished notifications ever expire
+    public static final Set<NotificationStatus> TERMINAL_STATUSES = Set.of(NotificationStatus.SUCCEEDED, NotificationStatus.DEAD);
+
+    private final List<RetentionRule> rules = new ArrayList<>();
+    private final Duration hiddenWindow;
+
+    @Autowired
+    public RetentionPolicy(Environment environment, @Value("${notifications.retention.hidden-days:0}") int hiddenDays) {
+        //notifications.retention.days.<TYPE>.<STATUS> overrides notifications.retention.days.<STATUS>, 0 or missing keeps rows forever
+        for(ActivityType type : ActivityType.values()){
+            for(NotificationStatus status : TERMINAL_STATUSES){
+                int days = environment.getProperty("notifications.retention.days." + type + "." + status, Integer.class,
+                        environment.getProperty("notifications.retention.days." + status, Integer.class, 0));
+                if(days > 0){
+                    rules.add(RetentionRule.builder().type(type).status(status).window(Duration.ofDays(days)).build());
+                }
+            }
+        }
+        this.hiddenWindow = Duration.ofDays(Math.max(0, hiddenDays));
+    }
+
+    public List<RetentionRule> rules() {
+        return rules;
+    }
+
+    public Duration hiddenWindow() {
+        return hiddenWindow;
+    }
+}
@@ -0,0 +1,18 @@
+package app.service;
+
+import app.model.ActivityType;
+import app.model.NotificationStatus;
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.Duration;
+
+@Data
+@Builder
+public class RetentionRule {
+    private ActivityType type;
+
+    private NotificationStatus status;
+
+    private Duration window;
+}
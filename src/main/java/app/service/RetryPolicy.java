@@ -0,0 +1,41 @@
+package app.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+@Component
+public class RetryPolicy {
+    private final int maxAttempts;
+    private final Duration baseDelay;
+    private final Duration maxDelay;
+
+    @Autowired
+    public RetryPolicy(@Value("${notifications.retry.max-attempts:5}") int maxAttempts,
+                       @Value("${notifications.retry.base-delay-seconds:30}") int baseDelaySeconds,
+                       @Value("${notifications.retry.max-delay-seconds:3600}") int maxDelaySeconds) {
+        this.maxAttempts = maxAttempts;
+        this.baseDelay = Duration.ofSeconds(baseDelaySeconds);
+        this.maxDelay = Duration.ofSeconds(maxDelaySeconds);
+    }
+
+    public boolean isExhausted(int attemptCount) {
+        return attemptCount >= maxAttempts;
+    }
+
+    //exponential backoff with equal jitter, so failures from one outage don't all come back in the same second
+    public Duration backoff(int attemptCount) {
+        long exponential = baseDelay.toMillis() << Math.min(Math.max(attemptCount - 1, 0), 20);
+        long capped = Math.min(exponential, maxDelay.toMillis());
+        long half = capped / 2;
+        return Duration.ofMillis(half + ThreadLocalRandom.current().nextLong(half + 1));
+    }
+
+    //spreads notifications parked until the same moment over one base delay, so they don't all come back at once
+    public Duration jitter() {
+        return Duration.ofMillis(ThreadLocalRandom.current().nextLong(baseDelay.toMillis() + 1));
+    }
+}
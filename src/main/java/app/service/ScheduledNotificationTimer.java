@@ -0,0 +1,191 @@
+package app.service;
+
+import app.exception.NotificationQueueFullException;
+import app.exception.RateLimitExceededException;
+import app.model.ActivitiesNotification;
+import app.model.DueScheduledNotification;
+import app.model.ScheduledNotification;
+import app.repository.NotificationIdempotencyKeyRepository;
+import app.repository.ScheduledNotificationRepository;
+import app.web.dto.ActivitiesNotificationRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Sends scheduled notifications at their sendAt. The table is the source of truth, the timer wheel only holds the ids
+ * due within the next window, loaded with a range scan of the send_at index every load interval. Ticking the wheel costs
+ * the same however many notifications are scheduled. A notification is sent in the transaction that deletes its row,
+ * so when several instances have it loaded only the first one sends it and a cancelled one is never sent. The user's
+ * rate limit is taken at send time as well, a user over it has the send put back on the wheel until a token is free.
+ */
+@Slf4j
+@Component
+public class ScheduledNotificationTimer {
+    private final ScheduledNotificationRepository scheduledNotificationRepository;
+    private final NotificationService notificationService;
+    private final NotificationRateLimiter notificationRateLimiter;
+    private final NotificationIdempotencyKeyRepository notificationIdempotencyKeyRepository;
+    private final ThreadPoolTaskExecutor scheduledNotificationExecutor;
+    private final TransactionTemplate transactionTemplate;
+    private final long windowMillis;
+    private final int maxLoaded;
+    private final long retryDelayMillis;
+
+    private final Object lock = new Object();
+    private final HierarchicalTimerWheel<UUID, UUID> wheel;
+    //sendAt up to which every row is in the wheel, notifications scheduled later are left to the next load
+    private LocalDateTime loadedUntil = LocalDateTime.MIN;
+
+    @Autowired
+    public ScheduledNotificationTimer(ScheduledNotificationRepository scheduledNotificationRepository,
+                                      NotificationService notificationService,
+                                      NotificationRateLimiter notificationRateLimiter,
+                                      NotificationIdempotencyKeyRepository notificationIdempotencyKeyRepository,
+                                      @Qualifier("scheduledNotificationExecutor") ThreadPoolTaskExecutor scheduledNotificationExecutor,
+                                      PlatformTransactionManager transactionManager,
+                                      @Value("${notifications.scheduled.tick-ms:100}") long tickMillis,
+                                      @Value("${notifications.scheduled.wheel-size:64}") int wheelSize,
+                                      @Value("${notifications.scheduled.window-seconds:60}") long windowSeconds,
+                                      @Value("${notifications.scheduled.max-loaded:100000}") int maxLoaded,
+                                      @Value("${notifications.scheduled.retry-delay-ms:1000}") long retryDelayMillis) {
+        this.scheduledNotificationRepository = scheduledNotificationRepository;
+        this.notificationService = notificationService;
+        this.notificationRateLimiter = notificationRateLimiter;
+        this.notificationIdempotencyKeyRepository = notificationIdempotencyKeyRepository;
+        this.scheduledNotificationExecutor = scheduledNotificationExecutor;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.windowMillis = windowSeconds * 1000;
+        this.maxLoaded = maxLoaded;
+        this.retryDelayMillis = retryDelayMillis;
+        this.wheel = new HierarchicalTimerWheel<>(tickMillis, wheelSize, System.currentTimeMillis());
+    }
+
+    public int loadedCount() {
+        synchronized (lock) {
+            return wheel.size();
+        }
+    }
+
+    //the first run at startup also picks up whatever came due while no instance was running
+    @Scheduled(fixedDelayString = "${notifications.scheduled.load-interval-ms:10000}")
+    public void loadWindow() {
+        LocalDateTime horizon = LocalDateTime.now().plusNanos(windowMillis * 1_000_000);
+        List<DueScheduledNotification> due = scheduledNotificationRepository.findDueBefore(horizon, Limit.of(maxLoaded));
+
+        List<UUID> overdue = new ArrayList<>();
+        synchronized (lock) {
+            for(DueScheduledNotification notification : due){
+                if(!wheel.contains(notification.getId()) && !wheel.schedule(notification.getId(), epochMillis(notification.getSendAt()), notification.getId())){
+                    overdue.add(notification.getId());
+                }
+            }
+            //a full load may have cut the window short, only what was actually read counts as loaded
+            loadedUntil = due.size() == maxLoaded ? due.get(due.size() - 1).getSendAt() : horizon;
+        }
+        overdue.forEach(this::dispatch);
+    }
+
+    @Scheduled(fixedRateString = "${notifications.scheduled.tick-ms:100}")
+    public void tick() {
+        List<UUID> expired;
+        synchronized (lock) {
+            expired = wheel.advance(System.currentTimeMillis());
+        }
+        expired.forEach(this::dispatch);
+    }
+
+    //later than the loaded window it is left to the load that reaches it
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onNotificationScheduled(NotificationScheduledEvent event) {
+        ScheduledNotification scheduledNotification = event.getScheduledNotification();
+        boolean overdue;
+        synchronized (lock) {
+            if(scheduledNotification.getSendAt().isAfter(loadedUntil)){
+                return;
+            }
+            overdue = !wheel.schedule(scheduledNotification.getId(), epochMillis(scheduledNotification.getSendAt()), scheduledNotification.getId());
+        }
+        if(overdue){
+            dispatch(scheduledNotification.getId());
+        }
+    }
+
+    private void dispatch(UUID id) {
+        try {
+            scheduledNotificationExecutor.execute(() -> send(id));
+        } catch (TaskRejectedException e) {
+            //shutting down, the row is still there for the next start
+            log.warn("Could not hand over scheduled notification "+id+", it is sent after the next load!");
+        }
+    }
+
+    private void send(UUID id) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                Optional<ScheduledNotification> scheduledNotification = scheduledNotificationRepository.findById(id);
+                //cancelled, or already sent by another instance that had it loaded as well
+                if(scheduledNotification.isEmpty()){
+                    return;
+                }
+                if(scheduledNotificationRepository.claim(id) == 0){
+                    return;
+                }
+                //only the instance that claimed the row spends a token, a rejection rolls the claim back for the retry
+                notificationRateLimiter.acquire(scheduledNotification.get().getUserId());
+                ActivitiesNotification notification = notificationService.sendNotification(toRequest(scheduledNotification.get()));
+                //a retry of the original request is answered with the notification that was sent
+                if(scheduledNotification.get().getIdempotencyKey() != null){
+                    notificationIdempotencyKeyRepository.updateNotificationId(scheduledNotification.get().getUserId(), scheduledNotification.get().getIdempotencyKey(), notification.getId());
+                }
+            });
+        } catch (IllegalArgumentException | NullPointerException e) {
+            //the user turned these notifications off or has no preference anymore, the same as a rejected send
+            log.warn("Dropped scheduled notification "+id+" due to "+e.getMessage());
+            transactionTemplate.executeWithoutResult(status -> scheduledNotificationRepository.claim(id));
+        } catch (RateLimitExceededException e) {
+            //never sooner than the usual retry, a wait shorter than a tick would not make it onto the wheel
+            retryLater(id, Math.max(e.getRetryAfter().toMillis(), retryDelayMillis));
+        } catch (NotificationQueueFullException e) {
+            retryLater(id, retryDelayMillis);
+        } catch (RuntimeException e) {
+            log.warn("Could not send scheduled notification "+id+" due to "+e.getMessage()+", retrying!");
+            retryLater(id, retryDelayMillis);
+        }
+    }
+
+    private void retryLater(UUID id, long delayMillis) {
+        synchronized (lock) {
+            wheel.schedule(id, System.currentTimeMillis() + delayMillis, id);
+        }
+    }
+
+    private static ActivitiesNotificationRequest toRequest(ScheduledNotification scheduledNotification) {
+        return ActivitiesNotificationRequest.builder()
+                .userId(scheduledNotification.getUserId())
+                .type(scheduledNotification.getType())
+                .subject(scheduledNotification.getSubject())
+                .message(scheduledNotification.getMessage())
+                .build();
+    }
+
+    private static long epochMillis(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,48 @@
+package app.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A token bucket kept as a single timestamp, the moment it would be full again (the generic cell rate algorithm).
+ * Taking tokens moves the timestamp forward, so acquiring is one compare-and-set and never blocks.
+ */
+final class TokenBucket {
+    private final long nanosPerToken;
+    private final long capacityNanos;
+    private final AtomicLong fullAt;
+
+    TokenBucket(long nanosPerToken, int capacity, long now) {
+        this.nanosPerToken = nanosPerToken;
+        this.capacityNanos = nanosPerToken * capacity;
+        this.fullAt = new AtomicLong(now);
+    }
+
+    //0 when the tokens were taken, otherwise how many nanoseconds until they can be
+    long tryAcquire(int tokens, long now) {
+        while(true){
+            long current = fullAt.get();
+            long next = Math.max(current, now) + tokens * nanosPerToken;
+            //the caller never asks for more than the capacity, so the bucket is never left in debt
+            long wait = next - now - capacityNanos;
+            if(wait > 0){
+                return wait;
+            }
+            if(fullAt.compareAndSet(current, next)){
+                return 0;
+            }
+        }
+    }
+
+    long fullAt() {
+        return fullAt.get();
+    }
+
+    long capacityNanos() {
+        return capacityNanos;
+    }
+
+    //gives back tokens that were taken for a send that was rejected further on
+    void release(int tokens, long now) {
+        fullAt.updateAndGet(current -> Math.max(current - tokens * nanosPerToken, now));
+    }
+}
@@ -0,0 +1,72 @@
+package app.service;
+
+import app.repository.ActivitiesNotificationRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Unread, visible notifications per user, kept in memory and adjusted as notifications are sent and read.
+ * A missing user is counted from the table, and every count is recounted after the ttl, which also picks up
+ * changes made by other instances.
+ */
+@Component
+public class UnreadNotificationCounter {
+    private final ActivitiesNotificationRepository activitiesNotificationRepository;
+    private final Cache<UUID, AtomicLong> counts;
+
+    @Autowired
+    public UnreadNotificationCounter(ActivitiesNotificationRepository activitiesNotificationRepository,
+                                     @Value("${notifications.unread.ttl-seconds:60}") long ttlSeconds,
+                                     @Value("${notifications.unread.cache-size:100000}") long cacheSize) {
+        this.activitiesNotificationRepository = activitiesNotificationRepository;
+        this.counts = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .build();
+    }
+
+    public long get(UUID userId) {
+        return counts.get(userId, id -> new AtomicLong(activitiesNotificationRepository.countUnread(id))).get();
+    }
+
+    //applied once the surrounding transaction commits, a rolled back send never shows up in the badge
+    public void add(UUID userId, long delta) {
+        afterCommit(() -> {
+            AtomicLong count = counts.getIfPresent(userId);
+            //users nobody asked about are not loaded just to be updated
+            if(count != null){
+                count.accumulateAndGet(delta, (current, change) -> Math.max(0, current + change));
+            }
+        });
+    }
+
+    public void invalidate(UUID userId) {
+        afterCommit(() -> counts.invalidate(userId));
+    }
+
+    public void invalidateAll() {
+        afterCommit(counts::invalidateAll);
+    }
+
+    private void afterCommit(Runnable update) {
+        if(!TransactionSynchronizationManager.isSynchronizationActive()){
+            update.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                update.run();
+            }
+        });
+    }
+}
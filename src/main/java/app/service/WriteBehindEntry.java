@@ -0,0 +1,22 @@
+package app.service;
+
+import app.model.ActivitiesNotification;
+import app.model.ChannelType;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+//one journal line, contactInfo is only set when the notification gets an outbox entry
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class WriteBehindEntry {
+    private ActivitiesNotification notification;
+
+    private String contactInfo;
+
+    //addresses on the channels besides email, null in lines journaled before there were any
+    private Map<ChannelType, String> channelAddresses;
+}
@@ -0,0 +1,81 @@
+package app.web;
+
+import app.exception.BatchTooLargeException;
+import app.exception.IdempotencyKeyReusedException;
+import app.exception.IdempotencyKeyTargetGoneException;
+import app.exception.InvalidCursorException;
+import app.exception.InvalidIdempotencyKeyException;
+import app.exception.NotificationQueueFullException;
+import app.exception.RateLimitExceededException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+@Slf4j
+@RestControllerAdvice
+public class ExceptionAdvice {
+
+    @ExceptionHandler(NotificationQueueFullException.class)
+    public ResponseEntity<Void> handleNotificationQueueFull(NotificationQueueFullException exception){
+        log.warn(exception.getMessage());
+        return ResponseEntity
+                .status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .build();
+    }
+
+    @ExceptionHandler(InvalidCursorException.class)
+    public ResponseEntity<Void> handleInvalidCursor(InvalidCursorException exception){
+        log.warn(exception.getMessage());
+        return ResponseEntity
+                .status(HttpStatus.BAD_REQUEST)
+                .build();
+    }
+
+    @ExceptionHandler(BatchTooLargeException.class)
+    public ResponseEntity<Void> handleBatchTooLarge(BatchTooLargeException exception){
+        log.warn(exception.getMessage());
+        return ResponseEntity
+                .status(HttpStatus.PAYLOAD_TOO_LARGE)
+                .build();
+    }
+
+    @ExceptionHandler(InvalidIdempotencyKeyException.class)
+    public ResponseEntity<Void> handleInvalidIdempotencyKey(InvalidIdempotencyKeyException exception){
+        log.warn(exception.getMessage());
+        return ResponseEntity
+                .status(HttpStatus.BAD_REQUEST)
+                .build();
+    }
+
+    @ExceptionHandler(IdempotencyKeyReusedException.class)
+    public ResponseEntity<Void> handleIdempotencyKeyReused(IdempotencyKeyReusedException exception){
+        log.warn(exception.getMessage());
+        return ResponseEntity
+                .status(HttpStatus.UNPROCESSABLE_ENTITY)
+                .build();
+    }
+
+    //the notification the key was used for was cancelled or archived, sending it again would undo that
+    @ExceptionHandler(IdempotencyKeyTargetGoneException.class)
+    public ResponseEntity<Void> handleIdempotencyKeyTargetGone(IdempotencyKeyTargetGoneException exception){
+        log.warn(exception.getMessage());
+        return ResponseEntity
+                .status(HttpStatus.GONE)
+                .build();
+    }
+
+    @ExceptionHandler(RateLimitExceededException.class)
+    public ResponseEntity<Void> handleRateLimitExceeded(RateLimitExceededException exception){
+        log.warn(exception.getMessage());
+        //whole seconds, rounded up so a client waiting exactly this long gets through
+        long retryAfterSeconds = Math.max(1, (exception.getRetryAfter().toMillis() + 999) / 1000);
+        return ResponseEntity
+                .status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                .build();
+    }
+}
@@ -1,18 +1,36 @@
 package app.web;
 
 import app.model.ActivitiesNotification;
+import app.model.NotificationHistoryEntry;
 import app.model.NotificationPreference;
+import app.model.ScheduledNotification;
+import app.service.IdempotencyKeyStore;
+import app.service.NotificationRateLimiter;
+import app.service.NotificationRules;
 import app.service.NotificationService;
 import app.web.dto.ActivitiesNotificationRequest;
 import app.web.dto.ActivitiesNotificationResponse;
+import app.web.dto.BatchNotificationItemResponse;
+import app.web.dto.HistoryCursor;
+import app.web.dto.NotificationCountResponse;
+import app.web.dto.NotificationDeliveryResponse;
 import app.web.dto.NotificationPreferenceResponse;
+import app.web.dto.NotificationsUpdateResponse;
 import app.web.dto.UpsertNotificationPreference;
 import app.web.mapper.DtoMapper;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 import java.util.UUID;
 import java.util.stream.Collectors;
@@ -20,15 +38,30 @@ import java.util.stream.Collectors;
 @RestController
 @RequestMapping("/api/v1/notifications")
 public class NotificationController {
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    static final String LAST_EVENT_ID_HEADER = "Last-Event-ID";
+    private static final int DEFAULT_HISTORY_LIMIT = 50;
+    private static final int MAX_HISTORY_LIMIT = 500;
+
     private final NotificationService notificationService;
+    private final IdempotencyKeyStore idempotencyKeyStore;
+    private final NotificationRateLimiter notificationRateLimiter;
+    private final NotificationStreamRegistry notificationStreamRegistry;
+    private final ObjectMapper objectMapper;
 
     @Autowired
-    public NotificationController(NotificationService notificationService) {
+    public NotificationController(NotificationService notificationService, IdempotencyKeyStore idempotencyKeyStore, NotificationRateLimiter notificationRateLimiter, NotificationStreamRegistry notificationStreamRegistry, ObjectMapper objectMapper) {
         this.notificationService = notificationService;
+        this.idempotencyKeyStore = idempotencyKeyStore;
+        this.notificationRateLimiter = notificationRateLimiter;
+        this.notificationStreamRegistry = notificationStreamRegistry;
+        //the generator must not close the response stream after every row
+        this.objectMapper = objectMapper.copy().configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
     }
 
     @PostMapping("/preferences")
-    public ResponseEntity<NotificationPreferenceResponse> upsertNotificationPreference(@RequestBody UpsertNotificationPreference upsertNotificationPreference){
+    public ResponseEntity<NotificationPreferenceResponse> upsertNotificationPreference(@Valid @RequestBody UpsertNotificationPreference upsertNotificationPreference){
         NotificationPreference notificationPreference = notificationService.upsertPreference(upsertNotificationPreference);
         //entity -> dto
         NotificationPreferenceResponse notificationPreferenceResponse = DtoMapper.fromNotificationPreference(notificationPreference);
@@ -47,37 +80,136 @@ public class NotificationController {
     }
 
     @PostMapping
-    public ResponseEntity<ActivitiesNotificationResponse> sendNotification(@RequestBody ActivitiesNotificationRequest activitiesNotificationRequest){
-        ActivitiesNotification activitiesNotification = notificationService.sendNotification(activitiesNotificationRequest);
+    public ResponseEntity<ActivitiesNotificationResponse> sendNotification(@Valid @RequestBody ActivitiesNotificationRequest activitiesNotificationRequest,
+                                                                           @RequestHeader(name = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey){
+        notificationRateLimiter.acquire(activitiesNotificationRequest.getUserId());
+        //the id of a scheduled notification cancels it until it is sent, then it is delivered under an id of its own
+        if(NotificationRules.isScheduled(activitiesNotificationRequest)){
+            ScheduledNotification scheduledNotification = idempotencyKey == null
+                    ? notificationService.scheduleNotification(activitiesNotificationRequest)
+                    : idempotencyKeyStore.resolveScheduled(activitiesNotificationRequest, idempotencyKey, () -> notificationService.scheduleNotification(activitiesNotificationRequest, idempotencyKey));
+            return ResponseEntity
+                    .status(HttpStatus.ACCEPTED)
+                    .body(DtoMapper.fromScheduledNotification(scheduledNotification));
+        }
+        //a retried request with the same key gets the notification accepted the first time
+        ActivitiesNotification activitiesNotification = idempotencyKey == null
+                ? notificationService.sendNotification(activitiesNotificationRequest)
+                : idempotencyKeyStore.resolve(activitiesNotificationRequest, idempotencyKey, () -> notificationService.sendNotification(activitiesNotificationRequest, idempotencyKey));
         ActivitiesNotificationResponse activitiesNotificationResponse = DtoMapper.fromActivitiesNotification(activitiesNotification);
 
+        //the email is sent in the background, the notification is only accepted at this point
         return ResponseEntity
-                .status(HttpStatus.CREATED)
+                .status(HttpStatus.ACCEPTED)
                 .body(activitiesNotificationResponse);
     }
 
+    @PostMapping("/batch")
+    public ResponseEntity<List<BatchNotificationItemResponse>> sendNotifications(@RequestBody List<ActivitiesNotificationRequest> activitiesNotificationRequests){
+        notificationRateLimiter.acquire(activitiesNotificationRequests.stream().map(ActivitiesNotificationRequest::getUserId).toList());
+        List<BatchNotificationItemResponse> results = notificationService.sendNotifications(activitiesNotificationRequests).stream().map(DtoMapper::fromBatchSendResult).collect(Collectors.toList());
+
+        return ResponseEntity
+                .status(HttpStatus.ACCEPTED)
+                .body(results);
+    }
+
     @GetMapping
-    public ResponseEntity<List<ActivitiesNotificationResponse>> getActivitiesNotificationHistory(@RequestParam(name = "userId") UUID userId){
-        List<ActivitiesNotificationResponse> notificationHistory = notificationService.getHistory(userId).stream().map(DtoMapper::fromActivitiesNotification).collect(Collectors.toList());
+    public ResponseEntity<List<ActivitiesNotificationResponse>> getActivitiesNotificationHistory(@RequestParam(name = "userId") UUID userId,
+                                                                                                 @RequestParam(name = "limit", defaultValue = "" + DEFAULT_HISTORY_LIMIT) int limit,
+                                                                                                 @RequestParam(name = "cursor", required = false) String cursor){
+        int pageSize = Math.max(1, Math.min(limit, MAX_HISTORY_LIMIT));
+        HistoryCursor historyCursor = cursor == null ? null : HistoryCursor.decode(cursor);
+        List<NotificationHistoryEntry> history = notificationService.getHistory(userId, historyCursor, pageSize);
+        List<ActivitiesNotificationResponse> notificationHistory = history.stream().map(DtoMapper::fromHistoryEntry).collect(Collectors.toList());
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(HttpStatus.OK);
+        //a full page means there may be more, the client passes this value back as ?cursor=
+        if(history.size() == pageSize){
+            NotificationHistoryEntry last = history.get(history.size() - 1);
+            response.header(NEXT_CURSOR_HEADER, new HistoryCursor(last.getCreatedOn(), last.getId()).encode());
+        }
+        return response.body(notificationHistory);
+    }
+
+    @GetMapping(params = "stream=true", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamActivitiesNotificationHistory(@RequestParam(name = "userId") UUID userId){
+        StreamingResponseBody body = outputStream -> notificationService.streamHistory(userId, historyEntry -> {
+            try {
+                objectMapper.writeValue(outputStream, DtoMapper.fromHistoryEntry(historyEntry));
+                outputStream.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    //pushes each new notification as it is accepted, reconnecting clients send Last-Event-ID to get what they missed
+    @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamNotifications(@RequestParam(name = "userId") UUID userId,
+                                                          @RequestHeader(name = LAST_EVENT_ID_HEADER, required = false) String lastEventId){
+        SseEmitter emitter = notificationStreamRegistry.register(userId, lastEventId);
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .contentType(MediaType.TEXT_EVENT_STREAM)
+                .body(emitter);
+    }
+
+    //answered from the in-memory counter, meant to be polled for the badge instead of loading the history
+    @GetMapping("/count")
+    public ResponseEntity<NotificationCountResponse> getUnreadNotificationCount(@RequestParam(name = "userId") UUID userId){
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .body(NotificationCountResponse.builder().unreadCount(notificationService.getUnreadCount(userId)).build());
+    }
+
+    @DeleteMapping("/scheduled/{id}")
+    public ResponseEntity<NotificationsUpdateResponse> cancelScheduledNotification(@PathVariable(name = "id") UUID id,
+                                                                                   @RequestParam(name = "userId") UUID userId){
+        int updatedCount = notificationService.cancelScheduledNotification(userId, id);
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .body(NotificationsUpdateResponse.builder().updatedCount(updatedCount).build());
+    }
+
+    //where the notification stands on every channel it went out on
+    @GetMapping("/{id}/deliveries")
+    public ResponseEntity<List<NotificationDeliveryResponse>> getNotificationDeliveries(@PathVariable(name = "id") UUID id,
+                                                                                        @RequestParam(name = "userId") UUID userId){
+        List<NotificationDeliveryResponse> deliveries = notificationService.getDeliveries(userId, id).stream().map(DtoMapper::fromNotificationDelivery).collect(Collectors.toList());
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .body(deliveries);
+    }
+
+    //without a body every visible notification of the user is marked as read
+    @PutMapping("/read")
+    public ResponseEntity<NotificationsUpdateResponse> markNotificationsAsRead(@RequestParam(name = "userId") UUID userId,
+                                                                           @RequestBody(required = false) List<UUID> ids){
+        int updatedCount = notificationService.markAsRead(userId, ids);
         return ResponseEntity
                 .status(HttpStatus.OK)
-                .body(notificationHistory);
+                .body(NotificationsUpdateResponse.builder().updatedCount(updatedCount).build());
     }
 
     @PutMapping("/clear")
-    public ResponseEntity<Void> clearAllNotifications(@RequestParam(name = "userId") UUID userId){
-        notificationService.setAllNotificationsIsHiddenToTrue(userId);
+    public ResponseEntity<NotificationsUpdateResponse> clearAllNotifications(@RequestParam(name = "userId") UUID userId){
+        int updatedCount = notificationService.setAllNotificationsIsHiddenToTrue(userId);
         return ResponseEntity
                 .status(HttpStatus.OK)
-                .body(null);
+                .body(NotificationsUpdateResponse.builder().updatedCount(updatedCount).build());
     }
 
     @PutMapping("/show")
-    public ResponseEntity<Void> showAllNotifications(@RequestParam(name = "userId") UUID userId){
-        notificationService.setAllNotificationsIsHiddenToFalse(userId);
+    public ResponseEntity<NotificationsUpdateResponse> showAllNotifications(@RequestParam(name = "userId") UUID userId){
+        int updatedCount = notificationService.setAllNotificationsIsHiddenToFalse(userId);
         return ResponseEntity
                 .status(HttpStatus.OK)
-                .body(null);
+                .body(NotificationsUpdateResponse.builder().updatedCount(updatedCount).build());
     }
 
 }
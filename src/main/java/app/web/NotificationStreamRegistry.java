@@ -0,0 +1,170 @@
+package app.web;
+
+import app.model.ActivitiesNotification;
+import app.model.NotificationHistoryEntry;
+import app.service.NotificationService;
+import app.service.NotificationsAcceptedEvent;
+import app.web.dto.ActivitiesNotificationResponse;
+import app.web.dto.HistoryCursor;
+import app.web.mapper.DtoMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Open server-sent event streams by user. A connection is an async request parked by the servlet container,
+ * it holds no thread while idle, threads are only used to write an event or a heartbeat.
+ * Only notifications sent through this instance are pushed, a client reconnecting with Last-Event-ID gets the rest from the table.
+ * When the stream threads are backed up a push is not queued, the stream is ended and the client catches up on reconnect.
+ */
+@Slf4j
+@Component
+public class NotificationStreamRegistry {
+    static final String EVENT_NAME = "notification";
+    private static final int MAX_REPLAY = 500;
+
+    private final NotificationService notificationService;
+    private final ThreadPoolTaskExecutor notificationStreamExecutor;
+    private final long timeoutMillis;
+    private final ConcurrentMap<UUID, Set<SseEmitter>> emitters = new ConcurrentHashMap<>();
+    private final AtomicBoolean heartbeatRunning = new AtomicBoolean();
+
+    @Autowired
+    public NotificationStreamRegistry(NotificationService notificationService,
+                                      @Qualifier("notificationStreamExecutor") ThreadPoolTaskExecutor notificationStreamExecutor,
+                                      @Value("${notifications.stream.timeout-ms:1800000}") long timeoutMillis) {
+        this.notificationService = notificationService;
+        this.notificationStreamExecutor = notificationStreamExecutor;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public SseEmitter register(UUID userId, String lastEventId) {
+        HistoryCursor resumeFrom = lastEventId == null || lastEventId.isBlank() ? null : HistoryCursor.decode(lastEventId);
+
+        //after the timeout the client reconnects with Last-Event-ID, which also rebalances connections across instances
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        emitter.onCompletion(() -> remove(userId, emitter));
+        emitter.onTimeout(() -> remove(userId, emitter));
+        emitter.onError(e -> remove(userId, emitter));
+
+        //registered before the replay, so nothing sent in between is missed, a client may see an event twice at most
+        emitters.compute(userId, (id, userEmitters) -> {
+            Set<SseEmitter> set = userEmitters == null ? ConcurrentHashMap.newKeySet() : userEmitters;
+            set.add(emitter);
+            return set;
+        });
+
+        if(resumeFrom != null){
+            List<NotificationHistoryEntry> missed = notificationService.getHistorySince(userId, resumeFrom, MAX_REPLAY);
+            for(NotificationHistoryEntry entry : missed){
+                if(!send(userId, emitter, eventId(entry.getCreatedOn(), entry.getId()), DtoMapper.fromHistoryEntry(entry))){
+                    break;
+                }
+            }
+        }
+        return emitter;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onNotificationsAccepted(NotificationsAcceptedEvent event) {
+        for(ActivitiesNotification notification : event.getNotifications()){
+            Set<SseEmitter> userEmitters = emitters.get(notification.getUserId());
+            //most users are not connected, that case never leaves the committing thread
+            if(userEmitters == null){
+                continue;
+            }
+            String eventId = eventId(notification.getCreatedOn(), notification.getId());
+            ActivitiesNotificationResponse response = DtoMapper.fromActivitiesNotification(notification);
+            for(SseEmitter emitter : userEmitters){
+                try {
+                    notificationStreamExecutor.execute(() -> send(notification.getUserId(), emitter, eventId, response));
+                } catch (TaskRejectedException e) {
+                    log.warn("Notification stream threads are backed up, closing a stream of user with id "+notification.getUserId()+" to be resumed on reconnect.");
+                    remove(notification.getUserId(), emitter);
+                    emitter.complete();
+                }
+            }
+        }
+    }
+
+    //keeps proxies and load balancers from closing idle connections and finds clients that went away
+    //written on the stream threads, a client that is slow to read must not hold up the other scheduled jobs
+    @Scheduled(fixedRateString = "${notifications.stream.heartbeat-interval-ms:15000}")
+    public void sendHeartbeats() {
+        //one sweep at a time, a sweep still stuck on slow clients is not joined by another one
+        if(emitters.isEmpty() || !heartbeatRunning.compareAndSet(false, true)){
+            return;
+        }
+        try {
+            notificationStreamExecutor.execute(() -> {
+                try {
+                    emitters.forEach((userId, userEmitters) -> userEmitters.forEach(emitter -> {
+                        try {
+                            emitter.send(SseEmitter.event().comment("heartbeat"));
+                        } catch (IOException | IllegalStateException e) {
+                            remove(userId, emitter);
+                        }
+                    }));
+                } finally {
+                    heartbeatRunning.set(false);
+                }
+            });
+        } catch (TaskRejectedException e) {
+            //the threads are busy writing events, which keeps those connections alive as well
+            heartbeatRunning.set(false);
+        }
+    }
+
+    public int connectionCount() {
+        return emitters.values().stream().mapToInt(Set::size).sum();
+    }
+
+    //lets graceful shutdown finish instead of waiting for every stream to time out, the context closed event comes before the web server stops
+    @EventListener(ContextClosedEvent.class)
+    public void closeAll() {
+        emitters.values().forEach(userEmitters -> userEmitters.forEach(SseEmitter::complete));
+        emitters.clear();
+    }
+
+    private boolean send(UUID userId, SseEmitter emitter, String eventId, ActivitiesNotificationResponse response) {
+        try {
+            emitter.send(SseEmitter.event().id(eventId).name(EVENT_NAME).data(response));
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            log.debug("Dropped notification stream of user with id "+userId+": "+e.getMessage());
+            remove(userId, emitter);
+            return false;
+        }
+    }
+
+    private void remove(UUID userId, SseEmitter emitter) {
+        emitters.computeIfPresent(userId, (id, userEmitters) -> {
+            userEmitters.remove(emitter);
+            return userEmitters.isEmpty() ? null : userEmitters;
+        });
+    }
+
+    //the same position the history cursor uses, cut to the microseconds the table keeps
+    private static String eventId(LocalDateTime createdOn, UUID id) {
+        return new HistoryCursor(createdOn.truncatedTo(ChronoUnit.MICROS), id).encode();
+    }
+}
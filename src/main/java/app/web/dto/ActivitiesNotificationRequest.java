@@ -3,9 +3,11 @@ package app.web.dto;
 import app.model.ActivityType;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
 import lombok.Builder;
 import lombok.Data;
 
+import java.time.LocalDateTime;
 import java.util.UUID;
 
 @Data
@@ -15,12 +17,18 @@ public class ActivitiesNotificationRequest {
     @NotNull
     private UUID userId;
 
+    //the width of the columns, a longer value would only fail once the row is inserted
     @NotBlank
+    @Size(max = 255)
     private String subject;
 
     @NotBlank
+    @Size(max = 255)
     private String message;
 
     @NotNull
     private ActivityType type;
+
+    //optional, a time in the future holds the notification until then, anything else sends it right away
+    private LocalDateTime sendAt;
 }
@@ -6,10 +6,13 @@ import lombok.Builder;
 import lombok.Data;
 
 import java.time.LocalDateTime;
+import java.util.UUID;
 
 @Data
 @Builder
 public class ActivitiesNotificationResponse {
+    private UUID id;
+
     private String subject;
 
     private ActivityType type;
@@ -17,4 +20,9 @@ public class ActivitiesNotificationResponse {
     private NotificationStatus status;
 
     private LocalDateTime createdOn;
+
+    private boolean read;
+
+    //only set while the notification is SCHEDULED
+    private LocalDateTime sendAt;
 }
@@ -0,0 +1,16 @@
+package app.web.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class BatchNotificationItemResponse {
+    private int index;
+
+    private boolean accepted;
+
+    private ActivitiesNotificationResponse notification;
+
+    private String error;
+}
@@ -0,0 +1,36 @@
+package app.web.dto;
+
+import app.exception.InvalidCursorException;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.UUID;
+
+//position after the last returned row of a history page, handed to clients as an opaque string
+@Data
+@Builder
+@AllArgsConstructor
+public class HistoryCursor {
+    private LocalDateTime createdOn;
+
+    private UUID id;
+
+    public String encode() {
+        String raw = createdOn + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static HistoryCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|", 2);
+            return new HistoryCursor(LocalDateTime.parse(parts[0]), UUID.fromString(parts[1]));
+        } catch (RuntimeException e) {
+            throw new InvalidCursorException("Cursor "+cursor+" is not valid!");
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package app.web.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class NotificationCountResponse {
+    private long unreadCount;
+}
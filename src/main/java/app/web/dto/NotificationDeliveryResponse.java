@@ -0,0 +1,16 @@
+package app.web.dto;
+
+import app.model.ChannelType;
+import app.model.NotificationStatus;
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class NotificationDeliveryResponse {
+    private ChannelType channel;
+
+    private NotificationStatus status;
+
+    private int attemptCount;
+}
@@ -16,6 +16,14 @@ public class NotificationPreferenceResponse {
 
     private boolean productEnabled;
 
+    private int reservationDigestSeconds;
+
+    private int productDigestSeconds;
+
     private String contactInfo;
 
+    private String webhookUrl;
+
+    private String phoneNumber;
+
 }
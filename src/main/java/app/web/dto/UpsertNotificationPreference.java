@@ -2,6 +2,8 @@ package app.web.dto;
 
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.PositiveOrZero;
 import lombok.Builder;
 import lombok.Data;
 
@@ -18,7 +20,21 @@ public class UpsertNotificationPreference {//имам нужда потреби
 
     private boolean productEnabled;
 
+    @PositiveOrZero
+    private int reservationDigestSeconds;
+
+    @PositiveOrZero
+    private int productDigestSeconds;
+
     @NotNull
     @NotBlank
     private String contactInfo;
+
+    //optional, leaving one out switches that channel off
+    @Pattern(regexp = "https?://.+")
+    private String webhookUrl;
+
+    //E.164, e.g. +359888123456
+    @Pattern(regexp = "\\+[1-9][0-9]{6,14}")
+    private String phoneNumber;
 }
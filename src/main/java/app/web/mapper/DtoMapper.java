@@ -1,8 +1,15 @@
 package app.web.mapper;
 
 import app.model.ActivitiesNotification;
+import app.model.NotificationDelivery;
+import app.model.NotificationHistoryEntry;
 import app.model.NotificationPreference;
+import app.model.NotificationStatus;
+import app.model.ScheduledNotification;
+import app.service.BatchSendResult;
 import app.web.dto.ActivitiesNotificationResponse;
+import app.web.dto.BatchNotificationItemResponse;
+import app.web.dto.NotificationDeliveryResponse;
 import app.web.dto.NotificationPreferenceResponse;
 import lombok.experimental.UtilityClass;
 
@@ -15,16 +22,61 @@ public class DtoMapper {
                 .userId(notificationPreference.getUserId())
                 .reservationEnabled(notificationPreference.isReservationEnabled())
                 .productEnabled(notificationPreference.isProductEnabled())
+                .reservationDigestSeconds(notificationPreference.getReservationDigestSeconds())
+                .productDigestSeconds(notificationPreference.getProductDigestSeconds())
                 .contactInfo(notificationPreference.getContactInfo())
+                .webhookUrl(notificationPreference.getWebhookUrl())
+                .phoneNumber(notificationPreference.getPhoneNumber())
+                .build();
+    }
+
+    public static ActivitiesNotificationResponse fromHistoryEntry(NotificationHistoryEntry historyEntry){
+        return ActivitiesNotificationResponse.builder()
+                .id(historyEntry.getId())
+                .subject(historyEntry.getSubject())
+                .type(historyEntry.getType())
+                .status(historyEntry.getStatus())
+                .createdOn(historyEntry.getCreatedOn())
+                .read(historyEntry.isRead())
                 .build();
     }
 
     public static ActivitiesNotificationResponse fromActivitiesNotification(ActivitiesNotification activitiesNotification){
         return ActivitiesNotificationResponse.builder()
+                .id(activitiesNotification.getId())
                 .subject(activitiesNotification.getSubject())
                 .type(activitiesNotification.getType())
                 .status(activitiesNotification.getStatus())
                 .createdOn(activitiesNotification.getCreatedOn())
+                .read(activitiesNotification.isRead())
+                .build();
+    }
+
+    public static ActivitiesNotificationResponse fromScheduledNotification(ScheduledNotification scheduledNotification){
+        return ActivitiesNotificationResponse.builder()
+                .id(scheduledNotification.getId())
+                .subject(scheduledNotification.getSubject())
+                .type(scheduledNotification.getType())
+                .status(NotificationStatus.SCHEDULED)
+                .createdOn(scheduledNotification.getCreatedOn())
+                .sendAt(scheduledNotification.getSendAt())
+                .build();
+    }
+
+    public static BatchNotificationItemResponse fromBatchSendResult(BatchSendResult batchSendResult){
+        return BatchNotificationItemResponse.builder()
+                .index(batchSendResult.getIndex())
+                .accepted(batchSendResult.isAccepted())
+                .notification(batchSendResult.isAccepted() ? fromActivitiesNotification(batchSendResult.getNotification()) : null)
+                .error(batchSendResult.getError())
+                .build();
+    }
+
+    public static NotificationDeliveryResponse fromNotificationDelivery(NotificationDelivery notificationDelivery){
+        return NotificationDeliveryResponse.builder()
+                .channel(notificationDelivery.getChannel())
+                .status(notificationDelivery.getStatus())
+                .attemptCount(notificationDelivery.getAttemptCount())
                 .build();
     }
 }
@@ -0,0 +1,49 @@
+package db.migration;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Schemas created by ddl-auto=update carry a unique key on activities_notification.user_id with a generated name,
+ * which only allows one notification per user. Looks the key up and drops it, fresh schemas have nothing to drop.
+ */
+public class V3__DropActivitiesNotificationUserIdUniqueKey extends BaseJavaMigration {
+
+    @Override
+    public void migrate(Context context) throws Exception {
+        Connection connection = context.getConnection();
+        if(!"MySQL".equals(connection.getMetaData().getDatabaseProductName())){
+            return;
+        }
+
+        List<String> uniqueKeys = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT index_name FROM information_schema.statistics " +
+                "WHERE table_schema = DATABASE() AND table_name = 'activities_notification' " +
+                "AND column_name = 'user_id' AND non_unique = 0 AND index_name <> 'PRIMARY'")) {
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    uniqueKeys.add(resultSet.getString(1));
+                }
+            }
+        }
+
+        for(String uniqueKey : uniqueKeys){
+            drop(connection, uniqueKey);
+        }
+    }
+
+    private void drop(Connection connection, String uniqueKey) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("ALTER TABLE activities_notification DROP INDEX `" + uniqueKey + "`");
+        }
+    }
+}
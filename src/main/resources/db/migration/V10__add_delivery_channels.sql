@@ -0,0 +1,23 @@
+-- channels besides email are opt-in, a null address leaves the channel off
+ALTER TABLE notification_preference ADD COLUMN webhook_url VARCHAR(2048);
+ALTER TABLE notification_preference ADD COLUMN phone_number VARCHAR(32);
+
+-- every channel is relayed from the outbox on its own, existing entries are all emails
+ALTER TABLE notification_outbox ADD COLUMN channel VARCHAR(16) NOT NULL DEFAULT 'EMAIL';
+
+-- the relay claims the oldest entries of one channel at a time
+DROP INDEX idx_notification_outbox_created_on ON notification_outbox;
+CREATE INDEX idx_notification_outbox_channel_created_on
+    ON notification_outbox (channel, created_on);
+
+-- delivery state of the channels besides email, the email state stays on the notification itself
+CREATE TABLE IF NOT EXISTS notification_delivery (
+    id              BINARY(16)   NOT NULL,
+    notification_id BINARY(16)   NOT NULL,
+    channel         VARCHAR(16)  NOT NULL,
+    status          VARCHAR(255) NOT NULL,
+    attempt_count   INT          NOT NULL,
+    updated_on      DATETIME(6)  NOT NULL,
+    PRIMARY KEY (id),
+    CONSTRAINT uk_notification_delivery_notification_channel UNIQUE (notification_id, channel)
+);
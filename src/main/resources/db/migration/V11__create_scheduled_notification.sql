@@ -0,0 +1,15 @@
+-- notifications accepted with a future sendAt, a row is deleted in the transaction that sends it
+CREATE TABLE IF NOT EXISTS scheduled_notification (
+    id         BINARY(16)   NOT NULL,
+    user_id    BINARY(16)   NOT NULL,
+    type       VARCHAR(255) NOT NULL,
+    subject    VARCHAR(255) NOT NULL,
+    message    VARCHAR(255) NOT NULL,
+    send_at    DATETIME(6)  NOT NULL,
+    created_on DATETIME(6)  NOT NULL,
+    PRIMARY KEY (id)
+);
+
+-- the timer loads the next window of due rows from here, a range scan however many are scheduled further out
+CREATE INDEX idx_scheduled_notification_send_at
+    ON scheduled_notification (send_at, id);
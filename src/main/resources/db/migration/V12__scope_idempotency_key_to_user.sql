@@ -0,0 +1,13 @@
+-- a key only answers repeats from the user who used it, with the same request body
+ALTER TABLE notification_idempotency_key ADD COLUMN user_id BINARY(16);
+ALTER TABLE notification_idempotency_key ADD COLUMN request_hash VARCHAR(64);
+
+-- keys live for a day, so this touches a day of rows at most, keys stored before have no hash and match any body
+UPDATE notification_idempotency_key k
+SET user_id = (SELECT n.user_id FROM activities_notification n WHERE n.id = k.notification_id);
+-- their notification is gone, such a key could not answer a repeat anyway
+DELETE FROM notification_idempotency_key WHERE user_id IS NULL;
+
+ALTER TABLE notification_idempotency_key MODIFY COLUMN user_id BINARY(16) NOT NULL;
+ALTER TABLE notification_idempotency_key DROP PRIMARY KEY;
+ALTER TABLE notification_idempotency_key ADD PRIMARY KEY (user_id, idempotency_key);
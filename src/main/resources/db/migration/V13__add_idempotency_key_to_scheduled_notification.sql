@@ -0,0 +1,2 @@
+-- the key a scheduled notification was accepted under, its key row is pointed at the sent notification once it goes out
+ALTER TABLE scheduled_notification ADD COLUMN idempotency_key VARCHAR(255);
@@ -0,0 +1,32 @@
+CREATE TABLE IF NOT EXISTS notification_preference (
+    id                  BINARY(16)   NOT NULL,
+    user_id             BINARY(16)   NOT NULL,
+    reservation_enabled BIT          NOT NULL,
+    product_enabled     BIT          NOT NULL,
+    contact_info        VARCHAR(255) NOT NULL,
+    created_on          DATETIME(6)  NOT NULL,
+    updated_on          DATETIME(6)  NOT NULL,
+    PRIMARY KEY (id),
+    CONSTRAINT uk_notification_preference_user_id UNIQUE (user_id)
+);
+
+CREATE TABLE IF NOT EXISTS activities_notification (
+    id         BINARY(16)   NOT NULL,
+    user_id    BINARY(16)   NOT NULL,
+    type       VARCHAR(255) NOT NULL,
+    subject    VARCHAR(255) NOT NULL,
+    message    VARCHAR(255) NOT NULL,
+    status     VARCHAR(255) NOT NULL,
+    created_on DATETIME(6)  NOT NULL,
+    is_hidden  BIT          NOT NULL,
+    PRIMARY KEY (id)
+);
+
+CREATE TABLE IF NOT EXISTS notification_outbox (
+    id              BINARY(16)   NOT NULL,
+    notification_id BINARY(16)   NOT NULL,
+    contact_info    VARCHAR(255) NOT NULL,
+    created_on      DATETIME(6)  NOT NULL,
+    locked_until    DATETIME(6),
+    PRIMARY KEY (id)
+);
@@ -0,0 +1,6 @@
+ALTER TABLE activities_notification ADD COLUMN attempt_count INT NOT NULL DEFAULT 0;
+ALTER TABLE activities_notification ADD COLUMN next_attempt_at DATETIME(6);
+
+-- the retry scheduler only ever looks at due FAILED rows
+CREATE INDEX idx_activities_notification_status_next_attempt
+    ON activities_notification (status, next_attempt_at);
@@ -0,0 +1,10 @@
+CREATE TABLE IF NOT EXISTS notification_idempotency_key (
+    idempotency_key VARCHAR(255) NOT NULL,
+    notification_id BINARY(16)   NOT NULL,
+    created_on      DATETIME(6)  NOT NULL,
+    PRIMARY KEY (idempotency_key)
+);
+
+-- expired keys are purged by age
+CREATE INDEX idx_notification_idempotency_key_created_on
+    ON notification_idempotency_key (created_on);
@@ -0,0 +1,11 @@
+ALTER TABLE notification_preference ADD COLUMN reservation_digest_seconds INT NOT NULL DEFAULT 0;
+ALTER TABLE notification_preference ADD COLUMN product_digest_seconds INT NOT NULL DEFAULT 0;
+
+ALTER TABLE activities_notification ADD COLUMN digest_due_at DATETIME(6);
+ALTER TABLE activities_notification ADD COLUMN digest_id BINARY(16);
+
+ALTER TABLE notification_outbox ADD COLUMN digest BIT NOT NULL DEFAULT 0;
+
+-- held notifications are the ones with a due time but no digest yet
+CREATE INDEX idx_activities_notification_digest_held
+    ON activities_notification (digest_id, digest_due_at);
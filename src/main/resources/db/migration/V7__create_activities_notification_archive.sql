@@ -0,0 +1,20 @@
+CREATE TABLE IF NOT EXISTS activities_notification_archive (
+    id            BINARY(16)   NOT NULL,
+    user_id       BINARY(16)   NOT NULL,
+    type          VARCHAR(255) NOT NULL,
+    subject       VARCHAR(255) NOT NULL,
+    message       VARCHAR(255) NOT NULL,
+    status        VARCHAR(255) NOT NULL,
+    created_on    DATETIME(6)  NOT NULL,
+    is_hidden     BIT          NOT NULL,
+    attempt_count INT          NOT NULL,
+    archived_on   DATETIME(6)  NOT NULL,
+    PRIMARY KEY (id)
+);
+
+CREATE INDEX idx_activities_notification_archive_user_created
+    ON activities_notification_archive (user_id, created_on);
+
+-- the retention job walks the oldest rows of one status and type at a time
+CREATE INDEX idx_activities_notification_retention
+    ON activities_notification (status, type, created_on, id);
@@ -0,0 +1,12 @@
+-- notifications that exist before read tracking count as read, otherwise every badge would jump to the whole history
+-- both statements only change table metadata, the rows are not rewritten
+ALTER TABLE activities_notification ADD COLUMN is_read BIT NOT NULL DEFAULT 1;
+ALTER TABLE activities_notification ALTER COLUMN is_read SET DEFAULT 0;
+
+ALTER TABLE activities_notification_archive ADD COLUMN is_read BIT NOT NULL DEFAULT 1;
+
+-- history pages now carry the read flag, and rebuilding an unread count reads the same index without touching the rows
+-- with type and status narrowed in V2 the key stays around 1.3k bytes, well under InnoDB's 3072
+DROP INDEX idx_activities_notification_history_covering ON activities_notification;
+CREATE INDEX idx_activities_notification_history_covering
+    ON activities_notification (user_id, is_hidden, created_on DESC, id DESC, type, status, subject, is_read);
@@ -0,0 +1,8 @@
+-- written on the primary every heartbeat, how old the row is on a replica is how far that replica lags behind
+CREATE TABLE IF NOT EXISTS replica_heartbeat (
+    id             INT    NOT NULL,
+    beat_at_millis BIGINT NOT NULL,
+    PRIMARY KEY (id)
+);
+
+INSERT INTO replica_heartbeat (id, beat_at_millis) VALUES (1, 0);
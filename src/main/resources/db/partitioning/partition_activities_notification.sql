@@ -0,0 +1,15 @@
+-- One-time, MySQL only, run by hand before setting notifications.retention.partitioning.enabled=true.
+-- Every unique key of a partitioned table must contain the partition column, hence the wider primary key.
+-- NotificationPartitionManager keeps adding monthly partitions in front of pmax and drops the expired ones.
+ALTER TABLE activities_notification DROP PRIMARY KEY, ADD PRIMARY KEY (id, created_on);
+
+-- everything up to the end of the current month goes to p_history, so pmax starts out empty
+-- and the manager splits the coming months off it without moving any rows
+SET @first_bound = DATE_FORMAT(CURRENT_DATE + INTERVAL 1 MONTH, '%Y-%m-01');
+SET @partition_ddl = CONCAT(
+    'ALTER TABLE activities_notification PARTITION BY RANGE COLUMNS (created_on) (',
+    'PARTITION p_history VALUES LESS THAN (''', @first_bound, '''), ',
+    'PARTITION pmax VALUES LESS THAN (MAXVALUE))');
+PREPARE partition_statement FROM @partition_ddl;
+EXECUTE partition_statement;
+DEALLOCATE PREPARE partition_statement;
@@ -0,0 +1,58 @@
+package app;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+//the application booting at all means ddl-auto=validate accepted the migrated schema
+@ActiveProfiles("test")
+@SpringBootTest
+public class LegacySchemaMigrationITest {
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @MockitoBean
+    private JavaMailSender mailSender;
+
+    //the schema ddl-auto=update created before migrations were introduced, without a flyway history
+    @DynamicPropertySource
+    static void legacyDatabase(DynamicPropertyRegistry registry){
+        String url = "jdbc:h2:mem:legacy-" + UUID.randomUUID() + ";MODE=MYSQL;DB_CLOSE_DELAY=-1";
+        JdbcTemplate legacy = new JdbcTemplate(new DriverManagerDataSource(url, "sa", "password"));
+        legacy.execute("CREATE TABLE notification_preference (id BINARY(16) NOT NULL, user_id BINARY(16) NOT NULL, reservation_enabled BIT NOT NULL, " +
+                "product_enabled BIT NOT NULL, contact_info VARCHAR(255) NOT NULL, created_on DATETIME(6) NOT NULL, updated_on DATETIME(6) NOT NULL, " +
+                "PRIMARY KEY (id), CONSTRAINT UK_legacy_preference_user_id UNIQUE (user_id))");
+        legacy.execute("CREATE TABLE activities_notification (id BINARY(16) NOT NULL, user_id BINARY(16) NOT NULL, type VARCHAR(255) NOT NULL, " +
+                "subject VARCHAR(255) NOT NULL, message VARCHAR(255) NOT NULL, status VARCHAR(255) NOT NULL, created_on DATETIME(6) NOT NULL, " +
+                "is_hidden BIT NOT NULL, PRIMARY KEY (id), CONSTRAINT UK_legacy_notification_user_id UNIQUE (user_id))");
+        legacy.update("INSERT INTO activities_notification (id, user_id, type, subject, message, status, created_on, is_hidden) " +
+                "VALUES (RANDOM_UUID(), RANDOM_UUID(), 'RESERVATION', 'Creating reservation', 'Table for two', 'SUCCEEDED', CURRENT_TIMESTAMP, FALSE)");
+
+        registry.add("spring.datasource.url", () -> url);
+    }
+
+    @Test
+    void testExistingSchema_shouldBeBaselinedBelowTheFirstMigrationAndCompleted(){
+        String baseline = jdbcTemplate.queryForObject("SELECT \"version\" FROM \"flyway_schema_history\" WHERE \"type\" = 'BASELINE'", String.class);
+        Integer failed = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM \"flyway_schema_history\" WHERE \"success\" = FALSE", Integer.class);
+        Integer firstApplied = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM \"flyway_schema_history\" WHERE \"version\" = '1' AND \"type\" = 'SQL'", Integer.class);
+
+        assertThat(baseline).isEqualTo("0");
+        assertThat(failed).isZero();
+        assertThat(firstApplied).isEqualTo(1);
+        //only V1 creates the outbox, the rows ddl-auto wrote are still there
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM notification_outbox", Integer.class)).isZero();
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM activities_notification", Integer.class)).isEqualTo(1);
+    }
+}
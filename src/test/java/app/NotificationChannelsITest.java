@@ -0,0 +1,210 @@
+package app;
+
+import app.channel.SmsProvider;
+import app.model.ActivitiesNotification;
+import app.model.ActivityType;
+import app.model.ChannelType;
+import app.model.NotificationDelivery;
+import app.model.NotificationStatus;
+import app.repository.NotificationOutboxRepository;
+import app.service.NotificationService;
+import app.web.dto.ActivitiesNotificationRequest;
+import app.web.dto.UpsertNotificationPreference;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessagePreparator;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ActiveProfiles("test")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+//the webhook endpoint is a local server, which a real deployment refuses to post to
+@SpringBootTest(properties = {"notifications.channels.webhook.pool-size=1", "notifications.channels.webhook.queue-capacity=1", "notifications.channels.webhook.allow-private-addresses=true"})
+public class NotificationChannelsITest {
+    private static HttpServer webhookServer;
+    private static final Queue<String> received = new ConcurrentLinkedQueue<>();
+    private static volatile int responseStatus;
+    private static volatile CountDownLatch released;
+
+    @Autowired
+    private NotificationService notificationService;
+
+    @Autowired
+    private NotificationOutboxRepository notificationOutboxRepository;
+
+    @MockitoBean
+    private JavaMailSender mailSender;
+
+    @MockitoBean
+    private SmsProvider smsProvider;
+
+    //the webhook endpoint answers with responseStatus, but only once released is counted down
+    @BeforeAll
+    static void startWebhookServer() throws IOException {
+        webhookServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        webhookServer.createContext("/hook", exchange -> {
+            received.add(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+            try {
+                released.await(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(responseStatus, -1);
+            exchange.close();
+        });
+        webhookServer.setExecutor(Executors.newCachedThreadPool());
+        webhookServer.start();
+    }
+
+    @AfterAll
+    static void stopWebhookServer(){
+        webhookServer.stop(0);
+    }
+
+    @AfterEach
+    void reset(){
+        released.countDown();
+        received.clear();
+    }
+
+    @Test
+    void testSend_withEveryChannel_shouldDeliverOnEachOfThem() throws Exception {
+        respond(204, true);
+        UUID userId = createPreference();
+
+        ActivitiesNotification notification = sendReservation(userId, "Table for two");
+
+        await().atMost(Duration.ofSeconds(10)).untilAsserted(() ->
+                assertThat(statuses(userId, notification)).containsOnly(
+                        Map.entry(ChannelType.IN_APP, NotificationStatus.SUCCEEDED),
+                        Map.entry(ChannelType.EMAIL, NotificationStatus.SUCCEEDED),
+                        Map.entry(ChannelType.WEBHOOK, NotificationStatus.SUCCEEDED),
+                        Map.entry(ChannelType.SMS, NotificationStatus.SUCCEEDED)));
+        verify(mailSender, times(1)).send(any(MimeMessagePreparator.class));
+        verify(smsProvider, times(1)).send(eq("+359888123456"), contains("Table for two"));
+        assertThat(received).singleElement().asString()
+                .contains(notification.getId().toString())
+                .contains("Table for two");
+        assertEquals(0, notificationOutboxRepository.count());
+    }
+
+    @Test
+    void testSend_withHangingWebhook_shouldNotHoldBackOtherChannels() throws Exception {
+        respond(204, false);
+        UUID userId = createPreference();
+
+        //one stuck in the single webhook worker, one in its queue, the rest stay in the outbox
+        List<ActivitiesNotification> notifications = List.of(
+                sendReservation(userId, "Table for two"),
+                sendReservation(userId, "Table for four"),
+                sendReservation(userId, "Table for six"),
+                sendReservation(userId, "Table for eight"));
+
+        await().atMost(Duration.ofSeconds(10)).untilAsserted(() -> {
+            List<NotificationStatus> webhookStatuses = new ArrayList<>();
+            for(ActivitiesNotification notification : notifications){
+                Map<ChannelType, NotificationStatus> statuses = statuses(userId, notification);
+                assertEquals(NotificationStatus.SUCCEEDED, statuses.get(ChannelType.EMAIL));
+                assertEquals(NotificationStatus.SUCCEEDED, statuses.get(ChannelType.SMS));
+                webhookStatuses.add(statuses.get(ChannelType.WEBHOOK));
+            }
+            //the stuck one is claimed by the worker, the others wait their turn
+            assertThat(webhookStatuses).containsExactlyInAnyOrder(NotificationStatus.SENDING, NotificationStatus.PENDING, NotificationStatus.PENDING, NotificationStatus.PENDING);
+            assertEquals(1, received.size());
+        });
+        verify(mailSender, times(4)).send(any(MimeMessagePreparator.class));
+
+        released.countDown();
+        await().atMost(Duration.ofSeconds(10)).untilAsserted(() -> {
+            for(ActivitiesNotification notification : notifications){
+                assertEquals(NotificationStatus.SUCCEEDED, statuses(userId, notification).get(ChannelType.WEBHOOK));
+            }
+        });
+    }
+
+    @Test
+    void testSend_withFailingWebhook_shouldRecordTheFailureAndKeepItForRetry() throws Exception {
+        respond(500, true);
+        UUID userId = createPreference();
+
+        ActivitiesNotification notification = sendReservation(userId, "Table for two");
+
+        await().atMost(Duration.ofSeconds(10)).untilAsserted(() ->
+                assertEquals(NotificationStatus.FAILED, statuses(userId, notification).get(ChannelType.WEBHOOK)));
+        NotificationDelivery webhook = notificationService.getDeliveries(userId, notification.getId()).stream()
+                .filter(delivery -> delivery.getChannel() == ChannelType.WEBHOOK)
+                .findFirst().orElseThrow();
+        assertEquals(1, webhook.getAttemptCount());
+        assertThat(notificationOutboxRepository.findAll()).singleElement()
+                .satisfies(entry -> {
+                    assertEquals(ChannelType.WEBHOOK, entry.getChannel());
+                    //leased until the backoff has passed, that is the retry
+                    assertThat(entry.getLockedUntil()).isAfter(LocalDateTime.now().plusSeconds(10));
+                });
+        assertEquals(NotificationStatus.SUCCEEDED, statuses(userId, notification).get(ChannelType.EMAIL));
+    }
+
+    private static void respond(int status, boolean immediately){
+        responseStatus = status;
+        released = new CountDownLatch(immediately ? 0 : 1);
+    }
+
+    private Map<ChannelType, NotificationStatus> statuses(UUID userId, ActivitiesNotification notification){
+        return notificationService.getDeliveries(userId, notification.getId()).stream()
+                .collect(Collectors.toMap(NotificationDelivery::getChannel, NotificationDelivery::getStatus));
+    }
+
+    private UUID createPreference(){
+        UUID userId = UUID.randomUUID();
+        notificationService.upsertPreference(UpsertNotificationPreference.builder()
+                .userId(userId)
+                .reservationEnabled(true)
+                .productEnabled(true)
+                .contactInfo("viktor@gmail.com")
+                .webhookUrl("http://localhost:" + webhookServer.getAddress().getPort() + "/hook")
+                .phoneNumber("+359888123456")
+                .build());
+        return userId;
+    }
+
+    private ActivitiesNotification sendReservation(UUID userId, String message){
+        return notificationService.sendNotification(ActivitiesNotificationRequest.builder()
+                .userId(userId)
+                .subject("Reservation")
+                .message(message)
+                .type(ActivityType.RESERVATION)
+                .build());
+    }
+}
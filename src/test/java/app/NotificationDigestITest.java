@@ -0,0 +1,169 @@
+package app;
+
+import app.mail.MailCircuitBreaker;
+import app.model.ActivitiesNotification;
+import app.model.ActivityType;
+import app.model.NotificationPreference;
+import app.model.NotificationStatus;
+import app.repository.ActivitiesNotificationRepository;
+import app.repository.NotificationOutboxRepository;
+import app.repository.NotificationPreferenceRepository;
+import app.service.NotificationDigestScheduler;
+import app.service.NotificationRetryScheduler;
+import app.service.NotificationService;
+import app.web.dto.ActivitiesNotificationRequest;
+import jakarta.mail.Session;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessagePreparator;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ActiveProfiles("test")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+@SpringBootTest(properties = "notifications.digest.max-size=3")
+public class NotificationDigestITest {
+    @Autowired
+    private NotificationService notificationService;
+
+    @Autowired
+    private NotificationDigestScheduler notificationDigestScheduler;
+
+    @Autowired
+    private NotificationPreferenceRepository notificationPreferenceRepository;
+
+    @Autowired
+    private ActivitiesNotificationRepository activitiesNotificationRepository;
+
+    @Autowired
+    private NotificationOutboxRepository notificationOutboxRepository;
+
+    @Autowired
+    private MailCircuitBreaker mailCircuitBreaker;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @MockitoBean
+    private JavaMailSender mailSender;
+
+    @Test
+    void testDigest_whenWindowCloses_shouldSendOneEmailForTheBurst() throws Exception {
+        UUID userId = createPreference(1);
+
+        sendReservation(userId, "Table for two");
+        sendReservation(userId, "Table for four");
+
+        await().atMost(Duration.ofSeconds(10)).untilAsserted(() ->
+                assertThat(activitiesNotificationRepository.findAllByUserId(userId)).allMatch(notification -> notification.getStatus() == NotificationStatus.SUCCEEDED));
+        ArgumentCaptor<MimeMessagePreparator> preparator = ArgumentCaptor.forClass(MimeMessagePreparator.class);
+        verify(mailSender, times(1)).send(preparator.capture());
+        MimeMessage message = new MimeMessage((Session) null);
+        preparator.getValue().prepare(message);
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        message.writeTo(raw);
+        assertThat(message.getSubject()).isEqualTo("You have 2 new notifications");
+        assertThat(raw.toString(StandardCharsets.UTF_8)).contains("Table for two", "Table for four", "text/html");
+        assertThat(activitiesNotificationRepository.findAllByUserId(userId)).extracting(ActivitiesNotification::getDigestId).doesNotContainNull().hasSize(2).containsOnly(
+                activitiesNotificationRepository.findAllByUserId(userId).get(0).getDigestId());
+    }
+
+    @Test
+    void testDigest_whenWindowIsOpen_shouldHoldUntilMaxSizeIsReached(){
+        UUID userId = createPreference(3600);
+
+        sendReservation(userId, "Table for two");
+        sendReservation(userId, "Table for four");
+        notificationDigestScheduler.flushDueDigests();
+
+        assertThat(notificationOutboxRepository.count()).isZero();
+        assertThat(activitiesNotificationRepository.findAllByUserId(userId)).allMatch(notification -> notification.getStatus() == NotificationStatus.PENDING && notification.getDigestId() == null);
+        verify(mailSender, never()).send(any(MimeMessagePreparator.class));
+
+        sendReservation(userId, "Table for six");
+
+        await().atMost(Duration.ofSeconds(10)).untilAsserted(() ->
+                assertThat(activitiesNotificationRepository.findAllByUserId(userId)).hasSize(3).allMatch(notification -> notification.getStatus() == NotificationStatus.SUCCEEDED));
+        verify(mailSender, times(1)).send(any(MimeMessagePreparator.class));
+    }
+
+    @Test
+    void testDigestRetry_whenItsRowsSpanSeveralRetryPages_shouldBeRequeuedAsOneEmail() throws Exception {
+        UUID userId = createPreference(1);
+        UUID digestId = UUID.randomUUID();
+        for(String message : List.of("Table for two", "Table for four", "Table for six")){
+            activitiesNotificationRepository.save(ActivitiesNotification.builder()
+                    .userId(userId)
+                    .subject("Reservation")
+                    .message(message)
+                    .type(ActivityType.RESERVATION)
+                    .status(NotificationStatus.FAILED)
+                    .attemptCount(1)
+                    .nextAttemptAt(LocalDateTime.now().minusSeconds(1))
+                    .digestId(digestId)
+                    .createdOn(LocalDateTime.now())
+                    .build());
+        }
+        //one row per page, the relay sends whatever the first poll requeued before the next poll runs
+        NotificationRetryScheduler retryScheduler = new NotificationRetryScheduler(activitiesNotificationRepository, notificationPreferenceRepository,
+                notificationOutboxRepository, mailCircuitBreaker, transactionManager, 1);
+
+        retryScheduler.retryDueNotifications();
+        await().atMost(Duration.ofSeconds(10)).untilAsserted(() ->
+                assertThat(activitiesNotificationRepository.findAllByUserId(userId)).anyMatch(notification -> notification.getStatus() == NotificationStatus.SUCCEEDED));
+        retryScheduler.retryDueNotifications();
+        retryScheduler.retryDueNotifications();
+
+        await().atMost(Duration.ofSeconds(10)).untilAsserted(() ->
+                assertThat(activitiesNotificationRepository.findAllByUserId(userId)).allMatch(notification -> notification.getStatus() == NotificationStatus.SUCCEEDED));
+        assertThat(notificationOutboxRepository.count()).isZero();
+        ArgumentCaptor<MimeMessagePreparator> preparator = ArgumentCaptor.forClass(MimeMessagePreparator.class);
+        verify(mailSender, times(1)).send(preparator.capture());
+        MimeMessage message = new MimeMessage((Session) null);
+        preparator.getValue().prepare(message);
+        assertThat(message.getSubject()).isEqualTo("You have 3 new notifications");
+    }
+
+    private UUID createPreference(int reservationDigestSeconds){
+        UUID userId = UUID.randomUUID();
+        notificationPreferenceRepository.save(NotificationPreference.builder()
+                .userId(userId)
+                .reservationEnabled(true)
+                .productEnabled(true)
+                .reservationDigestSeconds(reservationDigestSeconds)
+                .contactInfo("viktor@gmail.com")
+                .createdOn(LocalDateTime.now())
+                .updatedOn(LocalDateTime.now())
+                .build());
+        return userId;
+    }
+
+    private void sendReservation(UUID userId, String message){
+        notificationService.sendNotification(ActivitiesNotificationRequest.builder()
+                .userId(userId)
+                .subject("Reservation")
+                .message(message)
+                .type(ActivityType.RESERVATION)
+                .build());
+    }
+}
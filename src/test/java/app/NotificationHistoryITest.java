@@ -0,0 +1,84 @@
+package app;
+
+import app.model.ActivitiesNotification;
+import app.model.ActivityType;
+import app.model.NotificationHistoryEntry;
+import app.model.NotificationStatus;
+import app.repository.ActivitiesNotificationRepository;
+import app.service.NotificationService;
+import app.web.dto.HistoryCursor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ActiveProfiles("test")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+@SpringBootTest
+public class NotificationHistoryITest {
+    @Autowired
+    private NotificationService notificationService;
+
+    @Autowired
+    private ActivitiesNotificationRepository activitiesNotificationRepository;
+
+    @Test
+    void testGetHistory_pagingWithCursor_shouldReturnEveryVisibleNotificationOnceInOrder(){
+        UUID userId = UUID.randomUUID();
+        LocalDateTime now = LocalDateTime.now();
+        //pairs of rows share createdOn so the id tie-breaker is exercised
+        activitiesNotificationRepository.saveAll(IntStream.range(0, 25).mapToObj(i -> notification(userId, now.minusMinutes(i / 2), false)).toList());
+        activitiesNotificationRepository.save(notification(userId, now, true));
+
+        List<NotificationHistoryEntry> collected = new ArrayList<>();
+        HistoryCursor cursor = null;
+        List<NotificationHistoryEntry> page;
+        do {
+            page = notificationService.getHistory(userId, cursor, 10);
+            collected.addAll(page);
+            if(!page.isEmpty()){
+                NotificationHistoryEntry last = page.get(page.size() - 1);
+                cursor = new HistoryCursor(last.getCreatedOn(), last.getId());
+            }
+        } while (page.size() == 10);
+
+        assertThat(collected).hasSize(25);
+        assertThat(collected).extracting(NotificationHistoryEntry::getId).doesNotHaveDuplicates();
+        assertThat(collected).extracting(NotificationHistoryEntry::getCreatedOn).isSortedAccordingTo((a, b) -> b.compareTo(a));
+    }
+
+    @Test
+    void testStreamHistory_shouldVisitEveryVisibleNotification(){
+        UUID userId = UUID.randomUUID();
+        LocalDateTime now = LocalDateTime.now();
+        activitiesNotificationRepository.saveAll(IntStream.range(0, 30).mapToObj(i -> notification(userId, now.minusMinutes(i), false)).toList());
+        activitiesNotificationRepository.save(notification(userId, now, true));
+
+        List<NotificationHistoryEntry> streamed = new ArrayList<>();
+        notificationService.streamHistory(userId, streamed::add);
+
+        assertThat(streamed).hasSize(30);
+        assertThat(streamed).extracting(NotificationHistoryEntry::getId).doesNotHaveDuplicates();
+    }
+
+    private ActivitiesNotification notification(UUID userId, LocalDateTime createdOn, boolean isHidden){
+        return ActivitiesNotification.builder()
+                .userId(userId)
+                .type(ActivityType.RESERVATION)
+                .subject("Creating reservation")
+                .message("Table for two")
+                .status(NotificationStatus.SUCCEEDED)
+                .createdOn(createdOn)
+                .isHidden(isHidden)
+                .build();
+    }
+}
@@ -0,0 +1,96 @@
+package app;
+
+import app.model.ActivitiesNotification;
+import app.model.NotificationPreference;
+import app.repository.ActivitiesNotificationRepository;
+import app.repository.NotificationPreferenceRepository;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+@ActiveProfiles("test")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+@EmbeddedKafka(partitions = 2, topics = "notification-commands")
+@SpringBootTest(properties = {
+        "notifications.ingestion.enabled=true",
+        "notifications.ingestion.concurrency=2",
+        "spring.kafka.bootstrap-servers=${spring.embedded.kafka.brokers}"
+})
+public class NotificationIngestionITest {
+    @Autowired
+    private EmbeddedKafkaBroker embeddedKafkaBroker;
+
+    @Autowired
+    private NotificationPreferenceRepository notificationPreferenceRepository;
+
+    @Autowired
+    private ActivitiesNotificationRepository activitiesNotificationRepository;
+
+    @MockitoBean
+    private JavaMailSender mailSender;
+
+    @Test
+    void testIngestion_shouldPersistValidCommandsAndCommitPastTheRest() throws Exception {
+        UUID userId = UUID.randomUUID();
+        notificationPreferenceRepository.save(NotificationPreference.builder()
+                .userId(userId)
+                .reservationEnabled(true)
+                .productEnabled(false)
+                .contactInfo("viktor@gmail.com")
+                .createdOn(LocalDateTime.now())
+                .updatedOn(LocalDateTime.now())
+                .build());
+
+        KafkaTemplate<String, String> kafkaTemplate = new KafkaTemplate<>(new DefaultKafkaProducerFactory<>(
+                KafkaTestUtils.producerProps(embeddedKafkaBroker), new StringSerializer(), new StringSerializer()));
+        try {
+            //keyed by user, so the commands of one user stay in order on one partition
+            kafkaTemplate.send("notification-commands", userId.toString(), command(userId, "RESERVATION", "Table for two"));
+            kafkaTemplate.send("notification-commands", userId.toString(), command(userId, "RESERVATION", "Table for four"));
+            kafkaTemplate.send("notification-commands", userId.toString(), command(userId, "BUYING_PRODUCT", "Product notifications are disabled"));
+            kafkaTemplate.send("notification-commands", userId.toString(), "{not json");
+            kafkaTemplate.send("notification-commands", userId.toString(), command(userId, "RESERVATION", "")).get();
+        } finally {
+            kafkaTemplate.destroy();
+        }
+
+        await().atMost(Duration.ofSeconds(30)).untilAsserted(() ->
+                assertThat(committedOffsets()).isEqualTo(5));
+        assertThat(activitiesNotificationRepository.findAllByUserId(userId))
+                .extracting(ActivitiesNotification::getMessage)
+                .containsExactlyInAnyOrder("Table for two", "Table for four");
+    }
+
+    private long committedOffsets() throws Exception {
+        try (AdminClient adminClient = AdminClient.create(Map.of(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, embeddedKafkaBroker.getBrokersAsString()))) {
+            return adminClient.listConsumerGroupOffsets("activity-svc").partitionsToOffsetAndMetadata().get().values().stream()
+                    .mapToLong(OffsetAndMetadata::offset)
+                    .sum();
+        }
+    }
+
+    private String command(UUID userId, String type, String message){
+        return "{\"userId\":\"" + userId + "\",\"subject\":\"Reservation\",\"message\":\"" + message + "\",\"type\":\"" + type + "\"}";
+    }
+}
@@ -0,0 +1,84 @@
+package app;
+
+import app.model.ActivityType;
+import app.model.NotificationStatus;
+import app.repository.NotificationPreferenceRepository;
+import app.service.NotificationService;
+import app.web.dto.ActivitiesNotificationRequest;
+import app.web.dto.UpsertNotificationPreference;
+import com.github.benmanes.caffeine.cache.Cache;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ActiveProfiles("test")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+@SpringBootTest
+public class NotificationPreferenceCacheITest {
+    @Autowired
+    private NotificationService notificationService;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @MockitoBean
+    private JavaMailSender mailSender;
+
+    @Test
+    void testPreferenceChange_shouldBeVisibleOnNextSend(){
+        UUID userId = UUID.randomUUID();
+        notificationService.upsertPreference(preference(userId, true));
+
+        assertEquals(NotificationStatus.PENDING, notificationService.sendNotification(request(userId)).getStatus());
+
+        notificationService.upsertPreference(preference(userId, false));
+
+        assertThrows(IllegalArgumentException.class, () -> notificationService.sendNotification(request(userId)));
+    }
+
+    @Test
+    void testMissingPreference_shouldBeCachedUntilUpserted(){
+        UUID userId = UUID.randomUUID();
+
+        assertThrows(NullPointerException.class, () -> notificationService.getNotificationPreference(userId));
+        assertThrows(NullPointerException.class, () -> notificationService.getNotificationPreference(userId));
+        assertEquals(1, nativeCache().stats().hitCount());
+
+        notificationService.upsertPreference(preference(userId, true));
+
+        assertTrue(notificationService.getNotificationPreference(userId).isProductEnabled());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Cache<Object, Object> nativeCache(){
+        return ((CaffeineCache) cacheManager.getCache(NotificationPreferenceRepository.CACHE_NAME)).getNativeCache();
+    }
+
+    private UpsertNotificationPreference preference(UUID userId, boolean productEnabled){
+        return UpsertNotificationPreference.builder()
+                .userId(userId)
+                .reservationEnabled(true)
+                .productEnabled(productEnabled)
+                .contactInfo("viktor@gmail.com")
+                .build();
+    }
+
+    private ActivitiesNotificationRequest request(UUID userId){
+        return ActivitiesNotificationRequest.builder()
+                .userId(userId)
+                .subject("Water")
+                .message("1.00 lv")
+                .type(ActivityType.BUYING_PRODUCT)
+                .build();
+    }
+}
@@ -0,0 +1,142 @@
+package app;
+
+import app.model.ActivitiesNotification;
+import app.model.ActivityType;
+import app.model.NotificationPreference;
+import app.model.NotificationStatus;
+import app.model.ScheduledNotification;
+import app.repository.ActivitiesNotificationRepository;
+import app.repository.NotificationPreferenceRepository;
+import app.repository.ScheduledNotificationRepository;
+import app.service.NotificationRateLimiter;
+import app.service.NotificationService;
+import app.service.ScheduledNotificationTimer;
+import app.web.dto.ActivitiesNotificationRequest;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessagePreparator;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ActiveProfiles("test")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+//the retry scheduler never runs, parked emails can only come back through the outbox relay
+@SpringBootTest(properties = {
+        "notifications.rate-limit.global.per-second=1",
+        "notifications.rate-limit.global.burst=1",
+        "notifications.rate-limit.user.per-minute=60",
+        "notifications.rate-limit.user.burst=1",
+        "notifications.scheduled.load-interval-ms=3600000",
+        "notifications.retry.poll-interval-ms=600000"
+})
+public class NotificationRateLimitITest {
+    @Autowired
+    private NotificationService notificationService;
+
+    @Autowired
+    private NotificationPreferenceRepository notificationPreferenceRepository;
+
+    @Autowired
+    private ActivitiesNotificationRepository activitiesNotificationRepository;
+
+    @Autowired
+    private NotificationRateLimiter notificationRateLimiter;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ScheduledNotificationTimer scheduledNotificationTimer;
+
+    @Autowired
+    private ScheduledNotificationRepository scheduledNotificationRepository;
+
+    @MockitoBean
+    private JavaMailSender mailSender;
+
+    @Test
+    void testSendNotifications_overGlobalRate_shouldParkTheRestAsPendingWithoutSpendingAnAttempt(){
+        UUID userId = createPreference();
+
+        notificationService.sendNotifications(List.of(
+                ActivitiesNotificationRequest.builder().userId(userId).subject("Water").message("1.00 lv").type(ActivityType.BUYING_PRODUCT).build(),
+                ActivitiesNotificationRequest.builder().userId(userId).subject("Bread").message("2.00 lv").type(ActivityType.BUYING_PRODUCT).build()));
+
+        //one email a second, the second one of the batch waits in the outbox until a token is free
+        await().atMost(Duration.ofSeconds(5)).untilAsserted(() -> assertThat(activitiesNotificationRepository.findAllByUserId(userId))
+                .filteredOn(notification -> notification.getNextAttemptAt() != null && notification.getStatus() == NotificationStatus.PENDING)
+                .singleElement()
+                .satisfies(parked -> {
+                    assertEquals(0, parked.getAttemptCount());
+                    assertThat(parked.getNextAttemptAt()).isBefore(LocalDateTime.now().plusSeconds(2));
+                }));
+        verify(mailSender, times(1)).send(any(MimeMessagePreparator.class));
+        //counted as throttled, not as a failed completion
+        assertThat(meterRegistry.get("notifications.throttled").tag("type", "BUYING_PRODUCT").counter().count()).isGreaterThanOrEqualTo(1);
+        assertThat(meterRegistry.find("notifications.completed").tag("status", "FAILED").counter()).isNull();
+
+        //handed out again by the relay, no retry scheduler involved
+        await().atMost(Duration.ofSeconds(5)).untilAsserted(() -> assertThat(activitiesNotificationRepository.findAllByUserId(userId))
+                .allSatisfy(delivered -> {
+                    assertEquals(NotificationStatus.SUCCEEDED, delivered.getStatus());
+                    assertEquals(1, delivered.getAttemptCount());
+                }));
+        verify(mailSender, times(2)).send(any(MimeMessagePreparator.class));
+    }
+
+    @Test
+    void testScheduledSend_whenTheUserIsOverTheLimit_shouldWaitForATokenBeforeSending(){
+        UUID userId = createPreference();
+        //the one token of the burst is taken, the next one comes a second later
+        notificationRateLimiter.acquire(userId);
+        ScheduledNotification reminder = scheduledNotificationRepository.save(ScheduledNotification.builder()
+                .userId(userId)
+                .type(ActivityType.RESERVATION)
+                .subject("Reservation")
+                .message("Your table is ready in one hour")
+                .sendAt(LocalDateTime.now().minusSeconds(1))
+                .createdOn(LocalDateTime.now())
+                .build());
+
+        scheduledNotificationTimer.loadWindow();
+
+        await().during(Duration.ofMillis(300)).atMost(Duration.ofMillis(600)).until(() -> scheduledNotificationRepository.findById(reminder.getId()).isPresent());
+        verify(mailSender, never()).send(any(MimeMessagePreparator.class));
+
+        await().atMost(Duration.ofSeconds(5)).untilAsserted(() -> assertThat(activitiesNotificationRepository.findAllByUserId(userId)).singleElement()
+                .extracting(ActivitiesNotification::getStatus).isEqualTo(NotificationStatus.SUCCEEDED));
+        assertTrue(scheduledNotificationRepository.findById(reminder.getId()).isEmpty());
+        verify(mailSender, times(1)).send(any(MimeMessagePreparator.class));
+    }
+
+    private UUID createPreference(){
+        UUID userId = UUID.randomUUID();
+        notificationPreferenceRepository.save(NotificationPreference.builder()
+                .userId(userId)
+                .reservationEnabled(true)
+                .productEnabled(true)
+                .contactInfo("viktor@gmail.com")
+                .createdOn(LocalDateTime.now())
+                .updatedOn(LocalDateTime.now())
+                .build());
+        return userId;
+    }
+}
@@ -0,0 +1,131 @@
+package app;
+
+import app.datasource.ReplicaRoutingDataSource;
+import app.model.ActivitiesNotification;
+import app.model.ActivityType;
+import app.model.NotificationHistoryEntry;
+import app.service.NotificationService;
+import app.web.dto.ActivitiesNotificationRequest;
+import app.web.dto.UpsertNotificationPreference;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@ActiveProfiles("test")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+@SpringBootTest
+public class NotificationReplicaRoutingITest {
+    private static JdbcTemplate replica;
+
+    @Autowired
+    private NotificationService notificationService;
+
+    @Autowired
+    private ReplicaRoutingDataSource replicaRoutingDataSource;
+
+    @MockitoBean
+    private JavaMailSender mailSender;
+
+    //a second in-memory database stands in for the replica, replication is whatever the test writes into it
+    @DynamicPropertySource
+    static void replicaProperties(DynamicPropertyRegistry registry){
+        String url = "jdbc:h2:mem:replica-" + UUID.randomUUID() + ";MODE=MYSQL;DB_CLOSE_DELAY=-1";
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(url, "sa", "password");
+        Flyway.configure().dataSource(dataSource).load().migrate();
+        replica = new JdbcTemplate(dataSource);
+
+        registry.add("notifications.replicas.enabled", () -> true);
+        registry.add("notifications.replicas.urls", () -> url);
+        //checked by the tests themselves
+        registry.add("notifications.replicas.heartbeat-interval-ms", () -> 3600000);
+    }
+
+    @Test
+    void testReadOnlyCalls_withReplicaCaughtUp_shouldReadFromTheReplica(){
+        UUID userId = createPreference();
+        UUID replicatedId = replicateNotification(userId);
+        catchUp(System.currentTimeMillis(), 1);
+
+        assertThat(notificationService.getHistory(userId, null, 10))
+                .extracting(NotificationHistoryEntry::getId)
+                .containsExactly(replicatedId);
+    }
+
+    @Test
+    void testReadOnlyCalls_withReplicaLagging_shouldFallBackToPrimary(){
+        UUID userId = createPreference();
+        replicateNotification(userId);
+        catchUp(System.currentTimeMillis() - 60000, 0);
+
+        assertThat(notificationService.getHistory(userId, null, 10)).isEmpty();
+    }
+
+    @Test
+    void testWrites_shouldAlwaysGoToPrimary(){
+        catchUp(System.currentTimeMillis(), 1);
+        UUID userId = createPreference();
+
+        ActivitiesNotification notification = notificationService.sendNotification(ActivitiesNotificationRequest.builder()
+                .userId(userId)
+                .subject("Reservation")
+                .message("Table for two")
+                .type(ActivityType.RESERVATION)
+                .build());
+
+        assertEquals(0, replica.queryForObject("SELECT COUNT(*) FROM activities_notification WHERE id = ?", Integer.class, bytes(notification.getId())));
+        assertEquals(0, replica.queryForObject("SELECT COUNT(*) FROM notification_preference", Integer.class));
+        //the preference was cached when it was saved, reads of it never reach the empty replica
+        assertEquals("viktor@gmail.com", notificationService.getNotificationPreference(userId).getContactInfo());
+    }
+
+    private UUID createPreference(){
+        UUID userId = UUID.randomUUID();
+        notificationService.upsertPreference(UpsertNotificationPreference.builder()
+                .userId(userId)
+                .reservationEnabled(true)
+                .productEnabled(true)
+                .contactInfo("viktor@gmail.com")
+                .build());
+        return userId;
+    }
+
+    //a row only the replica has, so the result shows which database answered
+    private UUID replicateNotification(UUID userId){
+        UUID id = UUID.randomUUID();
+        replica.update("INSERT INTO activities_notification (id, user_id, type, subject, message, status, created_on, is_hidden) " +
+                "VALUES (?, ?, 'RESERVATION', 'Reservation', 'Table for two', 'SUCCEEDED', ?, FALSE)", bytes(id), bytes(userId), LocalDateTime.now());
+        return id;
+    }
+
+    //the check runs on the heartbeat executor, its result shows up in the healthy count
+    private void catchUp(long beatAtMillis, int expectedHealthy){
+        replica.update("UPDATE replica_heartbeat SET beat_at_millis = ? WHERE id = 1", beatAtMillis);
+        //a check started at startup may still be running, that round is skipped and the next one sees the new row
+        await().atMost(Duration.ofSeconds(5)).untilAsserted(() -> {
+            replicaRoutingDataSource.heartbeat();
+            assertEquals(expectedHealthy, replicaRoutingDataSource.healthyReplicaCount());
+        });
+    }
+
+    private static byte[] bytes(UUID uuid){
+        return ByteBuffer.allocate(16).putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits()).array();
+    }
+}
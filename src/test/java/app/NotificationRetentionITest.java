@@ -0,0 +1,77 @@
+package app;
+
+import app.model.ActivitiesNotification;
+import app.model.ActivityType;
+import app.model.NotificationStatus;
+import app.repository.ActivitiesNotificationRepository;
+import app.service.NotificationRetentionJob;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ActiveProfiles("test")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+@SpringBootTest(properties = {
+        "notifications.retention.batch-size=3",
+        "notifications.retention.pause-ms=0",
+        "notifications.retention.hidden-days=30",
+        "notifications.retention.days.SUCCEEDED=365",
+        "notifications.retention.days.DEAD=0",
+        "notifications.retention.days.RESERVATION.SUCCEEDED=730"
+})
+public class NotificationRetentionITest {
+    @Autowired
+    private NotificationRetentionJob notificationRetentionJob;
+
+    @Autowired
+    private ActivitiesNotificationRepository activitiesNotificationRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void testArchiveExpiredNotifications_shouldMoveOnlyExpiredFinishedRows(){
+        UUID userId = UUID.randomUUID();
+        LocalDateTime now = LocalDateTime.now();
+        //past the 365 day window, moved across several batches
+        List<ActivitiesNotification> expired = IntStream.range(0, 7).mapToObj(i -> notification(userId, ActivityType.BUYING_PRODUCT, NotificationStatus.SUCCEEDED, now.minusDays(400 + i), false)).toList();
+        activitiesNotificationRepository.saveAll(expired);
+        //hidden for longer than 30 days
+        ActivitiesNotification hidden = activitiesNotificationRepository.save(notification(userId, ActivityType.BUYING_PRODUCT, NotificationStatus.SUCCEEDED, now.minusDays(40), true));
+        //reservations are kept for 730 days, failures are still being retried and DEAD is kept forever here
+        ActivitiesNotification reservation = activitiesNotificationRepository.save(notification(userId, ActivityType.RESERVATION, NotificationStatus.SUCCEEDED, now.minusDays(400), false));
+        ActivitiesNotification failed = activitiesNotificationRepository.save(notification(userId, ActivityType.BUYING_PRODUCT, NotificationStatus.FAILED, now.minusDays(400), true));
+        ActivitiesNotification dead = activitiesNotificationRepository.save(notification(userId, ActivityType.BUYING_PRODUCT, NotificationStatus.DEAD, now.minusDays(400), false));
+        ActivitiesNotification recent = activitiesNotificationRepository.save(notification(userId, ActivityType.BUYING_PRODUCT, NotificationStatus.SUCCEEDED, now.minusDays(1), true));
+
+        int archived = notificationRetentionJob.archiveExpiredNotifications();
+
+        assertThat(archived).isEqualTo(8);
+        assertThat(activitiesNotificationRepository.findAllByUserId(userId)).extracting(ActivitiesNotification::getId)
+                .containsExactlyInAnyOrder(reservation.getId(), failed.getId(), dead.getId(), recent.getId());
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM activities_notification_archive WHERE user_id = ?", Integer.class, userId)).isEqualTo(8);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM activities_notification_archive WHERE id = ? AND is_hidden = TRUE", Integer.class, hidden.getId())).isEqualTo(1);
+    }
+
+    private ActivitiesNotification notification(UUID userId, ActivityType type, NotificationStatus status, LocalDateTime createdOn, boolean isHidden){
+        return ActivitiesNotification.builder()
+                .userId(userId)
+                .type(type)
+                .subject("Creating reservation")
+                .message("Table for two")
+                .status(status)
+                .createdOn(createdOn)
+                .isHidden(isHidden)
+                .build();
+    }
+}
@@ -0,0 +1,183 @@
+package app;
+
+import app.exception.IdempotencyKeyTargetGoneException;
+import app.model.ActivitiesNotification;
+import app.model.ActivityType;
+import app.model.ScheduledNotification;
+import app.repository.ActivitiesNotificationRepository;
+import app.model.NotificationStatus;
+import app.repository.ScheduledNotificationRepository;
+import app.service.IdempotencyKeyStore;
+import app.service.NotificationService;
+import app.service.ScheduledNotificationTimer;
+import app.web.dto.ActivitiesNotificationRequest;
+import app.web.dto.UpsertNotificationPreference;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessagePreparator;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ActiveProfiles("test")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+//loads after startup are triggered by the tests themselves
+@SpringBootTest(properties = "notifications.scheduled.load-interval-ms=3600000")
+public class NotificationSchedulingITest {
+    @Autowired
+    private NotificationService notificationService;
+
+    @Autowired
+    private ScheduledNotificationTimer scheduledNotificationTimer;
+
+    @Autowired
+    private ScheduledNotificationRepository scheduledNotificationRepository;
+
+    @Autowired
+    private ActivitiesNotificationRepository activitiesNotificationRepository;
+
+    @Autowired
+    private IdempotencyKeyStore idempotencyKeyStore;
+
+    @MockitoBean
+    private JavaMailSender mailSender;
+
+    @Test
+    void testSchedule_shouldSendOnceSendAtHasPassed(){
+        UUID userId = createPreference();
+        LocalDateTime sendAt = LocalDateTime.now().plusSeconds(2);
+        //the load at startup may not have run yet, until it has everything is left to it
+        scheduledNotificationTimer.loadWindow();
+
+        ScheduledNotification scheduledNotification = notificationService.scheduleNotification(reminder(userId, sendAt));
+
+        assertEquals(1, scheduledNotificationTimer.loadedCount());
+        assertThat(activitiesNotificationRepository.findAllByUserId(userId)).isEmpty();
+
+        await().atMost(Duration.ofSeconds(10)).untilAsserted(() -> verify(mailSender, times(1)).send(any(MimeMessagePreparator.class)));
+        ActivitiesNotification sent = activitiesNotificationRepository.findAllByUserId(userId).get(0);
+        assertTrue(!sent.getCreatedOn().isBefore(sendAt));
+        assertEquals("Your table is ready in one hour", sent.getMessage());
+        assertTrue(scheduledNotificationRepository.findById(scheduledNotification.getId()).isEmpty());
+    }
+
+    @Test
+    void testCancel_beforeSendAt_shouldNeverSend() throws Exception {
+        UUID userId = createPreference();
+        scheduledNotificationTimer.loadWindow();
+        ScheduledNotification scheduledNotification = notificationService.scheduleNotification(reminder(userId, LocalDateTime.now().plusSeconds(1)));
+        assertEquals(1, scheduledNotificationTimer.loadedCount());
+
+        assertEquals(1, notificationService.cancelScheduledNotification(userId, scheduledNotification.getId()));
+        //someone else's id cancels nothing
+        assertEquals(0, notificationService.cancelScheduledNotification(UUID.randomUUID(), scheduledNotification.getId()));
+
+        Thread.sleep(2000);
+        assertThat(activitiesNotificationRepository.findAllByUserId(userId)).isEmpty();
+        verify(mailSender, never()).send(any(MimeMessagePreparator.class));
+    }
+
+    @Test
+    void testLoadWindow_shouldSendWhatCameDueWhileDownAndLeaveLaterOnesInTheTable(){
+        UUID userId = createPreference();
+        //written by an instance that stopped before sending them
+        ScheduledNotification overdue = scheduledNotificationRepository.save(ScheduledNotification.builder()
+                .userId(userId)
+                .type(ActivityType.RESERVATION)
+                .subject("Reservation")
+                .message("Your table is ready in one hour")
+                .sendAt(LocalDateTime.now().minusMinutes(5))
+                .createdOn(LocalDateTime.now().minusDays(1))
+                .build());
+        ScheduledNotification nextWeek = scheduledNotificationRepository.save(ScheduledNotification.builder()
+                .userId(userId)
+                .type(ActivityType.RESERVATION)
+                .subject("Reservation")
+                .message("See you next week")
+                .sendAt(LocalDateTime.now().plusDays(7))
+                .createdOn(LocalDateTime.now())
+                .build());
+
+        scheduledNotificationTimer.loadWindow();
+
+        await().atMost(Duration.ofSeconds(10)).untilAsserted(() ->
+                assertThat(activitiesNotificationRepository.findAllByUserId(userId)).singleElement()
+                        .extracting(ActivitiesNotification::getMessage).isEqualTo("Your table is ready in one hour"));
+        assertTrue(scheduledNotificationRepository.findById(overdue.getId()).isEmpty());
+        assertTrue(scheduledNotificationRepository.findById(nextWeek.getId()).isPresent());
+        assertEquals(0, scheduledNotificationTimer.loadedCount());
+    }
+
+    @Test
+    void testSchedule_withRepeatedIdempotencyKey_shouldScheduleOnceAndAnswerLaterRetriesWithTheSentNotification(){
+        UUID userId = createPreference();
+        scheduledNotificationTimer.loadWindow();
+        ActivitiesNotificationRequest request = reminder(userId, LocalDateTime.now().plusSeconds(2));
+
+        ScheduledNotification first = idempotencyKeyStore.resolveScheduled(request, "reminder-1", () -> notificationService.scheduleNotification(request, "reminder-1"));
+        ScheduledNotification retried = idempotencyKeyStore.resolveScheduled(request, "reminder-1", () -> notificationService.scheduleNotification(request, "reminder-1"));
+        assertEquals(first.getId(), retried.getId());
+        assertEquals(1, scheduledNotificationRepository.count());
+
+        await().atMost(Duration.ofSeconds(10)).untilAsserted(() ->
+                assertThat(activitiesNotificationRepository.findAllByUserId(userId)).singleElement()
+                        .extracting(ActivitiesNotification::getStatus).isEqualTo(NotificationStatus.SUCCEEDED));
+        ActivitiesNotification sent = activitiesNotificationRepository.findAllByUserId(userId).get(0);
+
+        //past its sendAt the same request is no longer scheduled, the key still answers it
+        ActivitiesNotification answered = idempotencyKeyStore.resolve(request, "reminder-1", () -> notificationService.sendNotification(request, "reminder-1"));
+        assertEquals(sent.getId(), answered.getId());
+        assertThat(activitiesNotificationRepository.findAllByUserId(userId)).hasSize(1);
+        verify(mailSender, times(1)).send(any(MimeMessagePreparator.class));
+    }
+
+    @Test
+    void testSchedule_retriedAfterItWasCancelled_shouldBeRefusedInsteadOfScheduledAgain(){
+        UUID userId = createPreference();
+        ActivitiesNotificationRequest request = reminder(userId, LocalDateTime.now().plusHours(1));
+        ScheduledNotification scheduledNotification = idempotencyKeyStore.resolveScheduled(request, "reminder-1", () -> notificationService.scheduleNotification(request, "reminder-1"));
+
+        assertEquals(1, notificationService.cancelScheduledNotification(userId, scheduledNotification.getId()));
+
+        assertThrows(IdempotencyKeyTargetGoneException.class,
+                () -> idempotencyKeyStore.resolveScheduled(request, "reminder-1", () -> notificationService.scheduleNotification(request, "reminder-1")));
+        assertEquals(0, scheduledNotificationRepository.count());
+    }
+
+    private UUID createPreference(){
+        UUID userId = UUID.randomUUID();
+        notificationService.upsertPreference(UpsertNotificationPreference.builder()
+                .userId(userId)
+                .reservationEnabled(true)
+                .productEnabled(true)
+                .contactInfo("viktor@gmail.com")
+                .build());
+        return userId;
+    }
+
+    private static ActivitiesNotificationRequest reminder(UUID userId, LocalDateTime sendAt){
+        return ActivitiesNotificationRequest.builder()
+                .userId(userId)
+                .subject("Reservation")
+                .message("Your table is ready in one hour")
+                .type(ActivityType.RESERVATION)
+                .sendAt(sendAt)
+                .build();
+    }
+}
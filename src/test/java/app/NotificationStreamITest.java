@@ -0,0 +1,156 @@
+package app;
+
+import app.model.ActivitiesNotification;
+import app.model.ActivityType;
+import app.model.NotificationPreference;
+import app.repository.ActivitiesNotificationRepository;
+import app.repository.NotificationPreferenceRepository;
+import app.service.NotificationService;
+import app.web.NotificationStreamRegistry;
+import app.web.dto.ActivitiesNotificationRequest;
+import app.web.dto.HistoryCursor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+@ActiveProfiles("test")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class NotificationStreamITest {
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private NotificationService notificationService;
+
+    @Autowired
+    private NotificationStreamRegistry notificationStreamRegistry;
+
+    @Autowired
+    private NotificationPreferenceRepository notificationPreferenceRepository;
+
+    @Autowired
+    private ActivitiesNotificationRepository activitiesNotificationRepository;
+
+    @MockitoBean
+    private JavaMailSender mailSender;
+
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+
+    @Test
+    void testStream_shouldPushNotificationsAsTheyAreSent() throws Exception {
+        UUID userId = createPreference();
+        BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+        CompletableFuture<?> stream = connect(userId, null, lines);
+        try {
+            await().atMost(Duration.ofSeconds(10)).until(() -> notificationStreamRegistry.connectionCount() == 1);
+
+            ActivitiesNotification notification = send(userId, "Table for two");
+
+            assertThat(nextData(lines)).contains(notification.getId().toString(), "\"read\":false");
+        } finally {
+            stream.cancel(true);
+        }
+    }
+
+    @Test
+    void testStream_withLastEventId_shouldReplayWhatWasMissed() throws Exception {
+        UUID userId = createPreference();
+        ActivitiesNotification seen = send(userId, "Table for two");
+        ActivitiesNotification missed = send(userId, "Table for four");
+        ActivitiesNotification stored = activitiesNotificationRepository.findById(seen.getId()).orElseThrow();
+
+        BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+        CompletableFuture<?> stream = connect(userId, new HistoryCursor(stored.getCreatedOn(), stored.getId()).encode(), lines);
+        try {
+            String data = nextData(lines);
+
+            assertThat(data).contains(missed.getId().toString()).doesNotContain(seen.getId().toString());
+        } finally {
+            stream.cancel(true);
+        }
+    }
+
+    @Test
+    void testHeartbeat_shouldReachTheClient() throws Exception {
+        UUID userId = createPreference();
+        BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+        CompletableFuture<?> stream = connect(userId, null, lines);
+        try {
+            await().atMost(Duration.ofSeconds(10)).until(() -> notificationStreamRegistry.connectionCount() == 1);
+
+            notificationStreamRegistry.sendHeartbeats();
+
+            String line;
+            do {
+                line = lines.poll(10, TimeUnit.SECONDS);
+                assertThat(line).as("a heartbeat within 10 seconds").isNotNull();
+            } while(!line.startsWith(":"));
+            assertThat(line).isEqualTo(":heartbeat");
+        } finally {
+            stream.cancel(true);
+        }
+    }
+
+    private CompletableFuture<?> connect(UUID userId, String lastEventId, BlockingQueue<String> lines){
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/v1/notifications/stream?userId=" + userId))
+                .header("Accept", "text/event-stream");
+        if(lastEventId != null){
+            request.header("Last-Event-ID", lastEventId);
+        }
+        return httpClient.sendAsync(request.build(), HttpResponse.BodyHandlers.ofLines())
+                .thenAccept(response -> response.body().forEach(lines::add));
+    }
+
+    private String nextData(BlockingQueue<String> lines) throws InterruptedException {
+        while(true){
+            String line = lines.poll(10, TimeUnit.SECONDS);
+            assertThat(line).as("an event within 10 seconds").isNotNull();
+            if(line.startsWith("data:")){
+                return line;
+            }
+        }
+    }
+
+    private UUID createPreference(){
+        UUID userId = UUID.randomUUID();
+        notificationPreferenceRepository.save(NotificationPreference.builder()
+                .userId(userId)
+                .reservationEnabled(true)
+                .productEnabled(true)
+                .contactInfo("viktor@gmail.com")
+                .createdOn(LocalDateTime.now())
+                .updatedOn(LocalDateTime.now())
+                .build());
+        return userId;
+    }
+
+    private ActivitiesNotification send(UUID userId, String message){
+        return notificationService.sendNotification(ActivitiesNotificationRequest.builder()
+                .userId(userId)
+                .subject("Reservation")
+                .message(message)
+                .type(ActivityType.RESERVATION)
+                .build());
+    }
+}
@@ -0,0 +1,104 @@
+package app;
+
+import app.model.ActivitiesNotification;
+import app.model.ActivityType;
+import app.model.NotificationHistoryEntry;
+import app.model.NotificationPreference;
+import app.repository.NotificationPreferenceRepository;
+import app.service.NotificationService;
+import app.web.dto.ActivitiesNotificationRequest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@ActiveProfiles("test")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+@SpringBootTest
+public class NotificationUnreadCountITest {
+    @Autowired
+    private NotificationService notificationService;
+
+    @Autowired
+    private NotificationPreferenceRepository notificationPreferenceRepository;
+
+    @MockitoBean
+    private JavaMailSender mailSender;
+
+    @Test
+    void testUnreadCount_shouldFollowSendsReadsAndVisibility(){
+        UUID userId = createPreference();
+        ActivitiesNotification first = send(userId, "Table for two");
+        send(userId, "Table for four");
+
+        //counted from the table on first use, then kept up to date in memory
+        assertEquals(2, notificationService.getUnreadCount(userId));
+        send(userId, "Table for six");
+        assertEquals(3, notificationService.getUnreadCount(userId));
+
+        assertEquals(1, notificationService.markAsRead(userId, List.of(first.getId())));
+        assertEquals(0, notificationService.markAsRead(userId, List.of(first.getId())));
+        assertEquals(2, notificationService.getUnreadCount(userId));
+        assertThat(notificationService.getHistory(userId, null, 10))
+                .filteredOn(NotificationHistoryEntry::isRead)
+                .extracting(NotificationHistoryEntry::getId)
+                .containsExactly(first.getId());
+
+        notificationService.setAllNotificationsIsHiddenToTrue(userId);
+        assertEquals(0, notificationService.getUnreadCount(userId));
+        notificationService.setAllNotificationsIsHiddenToFalse(userId);
+        assertEquals(2, notificationService.getUnreadCount(userId));
+
+        assertEquals(2, notificationService.markAsRead(userId, null));
+        assertEquals(0, notificationService.getUnreadCount(userId));
+    }
+
+    @Test
+    void testUnreadCount_whenSendRollsBack_shouldNotCountIt(){
+        UUID userId = createPreference();
+        notificationService.sendNotification(request(userId, "Table for two"), "order-42");
+        assertEquals(1, notificationService.getUnreadCount(userId));
+
+        assertThrows(DataIntegrityViolationException.class, () -> notificationService.sendNotification(request(userId, "Table for two"), "order-42"));
+
+        assertEquals(1, notificationService.getUnreadCount(userId));
+    }
+
+    private UUID createPreference(){
+        UUID userId = UUID.randomUUID();
+        notificationPreferenceRepository.save(NotificationPreference.builder()
+                .userId(userId)
+                .reservationEnabled(true)
+                .productEnabled(true)
+                .contactInfo("viktor@gmail.com")
+                .createdOn(LocalDateTime.now())
+                .updatedOn(LocalDateTime.now())
+                .build());
+        return userId;
+    }
+
+    private ActivitiesNotification send(UUID userId, String message){
+        return notificationService.sendNotification(request(userId, message));
+    }
+
+    private ActivitiesNotificationRequest request(UUID userId, String message){
+        return ActivitiesNotificationRequest.builder()
+                .userId(userId)
+                .subject("Reservation")
+                .message(message)
+                .type(ActivityType.RESERVATION)
+                .build();
+    }
+}
@@ -0,0 +1,60 @@
+package app;
+
+import app.model.ActivitiesNotification;
+import app.model.ActivityType;
+import app.model.NotificationStatus;
+import app.repository.ActivitiesNotificationRepository;
+import app.service.NotificationService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@ActiveProfiles("test")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+@SpringBootTest
+public class NotificationVisibilityITest {
+    @Autowired
+    private NotificationService notificationService;
+
+    @Autowired
+    private ActivitiesNotificationRepository activitiesNotificationRepository;
+
+    @Test
+    void testHideAndShowAllNotifications_shouldOnlyTouchTheGivenUser(){
+        UUID userId = UUID.randomUUID();
+        UUID otherUserId = UUID.randomUUID();
+        activitiesNotificationRepository.saveAll(IntStream.range(0, 12000).mapToObj(i -> notification(userId)).toList());
+        activitiesNotificationRepository.save(notification(otherUserId));
+
+        assertEquals(12000, notificationService.setAllNotificationsIsHiddenToTrue(userId));
+        assertEquals(0, notificationService.setAllNotificationsIsHiddenToTrue(userId));
+        assertThat(activitiesNotificationRepository.findAllByUserIdAndIsHiddenOrderByCreatedOnDesc(userId, false)).isEmpty();
+        assertThat(activitiesNotificationRepository.findAllByUserIdAndIsHiddenOrderByCreatedOnDesc(otherUserId, false)).hasSize(1);
+
+        assertEquals(12000, notificationService.setAllNotificationsIsHiddenToFalse(userId));
+        List<ActivitiesNotification> visible = activitiesNotificationRepository.findAllByUserIdAndIsHiddenOrderByCreatedOnDesc(userId, false);
+        assertThat(visible).hasSize(12000);
+    }
+
+    private ActivitiesNotification notification(UUID userId){
+        return ActivitiesNotification.builder()
+                .userId(userId)
+                .type(ActivityType.RESERVATION)
+                .subject("Creating reservation")
+                .message("Table for two")
+                .status(NotificationStatus.SUCCEEDED)
+                .createdOn(LocalDateTime.now())
+                .isHidden(false)
+                .build();
+    }
+}
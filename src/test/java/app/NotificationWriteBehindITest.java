@@ -0,0 +1,163 @@
+package app;
+
+import app.model.ActivitiesNotification;
+import app.model.ActivityType;
+import app.model.NotificationPreference;
+import app.model.NotificationStatus;
+import app.repository.ActivitiesNotificationRepository;
+import app.repository.NotificationPreferenceRepository;
+import app.service.NotificationService;
+import app.service.NotificationWriteBehindBuffer;
+import app.service.WriteBehindEntry;
+import app.web.dto.ActivitiesNotificationRequest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessagePreparator;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ActiveProfiles("test")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+@SpringBootTest
+public class NotificationWriteBehindITest {
+    private static final UUID CRASHED_USER_ID = UUID.randomUUID();
+    private static final UUID CRASHED_NOTIFICATION_ID = UUID.randomUUID();
+    private static Path journalDirectory;
+
+    @Autowired
+    private NotificationService notificationService;
+
+    @Autowired
+    private NotificationPreferenceRepository notificationPreferenceRepository;
+
+    @Autowired
+    private ActivitiesNotificationRepository activitiesNotificationRepository;
+
+    @Autowired
+    private NotificationWriteBehindBuffer notificationWriteBehindBuffer;
+
+    @MockitoBean
+    private JavaMailSender mailSender;
+
+    //every context starts on a journal left behind by a crash, one complete entry and one cut short
+    @DynamicPropertySource
+    static void writeBehindProperties(DynamicPropertyRegistry registry) throws IOException {
+        journalDirectory = Files.createTempDirectory("notification-journal");
+        ActivitiesNotification crashed = ActivitiesNotification.builder()
+                .id(CRASHED_NOTIFICATION_ID)
+                .userId(CRASHED_USER_ID)
+                .type(ActivityType.RESERVATION)
+                .subject("Reservation")
+                .message("Table for two")
+                .status(NotificationStatus.PENDING)
+                .createdOn(LocalDateTime.now())
+                .build();
+        String line = Jackson2ObjectMapperBuilder.json().build().writeValueAsString(new WriteBehindEntry(crashed, "viktor@gmail.com", Map.of()));
+        Files.writeString(journalDirectory.resolve("segment-00000000000000000001.log"), line + "\n" + line.substring(0, line.length() / 2), StandardCharsets.UTF_8);
+
+        registry.add("notifications.write-behind.enabled", () -> true);
+        registry.add("notifications.write-behind.journal-dir", () -> journalDirectory.toString());
+        registry.add("notifications.write-behind.max-batch-size", () -> 3);
+        registry.add("notifications.write-behind.flush-interval-ms", () -> 60000);
+    }
+
+    @Test
+    void testStartup_withJournalLeftByCrash_shouldWriteWhatWasMissing(){
+        assertThat(activitiesNotificationRepository.findById(CRASHED_NOTIFICATION_ID)).isPresent();
+        assertEquals(1, notificationService.getUnreadCount(CRASHED_USER_ID));
+        assertThat(journalDirectory.resolve("segment-00000000000000000001.log")).doesNotExist();
+        await().atMost(Duration.ofSeconds(5)).untilAsserted(() -> verify(mailSender, times(1)).send(any(MimeMessagePreparator.class)));
+    }
+
+    @Test
+    void testSendNotification_shouldWriteOnceTheBatchIsFull(){
+        UUID userId = createPreference();
+        ActivitiesNotification first = send(userId, "Table for two");
+        send(userId, "Table for four");
+
+        //acknowledged from the journal, nothing is in the table until the batch fills or the interval passes
+        assertEquals(NotificationStatus.PENDING, first.getStatus());
+        assertThat(activitiesNotificationRepository.findById(first.getId())).isEmpty();
+
+        send(userId, "Table for six");
+
+        await().atMost(Duration.ofSeconds(5)).untilAsserted(() ->
+                assertThat(activitiesNotificationRepository.findAllByUserIdAndIsHiddenOrderByCreatedOnDesc(userId, false)).hasSize(3));
+        assertEquals(3, notificationService.getUnreadCount(userId));
+        await().atMost(Duration.ofSeconds(5)).untilAsserted(() ->
+                assertEquals(NotificationStatus.SUCCEEDED, activitiesNotificationRepository.findById(first.getId()).orElseThrow().getStatus()));
+    }
+
+    @Test
+    void testWriter_withRowTheDatabaseRejects_shouldDeadLetterItAndWriteTheRest() throws IOException {
+        UUID userId = createPreference();
+        ActivitiesNotification first = send(userId, "Table for two");
+        //past bean validation, like a line journaled by an older version
+        ActivitiesNotification rejected = notificationWriteBehindBuffer.accept(ActivitiesNotification.builder()
+                .userId(userId)
+                .type(ActivityType.RESERVATION)
+                .subject("x".repeat(300))
+                .message("Table for four")
+                .status(NotificationStatus.PENDING)
+                .createdOn(LocalDateTime.now())
+                .build(), "viktor@gmail.com", Map.of());
+        ActivitiesNotification third = send(userId, "Table for six");
+
+        await().atMost(Duration.ofSeconds(5)).untilAsserted(() -> {
+            assertThat(activitiesNotificationRepository.findById(first.getId())).isPresent();
+            assertThat(activitiesNotificationRepository.findById(third.getId())).isPresent();
+        });
+        assertThat(activitiesNotificationRepository.findById(rejected.getId())).isEmpty();
+        assertThat(Files.readString(journalDirectory.resolve("dead-letter.log"))).contains(rejected.getId().toString());
+
+        //the writer is not stuck on it, the next batch goes through as well
+        List<ActivitiesNotification> next = List.of(send(userId, "Table for eight"), send(userId, "Table for ten"), send(userId, "Table for twelve"));
+        await().atMost(Duration.ofSeconds(5)).untilAsserted(() ->
+                assertThat(next).allSatisfy(notification -> assertThat(activitiesNotificationRepository.findById(notification.getId())).isPresent()));
+    }
+
+    private UUID createPreference(){
+        UUID userId = UUID.randomUUID();
+        notificationPreferenceRepository.save(NotificationPreference.builder()
+                .userId(userId)
+                .reservationEnabled(true)
+                .productEnabled(true)
+                .contactInfo("viktor@gmail.com")
+                .createdOn(LocalDateTime.now())
+                .updatedOn(LocalDateTime.now())
+                .build());
+        return userId;
+    }
+
+    private ActivitiesNotification send(UUID userId, String message){
+        return notificationService.sendNotification(ActivitiesNotificationRequest.builder()
+                .userId(userId)
+                .subject("Reservation")
+                .message(message)
+                .type(ActivityType.RESERVATION)
+                .build());
+    }
+}
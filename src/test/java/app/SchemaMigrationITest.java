@@ -0,0 +1,124 @@
+package app;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ActiveProfiles("test")
+@SpringBootTest
+public class SchemaMigrationITest {
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void testMigrations_shouldAllBeApplied(){
+        Integer failed = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM \"flyway_schema_history\" WHERE \"success\" = FALSE", Integer.class);
+        Integer applied = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM \"flyway_schema_history\"", Integer.class);
+
+        assertThat(failed).isZero();
+        assertThat(applied).isGreaterThanOrEqualTo(3);
+    }
+
+    //H2's plan has no "Using index", covering is checked as the chosen index holding every column the query reads
+    @Test
+    void testHistoryQuery_shouldBeServedFromTheCoveringIndex(){
+        String plan = jdbcTemplate.queryForObject(
+                "EXPLAIN SELECT id, subject, type, status, created_on, is_read FROM activities_notification " +
+                "WHERE user_id = ? AND is_hidden = FALSE ORDER BY created_on DESC, id DESC LIMIT 50",
+                String.class, UUID.randomUUID());
+        List<String> indexColumns = jdbcTemplate.queryForList(
+                "SELECT COLUMN_NAME FROM INFORMATION_SCHEMA.INDEX_COLUMNS WHERE INDEX_NAME = 'IDX_ACTIVITIES_NOTIFICATION_HISTORY_COVERING'",
+                String.class);
+
+        assertThat(plan).contains("/* PUBLIC.IDX_ACTIVITIES_NOTIFICATION_HISTORY_COVERING:");
+        assertThat(indexColumns).containsExactlyInAnyOrder("USER_ID", "IS_HIDDEN", "CREATED_ON", "ID", "TYPE", "STATUS", "SUBJECT", "IS_READ");
+    }
+
+    //H2 has no key length limit, this is the check MySQL would do when creating the index
+    @Test
+    void testIndexes_shouldFitInnoDbKeyLength(){
+        List<Map<String, Object>> columns = jdbcTemplate.queryForList(
+                "SELECT ic.INDEX_NAME, c.DATA_TYPE, c.CHARACTER_MAXIMUM_LENGTH FROM INFORMATION_SCHEMA.INDEX_COLUMNS ic " +
+                "JOIN INFORMATION_SCHEMA.COLUMNS c ON c.TABLE_SCHEMA = ic.TABLE_SCHEMA AND c.TABLE_NAME = ic.TABLE_NAME AND c.COLUMN_NAME = ic.COLUMN_NAME " +
+                "WHERE ic.TABLE_SCHEMA = 'PUBLIC'");
+
+        Map<String, Integer> keyBytes = new HashMap<>();
+        columns.forEach(column -> keyBytes.merge((String) column.get("INDEX_NAME"),
+                innoDbBytes((String) column.get("DATA_TYPE"), (Number) column.get("CHARACTER_MAXIMUM_LENGTH")), Integer::sum));
+
+        assertThat(keyBytes).containsKey("IDX_ACTIVITIES_NOTIFICATION_HISTORY_COVERING");
+        assertThat(keyBytes).allSatisfy((index, bytes) -> assertThat(bytes).as(index).isLessThanOrEqualTo(3072));
+    }
+
+    @Test
+    void testSecondNotificationForSameUser_shouldBeAllowed(){
+        UUID userId = UUID.randomUUID();
+        String insert = "INSERT INTO activities_notification (id, user_id, type, subject, message, status, created_on, is_hidden) " +
+                "VALUES (?, ?, 'RESERVATION', 'Creating reservation', 'Table for two', 'SUCCEEDED', CURRENT_TIMESTAMP, FALSE)";
+
+        jdbcTemplate.update(insert, UUID.randomUUID(), userId);
+        jdbcTemplate.update(insert, UUID.randomUUID(), userId);
+
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM activities_notification WHERE user_id = ?", Integer.class, userId)).isEqualTo(2);
+    }
+
+    @Test
+    void testMigrations_shouldLeaveExistingIdsAndTheirReferencesAlone(){
+        //a database of its own with rows written before time-ordered ids and user scoped idempotency keys
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MYSQL;DB_CLOSE_DELAY=-1", "sa", "password");
+        Flyway.configure().dataSource(dataSource).target("8").load().migrate();
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+
+        UUID notificationId = UUID.randomUUID();
+        UUID userId = UUID.randomUUID();
+        jdbcTemplate.update("INSERT INTO activities_notification (id, user_id, type, subject, message, status, created_on, is_hidden) " +
+                "VALUES (?, ?, 'RESERVATION', 'Creating reservation', 'Table for two', 'SUCCEEDED', ?, FALSE)",
+                bytes(notificationId), bytes(userId), LocalDateTime.of(2024, 3, 2, 10, 0));
+        jdbcTemplate.update("INSERT INTO notification_outbox (id, notification_id, contact_info, created_on) VALUES (?, ?, 'viktor@gmail.com', CURRENT_TIMESTAMP)",
+                bytes(UUID.randomUUID()), bytes(notificationId));
+        jdbcTemplate.update("INSERT INTO notification_idempotency_key (idempotency_key, notification_id, created_on) VALUES ('order-42', ?, CURRENT_TIMESTAMP)", bytes(notificationId));
+
+        Flyway.configure().dataSource(dataSource).load().migrate();
+
+        //clients already hold these ids in cursors, delivery URLs and SSE event ids
+        assertThat(uuid(jdbcTemplate.queryForObject("SELECT id FROM activities_notification", byte[].class))).isEqualTo(notificationId);
+        assertThat(uuid(jdbcTemplate.queryForObject("SELECT notification_id FROM notification_outbox", byte[].class))).isEqualTo(notificationId);
+        assertThat(uuid(jdbcTemplate.queryForObject("SELECT notification_id FROM notification_idempotency_key", byte[].class))).isEqualTo(notificationId);
+        //the key is scoped to the user of its notification afterwards
+        assertThat(uuid(jdbcTemplate.queryForObject("SELECT user_id FROM notification_idempotency_key", byte[].class))).isEqualTo(userId);
+    }
+
+    //stored size of a key part on MySQL, strings as utf8mb4 with their length prefix
+    private static int innoDbBytes(String dataType, Number maxLength){
+        return switch (dataType) {
+            case "CHARACTER VARYING" -> maxLength.intValue() * 4 + (maxLength.intValue() * 4 > 255 ? 2 : 1);
+            case "BINARY" -> maxLength.intValue();
+            case "TIMESTAMP", "BIGINT" -> 8;
+            case "INTEGER" -> 4;
+            case "BOOLEAN" -> 1;
+            default -> throw new IllegalArgumentException("No InnoDB size for " + dataType + "!");
+        };
+    }
+
+    private static byte[] bytes(UUID uuid){
+        return ByteBuffer.allocate(16).putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits()).array();
+    }
+
+    private static UUID uuid(byte[] bytes){
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+}
@@ -2,29 +2,49 @@ package app;
 
 import app.model.ActivitiesNotification;
 import app.model.ActivityType;
+import app.model.NotificationIdempotencyKey;
 import app.model.NotificationPreference;
 import app.model.NotificationStatus;
 import app.repository.ActivitiesNotificationRepository;
+import app.repository.NotificationIdempotencyKeyRepository;
+import app.repository.NotificationOutboxRepository;
 import app.repository.NotificationPreferenceRepository;
+import app.mail.MailCircuitBreaker;
+import app.service.BatchSendResult;
+import app.model.NotificationOutbox;
+import app.service.IdempotencyKeyStore;
+import app.service.NotificationDispatcher;
+import app.service.NotificationRetryScheduler;
 import app.service.NotificationService;
 import app.web.dto.ActivitiesNotificationRequest;
 import org.junit.jupiter.api.Test;
-import org.mockito.Mock;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
-import org.springframework.mail.MailSender;
-import org.springframework.mail.SimpleMailMessage;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessagePreparator;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 @ActiveProfiles("test")
 @DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
@@ -39,8 +59,26 @@ public class SendNotificationITest {
     @Autowired
     private ActivitiesNotificationRepository activitiesNotificationRepository;
 
-    @Mock
-    private MailSender mailSender;
+    @Autowired
+    private NotificationOutboxRepository notificationOutboxRepository;
+
+    @Autowired
+    private NotificationRetryScheduler notificationRetryScheduler;
+
+    @Autowired
+    private NotificationIdempotencyKeyRepository notificationIdempotencyKeyRepository;
+
+    @Autowired
+    private IdempotencyKeyStore idempotencyKeyStore;
+
+    @Autowired
+    private NotificationDispatcher notificationDispatcher;
+
+    @Autowired
+    private MailCircuitBreaker mailCircuitBreaker;
+
+    @MockitoBean
+    private JavaMailSender mailSender;
 
     @Test
     void testSendNotification_happyPath(){
@@ -63,12 +101,187 @@ public class SendNotificationITest {
                 .build();
         notificationPreferenceRepository.save(notificationPreference);
 
-        doNothing().when(mailSender).send(any(SimpleMailMessage.class));
+        doNothing().when(mailSender).send(any(MimeMessagePreparator.class));
 
         ActivitiesNotification activitiesNotification = notificationService.sendNotification(activitiesNotificationRequest);
 
-        assertEquals(activitiesNotification.getStatus(), NotificationStatus.SUCCEEDED);
+        assertEquals(activitiesNotification.getStatus(), NotificationStatus.PENDING);
         List<ActivitiesNotification> notifications = activitiesNotificationRepository.findAllByUserIdAndIsHiddenOrderByCreatedOnDesc(userId, false);
         assertThat(notifications).hasSize(1);
+        await().atMost(Duration.ofSeconds(5)).untilAsserted(() ->
+                assertEquals(NotificationStatus.SUCCEEDED, activitiesNotificationRepository.findById(activitiesNotification.getId()).orElseThrow().getStatus()));
+        await().atMost(Duration.ofSeconds(5)).until(() -> notificationOutboxRepository.count() == 0);
+    }
+
+    @Test
+    void testSendNotification_withRepeatedIdempotencyKey_shouldPersistOnce(){
+        UUID userId = UUID.randomUUID();
+        notificationPreferenceRepository.save(NotificationPreference.builder()
+                .userId(userId)
+                .reservationEnabled(true)
+                .productEnabled(true)
+                .contactInfo("viktor@gmail.com")
+                .createdOn(LocalDateTime.now())
+                .updatedOn(LocalDateTime.now())
+                .build());
+        ActivitiesNotificationRequest request = ActivitiesNotificationRequest.builder()
+                .userId(userId)
+                .subject("Water")
+                .message("1.00 lv")
+                .type(ActivityType.BUYING_PRODUCT)
+                .build();
+
+        ActivitiesNotification first = idempotencyKeyStore.resolve(request, "order-42", () -> notificationService.sendNotification(request, "order-42"));
+        ActivitiesNotification repeated = idempotencyKeyStore.resolve(request, "order-42", () -> notificationService.sendNotification(request, "order-42"));
+
+        assertEquals(first.getId(), repeated.getId());
+        //the key row itself rejects a duplicate that got past the in-memory check, e.g. on another instance
+        assertThrows(DataIntegrityViolationException.class, () -> notificationService.sendNotification(request, "order-42"));
+        assertThat(activitiesNotificationRepository.findAllByUserId(userId)).hasSize(1);
+        assertThat(notificationIdempotencyKeyRepository.findById(new NotificationIdempotencyKey.Key(userId, "order-42"))).get()
+                .extracting(NotificationIdempotencyKey::getNotificationId).isEqualTo(first.getId());
+    }
+
+    @Test
+    void testSendNotifications_batch_shouldPersistAcceptedItemsAndDeliverThem(){
+        UUID userId = UUID.randomUUID();
+        notificationPreferenceRepository.save(NotificationPreference.builder()
+                .userId(userId)
+                .reservationEnabled(false)
+                .productEnabled(true)
+                .contactInfo("viktor@gmail.com")
+                .createdOn(LocalDateTime.now())
+                .updatedOn(LocalDateTime.now())
+                .build());
+
+        List<ActivitiesNotificationRequest> requests = List.of(
+                ActivitiesNotificationRequest.builder().userId(userId).subject("Water").message("1.00 lv").type(ActivityType.BUYING_PRODUCT).build(),
+                ActivitiesNotificationRequest.builder().userId(userId).subject("Table").message("For two").type(ActivityType.RESERVATION).build(),
+                ActivitiesNotificationRequest.builder().userId(userId).subject("Bread").message("2.00 lv").type(ActivityType.BUYING_PRODUCT).build());
+
+        List<BatchSendResult> results = notificationService.sendNotifications(requests);
+
+        assertThat(results).extracting(BatchSendResult::isAccepted).containsExactly(true, false, true);
+        assertThat(activitiesNotificationRepository.findAllByUserId(userId)).hasSize(2);
+        await().atMost(Duration.ofSeconds(5)).untilAsserted(() ->
+                assertThat(activitiesNotificationRepository.findAllByUserId(userId)).allMatch(notification -> notification.getStatus() == NotificationStatus.SUCCEEDED));
+    }
+
+    @Test
+    void testSendNotification_whenMailFails_shouldBeRetriedUntilDelivered(){
+        UUID userId = UUID.randomUUID();
+        notificationPreferenceRepository.save(NotificationPreference.builder()
+                .userId(userId)
+                .reservationEnabled(true)
+                .productEnabled(true)
+                .contactInfo("viktor@gmail.com")
+                .createdOn(LocalDateTime.now())
+                .updatedOn(LocalDateTime.now())
+                .build());
+        doThrow(new MailSendException("Connection refused")).doNothing().when(mailSender).send(any(MimeMessagePreparator.class));
+
+        ActivitiesNotification activitiesNotification = notificationService.sendNotification(ActivitiesNotificationRequest.builder()
+                .userId(userId)
+                .subject("Water")
+                .message("1.00 lv")
+                .type(ActivityType.BUYING_PRODUCT)
+                .build());
+
+        await().atMost(Duration.ofSeconds(5)).untilAsserted(() -> {
+            ActivitiesNotification failed = activitiesNotificationRepository.findById(activitiesNotification.getId()).orElseThrow();
+            assertEquals(NotificationStatus.FAILED, failed.getStatus());
+            assertEquals(1, failed.getAttemptCount());
+            assertThat(failed.getNextAttemptAt()).isAfter(LocalDateTime.now());
+        });
+
+        activitiesNotificationRepository.updateDeliveryState(activitiesNotification.getId(), NotificationStatus.FAILED, 1, LocalDateTime.now().minusSeconds(1));
+        notificationRetryScheduler.retryDueNotifications();
+
+        await().atMost(Duration.ofSeconds(5)).untilAsserted(() -> {
+            ActivitiesNotification delivered = activitiesNotificationRepository.findById(activitiesNotification.getId()).orElseThrow();
+            assertEquals(NotificationStatus.SUCCEEDED, delivered.getStatus());
+            assertEquals(2, delivered.getAttemptCount());
+        });
+    }
+
+    @Test
+    void testSendNotification_whenTheSameEntryIsDispatchedTwice_shouldSendOneEmail() throws InterruptedException {
+        UUID userId = UUID.randomUUID();
+        notificationPreferenceRepository.save(NotificationPreference.builder()
+                .userId(userId)
+                .reservationEnabled(true)
+                .productEnabled(true)
+                .contactInfo("viktor@gmail.com")
+                .createdOn(LocalDateTime.now())
+                .updatedOn(LocalDateTime.now())
+                .build());
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            release.await();
+            return null;
+        }).when(mailSender).send(any(MimeMessagePreparator.class));
+
+        ActivitiesNotification activitiesNotification = notificationService.sendNotification(ActivitiesNotificationRequest.builder()
+                .userId(userId)
+                .subject("Water")
+                .message("1.00 lv")
+                .type(ActivityType.BUYING_PRODUCT)
+                .build());
+
+        //the relay's copy is stuck in the SMTP call, as if the lease ran out while it was still being sent
+        await().atMost(Duration.ofSeconds(5)).untilAsserted(() -> assertEquals(NotificationStatus.SENDING,
+                activitiesNotificationRepository.findById(activitiesNotification.getId()).orElseThrow().getStatus()));
+        NotificationOutbox entry = notificationOutboxRepository.findAll().stream()
+                .filter(outbox -> outbox.getNotificationId().equals(activitiesNotification.getId()))
+                .findFirst().orElseThrow();
+        assertThat(notificationDispatcher.dispatch(entry)).isTrue();
+        Thread.sleep(200);
+        release.countDown();
+
+        await().atMost(Duration.ofSeconds(5)).untilAsserted(() -> {
+            assertEquals(NotificationStatus.SUCCEEDED, activitiesNotificationRepository.findById(activitiesNotification.getId()).orElseThrow().getStatus());
+            assertThat(notificationOutboxRepository.findAll()).isEmpty();
+        });
+        verify(mailSender, times(1)).send(any(MimeMessagePreparator.class));
+    }
+
+    @Test
+    void testSendNotification_whileTheCircuitBreakerIsOpen_shouldStayPendingInTheOutboxWithoutSpendingAnAttempt(){
+        UUID userId = UUID.randomUUID();
+        notificationPreferenceRepository.save(NotificationPreference.builder()
+                .userId(userId)
+                .reservationEnabled(true)
+                .productEnabled(true)
+                .contactInfo("viktor@gmail.com")
+                .createdOn(LocalDateTime.now())
+                .updatedOn(LocalDateTime.now())
+                .build());
+        for(int i = 0; i < 5; i++){
+            mailCircuitBreaker.onFailure();
+        }
+
+        ActivitiesNotification activitiesNotification = notificationService.sendNotification(ActivitiesNotificationRequest.builder()
+                .userId(userId)
+                .subject("Water")
+                .message("1.00 lv")
+                .type(ActivityType.BUYING_PRODUCT)
+                .build());
+
+        //the relay holds entries back while the breaker is open, one already handed out when it opened is parked
+        NotificationOutbox entry = notificationOutboxRepository.findAll().stream()
+                .filter(outbox -> outbox.getNotificationId().equals(activitiesNotification.getId()))
+                .findFirst().orElseThrow();
+        assertThat(notificationDispatcher.dispatch(entry)).isTrue();
+
+        //never attempted, so neither failed in the history nor gone from the outbox
+        await().atMost(Duration.ofSeconds(5)).untilAsserted(() -> {
+            ActivitiesNotification parked = activitiesNotificationRepository.findById(activitiesNotification.getId()).orElseThrow();
+            assertEquals(NotificationStatus.PENDING, parked.getStatus());
+            assertEquals(0, parked.getAttemptCount());
+            assertThat(parked.getNextAttemptAt()).isAfter(LocalDateTime.now());
+            assertThat(notificationOutboxRepository.findAll()).singleElement()
+                    .satisfies(outbox -> assertThat(outbox.getLockedUntil()).isEqualTo(parked.getNextAttemptAt()));
+        });
+        verify(mailSender, never()).send(any(MimeMessagePreparator.class));
     }
 }
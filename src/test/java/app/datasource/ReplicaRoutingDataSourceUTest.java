@@ -0,0 +1,145 @@
+package app.datasource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class ReplicaRoutingDataSourceUTest {
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+
+    private DataSource primary;
+    private DataSource first;
+    private DataSource second;
+
+    @BeforeEach
+    void setUp(){
+        primary = database("primary");
+        first = database("first");
+        second = database("second");
+    }
+
+    @Test
+    void getConnection_withReplicasCaughtUp_shouldAlternateBetweenThem() throws Exception {
+        ReplicaRoutingDataSource dataSource = new ReplicaRoutingDataSource(primary, List.of(first, second), 5000, 1, Runnable::run, clock::get);
+        replicate(first, clock.get());
+        replicate(second, clock.get());
+        dataSource.heartbeat();
+
+        assertEquals(2, dataSource.healthyReplicaCount());
+        assertNotEquals(databaseOf(dataSource), databaseOf(dataSource));
+        assertEquals(clock.get(), new JdbcTemplate(primary).queryForObject("SELECT beat_at_millis FROM replica_heartbeat WHERE id = 1", Long.class));
+    }
+
+    @Test
+    void getConnection_withReplicaPastMaxLag_shouldSkipIt() throws Exception {
+        ReplicaRoutingDataSource dataSource = new ReplicaRoutingDataSource(primary, List.of(first, second), 5000, 1, Runnable::run, clock::get);
+        replicate(first, clock.get());
+        replicate(second, clock.get() - 6000);
+        dataSource.heartbeat();
+
+        assertEquals(1, dataSource.healthyReplicaCount());
+        assertTrue(databaseOf(dataSource).contains("first"));
+        assertTrue(databaseOf(dataSource).contains("first"));
+
+        //caught up again at the next heartbeat
+        replicate(second, clock.get());
+        dataSource.heartbeat();
+        assertEquals(2, dataSource.healthyReplicaCount());
+    }
+
+    @Test
+    void getConnection_withoutHealthyReplica_shouldUsePrimary() throws Exception {
+        ReplicaRoutingDataSource dataSource = new ReplicaRoutingDataSource(primary, List.of(first, second), 5000, 1, Runnable::run, clock::get);
+
+        //nothing is trusted before the first check
+        assertTrue(databaseOf(dataSource).contains("primary"));
+
+        replicate(first, clock.get() - 60000);
+        replicate(second, clock.get() - 60000);
+        dataSource.heartbeat();
+
+        assertEquals(0, dataSource.healthyReplicaCount());
+        assertTrue(databaseOf(dataSource).contains("primary"));
+    }
+
+    @Test
+    void getConnection_withUnreachableReplica_shouldTakeItOutAndUseTheOther() throws Exception {
+        DataSource unreachable = mock(DataSource.class);
+        when(unreachable.getConnection()).thenReturn(first.getConnection()).thenThrow(new SQLException("Connection refused"));
+        ReplicaRoutingDataSource dataSource = new ReplicaRoutingDataSource(primary, List.of(unreachable, second), 5000, 1, Runnable::run, clock::get);
+        replicate(first, clock.get());
+        replicate(second, clock.get());
+        dataSource.heartbeat();
+        assertEquals(2, dataSource.healthyReplicaCount());
+
+        assertTrue(databaseOf(dataSource).contains("second"));
+
+        assertEquals(1, dataSource.healthyReplicaCount());
+        assertTrue(databaseOf(dataSource).contains("second"));
+    }
+
+    @Test
+    void heartbeat_withHangingReplica_shouldNotHoldUpTheCallerOrTheOtherReplica() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        DataSource hanging = mock(DataSource.class);
+        when(hanging.getConnection()).thenAnswer(invocation -> {
+            release.await();
+            throw new SQLException("Connection timed out");
+        });
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            ReplicaRoutingDataSource dataSource = new ReplicaRoutingDataSource(primary, List.of(hanging, second), 5000, 1, executor, clock::get);
+            replicate(second, clock.get());
+
+            dataSource.heartbeat();
+            long deadline = System.currentTimeMillis() + 5000;
+            while(dataSource.healthyReplicaCount() == 0 && System.currentTimeMillis() < deadline){
+                Thread.sleep(10);
+            }
+            assertEquals(1, dataSource.healthyReplicaCount());
+
+            //the hanging check is still running, the next round leaves it alone instead of piling up behind it
+            dataSource.heartbeat();
+            release.countDown();
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+            verify(hanging, times(1)).getConnection();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    //the heartbeat row as replication would have brought it over
+    private void replicate(DataSource replica, long beatAtMillis){
+        new JdbcTemplate(replica).update("UPDATE replica_heartbeat SET beat_at_millis = ? WHERE id = 1", beatAtMillis);
+    }
+
+    private static String databaseOf(DataSource dataSource) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            return connection.getMetaData().getURL();
+        }
+    }
+
+    private DataSource database(String name){
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:" + name + "-" + UUID.randomUUID() + ";MODE=MYSQL;DB_CLOSE_DELAY=-1", "sa", "password");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE replica_heartbeat (id INT NOT NULL, beat_at_millis BIGINT NOT NULL, PRIMARY KEY (id))");
+        jdbcTemplate.update("INSERT INTO replica_heartbeat (id, beat_at_millis) VALUES (1, 0)");
+        return dataSource;
+    }
+}
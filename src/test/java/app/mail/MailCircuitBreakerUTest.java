@@ -0,0 +1,110 @@
+package app.mail;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MailCircuitBreakerUTest {
+
+    @Test
+    void onFailure_reachingThreshold_shouldOpenUntilTheOpenDurationPassed(){
+        MutableClock clock = new MutableClock();
+        MailCircuitBreaker breaker = new MailCircuitBreaker(3, Duration.ofSeconds(60), clock);
+
+        breaker.onFailure();
+        breaker.onFailure();
+        assertTrue(breaker.tryAcquire());
+        breaker.onFailure();
+
+        assertTrue(breaker.isOpen());
+        assertFalse(breaker.tryAcquire());
+        assertEquals(clock.instant().plusSeconds(60), breaker.retryAt());
+
+        clock.advance(Duration.ofSeconds(61));
+        assertFalse(breaker.isOpen());
+        assertTrue(breaker.tryAcquire());
+        //only one trial send while half open
+        assertFalse(breaker.tryAcquire());
+    }
+
+    @Test
+    void trialSend_outcome_shouldCloseOrReopenTheBreaker(){
+        MutableClock clock = new MutableClock();
+        MailCircuitBreaker breaker = new MailCircuitBreaker(1, Duration.ofSeconds(60), clock);
+
+        breaker.onFailure();
+        clock.advance(Duration.ofSeconds(61));
+        assertTrue(breaker.tryAcquire());
+        breaker.onFailure();
+        assertTrue(breaker.isOpen());
+
+        clock.advance(Duration.ofSeconds(61));
+        assertTrue(breaker.tryAcquire());
+        breaker.onSuccess();
+        assertFalse(breaker.isOpen());
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    void halfOpen_whileTheTrialSendRuns_shouldCountAsOpenUntilTheTrialIsGivenUpOn(){
+        MutableClock clock = new MutableClock();
+        MailCircuitBreaker breaker = new MailCircuitBreaker(1, Duration.ofSeconds(60), clock);
+
+        breaker.onFailure();
+        clock.advance(Duration.ofSeconds(61));
+        assertTrue(breaker.tryAcquire());
+
+        //parked notifications must not come back while the trial is still out
+        assertTrue(breaker.isOpen());
+        assertTrue(breaker.retryAt().isAfter(clock.instant()));
+
+        clock.advance(Duration.ofSeconds(30));
+        assertFalse(breaker.tryAcquire());
+
+        //the trial never reported back, another one is let through
+        clock.advance(Duration.ofSeconds(31));
+        assertFalse(breaker.isOpen());
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+    }
+
+    @Test
+    void onSuccess_shouldResetConsecutiveFailures(){
+        MailCircuitBreaker breaker = new MailCircuitBreaker(2, Duration.ofSeconds(60), new MutableClock());
+
+        breaker.onFailure();
+        breaker.onSuccess();
+        breaker.onFailure();
+
+        assertFalse(breaker.isOpen());
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant now = Instant.parse("2025-01-01T10:00:00Z");
+
+        void advance(Duration duration){
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneId.of("UTC");
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
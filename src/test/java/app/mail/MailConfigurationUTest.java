@@ -0,0 +1,45 @@
+package app.mail;
+
+import app.config.MailConfiguration;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class MailConfigurationUTest {
+    private static final Duration BORROW_TIMEOUT = Duration.ofSeconds(30);
+    private static final Duration LEASE = Duration.ofSeconds(60);
+
+    @Test
+    void checkSendFitsLease_withTimeoutsWellBelowTheLease_shouldPass(){
+        Map<String, String> properties = Map.of(
+                "mail.smtp.connectiontimeout", "5000",
+                "mail.smtp.timeout", "5000",
+                "mail.smtp.writetimeout", "5000");
+
+        assertDoesNotThrow(() -> MailConfiguration.checkSendFitsLease(properties, BORROW_TIMEOUT, LEASE));
+    }
+
+    //JavaMail would wait forever on whichever is missing
+    @Test
+    void checkSendFitsLease_withATimeoutMissing_shouldFail(){
+        Map<String, String> properties = Map.of(
+                "mail.smtp.connectiontimeout", "5000",
+                "mail.smtp.timeout", "5000");
+
+        assertThrows(IllegalStateException.class, () -> MailConfiguration.checkSendFitsLease(properties, BORROW_TIMEOUT, LEASE));
+    }
+
+    @Test
+    void checkSendFitsLease_withTimeoutsReachingTheLease_shouldFail(){
+        Map<String, String> properties = Map.of(
+                "mail.smtp.connectiontimeout", "10000",
+                "mail.smtp.timeout", "10000",
+                "mail.smtp.writetimeout", "10000");
+
+        assertThrows(IllegalStateException.class, () -> MailConfiguration.checkSendFitsLease(properties, BORROW_TIMEOUT, LEASE));
+    }
+}
@@ -0,0 +1,56 @@
+package app.mail;
+
+import app.model.ActivitiesNotification;
+import app.model.ActivityType;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MailTemplateUTest {
+
+    @Test
+    void render_shouldReplaceVariablesAndKeepLiterals(){
+        MailTemplate template = MailTemplate.compile("Hello {{ name }}, you have {{count}} items{{missing}}.", false);
+
+        assertEquals("Hello Viktor, you have 3 items.", template.render(Map.of("name", "Viktor", "count", "3")));
+    }
+
+    @Test
+    void render_inHtmlTemplate_shouldEscapeUnlessTripleBraces(){
+        MailTemplate template = MailTemplate.compile("<p>{{message}}</p>{{{items}}}", true);
+
+        String html = template.render(Map.of("message", "<script>alert('x')</script> & more", "items", "<li>ok</li>"));
+
+        assertEquals("<p>&lt;script&gt;alert(&#39;x&#39;)&lt;/script&gt; &amp; more</p><li>ok</li>", html);
+    }
+
+    @Test
+    void compile_withUnclosedVariable_shouldThrow(){
+        assertThrows(IllegalArgumentException.class, () -> MailTemplate.compile("Hello {{name", false));
+    }
+
+    @Test
+    void notificationMailRenderer_shouldRenderTextAndHtmlFromBundledTemplates(){
+        NotificationMailRenderer renderer = new NotificationMailRenderer("mail-templates");
+        ActivitiesNotification notification = ActivitiesNotification.builder()
+                .type(ActivityType.RESERVATION)
+                .subject("Table <booked>")
+                .message("Table for two")
+                .createdOn(LocalDateTime.of(2026, 10, 17, 19, 30))
+                .build();
+
+        RenderedMail mail = renderer.render(notification);
+        RenderedMail digest = renderer.renderDigest(List.of(notification, notification));
+
+        assertEquals("Table <booked>", mail.getSubject());
+        assertTrue(mail.getText().contains("Table for two"));
+        assertTrue(mail.getText().contains("17.10.2026 19:30"));
+        assertTrue(mail.getHtml().contains("<h2>Table &lt;booked&gt;</h2>"));
+        assertEquals("You have 2 new notifications", digest.getSubject());
+        assertEquals(2, digest.getHtml().split("<li>", -1).length - 1);
+    }
+}
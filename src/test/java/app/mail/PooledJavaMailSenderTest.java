@@ -0,0 +1,105 @@
+package app.mail;
+
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Transport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.mail.SimpleMailMessage;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class PooledJavaMailSenderTest {
+
+    @RegisterExtension
+    static GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP);
+
+    private CountingMailSender mailSender;
+
+    @AfterEach
+    void tearDown(){
+        mailSender.destroy();
+    }
+
+    @Test
+    void send_consecutiveMessages_shouldReuseOneConnection(){
+        mailSender = mailSender(100, Duration.ofSeconds(30));
+
+        for(int i = 0; i < 5; i++){
+            mailSender.send(message(i));
+        }
+
+        assertEquals(5, greenMail.getReceivedMessages().length);
+        assertEquals(1, mailSender.connections.get());
+    }
+
+    @Test
+    void send_batch_shouldReconnectAfterMaxMessagesPerConnection(){
+        mailSender = mailSender(2, Duration.ofSeconds(30));
+
+        mailSender.send(message(0), message(1), message(2), message(3), message(4));
+
+        assertEquals(5, greenMail.getReceivedMessages().length);
+        assertEquals(3, mailSender.connections.get());
+    }
+
+    @Test
+    void send_singleMessages_shouldReconnectAfterMaxMessagesPerConnection(){
+        mailSender = mailSender(2, Duration.ofSeconds(30));
+
+        //one message per call, like the dispatcher sends them
+        for(int i = 0; i < 5; i++){
+            mailSender.send(message(i));
+        }
+
+        assertEquals(5, greenMail.getReceivedMessages().length);
+        assertEquals(3, mailSender.connections.get());
+    }
+
+    @Test
+    void send_afterServerRestart_shouldReplaceTheDroppedConnection(){
+        mailSender = mailSender(100, Duration.ZERO);
+        mailSender.send(message(0));
+
+        greenMail.reset();
+        mailSender.send(message(1));
+
+        assertEquals(1, greenMail.getReceivedMessages().length);
+        assertEquals(2, mailSender.connections.get());
+    }
+
+    private CountingMailSender mailSender(int maxMessagesPerConnection, Duration idleValidationTimeout){
+        CountingMailSender sender = new CountingMailSender(maxMessagesPerConnection, idleValidationTimeout);
+        sender.setHost(ServerSetupTest.SMTP.getBindAddress());
+        sender.setPort(ServerSetupTest.SMTP.getPort());
+        return sender;
+    }
+
+    private SimpleMailMessage message(int index){
+        SimpleMailMessage message = new SimpleMailMessage();
+        message.setFrom("activity-svc@localhost");
+        message.setTo("viktor@localhost");
+        message.setSubject("Water " + index);
+        message.setText("1.00 lv");
+        return message;
+    }
+
+    private static class CountingMailSender extends PooledJavaMailSender {
+        private final AtomicInteger connections = new AtomicInteger();
+
+        private CountingMailSender(int maxMessagesPerConnection, Duration idleValidationTimeout) {
+            super(1, maxMessagesPerConnection, idleValidationTimeout, Duration.ofSeconds(5));
+        }
+
+        @Override
+        protected Transport connectTransport() throws MessagingException {
+            connections.incrementAndGet();
+            return super.connectTransport();
+        }
+    }
+}
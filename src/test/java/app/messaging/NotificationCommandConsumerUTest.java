@@ -0,0 +1,87 @@
+package app.messaging;
+
+import app.exception.NotificationQueueFullException;
+import app.model.ActivitiesNotification;
+import app.model.ActivityType;
+import app.service.BatchSendResult;
+import app.service.NotificationService;
+import app.web.dto.ActivitiesNotificationRequest;
+import jakarta.validation.Validation;
+import jakarta.validation.ValidatorFactory;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class NotificationCommandConsumerUTest {
+    @Mock
+    private NotificationService notificationService;
+
+    private ValidatorFactory validatorFactory;
+
+    private NotificationCommandConsumer notificationCommandConsumer;
+
+    @BeforeEach
+    void setUp(){
+        validatorFactory = Validation.buildDefaultValidatorFactory();
+        notificationCommandConsumer = new NotificationCommandConsumer(notificationService, validatorFactory.getValidator());
+    }
+
+    @AfterEach
+    void tearDown(){
+        validatorFactory.close();
+    }
+
+    @Test
+    void consume_withUnreadableAndInvalidCommands_shouldSendOnlyTheValidOnesInOneBatch(){
+        ActivitiesNotificationRequest valid = request("Reservation");
+        ActivitiesNotificationRequest invalid = request("");
+
+        when(notificationService.sendNotifications(List.of(valid))).thenReturn(List.of(BatchSendResult.builder()
+                .index(0)
+                .notification(ActivitiesNotification.builder().id(UUID.randomUUID()).build())
+                .build()));
+
+        notificationCommandConsumer.consume(List.of(record(0, null), record(1, invalid), record(2, valid)));
+
+        verify(notificationService, times(1)).sendNotifications(List.of(valid));
+    }
+
+    @Test
+    void consume_withOnlyUnusableCommands_shouldNotCallTheService(){
+        notificationCommandConsumer.consume(List.of(record(0, null), record(1, request(" "))));
+
+        verifyNoInteractions(notificationService);
+    }
+
+    @Test
+    void consume_whenQueueIsFull_shouldPropagateSoTheOffsetsAreNotCommitted(){
+        when(notificationService.sendNotifications(any())).thenThrow(new NotificationQueueFullException("Notification queue is full, try again later!"));
+
+        assertThrows(NotificationQueueFullException.class, () -> notificationCommandConsumer.consume(List.of(record(0, request("Reservation")))));
+    }
+
+    private ConsumerRecord<String, ActivitiesNotificationRequest> record(long offset, ActivitiesNotificationRequest request){
+        return new ConsumerRecord<>("notification-commands", 0, offset, null, request);
+    }
+
+    private ActivitiesNotificationRequest request(String subject){
+        return ActivitiesNotificationRequest.builder()
+                .userId(UUID.randomUUID())
+                .subject(subject)
+                .message("Table for two")
+                .type(ActivityType.RESERVATION)
+                .build();
+    }
+}
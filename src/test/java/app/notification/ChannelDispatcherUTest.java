@@ -0,0 +1,164 @@
+package app.notification;
+
+import app.channel.DeliveryChannel;
+import app.model.ActivitiesNotification;
+import app.model.ActivityType;
+import app.model.ChannelType;
+import app.model.NotificationDelivery;
+import app.model.NotificationOutbox;
+import app.model.NotificationStatus;
+import app.repository.ActivitiesNotificationRepository;
+import app.repository.NotificationDeliveryRepository;
+import app.repository.NotificationOutboxRepository;
+import app.service.ChannelDispatcher;
+import app.service.NotificationMetrics;
+import app.service.RetryPolicy;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class ChannelDispatcherUTest {
+    private final ActivitiesNotificationRepository activitiesNotificationRepository = mock(ActivitiesNotificationRepository.class);
+    private final NotificationOutboxRepository notificationOutboxRepository = mock(NotificationOutboxRepository.class);
+    private final NotificationDeliveryRepository notificationDeliveryRepository = mock(NotificationDeliveryRepository.class);
+    private final DeliveryChannel webhookChannel = mock(DeliveryChannel.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private ThreadPoolTaskExecutor webhookDispatchExecutor;
+    private ChannelDispatcher channelDispatcher;
+
+    @BeforeEach
+    void setUp(){
+        webhookDispatchExecutor = new ThreadPoolTaskExecutor();
+        webhookDispatchExecutor.setCorePoolSize(1);
+        webhookDispatchExecutor.setQueueCapacity(10);
+        webhookDispatchExecutor.initialize();
+        when(webhookChannel.getType()).thenReturn(ChannelType.WEBHOOK);
+
+        channelDispatcher = new ChannelDispatcher(List.of(webhookChannel), Map.of("webhookDispatchExecutor", webhookDispatchExecutor),
+                activitiesNotificationRepository, notificationOutboxRepository, notificationDeliveryRepository,
+                new RetryPolicy(3, 30, 3600), new NotificationMetrics(meterRegistry), mock(PlatformTransactionManager.class), 60);
+    }
+
+    @AfterEach
+    void tearDown(){
+        webhookDispatchExecutor.shutdown();
+    }
+
+    @Test
+    void dispatch_whenDelivered_shouldMarkSucceededAndRemoveEntry() throws Exception {
+        NotificationOutbox entry = pendingEntry(0);
+
+        assertTrue(channelDispatcher.dispatch(entry));
+
+        verify(notificationOutboxRepository, timeout(5000)).deleteById(entry.getId());
+        verify(webhookChannel).deliver(any(), eq("https://hooks.example.com/notifications"));
+        verify(notificationDeliveryRepository).updateState(eq(entry.getNotificationId()), eq(ChannelType.WEBHOOK), eq(NotificationStatus.SUCCEEDED), eq(1), any());
+        assertEquals(1, meterRegistry.get("notifications.channel.send").tag("channel", "WEBHOOK").tag("outcome", "success").timer().count());
+    }
+
+    @Test
+    void dispatch_whenDeliveryFails_shouldKeepEntryLeasedUntilTheRetry() throws Exception {
+        NotificationOutbox entry = pendingEntry(0);
+        doThrow(new IllegalStateException("503 Service Unavailable")).when(webhookChannel).deliver(any(), any());
+        LocalDateTime before = LocalDateTime.now();
+
+        channelDispatcher.dispatch(entry);
+
+        verify(notificationOutboxRepository, timeout(5000)).lock(eq(List.of(entry.getId())), argThat(retryAt -> retryAt.isAfter(before.plusSeconds(14))));
+        verify(notificationDeliveryRepository).updateState(eq(entry.getNotificationId()), eq(ChannelType.WEBHOOK), eq(NotificationStatus.FAILED), eq(1), any());
+        verify(notificationOutboxRepository, never()).deleteById(any());
+    }
+
+    @Test
+    void dispatch_whenAttemptsAreExhausted_shouldMarkDeadAndRemoveEntry() throws Exception {
+        NotificationOutbox entry = pendingEntry(2);
+        doThrow(new IllegalStateException("503 Service Unavailable")).when(webhookChannel).deliver(any(), any());
+
+        channelDispatcher.dispatch(entry);
+
+        verify(notificationOutboxRepository, timeout(5000)).deleteById(entry.getId());
+        verify(notificationDeliveryRepository).updateState(eq(entry.getNotificationId()), eq(ChannelType.WEBHOOK), eq(NotificationStatus.DEAD), eq(3), any());
+        verify(notificationOutboxRepository, never()).lock(any(), any());
+    }
+
+    @Test
+    void dispatch_whenAlreadyDelivered_shouldOnlyRemoveEntry() throws Exception {
+        NotificationOutbox entry = pendingEntry(0);
+        when(notificationDeliveryRepository.findByNotificationIdAndChannel(entry.getNotificationId(), ChannelType.WEBHOOK))
+                .thenReturn(Optional.of(NotificationDelivery.builder().channel(ChannelType.WEBHOOK).status(NotificationStatus.SUCCEEDED).attemptCount(1).build()));
+
+        channelDispatcher.dispatch(entry);
+
+        verify(notificationOutboxRepository, timeout(5000)).deleteById(entry.getId());
+        verify(webhookChannel, never()).deliver(any(), any());
+        verify(notificationDeliveryRepository, never()).updateState(any(), any(), any(), anyInt(), any());
+    }
+
+    @Test
+    void dispatch_whenAnotherCopyClaimedTheDelivery_shouldNeitherSendNorTouchTheEntry() throws Exception {
+        NotificationOutbox entry = pendingEntry(0);
+        when(notificationDeliveryRepository.claim(eq(entry.getNotificationId()), eq(ChannelType.WEBHOOK), eq(0), any(), any())).thenReturn(0);
+
+        channelDispatcher.dispatch(entry);
+
+        verify(notificationDeliveryRepository, timeout(5000)).claim(eq(entry.getNotificationId()), eq(ChannelType.WEBHOOK), eq(0), any(), any());
+        verify(webhookChannel, never()).deliver(any(), any());
+        verify(notificationOutboxRepository, never()).deleteById(any());
+        verify(notificationOutboxRepository, never()).lock(any(), any());
+    }
+
+    @Test
+    void constructor_withChannelWithoutExecutor_shouldFail(){
+        DeliveryChannel smsChannel = mock(DeliveryChannel.class);
+        when(smsChannel.getType()).thenReturn(ChannelType.SMS);
+
+        assertThrows(IllegalStateException.class, () -> new ChannelDispatcher(List.of(smsChannel), Map.of("webhookDispatchExecutor", webhookDispatchExecutor),
+                activitiesNotificationRepository, notificationOutboxRepository, notificationDeliveryRepository,
+                new RetryPolicy(3, 30, 3600), new NotificationMetrics(meterRegistry), mock(PlatformTransactionManager.class), 60));
+    }
+
+    private NotificationOutbox pendingEntry(int previousAttempts){
+        UUID notificationId = UUID.randomUUID();
+        when(activitiesNotificationRepository.findById(notificationId)).thenReturn(Optional.of(ActivitiesNotification.builder()
+                .id(notificationId)
+                .userId(UUID.randomUUID())
+                .type(ActivityType.RESERVATION)
+                .subject("Reservation")
+                .message("Table for two")
+                .status(NotificationStatus.SUCCEEDED)
+                .createdOn(LocalDateTime.now())
+                .build()));
+        when(notificationDeliveryRepository.findByNotificationIdAndChannel(notificationId, ChannelType.WEBHOOK))
+                .thenReturn(Optional.of(NotificationDelivery.builder()
+                        .notificationId(notificationId)
+                        .channel(ChannelType.WEBHOOK)
+                        .status(previousAttempts == 0 ? NotificationStatus.PENDING : NotificationStatus.FAILED)
+                        .attemptCount(previousAttempts)
+                        .build()));
+        when(notificationDeliveryRepository.claim(eq(notificationId), eq(ChannelType.WEBHOOK), eq(previousAttempts), any(), any())).thenReturn(1);
+        return NotificationOutbox.builder()
+                .id(UUID.randomUUID())
+                .notificationId(notificationId)
+                .contactInfo("https://hooks.example.com/notifications")
+                .channel(ChannelType.WEBHOOK)
+                .createdOn(LocalDateTime.now())
+                .build();
+    }
+}
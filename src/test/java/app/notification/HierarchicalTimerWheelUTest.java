@@ -0,0 +1,86 @@
+package app.notification;
+
+import app.service.HierarchicalTimerWheel;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HierarchicalTimerWheelUTest {
+
+    @Test
+    void advance_shouldFireOnTheFirstTickAtOrAfterTheDueTime(){
+        HierarchicalTimerWheel<String, String> wheel = new HierarchicalTimerWheel<>(100, 8, 1_000);
+        wheel.schedule("a", 1_250, "a");
+
+        assertThat(wheel.advance(1_299)).isEmpty();
+        assertThat(wheel.advance(1_300)).containsExactly("a");
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void advance_withTimersOnHigherLevels_shouldCascadeThemDownInOrder(){
+        //level 0 covers 800 ms, level 1 6.4 s, level 2 51.2 s
+        HierarchicalTimerWheel<Integer, Integer> wheel = new HierarchicalTimerWheel<>(100, 8, 0);
+        List<Integer> dueTimes = new ArrayList<>();
+        Random random = new Random(42);
+        for(int i = 0; i < 2000; i++){
+            int due = random.nextInt(200_000);
+            if(wheel.schedule(i, due, due)){
+                dueTimes.add(due);
+            }
+        }
+
+        List<Integer> fired = new ArrayList<>();
+        for(long now = 0; now <= 200_100; now += 100){
+            for(Integer due : wheel.advance(now)){
+                //never early and at most one tick late
+                assertTrue(due <= now && due > now - 200, "fired "+due+" at "+now);
+                fired.add(due);
+            }
+        }
+
+        //in order of their tick, within one tick in the order they were added
+        assertThat(fired.stream().map(due -> due / 100).toList()).isSorted();
+        assertThat(fired).hasSameSizeAs(dueTimes);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void advance_afterALongPause_shouldFireEverythingThatCameDue(){
+        HierarchicalTimerWheel<String, String> wheel = new HierarchicalTimerWheel<>(100, 8, 0);
+        wheel.schedule("soon", 500, "soon");
+        wheel.schedule("later", 60_000, "later");
+        wheel.schedule("tomorrow", 86_400_000, "tomorrow");
+
+        assertThat(wheel.advance(120_000)).containsExactly("soon", "later");
+        assertTrue(wheel.contains("tomorrow"));
+    }
+
+    @Test
+    void cancel_shouldKeepTheTimerFromFiring(){
+        HierarchicalTimerWheel<String, String> wheel = new HierarchicalTimerWheel<>(100, 8, 0);
+        wheel.schedule("kept", 5_000, "kept");
+        wheel.schedule("cancelled", 5_000, "cancelled");
+
+        assertTrue(wheel.cancel("cancelled"));
+        assertFalse(wheel.cancel("cancelled"));
+
+        assertThat(wheel.advance(10_000)).containsExactly("kept");
+    }
+
+    @Test
+    void schedule_whenOverdueOrAlreadyPending_shouldNotAdd(){
+        HierarchicalTimerWheel<String, String> wheel = new HierarchicalTimerWheel<>(100, 8, 1_000);
+        wheel.advance(2_000);
+
+        assertFalse(wheel.schedule("overdue", 1_500, "overdue"));
+        assertTrue(wheel.schedule("pending", 3_000, "pending"));
+        assertFalse(wheel.schedule("pending", 2_500, "pending"));
+        assertEquals(1, wheel.size());
+    }
+}
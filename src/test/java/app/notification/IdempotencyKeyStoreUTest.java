@@ -0,0 +1,258 @@
+package app.notification;
+
+import app.exception.IdempotencyKeyReusedException;
+import app.exception.IdempotencyKeyTargetGoneException;
+import app.exception.InvalidIdempotencyKeyException;
+import app.model.ActivitiesNotification;
+import app.model.ActivityType;
+import app.model.NotificationIdempotencyKey;
+import app.model.ScheduledNotification;
+import app.repository.ActivitiesNotificationRepository;
+import app.repository.NotificationIdempotencyKeyRepository;
+import app.repository.ScheduledNotificationRepository;
+import app.service.IdempotencyKeyStore;
+import app.service.NotificationRules;
+import app.web.dto.ActivitiesNotificationRequest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class IdempotencyKeyStoreUTest {
+    @Mock
+    private NotificationIdempotencyKeyRepository notificationIdempotencyKeyRepository;
+
+    @Mock
+    private ActivitiesNotificationRepository activitiesNotificationRepository;
+
+    @Mock
+    private ScheduledNotificationRepository scheduledNotificationRepository;
+
+    private IdempotencyKeyStore idempotencyKeyStore;
+
+    private final ActivitiesNotificationRequest request = request(UUID.randomUUID(), "Table for two");
+    private final NotificationIdempotencyKey.Key key = new NotificationIdempotencyKey.Key(request.getUserId(), "order-42");
+
+    @BeforeEach
+    void setUp(){
+        idempotencyKeyStore = new IdempotencyKeyStore(notificationIdempotencyKeyRepository, activitiesNotificationRepository, scheduledNotificationRepository, 3600, 100);
+    }
+
+    @Test
+    void resolve_withRepeatedKey_shouldSendOnceAndAnswerFromMemory(){
+        ActivitiesNotification notification = ActivitiesNotification.builder().id(UUID.randomUUID()).build();
+        AtomicInteger calls = new AtomicInteger();
+
+        when(notificationIdempotencyKeyRepository.findById(key)).thenReturn(Optional.empty());
+
+        ActivitiesNotification first = idempotencyKeyStore.resolve(request, "order-42", () -> { calls.incrementAndGet(); return notification; });
+        ActivitiesNotification second = idempotencyKeyStore.resolve(request, "order-42", () -> { calls.incrementAndGet(); return notification; });
+
+        assertSame(first, second);
+        assertEquals(1, calls.get());
+        verify(notificationIdempotencyKeyRepository, times(1)).findById(key);
+    }
+
+    @Test
+    void resolve_withKeyStoredByAnotherInstance_shouldReturnStoredNotification(){
+        ActivitiesNotification notification = ActivitiesNotification.builder().id(UUID.randomUUID()).build();
+
+        when(notificationIdempotencyKeyRepository.findById(key)).thenReturn(Optional.of(NotificationIdempotencyKey.builder()
+                .userId(request.getUserId())
+                .idempotencyKey("order-42")
+                .requestHash(NotificationRules.requestHash(request))
+                .notificationId(notification.getId())
+                .createdOn(LocalDateTime.now().minusMinutes(1))
+                .build()));
+        when(activitiesNotificationRepository.findById(notification.getId())).thenReturn(Optional.of(notification));
+
+        ActivitiesNotification resolved = idempotencyKeyStore.resolve(request, "order-42", () -> fail("must not send again"));
+
+        assertSame(notification, resolved);
+    }
+
+    @Test
+    void resolveScheduled_withRepeatedKey_shouldScheduleOnceAndAnswerWithTheSentNotificationOnceItIsGone(){
+        ScheduledNotification scheduledNotification = ScheduledNotification.builder().id(UUID.randomUUID()).build();
+        ActivitiesNotification sentNotification = ActivitiesNotification.builder().id(UUID.randomUUID()).build();
+        AtomicInteger calls = new AtomicInteger();
+
+        when(notificationIdempotencyKeyRepository.findById(key)).thenReturn(Optional.empty(), Optional.of(storedKey(scheduledNotification.getId())));
+        when(scheduledNotificationRepository.findById(scheduledNotification.getId())).thenReturn(Optional.of(scheduledNotification));
+        ScheduledNotification first = idempotencyKeyStore.resolveScheduled(request, "order-42", () -> { calls.incrementAndGet(); return scheduledNotification; });
+        //not answered from memory, the table tells whether it is still scheduled
+        ScheduledNotification second = idempotencyKeyStore.resolveScheduled(request, "order-42", () -> { calls.incrementAndGet(); return scheduledNotification; });
+
+        assertSame(first, second);
+        assertEquals(1, calls.get());
+
+        //the timer has sent it and pointed the key at the sent notification
+        when(notificationIdempotencyKeyRepository.findById(key)).thenReturn(Optional.of(storedKey(sentNotification.getId())));
+        when(activitiesNotificationRepository.findById(sentNotification.getId())).thenReturn(Optional.of(sentNotification));
+
+        assertSame(sentNotification, idempotencyKeyStore.resolve(request, "order-42", () -> fail("must not send again")));
+    }
+
+    @Test
+    void resolveScheduled_afterTheNotificationWasCancelled_shouldRefuseInsteadOfSchedulingAgain(){
+        UUID cancelledId = UUID.randomUUID();
+
+        when(notificationIdempotencyKeyRepository.findById(key)).thenReturn(Optional.of(storedKey(cancelledId)));
+        when(scheduledNotificationRepository.findById(cancelledId)).thenReturn(Optional.empty());
+
+        assertThrows(IdempotencyKeyTargetGoneException.class,
+                () -> idempotencyKeyStore.resolveScheduled(request, "order-42", () -> fail("must not schedule again")));
+    }
+
+    @Test
+    void resolve_withExpiredStoredKey_shouldDropItAndSendAgain(){
+        ActivitiesNotification notification = ActivitiesNotification.builder().id(UUID.randomUUID()).build();
+        NotificationIdempotencyKey expired = NotificationIdempotencyKey.builder()
+                .userId(request.getUserId())
+                .idempotencyKey("order-42")
+                .requestHash(NotificationRules.requestHash(request))
+                .notificationId(UUID.randomUUID())
+                .createdOn(LocalDateTime.now().minusHours(2))
+                .build();
+
+        when(notificationIdempotencyKeyRepository.findById(key)).thenReturn(Optional.of(expired));
+
+        assertSame(notification, idempotencyKeyStore.resolve(request, "order-42", () -> notification));
+        verify(notificationIdempotencyKeyRepository, times(1)).delete(expired);
+        verify(activitiesNotificationRepository, never()).findById(any());
+    }
+
+    @Test
+    void resolve_whenKeyIsCommittedConcurrentlyElsewhere_shouldReturnTheWinner(){
+        ActivitiesNotification winner = ActivitiesNotification.builder().id(UUID.randomUUID()).build();
+
+        when(notificationIdempotencyKeyRepository.findById(key)).thenReturn(Optional.empty(), Optional.of(NotificationIdempotencyKey.builder()
+                .userId(request.getUserId())
+                .idempotencyKey("order-42")
+                .requestHash(NotificationRules.requestHash(request))
+                .notificationId(winner.getId())
+                .createdOn(LocalDateTime.now())
+                .build()));
+        when(activitiesNotificationRepository.findById(winner.getId())).thenReturn(Optional.of(winner));
+
+        ActivitiesNotification resolved = idempotencyKeyStore.resolve(request, "order-42", () -> { throw new DataIntegrityViolationException("Duplicate entry"); });
+
+        assertSame(winner, resolved);
+    }
+
+    @Test
+    void resolve_withConcurrentDuplicates_shouldCoalesceIntoOneSend() throws Exception {
+        ActivitiesNotification notification = ActivitiesNotification.builder().id(UUID.randomUUID()).build();
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        when(notificationIdempotencyKeyRepository.findById(key)).thenReturn(Optional.empty());
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<ActivitiesNotification> first = executor.submit(() -> idempotencyKeyStore.resolve(request, "order-42", () -> {
+                calls.incrementAndGet();
+                sending.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return notification;
+            }));
+            assertTrue(sending.await(5, TimeUnit.SECONDS));
+            Future<ActivitiesNotification> duplicate = executor.submit(() -> idempotencyKeyStore.resolve(request, "order-42", () -> {
+                calls.incrementAndGet();
+                return ActivitiesNotification.builder().id(UUID.randomUUID()).build();
+            }));
+            release.countDown();
+
+            assertSame(notification, first.get(5, TimeUnit.SECONDS));
+            assertSame(notification, duplicate.get(5, TimeUnit.SECONDS));
+            assertEquals(1, calls.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void resolve_withTooLongKey_shouldThrow(){
+        assertThrows(InvalidIdempotencyKeyException.class, () -> idempotencyKeyStore.resolve(request, "k".repeat(256), () -> null));
+        verifyNoInteractions(notificationIdempotencyKeyRepository);
+    }
+
+    @Test
+    void resolve_withKeyOfAnotherUser_shouldSendItsOwnNotification(){
+        ActivitiesNotification first = ActivitiesNotification.builder().id(UUID.randomUUID()).build();
+        ActivitiesNotification second = ActivitiesNotification.builder().id(UUID.randomUUID()).build();
+        ActivitiesNotificationRequest otherUser = request(UUID.randomUUID(), "Table for two");
+
+        when(notificationIdempotencyKeyRepository.findById(any())).thenReturn(Optional.empty());
+
+        assertSame(first, idempotencyKeyStore.resolve(request, "order-42", () -> first));
+        assertSame(second, idempotencyKeyStore.resolve(otherUser, "order-42", () -> second));
+        verify(notificationIdempotencyKeyRepository, times(1)).findById(new NotificationIdempotencyKey.Key(otherUser.getUserId(), "order-42"));
+    }
+
+    @Test
+    void resolve_withRepeatedKeyAndDifferentRequest_shouldThrow(){
+        ActivitiesNotification notification = ActivitiesNotification.builder().id(UUID.randomUUID()).build();
+        ActivitiesNotificationRequest changed = request(request.getUserId(), "Table for four");
+
+        when(notificationIdempotencyKeyRepository.findById(key)).thenReturn(Optional.empty());
+
+        idempotencyKeyStore.resolve(request, "order-42", () -> notification);
+        assertThrows(IdempotencyKeyReusedException.class, () -> idempotencyKeyStore.resolve(changed, "order-42", () -> fail("must not send")));
+    }
+
+    @Test
+    void resolve_withKeyStoredByAnotherInstanceForADifferentRequest_shouldThrow(){
+        when(notificationIdempotencyKeyRepository.findById(key)).thenReturn(Optional.of(NotificationIdempotencyKey.builder()
+                .userId(request.getUserId())
+                .idempotencyKey("order-42")
+                .requestHash(NotificationRules.requestHash(request(request.getUserId(), "Table for four")))
+                .notificationId(UUID.randomUUID())
+                .createdOn(LocalDateTime.now().minusMinutes(1))
+                .build()));
+
+        assertThrows(IdempotencyKeyReusedException.class, () -> idempotencyKeyStore.resolve(request, "order-42", () -> fail("must not send")));
+        verify(activitiesNotificationRepository, never()).findById(any());
+    }
+
+    private static ActivitiesNotificationRequest request(UUID userId, String message){
+        return ActivitiesNotificationRequest.builder()
+                .userId(userId)
+                .subject("Reservation")
+                .message(message)
+                .type(ActivityType.RESERVATION)
+                .build();
+    }
+
+    private NotificationIdempotencyKey storedKey(UUID notificationId){
+        return NotificationIdempotencyKey.builder()
+                .userId(request.getUserId())
+                .idempotencyKey("order-42")
+                .requestHash(NotificationRules.requestHash(request))
+                .notificationId(notificationId)
+                .createdOn(LocalDateTime.now().minusMinutes(1))
+                .build();
+    }
+}
@@ -0,0 +1,87 @@
+package app.notification;
+
+import app.service.NotificationJournal;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NotificationJournalUTest {
+    @TempDir
+    private Path directory;
+
+    @Test
+    void closedSegments_afterCrash_shouldHoldEveryUnwrittenEntryInOrder() throws Exception {
+        NotificationJournal crashed = new NotificationJournal(directory, false);
+        crashed.append(bytes("first"));
+        crashed.append(bytes("second"));
+        Path rotated = crashed.rotate();
+        crashed.append(bytes("third"));
+        //never closed, like a process that died
+
+        try (NotificationJournal journal = new NotificationJournal(directory, false)) {
+            List<Path> segments = journal.closedSegments();
+
+            assertEquals(2, segments.size());
+            assertEquals(rotated, segments.get(0));
+            assertEquals(List.of("first", "second"), NotificationJournal.readEntries(segments.get(0)));
+            assertEquals(List.of("third"), NotificationJournal.readEntries(segments.get(1)));
+        }
+    }
+
+    @Test
+    void readEntries_withTornLastLine_shouldReturnItAsItIs() throws Exception {
+        NotificationJournal crashed = new NotificationJournal(directory, true);
+        crashed.append(bytes("{\"id\":1}"));
+        Path segment = crashed.rotate();
+        Files.write(segment, bytes("{\"id\":"), StandardOpenOption.APPEND);
+
+        assertEquals(List.of("{\"id\":1}", "{\"id\":"), NotificationJournal.readEntries(segment));
+    }
+
+    @Test
+    void close_withEmptyActiveSegment_shouldLeaveNothingBehind() throws Exception {
+        NotificationJournal journal = new NotificationJournal(directory, false);
+        journal.append(bytes("first"));
+        NotificationJournal.delete(journal.rotate());
+        journal.close();
+
+        try (NotificationJournal reopened = new NotificationJournal(directory, false)) {
+            assertTrue(reopened.closedSegments().isEmpty());
+        }
+    }
+
+    @Test
+    void sync_afterTheSegmentWasRotated_shouldReturnWithoutForcingAgain() throws Exception {
+        try (NotificationJournal journal = new NotificationJournal(directory, true)) {
+            long first = journal.append(bytes("first"));
+            long second = journal.append(bytes("second"));
+            journal.rotate();
+
+            assertEquals(first + 1, second);
+            //the rotated channel is closed, sync has to know rotating already forced it
+            journal.sync(second);
+            journal.sync(journal.append(bytes("third")));
+        }
+    }
+
+    @Test
+    void deadLetter_shouldNotBeReplayedAsASegment() throws Exception {
+        try (NotificationJournal journal = new NotificationJournal(directory, true)) {
+            journal.deadLetter(bytes("rejected"));
+
+            assertEquals(List.of("rejected"), NotificationJournal.readEntries(journal.deadLetterFile()));
+            assertTrue(journal.closedSegments().isEmpty());
+        }
+    }
+
+    private static byte[] bytes(String entry){
+        return entry.getBytes(StandardCharsets.UTF_8);
+    }
+}
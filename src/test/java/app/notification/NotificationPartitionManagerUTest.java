@@ -0,0 +1,59 @@
+package app.notification;
+
+import app.service.NotificationPartitionManager;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class NotificationPartitionManagerUTest {
+    private static final Clock CLOCK = Clock.fixed(Instant.parse("2026-10-18T10:00:00Z"), ZoneId.of("UTC"));
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void maintainPartitions_shouldSplitTheComingMonthsOffTheEmptyPmaxInOneStatement(){
+        when(jdbcTemplate.queryForList(anyString(), eq("activities_notification"))).thenReturn(List.of(
+                partition("p_history", "'2026-11-01'"),
+                partition("pmax", "MAXVALUE")));
+
+        new NotificationPartitionManager(jdbcTemplate, 24, CLOCK).maintainPartitions();
+
+        verify(jdbcTemplate, times(1)).execute("ALTER TABLE activities_notification REORGANIZE PARTITION pmax INTO (" +
+                "PARTITION p202611 VALUES LESS THAN ('2026-12-01'), PARTITION p202612 VALUES LESS THAN ('2027-01-01'), " +
+                "PARTITION pmax VALUES LESS THAN (MAXVALUE))");
+        verifyNoMoreInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void maintainPartitions_withMonthsAlreadyInPmax_shouldAddThemAllInOneStatement(){
+        when(jdbcTemplate.queryForList(anyString(), eq("activities_notification"))).thenReturn(List.of(
+                partition("p_history", "'2026-08-01'"),
+                partition("pmax", "MAXVALUE")));
+
+        new NotificationPartitionManager(jdbcTemplate, 24, CLOCK).maintainPartitions();
+
+        //one copy of what landed in pmax instead of one per missing month
+        verify(jdbcTemplate, times(1)).execute("ALTER TABLE activities_notification REORGANIZE PARTITION pmax INTO (" +
+                "PARTITION p202608 VALUES LESS THAN ('2026-09-01'), PARTITION p202609 VALUES LESS THAN ('2026-10-01'), " +
+                "PARTITION p202610 VALUES LESS THAN ('2026-11-01'), PARTITION p202611 VALUES LESS THAN ('2026-12-01'), " +
+                "PARTITION p202612 VALUES LESS THAN ('2027-01-01'), PARTITION pmax VALUES LESS THAN (MAXVALUE))");
+    }
+
+    private static Map<String, Object> partition(String name, String description){
+        return Map.of("PARTITION_NAME", name, "PARTITION_DESCRIPTION", description);
+    }
+}
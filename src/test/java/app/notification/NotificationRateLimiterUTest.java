@@ -0,0 +1,128 @@
+package app.notification;
+
+import app.exception.BatchTooLargeException;
+import app.exception.RateLimitExceededException;
+import app.service.NotificationRateLimiter;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NotificationRateLimiterUTest {
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    void acquire_overUserBurst_shouldRejectUntilATokenIsEarned(){
+        //one token every second, at most three at once
+        NotificationRateLimiter rateLimiter = new NotificationRateLimiter(60, 3, 100, 0, 0, clock::get);
+        UUID userId = UUID.randomUUID();
+
+        for(int i = 0; i < 3; i++){
+            rateLimiter.acquire(userId);
+        }
+        RateLimitExceededException exception = assertThrows(RateLimitExceededException.class, () -> rateLimiter.acquire(userId));
+        assertEquals(Duration.ofSeconds(1), exception.getRetryAfter());
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        rateLimiter.acquire(userId);
+        assertThrows(RateLimitExceededException.class, () -> rateLimiter.acquire(userId));
+    }
+
+    @Test
+    void acquire_shouldKeepUsersIndependent(){
+        NotificationRateLimiter rateLimiter = new NotificationRateLimiter(60, 1, 100, 0, 0, clock::get);
+        UUID flooding = UUID.randomUUID();
+
+        rateLimiter.acquire(flooding);
+        assertThrows(RateLimitExceededException.class, () -> rateLimiter.acquire(flooding));
+
+        assertDoesNotThrow(() -> rateLimiter.acquire(UUID.randomUUID()));
+    }
+
+    @Test
+    void acquireGlobal_overGlobalLimit_shouldRejectWithoutTouchingUserBuckets(){
+        NotificationRateLimiter rateLimiter = new NotificationRateLimiter(60, 2, 100, 1, 2, clock::get);
+        UUID userId = UUID.randomUUID();
+
+        rateLimiter.acquireGlobal();
+        rateLimiter.acquireGlobal();
+        RateLimitExceededException exception = assertThrows(RateLimitExceededException.class, rateLimiter::acquireGlobal);
+        assertEquals(Duration.ofSeconds(1), exception.getRetryAfter());
+
+        //ingress only answers for the user's own rate
+        rateLimiter.acquire(userId);
+        rateLimiter.acquire(userId);
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        rateLimiter.acquireGlobal();
+    }
+
+    @Test
+    void acquire_batchOverUserBurst_shouldBeRejectedAndTakeNoTokens(){
+        NotificationRateLimiter rateLimiter = new NotificationRateLimiter(60, 3, 100, 0, 0, clock::get);
+        UUID userId = UUID.randomUUID();
+
+        assertThrows(BatchTooLargeException.class, () -> rateLimiter.acquire(List.of(userId, userId, userId, userId)));
+
+        rateLimiter.acquire(List.of(userId, userId, userId));
+        assertThrows(RateLimitExceededException.class, () -> rateLimiter.acquire(userId));
+    }
+
+    @Test
+    void acquire_afterAnIdlePeriodShorterThanTheRefill_shouldNotStartOverWithAFullBurst(){
+        //one token every 10 seconds, the bucket must outlive the 30 seconds it takes to refill
+        NotificationRateLimiter rateLimiter = new NotificationRateLimiter(6, 3, 100, 0, 0, clock::get);
+        UUID userId = UUID.randomUUID();
+
+        rateLimiter.acquire(List.of(userId, userId, userId));
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(25));
+
+        rateLimiter.acquire(List.of(userId, userId));
+        assertThrows(RateLimitExceededException.class, () -> rateLimiter.acquire(userId));
+    }
+
+    @Test
+    void acquire_batchOverUserLimit_shouldTakeNoTokensFromOtherUsers(){
+        NotificationRateLimiter rateLimiter = new NotificationRateLimiter(60, 2, 100, 0, 0, clock::get);
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+
+        rateLimiter.acquire(second);
+        assertThrows(RateLimitExceededException.class, () -> rateLimiter.acquire(List.of(first, second, second)));
+
+        rateLimiter.acquire(List.of(first, first, second));
+    }
+
+    @Test
+    void acquire_fromManyThreads_shouldNeverGrantMoreThanTheBurst() throws Exception {
+        NotificationRateLimiter rateLimiter = new NotificationRateLimiter(60, 50, 100, 0, 0, clock::get);
+        UUID userId = UUID.randomUUID();
+        AtomicInteger granted = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            for(int i = 0; i < 400; i++){
+                executor.submit(() -> {
+                    try {
+                        rateLimiter.acquire(userId);
+                        granted.incrementAndGet();
+                    } catch (RateLimitExceededException ignored) {
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        }
+
+        assertEquals(50, granted.get());
+    }
+}
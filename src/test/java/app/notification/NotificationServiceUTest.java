@@ -1,19 +1,37 @@
 package app.notification;
 
+import app.exception.NotificationQueueFullException;
 import app.model.ActivitiesNotification;
 import app.model.ActivityType;
+import app.model.ChannelType;
+import app.model.NotificationDelivery;
+import app.model.NotificationOutbox;
 import app.model.NotificationPreference;
 import app.model.NotificationStatus;
+import app.model.ScheduledNotification;
 import app.repository.ActivitiesNotificationRepository;
+import app.repository.NotificationDeliveryRepository;
+import app.repository.NotificationOutboxRepository;
 import app.repository.NotificationPreferenceRepository;
+import app.repository.ScheduledNotificationRepository;
+import app.service.BatchSendResult;
+import app.service.NotificationDispatcher;
+import app.service.NotificationMetrics;
+import app.service.NotificationScheduledEvent;
 import app.service.NotificationService;
+import app.service.NotificationWriteBehindBuffer;
+import app.service.NotificationsAcceptedEvent;
+import app.service.UnreadNotificationCounter;
+import app.web.dto.ActivitiesNotificationRequest;
 import app.web.dto.UpsertNotificationPreference;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.mail.MailSender;
+import org.springframework.context.ApplicationEventPublisher;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -22,6 +40,9 @@ import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -33,7 +54,30 @@ public class NotificationServiceUTest {
     private ActivitiesNotificationRepository activitiesNotificationRepository;
 
     @Mock
-    private MailSender mailSender;
+    private NotificationOutboxRepository notificationOutboxRepository;
+
+    @Mock
+    private NotificationDeliveryRepository notificationDeliveryRepository;
+
+    @Mock
+    private ScheduledNotificationRepository scheduledNotificationRepository;
+
+    @Mock
+    private NotificationDispatcher notificationDispatcher;
+
+    @Mock
+    private UnreadNotificationCounter unreadNotificationCounter;
+
+    @Mock
+    private ApplicationEventPublisher applicationEventPublisher;
+
+    @Mock
+    private NotificationWriteBehindBuffer notificationWriteBehindBuffer;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Spy
+    private NotificationMetrics notificationMetrics = new NotificationMetrics(meterRegistry);
 
     @InjectMocks
     private NotificationService notificationService;
@@ -94,76 +138,385 @@ public class NotificationServiceUTest {
         verify(notificationPreferenceRepository, times(1)).save(any());
     }
 
+    @Test
+    void upsertPreference_shouldLeaveTheCachedInstanceUntouched(){
+        UUID userId = UUID.randomUUID();
+        NotificationPreference.NotificationPreferenceBuilder stored = NotificationPreference.builder()
+                .id(UUID.randomUUID())
+                .userId(userId)
+                .reservationEnabled(true)
+                .productEnabled(true)
+                .contactInfo("viktor@gmail.com")
+                .createdOn(LocalDateTime.now().minusDays(1))
+                .updatedOn(LocalDateTime.now().minusDays(1));
+        NotificationPreference cached = stored.build();
+        NotificationPreference snapshot = stored.build();
+
+        when(notificationPreferenceRepository.findByUserId(userId)).thenReturn(Optional.of(cached));
+        when(notificationPreferenceRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        NotificationPreference preference = notificationService.upsertPreference(UpsertNotificationPreference.builder()
+                .userId(userId)
+                .reservationEnabled(false)
+                .productEnabled(true)
+                .contactInfo("ivan@gmail.com")
+                .build());
+
+        //concurrent sends keep reading the old preference until the saved copy replaces it in the cache
+        assertEquals(snapshot, cached);
+        assertNotSame(cached, preference);
+        assertEquals(cached.getId(), preference.getId());
+        assertEquals(cached.getCreatedOn(), preference.getCreatedOn());
+        assertEquals("ivan@gmail.com", preference.getContactInfo());
+    }
+
     @Test
     void setAllNotificationsIsHiddenToTrue_happyPath(){
-        ActivitiesNotification notification1 = ActivitiesNotification.builder()
+        UUID userId = UUID.randomUUID();
+
+        when(activitiesNotificationRepository.updateIsHiddenChunk(userId, false, true, 5000)).thenReturn(2);
+
+        int updated = notificationService.setAllNotificationsIsHiddenToTrue(userId);
+
+        assertEquals(2, updated);
+        verify(activitiesNotificationRepository, times(1)).updateIsHiddenChunk(userId, false, true, 5000);
+        verify(activitiesNotificationRepository, never()).findAllByUserId(any());
+        verify(activitiesNotificationRepository, never()).save(any());
+        verify(unreadNotificationCounter, times(1)).invalidate(userId);
+    }
+
+    @Test
+    void setAllNotificationsIsHiddenToFalse_happyPath(){
+        UUID userId = UUID.randomUUID();
+
+        when(activitiesNotificationRepository.updateIsHiddenChunk(userId, true, false, 5000)).thenReturn(2);
+
+        int updated = notificationService.setAllNotificationsIsHiddenToFalse(userId);
+
+        assertEquals(2, updated);
+        verify(activitiesNotificationRepository, times(1)).updateIsHiddenChunk(userId, true, false, 5000);
+        verify(activitiesNotificationRepository, never()).findAllByUserId(any());
+        verify(activitiesNotificationRepository, never()).save(any());
+    }
+
+    @Test
+    void setAllNotificationsIsHiddenToTrue_withManyNotifications_shouldUpdateInChunksUntilOneComesUpShort(){
+        UUID userId = UUID.randomUUID();
+
+        when(activitiesNotificationRepository.updateIsHiddenChunk(userId, false, true, 5000)).thenReturn(5000, 5000, 42);
+
+        int updated = notificationService.setAllNotificationsIsHiddenToTrue(userId);
+
+        assertEquals(10042, updated);
+        verify(activitiesNotificationRepository, times(3)).updateIsHiddenChunk(userId, false, true, 5000);
+        verify(unreadNotificationCounter, times(1)).invalidate(userId);
+    }
+
+    @Test
+    void getNotificationPreference_happyPath(){
+        UUID userId = UUID.randomUUID();
+        NotificationPreference notificationPreference = NotificationPreference.builder()
                 .id(UUID.randomUUID())
-                .userId(UUID.randomUUID())
+                .userId(userId)
+                .reservationEnabled(true)
+                .productEnabled(true)
+                .build();
+
+        when(notificationPreferenceRepository.findByUserId(any())).thenReturn(Optional.of(notificationPreference));
+        NotificationPreference preference = notificationService.getNotificationPreference(userId);
+        assertEquals(notificationPreference.getContactInfo(), preference.getContactInfo());
+        assertEquals(notificationPreference.isReservationEnabled(), preference.isReservationEnabled());
+        verify(notificationPreferenceRepository, times(1)).findByUserId(any());
+    }
+
+    @Test
+    void sendNotification_happyPath_shouldPersistPendingWithOutboxEntry(){
+        UUID userId = UUID.randomUUID();
+        NotificationPreference notificationPreference = NotificationPreference.builder()
+                .id(UUID.randomUUID())
+                .userId(userId)
+                .reservationEnabled(true)
+                .productEnabled(true)
+                .contactInfo("viktor@gmail.com")
+                .build();
+        ActivitiesNotificationRequest request = ActivitiesNotificationRequest.builder()
+                .userId(userId)
+                .subject("Water")
+                .message("1.00 lv")
                 .type(ActivityType.BUYING_PRODUCT)
-                .subject("Buying product")
-                .status(NotificationStatus.SUCCEEDED)
-                .createdOn(LocalDateTime.now())
                 .build();
 
-        ActivitiesNotification notification2 = ActivitiesNotification.builder()
+        when(notificationPreferenceRepository.findByUserId(userId)).thenReturn(Optional.of(notificationPreference));
+        when(notificationDispatcher.isSaturated()).thenReturn(false);
+        when(activitiesNotificationRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        ActivitiesNotification notification = notificationService.sendNotification(request);
+
+        assertEquals(NotificationStatus.PENDING, notification.getStatus());
+        verify(notificationOutboxRepository, times(1)).save(argThat((NotificationOutbox entry) -> "viktor@gmail.com".equals(entry.getContactInfo())));
+        assertEquals(1.0, meterRegistry.get("notifications.accepted").tag("type", "BUYING_PRODUCT").counter().count());
+        assertEquals(1, meterRegistry.get("notifications.send").timer().count());
+    }
+
+    @Test
+    void sendNotification_withWebhookAndPhone_shouldAddOutboxEntryAndDeliveryPerChannel(){
+        UUID userId = UUID.randomUUID();
+        NotificationPreference notificationPreference = NotificationPreference.builder()
                 .id(UUID.randomUUID())
-                .userId(UUID.randomUUID())
-                .type(ActivityType.RESERVATION)
-                .subject("Creating reservation")
-                .status(NotificationStatus.SUCCEEDED)
-                .createdOn(LocalDateTime.now())
+                .userId(userId)
+                .reservationEnabled(true)
+                .productEnabled(true)
+                .contactInfo("viktor@gmail.com")
+                .webhookUrl("https://hooks.example.com/notifications")
+                .phoneNumber("+359888123456")
+                .build();
+        ActivitiesNotificationRequest request = ActivitiesNotificationRequest.builder()
+                .userId(userId)
+                .subject("Water")
+                .message("1.00 lv")
+                .type(ActivityType.BUYING_PRODUCT)
                 .build();
 
-        when(activitiesNotificationRepository.findAllByUserId(any())).thenReturn(List.of(notification1, notification2));
-        notificationService.setAllNotificationsIsHiddenToTrue(any());
-        assertTrue(notification1.isHidden());
-        assertTrue(notification2.isHidden());
+        when(notificationPreferenceRepository.findByUserId(userId)).thenReturn(Optional.of(notificationPreference));
+        when(notificationDispatcher.isSaturated()).thenReturn(false);
+        when(activitiesNotificationRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        notificationService.sendNotification(request);
 
-        verify(activitiesNotificationRepository, times(2)).save(any());
+        verify(notificationOutboxRepository, times(1)).save(argThat((NotificationOutbox entry) -> entry.getChannel() == ChannelType.EMAIL));
+        verify(notificationOutboxRepository, times(1)).saveAll(argThat((List<NotificationOutbox> saved) -> saved.size() == 2
+                && saved.get(0).getChannel() == ChannelType.WEBHOOK && "https://hooks.example.com/notifications".equals(saved.get(0).getContactInfo())
+                && saved.get(1).getChannel() == ChannelType.SMS && "+359888123456".equals(saved.get(1).getContactInfo())));
+        verify(notificationDeliveryRepository, times(1)).saveAll(argThat((List<NotificationDelivery> saved) -> saved.size() == 2
+                && saved.stream().allMatch(delivery -> delivery.getStatus() == NotificationStatus.PENDING)));
     }
 
     @Test
-    void setAllNotificationsIsHiddenToFalse_happyPath(){
-        ActivitiesNotification notification1 = ActivitiesNotification.builder()
+    void sendNotification_withWriteBehind_shouldQueueInsteadOfSaving(){
+        UUID userId = UUID.randomUUID();
+        NotificationPreference notificationPreference = NotificationPreference.builder()
                 .id(UUID.randomUUID())
-                .userId(UUID.randomUUID())
+                .userId(userId)
+                .reservationEnabled(true)
+                .productEnabled(true)
+                .contactInfo("viktor@gmail.com")
+                .build();
+        ActivitiesNotificationRequest request = ActivitiesNotificationRequest.builder()
+                .userId(userId)
+                .subject("Water")
+                .message("1.00 lv")
                 .type(ActivityType.BUYING_PRODUCT)
-                .subject("Buying product")
-                .status(NotificationStatus.SUCCEEDED)
-                .createdOn(LocalDateTime.now())
                 .build();
 
-        ActivitiesNotification notification2 = ActivitiesNotification.builder()
+        when(notificationPreferenceRepository.findByUserId(userId)).thenReturn(Optional.of(notificationPreference));
+        when(notificationDispatcher.isSaturated()).thenReturn(false);
+        when(notificationWriteBehindBuffer.isEnabled()).thenReturn(true);
+        when(notificationWriteBehindBuffer.accept(any(), eq("viktor@gmail.com"), any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        ActivitiesNotification notification = notificationService.sendNotification(request);
+
+        assertEquals(NotificationStatus.PENDING, notification.getStatus());
+        verify(activitiesNotificationRepository, never()).save(any());
+        verify(notificationOutboxRepository, never()).save(any());
+        //counted and published by the writer once the batch commits
+        verify(unreadNotificationCounter, never()).add(any(), anyLong());
+        verify(applicationEventPublisher, never()).publishEvent(any(Object.class));
+        assertEquals(1.0, meterRegistry.get("notifications.accepted").tag("type", "BUYING_PRODUCT").counter().count());
+    }
+
+    @Test
+    void sendNotification_withDigestWindow_shouldHoldWithoutOutboxEntry(){
+        UUID userId = UUID.randomUUID();
+        NotificationPreference notificationPreference = NotificationPreference.builder()
                 .id(UUID.randomUUID())
-                .userId(UUID.randomUUID())
+                .userId(userId)
+                .reservationEnabled(true)
+                .productEnabled(true)
+                .reservationDigestSeconds(300)
+                .contactInfo("viktor@gmail.com")
+                .build();
+        ActivitiesNotificationRequest request = ActivitiesNotificationRequest.builder()
+                .userId(userId)
+                .subject("Table")
+                .message("For two")
                 .type(ActivityType.RESERVATION)
-                .subject("Creating reservation")
-                .status(NotificationStatus.SUCCEEDED)
-                .createdOn(LocalDateTime.now())
                 .build();
 
-        when(activitiesNotificationRepository.findAllByUserId(any())).thenReturn(List.of(notification1, notification2));
-        notificationService.setAllNotificationsIsHiddenToFalse(any());
-        assertFalse(notification1.isHidden());
-        assertFalse(notification2.isHidden());
+        when(notificationPreferenceRepository.findByUserId(userId)).thenReturn(Optional.of(notificationPreference));
+        when(notificationDispatcher.isSaturated()).thenReturn(false);
+        when(activitiesNotificationRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        ActivitiesNotification notification = notificationService.sendNotification(request);
 
-        verify(activitiesNotificationRepository, times(2)).save(any());
+        assertEquals(NotificationStatus.PENDING, notification.getStatus());
+        assertNotNull(notification.getDigestDueAt());
+        assertTrue(notification.getDigestDueAt().isAfter(LocalDateTime.now().plusSeconds(290)));
+        verify(notificationOutboxRepository, never()).save(any());
     }
 
     @Test
-    void getNotificationPreference_happyPath(){
+    void sendNotification_whenQueueIsFull_shouldThrowAndNotPersist(){
         UUID userId = UUID.randomUUID();
         NotificationPreference notificationPreference = NotificationPreference.builder()
                 .id(UUID.randomUUID())
                 .userId(userId)
                 .reservationEnabled(true)
                 .productEnabled(true)
+                .contactInfo("viktor@gmail.com")
+                .build();
+        ActivitiesNotificationRequest request = ActivitiesNotificationRequest.builder()
+                .userId(userId)
+                .subject("Water")
+                .message("1.00 lv")
+                .type(ActivityType.BUYING_PRODUCT)
                 .build();
 
-        when(notificationPreferenceRepository.findByUserId(any())).thenReturn(Optional.of(notificationPreference));
-        NotificationPreference preference = notificationService.getNotificationPreference(userId);
-        assertEquals(notificationPreference.getContactInfo(), preference.getContactInfo());
-        assertEquals(notificationPreference.isReservationEnabled(), preference.isReservationEnabled());
-        verify(notificationPreferenceRepository, times(1)).findByUserId(any());
+        when(notificationPreferenceRepository.findByUserId(userId)).thenReturn(Optional.of(notificationPreference));
+        when(notificationDispatcher.isSaturated()).thenReturn(true);
+
+        assertThrows(NotificationQueueFullException.class, () -> notificationService.sendNotification(request));
+        verify(activitiesNotificationRepository, never()).save(any());
+        verify(notificationOutboxRepository, never()).save(any());
+    }
+
+    @Test
+    void sendNotifications_withMixedRequests_shouldAcceptValidOnesAndReportTheRest(){
+        UUID allowedUserId = UUID.randomUUID();
+        UUID disabledUserId = UUID.randomUUID();
+        UUID unknownUserId = UUID.randomUUID();
+        NotificationPreference allowed = NotificationPreference.builder()
+                .userId(allowedUserId)
+                .reservationEnabled(true)
+                .productEnabled(true)
+                .contactInfo("viktor@gmail.com")
+                .build();
+        NotificationPreference disabled = NotificationPreference.builder()
+                .userId(disabledUserId)
+                .reservationEnabled(false)
+                .productEnabled(false)
+                .contactInfo("ivan@gmail.com")
+                .build();
+        List<ActivitiesNotificationRequest> requests = List.of(
+                ActivitiesNotificationRequest.builder().userId(allowedUserId).subject("Water").message("1.00 lv").type(ActivityType.BUYING_PRODUCT).build(),
+                ActivitiesNotificationRequest.builder().userId(disabledUserId).subject("Table").message("For two").type(ActivityType.RESERVATION).build(),
+                ActivitiesNotificationRequest.builder().userId(unknownUserId).subject("Bread").message("2.00 lv").type(ActivityType.BUYING_PRODUCT).build(),
+                ActivitiesNotificationRequest.builder().userId(allowedUserId).subject("Table").message("For four").type(ActivityType.RESERVATION).build());
+
+        when(notificationDispatcher.isSaturated()).thenReturn(false);
+        when(notificationPreferenceRepository.findAllByUserIdIn(any())).thenReturn(List.of(allowed, disabled));
+
+        List<BatchSendResult> results = notificationService.sendNotifications(requests);
+
+        assertEquals(4, results.size());
+        assertTrue(results.get(0).isAccepted());
+        assertFalse(results.get(1).isAccepted());
+        assertNotNull(results.get(1).getError());
+        assertFalse(results.get(2).isAccepted());
+        assertTrue(results.get(3).isAccepted());
+        verify(notificationPreferenceRepository, times(1)).findAllByUserIdIn(any());
+        verify(notificationPreferenceRepository, never()).findByUserId(any());
+        verify(activitiesNotificationRepository, times(1)).saveAll(argThat((List<ActivitiesNotification> saved) -> saved.size() == 2));
+        verify(notificationOutboxRepository, times(1)).saveAll(argThat((List<NotificationOutbox> saved) -> saved.size() == 2));
+        verify(unreadNotificationCounter, times(1)).add(allowedUserId, 2L);
+        verify(unreadNotificationCounter, never()).add(eq(disabledUserId), anyLong());
+        verify(applicationEventPublisher, times(1)).publishEvent(argThat((NotificationsAcceptedEvent event) -> event.getNotifications().size() == 2));
+    }
+
+    @Test
+    void scheduleNotification_happyPath_shouldStoreItForLaterAndTellTheTimer(){
+        UUID userId = UUID.randomUUID();
+        NotificationPreference notificationPreference = NotificationPreference.builder()
+                .userId(userId)
+                .reservationEnabled(true)
+                .productEnabled(true)
+                .contactInfo("viktor@gmail.com")
+                .build();
+        LocalDateTime sendAt = LocalDateTime.now().plusHours(1);
+        ActivitiesNotificationRequest request = ActivitiesNotificationRequest.builder()
+                .userId(userId)
+                .subject("Reservation")
+                .message("Your table is ready in one hour")
+                .type(ActivityType.RESERVATION)
+                .sendAt(sendAt)
+                .build();
+
+        when(notificationPreferenceRepository.findByUserId(userId)).thenReturn(Optional.of(notificationPreference));
+        when(scheduledNotificationRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        ScheduledNotification scheduledNotification = notificationService.scheduleNotification(request);
+
+        assertEquals(sendAt, scheduledNotification.getSendAt());
+        verify(activitiesNotificationRepository, never()).save(any());
+        verify(notificationOutboxRepository, never()).save(any());
+        verify(unreadNotificationCounter, never()).add(any(), anyLong());
+        verify(applicationEventPublisher, times(1)).publishEvent(argThat((Object event) -> event instanceof NotificationScheduledEvent));
+    }
+
+    @Test
+    void scheduleNotification_whenTypeIsDisabled_shouldRejectItRightAway(){
+        UUID userId = UUID.randomUUID();
+        NotificationPreference notificationPreference = NotificationPreference.builder()
+                .userId(userId)
+                .reservationEnabled(false)
+                .productEnabled(true)
+                .contactInfo("viktor@gmail.com")
+                .build();
+        ActivitiesNotificationRequest request = ActivitiesNotificationRequest.builder()
+                .userId(userId)
+                .subject("Reservation")
+                .message("Your table is ready in one hour")
+                .type(ActivityType.RESERVATION)
+                .sendAt(LocalDateTime.now().plusHours(1))
+                .build();
+
+        when(notificationPreferenceRepository.findByUserId(userId)).thenReturn(Optional.of(notificationPreference));
+
+        assertThrows(IllegalArgumentException.class, () -> notificationService.scheduleNotification(request));
+        verify(scheduledNotificationRepository, never()).save(any());
+    }
+
+    @Test
+    void sendNotifications_withSendAt_shouldRejectThatRequest(){
+        UUID userId = UUID.randomUUID();
+        NotificationPreference notificationPreference = NotificationPreference.builder()
+                .userId(userId)
+                .reservationEnabled(true)
+                .productEnabled(true)
+                .contactInfo("viktor@gmail.com")
+                .build();
+        List<ActivitiesNotificationRequest> requests = List.of(
+                ActivitiesNotificationRequest.builder().userId(userId).subject("Table").message("For two").type(ActivityType.RESERVATION).sendAt(LocalDateTime.now().plusHours(1)).build(),
+                ActivitiesNotificationRequest.builder().userId(userId).subject("Table").message("For four").type(ActivityType.RESERVATION).build());
+
+        when(notificationDispatcher.isSaturated()).thenReturn(false);
+        when(notificationPreferenceRepository.findAllByUserIdIn(any())).thenReturn(List.of(notificationPreference));
+
+        List<BatchSendResult> results = notificationService.sendNotifications(requests);
+
+        assertFalse(results.get(0).isAccepted());
+        assertTrue(results.get(1).isAccepted());
+        verify(scheduledNotificationRepository, never()).save(any());
+    }
+
+    @Test
+    void markAsRead_withIds_shouldLowerTheUnreadCountByTheRowsMarked(){
+        UUID userId = UUID.randomUUID();
+        List<UUID> ids = List.of(UUID.randomUUID(), UUID.randomUUID());
+
+        when(activitiesNotificationRepository.markRead(userId, ids)).thenReturn(1);
+
+        assertEquals(1, notificationService.markAsRead(userId, ids));
+        verify(activitiesNotificationRepository, never()).markAllRead(any());
+        verify(unreadNotificationCounter, times(1)).add(userId, -1);
+    }
+
+    @Test
+    void markAsRead_withoutIds_shouldMarkEverythingVisible(){
+        UUID userId = UUID.randomUUID();
+
+        when(activitiesNotificationRepository.markAllRead(userId)).thenReturn(7);
+
+        assertEquals(7, notificationService.markAsRead(userId, null));
+        verify(unreadNotificationCounter, times(1)).add(userId, -7);
     }
 }
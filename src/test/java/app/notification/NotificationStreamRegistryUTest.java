@@ -0,0 +1,59 @@
+package app.notification;
+
+import app.model.ActivitiesNotification;
+import app.model.ActivityType;
+import app.model.NotificationStatus;
+import app.service.NotificationService;
+import app.service.NotificationsAcceptedEvent;
+import app.web.NotificationStreamRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class NotificationStreamRegistryUTest {
+    private final ThreadPoolTaskExecutor notificationStreamExecutor = mock(ThreadPoolTaskExecutor.class);
+    private final NotificationStreamRegistry registry = new NotificationStreamRegistry(mock(NotificationService.class), notificationStreamExecutor, 60000);
+
+    //the push is neither queued nor written on the committing thread, the client resumes from Last-Event-ID
+    @Test
+    void onNotificationsAccepted_withStreamThreadsBackedUp_shouldCloseTheStreamInsteadOfWritingOnTheCaller(){
+        UUID userId = UUID.randomUUID();
+        registry.register(userId, null);
+        doThrow(new TaskRejectedException("queue full")).when(notificationStreamExecutor).execute(any(Runnable.class));
+
+        registry.onNotificationsAccepted(new NotificationsAcceptedEvent(List.of(ActivitiesNotification.builder()
+                .id(UUID.randomUUID())
+                .userId(userId)
+                .type(ActivityType.RESERVATION)
+                .subject("Reservation")
+                .message("Table for two")
+                .status(NotificationStatus.PENDING)
+                .createdOn(LocalDateTime.now())
+                .build())));
+
+        assertEquals(0, registry.connectionCount());
+    }
+
+    @Test
+    void sendHeartbeats_withStreamThreadsBackedUp_shouldTryAgainNextRound(){
+        registry.register(UUID.randomUUID(), null);
+        doThrow(new TaskRejectedException("queue full")).when(notificationStreamExecutor).execute(any(Runnable.class));
+
+        registry.sendHeartbeats();
+        registry.sendHeartbeats();
+
+        verify(notificationStreamExecutor, times(2)).execute(any(Runnable.class));
+        assertEquals(1, registry.connectionCount());
+    }
+}
@@ -0,0 +1,61 @@
+package app.notification;
+
+import app.model.TimeOrderedUuidGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TimeOrderedUuidGeneratorUTest {
+
+    @Test
+    void next_shouldSortInCreationOrderAsStoredBytes(){
+        long before = Instant.now().toEpochMilli();
+        List<UUID> ids = new ArrayList<>();
+        //more than fit in one millisecond
+        for(int i = 0; i < 10000; i++){
+            ids.add(TimeOrderedUuidGenerator.next());
+        }
+
+        for(int i = 1; i < ids.size(); i++){
+            assertTrue(Long.compareUnsigned(ids.get(i - 1).getMostSignificantBits(), ids.get(i).getMostSignificantBits()) < 0);
+        }
+        UUID first = ids.get(0);
+        assertEquals(7, first.version());
+        assertEquals(2, first.variant());
+        assertTrue(TimeOrderedUuidGenerator.isTimeOrdered(first));
+        assertTrue((first.getMostSignificantBits() >>> 16) >= before);
+    }
+
+    @Test
+    void next_fromManyThreads_shouldNeverRepeat() throws Exception {
+        Set<UUID> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for(int i = 0; i < 8; i++){
+                futures.add(executor.submit(() -> {
+                    for(int j = 0; j < 10000; j++){
+                        ids.add(TimeOrderedUuidGenerator.next());
+                    }
+                }));
+            }
+            for(Future<?> future : futures){
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(80000, ids.size());
+    }
+}
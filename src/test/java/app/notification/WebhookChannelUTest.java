@@ -0,0 +1,50 @@
+package app.notification;
+
+import app.channel.WebhookChannel;
+import app.model.ActivitiesNotification;
+import app.model.ActivityType;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.RestClient;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class WebhookChannelUTest {
+    private final WebhookChannel webhookChannel = new WebhookChannel(RestClient.builder(), 200, 200, false);
+
+    //every one of these is refused before any connection is opened
+    @Test
+    void deliver_toNonPublicAddress_shouldBeRefused(){
+        List<String> urls = List.of(
+                "http://169.254.169.254/latest/meta-data",
+                "http://localhost:8081/api/v1/notifications",
+                "http://127.0.0.1/hook",
+                "http://10.0.0.5/hook",
+                "https://192.168.1.10/hook",
+                "http://172.16.0.1/hook",
+                "http://100.64.0.1/hook",
+                "http://0.0.0.0/hook",
+                "http://[::1]/hook",
+                "http://[fd12:3456::1]/hook",
+                "http://[::ffff:127.0.0.1]/hook",
+                "file:///etc/passwd");
+
+        for(String url : urls){
+            assertThrows(IllegalArgumentException.class, () -> webhookChannel.deliver(notification(), url), url);
+        }
+    }
+
+    private static ActivitiesNotification notification(){
+        return ActivitiesNotification.builder()
+                .id(UUID.randomUUID())
+                .userId(UUID.randomUUID())
+                .type(ActivityType.RESERVATION)
+                .subject("Reservation")
+                .message("Table for two")
+                .createdOn(LocalDateTime.now())
+                .build();
+    }
+}
@@ -1,12 +1,24 @@
 package app.web;
 
+import app.exception.NotificationQueueFullException;
+import app.exception.IdempotencyKeyReusedException;
+import app.exception.IdempotencyKeyTargetGoneException;
+import app.exception.RateLimitExceededException;
 import app.model.ActivitiesNotification;
 import app.model.ActivityType;
+import app.model.ChannelType;
+import app.model.NotificationDelivery;
+import app.model.NotificationHistoryEntry;
 import app.model.NotificationPreference;
 import app.model.NotificationStatus;
+import app.model.ScheduledNotification;
+import app.service.BatchSendResult;
+import app.service.IdempotencyKeyStore;
+import app.service.NotificationRateLimiter;
 import app.service.NotificationService;
 import app.web.dto.ActivitiesNotificationRequest;
 import app.web.dto.ActivitiesNotificationResponse;
+import app.web.dto.HistoryCursor;
 import app.web.dto.UpsertNotificationPreference;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -16,14 +28,25 @@ import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.UUID;
+import java.util.function.Consumer;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.Matchers.hasSize;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -34,6 +57,15 @@ public class NotificationControllerApiTest {
     @MockitoBean
     private NotificationService notificationService;
 
+    @MockitoBean
+    private IdempotencyKeyStore idempotencyKeyStore;
+
+    @MockitoBean
+    private NotificationRateLimiter notificationRateLimiter;
+
+    @MockitoBean
+    private NotificationStreamRegistry notificationStreamRegistry;
+
     @Autowired
     private MockMvc mockMvc;
 
@@ -93,6 +125,25 @@ public class NotificationControllerApiTest {
                 .andExpect(jsonPath("contactInfo").isNotEmpty());
     }
 
+    @Test
+    void postRequestToUpsertNotificationPreference_withInvalidWebhookUrl_shouldReturnBadRequest() throws Exception {
+        UpsertNotificationPreference upsertNotificationPreference = UpsertNotificationPreference.builder()
+                .userId(UUID.randomUUID())
+                .reservationEnabled(true)
+                .productEnabled(true)
+                .contactInfo("viktor@gmail.com")
+                .webhookUrl("gopher://example.com/hook")
+                .build();
+
+        MockHttpServletRequestBuilder request = post("/api/v1/notifications/preferences")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(new ObjectMapper().writeValueAsBytes(upsertNotificationPreference));
+
+        mockMvc.perform(request)
+                .andExpect(status().isBadRequest());
+        verify(notificationService, never()).upsertPreference(any());
+    }
+
     @Test
     void postRequestToSendNotification_happyPath() throws Exception {
         ActivitiesNotificationRequest activitiesNotificationRequest = ActivitiesNotificationRequest.builder()
@@ -109,7 +160,7 @@ public class NotificationControllerApiTest {
                         .type(ActivityType.BUYING_PRODUCT)
                         .subject(activitiesNotificationRequest.getSubject())
                         .message(activitiesNotificationRequest.getMessage())
-                        .status(NotificationStatus.SUCCEEDED)
+                        .status(NotificationStatus.PENDING)
                         .createdOn(LocalDateTime.now())
                         .isHidden(false)
                         .build());
@@ -119,34 +170,192 @@ public class NotificationControllerApiTest {
                 .content(new ObjectMapper().writeValueAsBytes(activitiesNotificationRequest));
 
         mockMvc.perform(request)
-                .andExpect(status().isCreated())
+                .andExpect(status().isAccepted())
                 .andExpect(jsonPath("subject").isNotEmpty())
                 .andExpect(jsonPath("type").isNotEmpty())
                 .andExpect(jsonPath("status").isNotEmpty())
                 .andExpect(jsonPath("createdOn").isNotEmpty());
     }
 
+    @Test
+    void postRequestToSendNotification_withIdempotencyKey_shouldResolveThroughKeyStore() throws Exception {
+        ActivitiesNotificationRequest activitiesNotificationRequest = ActivitiesNotificationRequest.builder()
+                .userId(UUID.randomUUID())
+                .subject("Buying product")
+                .message("Water for 1 lv.")
+                .type(ActivityType.BUYING_PRODUCT)
+                .build();
+        UUID notificationId = UUID.randomUUID();
+
+        when(idempotencyKeyStore.resolve(eq(activitiesNotificationRequest), eq("order-42"), any())).thenReturn(ActivitiesNotification.builder()
+                .id(notificationId)
+                .userId(activitiesNotificationRequest.getUserId())
+                .type(ActivityType.BUYING_PRODUCT)
+                .subject(activitiesNotificationRequest.getSubject())
+                .message(activitiesNotificationRequest.getMessage())
+                .status(NotificationStatus.PENDING)
+                .createdOn(LocalDateTime.now())
+                .isHidden(false)
+                .build());
+
+        MockHttpServletRequestBuilder request = post("/api/v1/notifications")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(NotificationController.IDEMPOTENCY_KEY_HEADER, "order-42")
+                .content(new ObjectMapper().writeValueAsBytes(activitiesNotificationRequest));
+
+        mockMvc.perform(request)
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("subject").value("Buying product"));
+        verify(notificationService, never()).sendNotification(any());
+    }
+
+    @Test
+    void postRequestToSendNotification_withIdempotencyKeyUsedForADifferentRequest_shouldReturnUnprocessableEntity() throws Exception {
+        ActivitiesNotificationRequest activitiesNotificationRequest = ActivitiesNotificationRequest.builder()
+                .userId(UUID.randomUUID())
+                .subject("Buying product")
+                .message("Water for 1 lv.")
+                .type(ActivityType.BUYING_PRODUCT)
+                .build();
+
+        when(idempotencyKeyStore.resolve(eq(activitiesNotificationRequest), eq("order-42"), any()))
+                .thenThrow(new IdempotencyKeyReusedException("Idempotency key order-42 was already used for a different request!"));
+
+        MockHttpServletRequestBuilder request = post("/api/v1/notifications")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(NotificationController.IDEMPOTENCY_KEY_HEADER, "order-42")
+                .content(new ObjectMapper().writeValueAsBytes(activitiesNotificationRequest));
+
+        mockMvc.perform(request)
+                .andExpect(status().isUnprocessableEntity());
+    }
+
+    @Test
+    void postRequestToSendNotification_withSubjectLongerThanItsColumn_shouldReturnBadRequest() throws Exception {
+        ActivitiesNotificationRequest activitiesNotificationRequest = ActivitiesNotificationRequest.builder()
+                .userId(UUID.randomUUID())
+                .subject("x".repeat(256))
+                .message("Water for 1 lv.")
+                .type(ActivityType.BUYING_PRODUCT)
+                .build();
+
+        MockHttpServletRequestBuilder request = post("/api/v1/notifications")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(new ObjectMapper().writeValueAsBytes(activitiesNotificationRequest));
+
+        mockMvc.perform(request)
+                .andExpect(status().isBadRequest());
+        verify(notificationService, never()).sendNotification(any());
+        verify(notificationRateLimiter, never()).acquire(any(UUID.class));
+    }
+
+    @Test
+    void postRequestToSendNotification_whenQueueIsFull_shouldReturnTooManyRequests() throws Exception {
+        ActivitiesNotificationRequest activitiesNotificationRequest = ActivitiesNotificationRequest.builder()
+                .userId(UUID.randomUUID())
+                .subject("Buying product")
+                .message("Water for 1 lv.")
+                .type(ActivityType.BUYING_PRODUCT)
+                .build();
+
+        when(notificationService.sendNotification(any())).thenThrow(new NotificationQueueFullException("Notification queue is full, try again later!"));
+
+        MockHttpServletRequestBuilder request = post("/api/v1/notifications")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(new ObjectMapper().writeValueAsBytes(activitiesNotificationRequest));
+
+        mockMvc.perform(request)
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().exists("Retry-After"));
+    }
+
+    @Test
+    void postRequestToSendNotification_whenRateLimited_shouldReturnTooManyRequestsWithRetryAfter() throws Exception {
+        UUID userId = UUID.randomUUID();
+        ActivitiesNotificationRequest activitiesNotificationRequest = ActivitiesNotificationRequest.builder()
+                .userId(userId)
+                .subject("Buying product")
+                .message("Water for 1 lv.")
+                .type(ActivityType.BUYING_PRODUCT)
+                .build();
+
+        doThrow(new RateLimitExceededException("Rate limit for user with id "+userId+" exceeded!", Duration.ofMillis(2500)))
+                .when(notificationRateLimiter).acquire(userId);
+
+        MockHttpServletRequestBuilder request = post("/api/v1/notifications")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(new ObjectMapper().writeValueAsBytes(activitiesNotificationRequest));
+
+        mockMvc.perform(request)
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "3"));
+        verify(notificationService, never()).sendNotification(any());
+    }
+
+    @Test
+    void postRequestToSendNotificationsBatch_shouldReturnPerItemResults() throws Exception {
+        List<ActivitiesNotificationRequest> activitiesNotificationRequests = List.of(
+                ActivitiesNotificationRequest.builder()
+                        .userId(UUID.randomUUID())
+                        .subject("Buying product")
+                        .message("Water for 1 lv.")
+                        .type(ActivityType.BUYING_PRODUCT)
+                        .build(),
+                ActivitiesNotificationRequest.builder()
+                        .userId(UUID.randomUUID())
+                        .subject("Creating reservation")
+                        .message("Table for two")
+                        .type(ActivityType.RESERVATION)
+                        .build());
+
+        when(notificationService.sendNotifications(any())).thenReturn(List.of(
+                BatchSendResult.builder()
+                        .index(0)
+                        .notification(ActivitiesNotification.builder()
+                                .id(UUID.randomUUID())
+                                .type(ActivityType.BUYING_PRODUCT)
+                                .subject("Buying product")
+                                .status(NotificationStatus.PENDING)
+                                .createdOn(LocalDateTime.now())
+                                .build())
+                        .build(),
+                BatchSendResult.builder()
+                        .index(1)
+                        .error("User does not allow notifications for reservations!")
+                        .build()));
+
+        MockHttpServletRequestBuilder request = post("/api/v1/notifications/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(new ObjectMapper().writeValueAsBytes(activitiesNotificationRequests));
+
+        mockMvc.perform(request)
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].accepted").value(true))
+                .andExpect(jsonPath("$[0].notification.subject").value("Buying product"))
+                .andExpect(jsonPath("$[1].accepted").value(false))
+                .andExpect(jsonPath("$[1].error").isNotEmpty());
+    }
+
     @Test
     void getRequestToGetActivitiesNotificationHistory_happyPath() throws Exception {
-        ActivitiesNotification notification1 = ActivitiesNotification.builder()
+        NotificationHistoryEntry notification1 = NotificationHistoryEntry.builder()
                 .id(UUID.randomUUID())
-                .userId(UUID.randomUUID())
                 .type(ActivityType.BUYING_PRODUCT)
                 .subject("Buying product")
                 .status(NotificationStatus.SUCCEEDED)
                 .createdOn(LocalDateTime.now())
                 .build();
 
-        ActivitiesNotification notification2 = ActivitiesNotification.builder()
+        NotificationHistoryEntry notification2 = NotificationHistoryEntry.builder()
                 .id(UUID.randomUUID())
-                .userId(UUID.randomUUID())
                 .type(ActivityType.RESERVATION)
                 .subject("Creating reservation")
                 .status(NotificationStatus.SUCCEEDED)
                 .createdOn(LocalDateTime.now())
                 .build();
 
-        when(notificationService.getHistory(any())).thenReturn(List.of(notification1, notification2));
+        when(notificationService.getHistory(any(), any(), anyInt())).thenReturn(List.of(notification1, notification2));
 
         MockHttpServletRequestBuilder request = get("/api/v1/notifications")
                 .param("userId", UUID.randomUUID().toString());
@@ -161,30 +370,277 @@ public class NotificationControllerApiTest {
                 .andExpect(jsonPath("$[1].subject").isNotEmpty())
                 .andExpect(jsonPath("$[1].type").isNotEmpty())
                 .andExpect(jsonPath("$[1].status").isNotEmpty())
-                .andExpect(jsonPath("$[1].createdOn").isNotEmpty());
+                .andExpect(jsonPath("$[1].createdOn").isNotEmpty())
+                .andExpect(header().doesNotExist(NotificationController.NEXT_CURSOR_HEADER));
+    }
+
+    @Test
+    void getRequestToGetActivitiesNotificationHistory_withFullPage_shouldReturnNextCursor() throws Exception {
+        UUID lastId = UUID.randomUUID();
+        LocalDateTime lastCreatedOn = LocalDateTime.now().minusMinutes(5);
+        NotificationHistoryEntry notification = NotificationHistoryEntry.builder()
+                .id(lastId)
+                .type(ActivityType.RESERVATION)
+                .subject("Creating reservation")
+                .status(NotificationStatus.SUCCEEDED)
+                .createdOn(lastCreatedOn)
+                .build();
+
+        when(notificationService.getHistory(any(), any(), eq(1))).thenReturn(List.of(notification));
+
+        MockHttpServletRequestBuilder request = get("/api/v1/notifications")
+                .param("userId", UUID.randomUUID().toString())
+                .param("limit", "1");
+
+        mockMvc.perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(header().string(NotificationController.NEXT_CURSOR_HEADER, new HistoryCursor(lastCreatedOn, lastId).encode()));
+    }
+
+    @Test
+    void getRequestToGetActivitiesNotificationHistory_withInvalidCursor_shouldReturnBadRequest() throws Exception {
+        MockHttpServletRequestBuilder request = get("/api/v1/notifications")
+                .param("userId", UUID.randomUUID().toString())
+                .param("cursor", "not-a-cursor");
+
+        mockMvc.perform(request)
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void getRequestToStreamActivitiesNotificationHistory_shouldWriteOneJsonLinePerNotification() throws Exception {
+        NotificationHistoryEntry notification1 = NotificationHistoryEntry.builder()
+                .id(UUID.randomUUID())
+                .type(ActivityType.BUYING_PRODUCT)
+                .subject("Buying product")
+                .status(NotificationStatus.SUCCEEDED)
+                .createdOn(LocalDateTime.now())
+                .build();
+        NotificationHistoryEntry notification2 = NotificationHistoryEntry.builder()
+                .id(UUID.randomUUID())
+                .type(ActivityType.RESERVATION)
+                .subject("Creating reservation")
+                .status(NotificationStatus.SUCCEEDED)
+                .createdOn(LocalDateTime.now())
+                .build();
+
+        doAnswer(invocation -> {
+            Consumer<NotificationHistoryEntry> consumer = invocation.getArgument(1);
+            consumer.accept(notification1);
+            consumer.accept(notification2);
+            return null;
+        }).when(notificationService).streamHistory(any(), any());
+
+        MockHttpServletRequestBuilder request = get("/api/v1/notifications")
+                .param("userId", UUID.randomUUID().toString())
+                .param("stream", "true");
+
+        MvcResult result = mockMvc.perform(request)
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String body = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString();
+        assertThat(body.lines().toList()).hasSize(2);
+        assertThat(body).contains("Buying product", "Creating reservation");
     }
 
     @Test
     void putRequestToClearAllNotifications_happyPath() throws Exception {
 
+        when(notificationService.setAllNotificationsIsHiddenToTrue(any())).thenReturn(3);
+
         MockHttpServletRequestBuilder request = put("/api/v1/notifications/clear")
                 .param("userId", UUID.randomUUID().toString());
 
         mockMvc.perform(request)
                 .andExpect(status().isOk())
-                .andExpect(content().string(""));
+                .andExpect(jsonPath("updatedCount").value(3));
 
     }
 
     @Test
     void putRequestToShowAllNotifications_happyPath() throws Exception {
 
+        when(notificationService.setAllNotificationsIsHiddenToFalse(any())).thenReturn(3);
+
         MockHttpServletRequestBuilder request = put("/api/v1/notifications/show")
                 .param("userId", UUID.randomUUID().toString());
 
         mockMvc.perform(request)
                 .andExpect(status().isOk())
-                .andExpect(content().string(""));
+                .andExpect(jsonPath("updatedCount").value(3));
 
     }
+
+    @Test
+    void getRequestToGetUnreadCount_happyPath() throws Exception {
+        UUID userId = UUID.randomUUID();
+        when(notificationService.getUnreadCount(userId)).thenReturn(4L);
+
+        MockHttpServletRequestBuilder request = get("/api/v1/notifications/count")
+                .param("userId", userId.toString());
+
+        mockMvc.perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("unreadCount").value(4));
+        verify(notificationService, never()).getHistory(any(), any(), anyInt());
+    }
+
+    @Test
+    void putRequestToMarkNotificationsAsRead_withIds_shouldMarkOnlyThose() throws Exception {
+        UUID userId = UUID.randomUUID();
+        List<UUID> ids = List.of(UUID.randomUUID(), UUID.randomUUID());
+        when(notificationService.markAsRead(userId, ids)).thenReturn(2);
+
+        MockHttpServletRequestBuilder request = put("/api/v1/notifications/read")
+                .param("userId", userId.toString())
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(new ObjectMapper().writeValueAsBytes(ids));
+
+        mockMvc.perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("updatedCount").value(2));
+    }
+
+    @Test
+    void putRequestToMarkNotificationsAsRead_withoutBody_shouldMarkAll() throws Exception {
+        UUID userId = UUID.randomUUID();
+        when(notificationService.markAsRead(userId, null)).thenReturn(5);
+
+        MockHttpServletRequestBuilder request = put("/api/v1/notifications/read")
+                .param("userId", userId.toString());
+
+        mockMvc.perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("updatedCount").value(5));
+    }
+
+    @Test
+    void getRequestToStreamNotifications_shouldRegisterWithLastEventId() throws Exception {
+        UUID userId = UUID.randomUUID();
+        String lastEventId = new HistoryCursor(LocalDateTime.now(), UUID.randomUUID()).encode();
+        when(notificationStreamRegistry.register(userId, lastEventId)).thenReturn(new SseEmitter());
+
+        MockHttpServletRequestBuilder request = get("/api/v1/notifications/stream")
+                .param("userId", userId.toString())
+                .header("Last-Event-ID", lastEventId)
+                .accept(MediaType.TEXT_EVENT_STREAM);
+
+        mockMvc.perform(request)
+                .andExpect(request().asyncStarted())
+                .andExpect(status().isOk());
+        verify(notificationStreamRegistry).register(userId, lastEventId);
+    }
+
+    @Test
+    void getRequestToNotificationDeliveries_shouldReturnStatePerChannel() throws Exception {
+        UUID userId = UUID.randomUUID();
+        UUID notificationId = UUID.randomUUID();
+        when(notificationService.getDeliveries(userId, notificationId)).thenReturn(List.of(
+                NotificationDelivery.builder().notificationId(notificationId).channel(ChannelType.EMAIL).status(NotificationStatus.SUCCEEDED).attemptCount(1).build(),
+                NotificationDelivery.builder().notificationId(notificationId).channel(ChannelType.WEBHOOK).status(NotificationStatus.FAILED).attemptCount(2).build()));
+
+        MockHttpServletRequestBuilder request = get("/api/v1/notifications/" + notificationId + "/deliveries")
+                .param("userId", userId.toString());
+
+        mockMvc.perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].channel").value("EMAIL"))
+                .andExpect(jsonPath("$[0].status").value("SUCCEEDED"))
+                .andExpect(jsonPath("$[1].channel").value("WEBHOOK"))
+                .andExpect(jsonPath("$[1].status").value("FAILED"))
+                .andExpect(jsonPath("$[1].attemptCount").value(2));
+    }
+
+    @Test
+    void postRequestToSendNotification_withFutureSendAt_shouldScheduleIt() throws Exception {
+        UUID userId = UUID.randomUUID();
+        LocalDateTime sendAt = LocalDateTime.now().plusHours(1).withNano(0);
+        when(notificationService.scheduleNotification(any())).thenReturn(ScheduledNotification.builder()
+                .id(UUID.randomUUID())
+                .userId(userId)
+                .type(ActivityType.RESERVATION)
+                .subject("Reservation")
+                .message("Your table is ready in one hour")
+                .sendAt(sendAt)
+                .createdOn(LocalDateTime.now())
+                .build());
+
+        MockHttpServletRequestBuilder request = post("/api/v1/notifications")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"userId\":\"" + userId + "\",\"subject\":\"Reservation\",\"message\":\"Your table is ready in one hour\"," +
+                        "\"type\":\"RESERVATION\",\"sendAt\":\"" + sendAt + "\"}");
+
+        mockMvc.perform(request)
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("status").value("SCHEDULED"))
+                .andExpect(jsonPath("sendAt").isNotEmpty());
+        verify(notificationService).scheduleNotification(any());
+        verify(notificationService, never()).sendNotification(any());
+    }
+
+    @Test
+    void postRequestToSendNotification_withFutureSendAtAndIdempotencyKey_shouldScheduleItThroughTheKeyStore() throws Exception {
+        UUID userId = UUID.randomUUID();
+        UUID scheduledId = UUID.randomUUID();
+        LocalDateTime sendAt = LocalDateTime.now().plusHours(1).withNano(0);
+        when(idempotencyKeyStore.resolveScheduled(any(), eq("reminder-42"), any())).thenReturn(ScheduledNotification.builder()
+                .id(scheduledId)
+                .userId(userId)
+                .type(ActivityType.RESERVATION)
+                .subject("Reservation")
+                .message("Your table is ready in one hour")
+                .sendAt(sendAt)
+                .createdOn(LocalDateTime.now())
+                .build());
+
+        MockHttpServletRequestBuilder request = post("/api/v1/notifications")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("Idempotency-Key", "reminder-42")
+                .content("{\"userId\":\"" + userId + "\",\"subject\":\"Reservation\",\"message\":\"Your table is ready in one hour\"," +
+                        "\"type\":\"RESERVATION\",\"sendAt\":\"" + sendAt + "\"}");
+
+        mockMvc.perform(request)
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("id").value(scheduledId.toString()))
+                .andExpect(jsonPath("status").value("SCHEDULED"));
+        verify(idempotencyKeyStore).resolveScheduled(any(), eq("reminder-42"), any());
+        verify(notificationService, never()).scheduleNotification(any());
+    }
+
+    @Test
+    void postRequestToSendNotification_withIdempotencyKeyOfACancelledNotification_shouldReturnGone() throws Exception {
+        UUID userId = UUID.randomUUID();
+        LocalDateTime sendAt = LocalDateTime.now().plusHours(1).withNano(0);
+        when(idempotencyKeyStore.resolveScheduled(any(), eq("reminder-42"), any()))
+                .thenThrow(new IdempotencyKeyTargetGoneException("Idempotency key reminder-42 belongs to a notification that no longer exists!"));
+
+        MockHttpServletRequestBuilder request = post("/api/v1/notifications")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(NotificationController.IDEMPOTENCY_KEY_HEADER, "reminder-42")
+                .content("{\"userId\":\"" + userId + "\",\"subject\":\"Reservation\",\"message\":\"Your table is ready in one hour\"," +
+                        "\"type\":\"RESERVATION\",\"sendAt\":\"" + sendAt + "\"}");
+
+        mockMvc.perform(request)
+                .andExpect(status().isGone());
+    }
+
+    @Test
+    void deleteRequestToCancelScheduledNotification_shouldReturnTheCancelledCount() throws Exception {
+        UUID userId = UUID.randomUUID();
+        UUID id = UUID.randomUUID();
+        when(notificationService.cancelScheduledNotification(userId, id)).thenReturn(1);
+
+        MockHttpServletRequestBuilder request = delete("/api/v1/notifications/scheduled/" + id)
+                .param("userId", userId.toString());
+
+        mockMvc.perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("updatedCount").value(1));
+    }
 }